@@ -18,9 +18,16 @@ package com.github.introfog.pie.assessment.collisions.broadphase;
 import com.github.introfog.pie.assessment.collisions.broadphase.applier.IAction;
 import com.github.introfog.pie.core.collisions.broadphase.IBroadPhase;
 import com.github.introfog.pie.core.collisions.broadphase.BruteForceMethod;
+import com.github.introfog.pie.core.collisions.broadphase.FlatAabbTreeMethod;
+import com.github.introfog.pie.core.collisions.broadphase.HierarchicalGridMethod;
+import com.github.introfog.pie.core.collisions.broadphase.IncrementalSweepAndPruneMethod;
+import com.github.introfog.pie.core.collisions.broadphase.ParallelSweepAndPruneMethod;
+import com.github.introfog.pie.core.collisions.broadphase.PersistentSpatialHashingMethod;
 import com.github.introfog.pie.core.collisions.broadphase.SpatialHashingMethod;
 import com.github.introfog.pie.core.collisions.broadphase.SweepAndPruneMethod;
+import com.github.introfog.pie.core.collisions.broadphase.UniformGridMethod;
 import com.github.introfog.pie.core.collisions.broadphase.AabbTreeMethod;
+import com.github.introfog.pie.core.shape.Aabb;
 import com.github.introfog.pie.core.shape.IShape;
 import com.github.introfog.pie.core.util.ShapeIOUtil;
 import com.github.introfog.pie.core.shape.ShapePair;
@@ -66,9 +73,32 @@ public class BroadPhaseAlgorithmicTestRunner {
         List<IBroadPhase> methods = new ArrayList<>();
         methods.add(new BruteForceMethod());
         methods.add(new SpatialHashingMethod());
+        methods.add(new PersistentSpatialHashingMethod());
+        methods.add(new HierarchicalGridMethod());
         methods.add(new SweepAndPruneMethod());
+        methods.add(new IncrementalSweepAndPruneMethod());
+        methods.add(new ParallelSweepAndPruneMethod());
         methods.add(new AabbTreeMethod());
+        methods.add(new FlatAabbTreeMethod());
+        methods.add(BroadPhaseAlgorithmicTestRunner.createUniformGridMethod(shapes));
+        SpatialHashingMethod cellOwnershipMethod = new SpatialHashingMethod();
+        cellOwnershipMethod.setCellOwnershipEnabled(true);
+        methods.add(cellOwnershipMethod);
         methods.forEach(method -> method.setShapes(shapes));
         return methods;
     }
+
+    private static UniformGridMethod createUniformGridMethod(Set<IShape> shapes) {
+        // The bounds cover the initial shapes, the shapes which leave them are placed in the border cells
+        Aabb bounds = null;
+        float extentSum = 0;
+        for (IShape shape : shapes) {
+            shape.computeAabb();
+            bounds = bounds == null ? shape.getAabb() : Aabb.union(bounds, shape.getAabb());
+            extentSum += Math.max(shape.getAabb().max.x - shape.getAabb().min.x,
+                    shape.getAabb().max.y - shape.getAabb().min.y);
+        }
+        final float cellSize = Math.max(1, 2 * extentSum / shapes.size());
+        return new UniformGridMethod(bounds, cellSize);
+    }
 }
@@ -17,10 +17,13 @@ package com.github.introfog.pie.assessment.collisions.broadphase;
 
 import com.github.introfog.pie.core.collisions.broadphase.IBroadPhase;
 import com.github.introfog.pie.core.collisions.broadphase.BruteForceMethod;
+import com.github.introfog.pie.core.collisions.broadphase.PairBuffer;
+import com.github.introfog.pie.core.collisions.broadphase.ParallelSweepAndPruneMethod;
 import com.github.introfog.pie.core.collisions.broadphase.SpatialHashingMethod;
 import com.github.introfog.pie.core.collisions.broadphase.SweepAndPruneMethod;
 import com.github.introfog.pie.core.collisions.broadphase.AabbTreeMethod;
 import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.util.ParallelExecutor;
 import com.github.introfog.pie.core.util.ShapeIOUtil;
 
 import java.io.IOException;
@@ -28,6 +31,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
@@ -64,6 +68,61 @@ public class BroadPhaseBenchmarkTestRunner {
         Assert.assertTrue(methodResults.stream().allMatch(BenchmarkTestMethodResult::isPassed));
     }
 
+    /**
+     * Compares the {@link ParallelSweepAndPruneMethod} executed by the pools with the passed parallelism levels
+     * with the {@link SweepAndPruneMethod}, which is the comparative method, so the first expected coefficient
+     * must be 1.0.
+     */
+    public static void runParallelSweepAndPruneScalingBenchmarkTest(Set<IShape> shapes, int warm, int measure,
+            int[] parallelisms, double[] expectedCoefficients, double allowedWorkingTimeDifference) {
+        List<IBroadPhase> methods = new ArrayList<>();
+        List<String> methodNames = new ArrayList<>();
+        List<ForkJoinPool> pools = new ArrayList<>();
+        methods.add(new SweepAndPruneMethod());
+        methodNames.add(SweepAndPruneMethod.class.getSimpleName());
+        for (int parallelism : parallelisms) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            pools.add(pool);
+            IBroadPhase method = new ParallelSweepAndPruneMethod();
+            method.setParallelExecutor(new ParallelExecutor(pool));
+            methods.add(method);
+            methodNames.add("ParallelSAP, workers: " + parallelism);
+        }
+        methods.forEach(method -> method.setShapes(shapes));
+
+        System.out.println("PIE SCALING BENCHMARK TEST\n");
+        System.out.println("Shapes: " + shapes.size() + ", warming up: " + warm + ", measure: " + measure
+                + ", time unit: " + TimeUnit.MILLISECONDS);
+        try {
+            PairBuffer collisions = new PairBuffer();
+            for (int i = 0; i < warm; i++) {
+                methods.forEach(method -> method.calculateAabbCollisions(collisions));
+            }
+            long[] totalNanoTime = new long[methods.size()];
+            for (int i = 0; i < measure; i++) {
+                for (int j = 0; j < methods.size(); j++) {
+                    long previously = System.nanoTime();
+                    methods.get(j).calculateAabbCollisions(collisions);
+                    totalNanoTime[j] += System.nanoTime() - previously;
+                }
+            }
+
+            double comparativeTime = (double) TimeUnit.MILLISECONDS.convert(totalNanoTime[0], TimeUnit.NANOSECONDS)
+                    / measure;
+            List<BenchmarkTestMethodResult> methodResults = new ArrayList<>(methods.size());
+            for (int i = 0; i < methods.size(); i++) {
+                double methodTime = (double) TimeUnit.MILLISECONDS.convert(totalNanoTime[i], TimeUnit.NANOSECONDS)
+                        / measure;
+                methodResults.add(new BenchmarkTestMethodResult(methodNames.get(i), methodTime, comparativeTime,
+                        expectedCoefficients[i], allowedWorkingTimeDifference));
+            }
+            BenchmarkTestMethodResult.outputTestMethodResults(methodResults);
+            Assert.assertTrue(methodResults.stream().allMatch(BenchmarkTestMethodResult::isPassed));
+        } finally {
+            pools.forEach(ForkJoinPool::shutdown);
+        }
+    }
+
     private static List<IBroadPhase> initializeBroadPhaseMethods(Set<IShape> shapes) {
         List<IBroadPhase> methods = new ArrayList<>();
         methods.add(new BruteForceMethod());
@@ -0,0 +1,107 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.assessment;
+
+import com.github.introfog.pie.assessment.collisions.broadphase.BenchmarkTestMethodResult;
+import com.github.introfog.pie.core.World;
+import com.github.introfog.pie.core.WorldProperties;
+import com.github.introfog.pie.core.collisions.broadphase.IncrementalSweepAndPruneMethod;
+import com.github.introfog.pie.core.math.MathPie;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.Polygon;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.BenchmarkTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/*
+Currently, benchmark tests are run only on the developer's machine, as it was not possible to achieve uniform results
+on the machines used in GitHub Action (this is most likely due to different machine capacities). In the future it is
+planned to solve this problem, and add benchmark tests to the build action or other pipeline (TeamCity for example).
+ */
+@Category(BenchmarkTest.class)
+public class BodyStorageBenchmarkTest extends PieTest {
+    private static final float DELTA_TIME = 1f / 60;
+
+    /**
+     * The step of the pile is dominated by the broad and narrow phases which don't depend on the body storage,
+     * so the coefficient only checks that the gathering and scattering don't make the step slower.
+     */
+    @Test
+    public void pile10000CirclesTest() {
+        BodyStorageBenchmarkTest.runBodyStorageBenchmarkTest(200, 50, 60, 200, new double[] {1.0, 1.0}, 0.35);
+    }
+
+    private static void runBodyStorageBenchmarkTest(int columns, int rows, int warm, int measure,
+            double[] expectedCoefficients, double allowedWorkingTimeDifference) {
+        List<World> worlds = Arrays.asList(BodyStorageBenchmarkTest.createPile(columns, rows, false),
+                BodyStorageBenchmarkTest.createPile(columns, rows, true));
+        List<String> worldNames = Arrays.asList("Body objects", "Body storage");
+
+        System.out.println("PIE BODY STORAGE BENCHMARK TEST\n");
+        System.out.println("Shapes: " + (columns * rows + 1) + ", warming up: " + warm + ", measure: " + measure
+                + ", time unit: " + TimeUnit.MILLISECONDS);
+        for (int i = 0; i < warm; i++) {
+            worlds.forEach(world -> world.update(DELTA_TIME + MathPie.EPSILON));
+        }
+        // The worlds are stepped in turn, so the both are measured in the same conditions of the machine
+        long[] totalNanoTime = new long[worlds.size()];
+        for (int i = 0; i < measure; i++) {
+            for (int j = 0; j < worlds.size(); j++) {
+                long previously = System.nanoTime();
+                worlds.get(j).update(DELTA_TIME + MathPie.EPSILON);
+                totalNanoTime[j] += System.nanoTime() - previously;
+            }
+        }
+
+        double comparativeTime = (double) TimeUnit.MILLISECONDS.convert(totalNanoTime[0], TimeUnit.NANOSECONDS)
+                / measure;
+        List<BenchmarkTestMethodResult> results = new ArrayList<>(worlds.size());
+        for (int i = 0; i < worlds.size(); i++) {
+            double worldTime = (double) TimeUnit.MILLISECONDS.convert(totalNanoTime[i], TimeUnit.NANOSECONDS)
+                    / measure;
+            results.add(new BenchmarkTestMethodResult(worldNames.get(i), worldTime, comparativeTime,
+                    expectedCoefficients[i], allowedWorkingTimeDifference));
+        }
+        BenchmarkTestMethodResult.outputTestMethodResults(results);
+        Assert.assertTrue(results.stream().allMatch(BenchmarkTestMethodResult::isPassed));
+    }
+
+    private static World createPile(int columns, int rows, boolean bodyStorageEnabled) {
+        World world = new World(new WorldProperties().setFixedDeltaTime(DELTA_TIME).setDeadLoopBorder(100f)
+                .setBroadPhaseMethod(new IncrementalSweepAndPruneMethod()).setCollisionSolveIterations(10)
+                .setWarmStartingEnabled(true).setBodyStorageEnabled(bodyStorageEnabled));
+        List<IShape> shapes = new ArrayList<>();
+        shapes.add(Polygon.generateRectangle(columns * 5, 20, columns * 10 + 100, 20, MathPie.STATIC_BODY_DENSITY, 0f));
+        for (int i = 0; i < columns * rows; i++) {
+            shapes.add(new Circle(5, (i % columns) * 10 + 5, -(i / columns) * 10, 1, 0));
+        }
+        // The shapes are added in the random order, so the bodies of neighbouring shapes are scattered in the memory
+        Collections.shuffle(shapes, new Random(1));
+        world.addShapes(shapes);
+        return world;
+    }
+}
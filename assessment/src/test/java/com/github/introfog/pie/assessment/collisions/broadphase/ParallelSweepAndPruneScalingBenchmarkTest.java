@@ -0,0 +1,68 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.assessment.collisions.broadphase;
+
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.BenchmarkTest;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/*
+Currently, benchmark tests are run only on the developer's machine, as it was not possible to achieve uniform results
+on the machines used in GitHub Action (this is most likely due to different machine capacities). In the future it is
+planned to solve this problem, and add benchmark tests to the build action or other pipeline (TeamCity for example).
+ */
+@Category(BenchmarkTest.class)
+public class ParallelSweepAndPruneScalingBenchmarkTest extends PieTest {
+    /**
+     * Only the single worker baseline is checked, because the coefficients were measured on a single-core machine.
+     * The levels of several workers should be added together with the coefficients measured on a multi-core machine.
+     */
+    private static final int[] PARALLELISMS = new int[] {1};
+
+    @Test
+    public void square100000ShapesTest() {
+        BroadPhaseBenchmarkTestRunner.runParallelSweepAndPruneScalingBenchmarkTest(
+                ParallelSweepAndPruneScalingBenchmarkTest.createShapesInSquare(100_000, 3000, 1), 10, 20, PARALLELISMS,
+                new double[] {1.0, 0.5}, 0.35);
+    }
+
+    @Test
+    public void square400000ShapesTest() {
+        BroadPhaseBenchmarkTestRunner.runParallelSweepAndPruneScalingBenchmarkTest(
+                ParallelSweepAndPruneScalingBenchmarkTest.createShapesInSquare(400_000, 6000, 2), 5, 10, PARALLELISMS,
+                new double[] {1.0, 0.75}, 0.35);
+    }
+
+    private static Set<IShape> createShapesInSquare(int count, float side, long seed) {
+        Random random = new Random(seed);
+        Set<IShape> shapes = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            IShape shape = new Circle(2 + random.nextFloat() * 4, random.nextFloat() * side, random.nextFloat() * side,
+                    1, 0);
+            shape.computeAabb();
+            shapes.add(shape);
+        }
+        return shapes;
+    }
+}
@@ -22,7 +22,11 @@ import com.github.introfog.pie.core.collisions.narrowphase.ShapeCollisionHandler
 import com.github.introfog.pie.core.math.MathPie;
 import com.github.introfog.pie.core.math.Vector2f;
 import com.github.introfog.pie.core.shape.Aabb;
+import com.github.introfog.pie.core.shape.BodyStorage;
 import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.util.ParallelExecutor;
+
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The class stores the fields and methods that are needed between
@@ -37,6 +41,18 @@ public class Context {
     private final Vector2f gravity;
     private final IBroadPhase broadPhaseMethod;
     private final ShapeCollisionHandlersMapper shapeCollisionHandlersMapper;
+    private ParallelExecutor parallelExecutor;
+    /** Whether the pool of the executor has been created by the context and must be shut down by it. */
+    private final boolean poolOwned;
+    private final boolean sleepingEnabled;
+    private final boolean warmStartingEnabled;
+    private final boolean graphColoringEnabled;
+    private final BodyStorage bodyStorage;
+    private final boolean dirtyTrackingEnabled;
+    private final boolean staticFastPathEnabled;
+    private final float timeToSleep;
+    private final float sleepLinearTolerance;
+    private final float sleepAngularTolerance;
 
     /**
      * Instantiates a new {@link Context} instance based on passed {@link WorldProperties}.
@@ -52,6 +68,18 @@ public class Context {
         this.gravity = new Vector2f(worldProperties.getGravity());
         this.broadPhaseMethod = worldProperties.getBroadPhaseMethod().newInstance();
         this.shapeCollisionHandlersMapper = new ShapeCollisionHandlersMapper(worldProperties.getShapeCollisionMapping());
+        this.parallelExecutor = Context.createParallelExecutor(worldProperties);
+        this.poolOwned = worldProperties.getForkJoinPool() == null && parallelExecutor.getPool() != null;
+        this.broadPhaseMethod.setParallelExecutor(parallelExecutor);
+        this.sleepingEnabled = worldProperties.isSleepingEnabled();
+        this.warmStartingEnabled = worldProperties.isWarmStartingEnabled();
+        this.graphColoringEnabled = worldProperties.isGraphColoringEnabled();
+        this.bodyStorage = worldProperties.isBodyStorageEnabled() ? new BodyStorage() : null;
+        this.dirtyTrackingEnabled = worldProperties.isDirtyTrackingEnabled();
+        this.staticFastPathEnabled = worldProperties.isStaticFastPathEnabled();
+        this.timeToSleep = worldProperties.getTimeToSleep();
+        this.sleepLinearTolerance = worldProperties.getSleepLinearTolerance();
+        this.sleepAngularTolerance = worldProperties.getSleepAngularTolerance();
     }
 
     /**
@@ -163,6 +191,131 @@ public class Context {
         return shapeCollisionHandlersMapper;
     }
 
+    /**
+     * Gets the executor of the per-body passes of the world step.
+     *
+     * <p>
+     * The executor is created based on the {@link WorldProperties#getForkJoinPool()} and
+     * {@link WorldProperties#getWorkerCount()}, if the pool isn't set and only one worker is
+     * requested, the executor executes all passes sequentially.
+     *
+     * @return the parallel executor
+     */
+    public ParallelExecutor getParallelExecutor() {
+        return parallelExecutor;
+    }
+
+    /**
+     * Shuts down the pool of the parallel executor if the pool has been created by the context, the pool passed
+     * by the {@link WorldProperties#setForkJoinPool(ForkJoinPool)} isn't shut down, because it isn't owned by
+     * the world. After the shutdown, all passes are executed sequentially.
+     */
+    public void shutdown() {
+        if (!poolOwned || parallelExecutor.getPool() == null) {
+            return;
+        }
+        parallelExecutor.getPool().shutdown();
+        parallelExecutor = ParallelExecutor.sequential();
+        broadPhaseMethod.setParallelExecutor(parallelExecutor);
+    }
+
+    /**
+     * Checks whether the contact impulses are carried over between steps (warm starting).
+     *
+     * @return {@code true} if warm starting is enabled, otherwise {@code false}
+     * @see WorldProperties#setWarmStartingEnabled(boolean)
+     */
+    public boolean isWarmStartingEnabled() {
+        return warmStartingEnabled;
+    }
+
+    /**
+     * Checks whether the collisions of big islands are solved in parallel with the help of the contact graph coloring.
+     *
+     * @return {@code true} if the graph coloring is enabled, otherwise {@code false}
+     * @see WorldProperties#setGraphColoringEnabled(boolean)
+     */
+    public boolean isGraphColoringEnabled() {
+        return graphColoringEnabled;
+    }
+
+    /**
+     * Checks whether the bodies are integrated over the dense arrays of their state (structure of arrays).
+     *
+     * @return {@code true} if the bodies are integrated over the arrays, otherwise {@code false}
+     * @see WorldProperties#setBodyStorageEnabled(boolean)
+     */
+    public boolean isBodyStorageEnabled() {
+        return bodyStorage != null;
+    }
+
+    /**
+     * Gets the storage which keeps the state of the bodies in dense arrays during the world step.
+     *
+     * @return the body storage or {@code null} if the body storage is disabled
+     * @see WorldProperties#setBodyStorageEnabled(boolean)
+     */
+    public BodyStorage getBodyStorage() {
+        return bodyStorage;
+    }
+
+    /**
+     * Checks whether the broad phase gets only the shapes which have been moved since the previous step.
+     *
+     * @return {@code true} if the broad phase is updated only for the moved shapes, otherwise {@code false}
+     * @see WorldProperties#setDirtyTrackingEnabled(boolean)
+     */
+    public boolean isDirtyTrackingEnabled() {
+        return dirtyTrackingEnabled;
+    }
+
+    /**
+     * Checks whether the static shapes are kept separately from the dynamic ones.
+     *
+     * @return {@code true} if the static shapes are kept separately, otherwise {@code false}
+     * @see WorldProperties#setStaticFastPathEnabled(boolean)
+     */
+    public boolean isStaticFastPathEnabled() {
+        return staticFastPathEnabled;
+    }
+
+    /**
+     * Checks whether the resting bodies are allowed to fall asleep.
+     *
+     * @return {@code true} if bodies can fall asleep, otherwise {@code false}
+     * @see WorldProperties#setSleepingEnabled(boolean)
+     */
+    public boolean isSleepingEnabled() {
+        return sleepingEnabled;
+    }
+
+    /**
+     * Gets the time in seconds during which a body must rest before falling asleep.
+     *
+     * @return the time to sleep
+     */
+    public float getTimeToSleep() {
+        return timeToSleep;
+    }
+
+    /**
+     * Gets the linear velocity below which a body is considered to be resting.
+     *
+     * @return the linear velocity tolerance
+     */
+    public float getSleepLinearTolerance() {
+        return sleepLinearTolerance;
+    }
+
+    /**
+     * Gets the angular velocity in radians below which a body is considered to be resting.
+     *
+     * @return the angular velocity tolerance
+     */
+    public float getSleepAngularTolerance() {
+        return sleepAngularTolerance;
+    }
+
     /**
      * Get the resting.
      *
@@ -171,6 +324,17 @@ public class Context {
      * @return the resting
      */
     public float getResting() {
-        return Vector2f.mul(gravity, fixedDeltaTime).lengthWithoutSqrt() + MathPie.EPSILON;
+        final float restingX = gravity.x * fixedDeltaTime;
+        final float restingY = gravity.y * fixedDeltaTime;
+        return restingX * restingX + restingY * restingY + MathPie.EPSILON;
+    }
+
+    private static ParallelExecutor createParallelExecutor(WorldProperties worldProperties) {
+        ForkJoinPool pool = worldProperties.getForkJoinPool();
+        if (pool == null && worldProperties.getWorkerCount() > 1) {
+            pool = new ForkJoinPool(worldProperties.getWorkerCount());
+        }
+        return pool == null ? ParallelExecutor.sequential()
+                : new ParallelExecutor(pool, worldProperties.getParallelChunkSize());
     }
 }
@@ -3,10 +3,26 @@ package com.github.introfog.pie.core;
 public final class PieExceptionMessage {
     public static final String COLLISION_SOLVE_ITERATION_MUST_NOT_BE_NEGATIVE = "The number of collision solve iterations must not be negative.";
 
+    public static final String WORKER_COUNT_MUST_BE_POSITIVE = "The number of workers must be positive.";
+
+    public static final String TIME_TO_SLEEP_MUST_NOT_BE_NEGATIVE = "The time to sleep must not be negative or NaN.";
+
+    public static final String SLEEP_TOLERANCE_MUST_NOT_BE_NEGATIVE = "The sleep tolerance must not be negative or NaN.";
+
+    public static final String PARALLEL_CHUNK_SIZE_MUST_BE_POSITIVE = "The parallel chunk size must be positive.";
+
     public static final String INVALID_SHAPES_TYPE_FOR_NARROW_PHASE_HANDLER = "Invalid type of shapes for narrow phase handler.";
 
     public static final String SAME_SHAPES_PASSED_TO_SHAPE_PAIR_CONSTRUCTOR = "Can't create a ShapePair instance with the same shapes.";
 
+    public static final String SHAPE_ALREADY_BELONGS_TO_ANOTHER_WORLD = "The shape already belongs to another world.";
+
+    public static final String GRID_CELL_SIZE_MUST_BE_POSITIVE = "The grid cell size must be positive and finite.";
+
+    public static final String GRID_BOUNDS_MUST_NOT_BE_EMPTY = "The grid bounds must be finite and not empty.";
+
+    public static final String TOO_MANY_GRID_CELLS = "The grid has too many cells, increase the cell size or decrease the bounds.";
+
     private PieExceptionMessage() {
         // Empty constructor
     }
@@ -15,14 +15,27 @@
  */
 package com.github.introfog.pie.core;
 
+import com.github.introfog.pie.core.collisions.ContactCache;
 import com.github.introfog.pie.core.collisions.Manifold;
+import com.github.introfog.pie.core.collisions.ManifoldPool;
+import com.github.introfog.pie.core.collisions.broadphase.IBroadPhase;
+import com.github.introfog.pie.core.collisions.broadphase.PairBuffer;
+import com.github.introfog.pie.core.collisions.broadphase.StaticShapeTree;
+import com.github.introfog.pie.core.collisions.island.Island;
+import com.github.introfog.pie.core.collisions.island.IslandBuilder;
+import com.github.introfog.pie.core.collisions.island.ManifoldColoring;
 import com.github.introfog.pie.core.collisions.narrowphase.IShapeCollisionHandler;
 import com.github.introfog.pie.core.math.MathPie;
 import com.github.introfog.pie.core.shape.Body;
+import com.github.introfog.pie.core.shape.BodyStorage;
 import com.github.introfog.pie.core.shape.IShape;
 import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.shape.ShapeRegistry;
+import com.github.introfog.pie.core.util.ParallelExecutor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -36,9 +49,21 @@ import java.util.stream.Collectors;
 public final class World {
     private float accumulator;
     private final Context context;
-    private Set<ShapePair> mayBeCollision;
-    private Set<IShape> shapes;
-    private final List<Manifold> manifolds;
+    private final ShapeRegistry shapes;
+    private IShape[] arrayShapes;
+    private final List<IShape> movedShapes;
+    private final StaticShapeTree staticShapeTree;
+    private PairBuffer staticPairs;
+    private PairBuffer previousStaticPairs;
+    private List<Manifold> manifolds;
+    private List<Manifold> spareManifolds;
+    private final ManifoldPool manifoldPool;
+    private final ContactCache contactCache;
+    private int[] skippedContacts;
+    private int skippedContactCount;
+    private final IslandBuilder islandBuilder;
+    private final ManifoldColoring manifoldColoring;
+    private List<Island> islands;
 
     /**
      * Instantiates a new {@link World} instance based on {@link WorldProperties}.
@@ -48,9 +73,20 @@ public final class World {
      */
     public World(WorldProperties worldProperties) {
         this.context = new Context(worldProperties);
-        this.shapes = new HashSet<>();
-        this.mayBeCollision = new HashSet<>();
+        this.shapes = new ShapeRegistry();
+        this.arrayShapes = null;
+        this.movedShapes = new ArrayList<>();
+        this.staticShapeTree = context.isStaticFastPathEnabled() ? new StaticShapeTree() : null;
+        this.staticPairs = new PairBuffer();
+        this.previousStaticPairs = new PairBuffer();
         this.manifolds = new ArrayList<>();
+        this.spareManifolds = new ArrayList<>();
+        this.manifoldPool = new ManifoldPool();
+        this.contactCache = new ContactCache();
+        this.skippedContacts = new int[16];
+        this.islandBuilder = new IslandBuilder();
+        this.manifoldColoring = new ManifoldColoring();
+        this.islands = Collections.emptyList();
     }
 
     /**
@@ -81,12 +117,28 @@ public final class World {
      * The method returns the list of {@link Manifold} from the last run of the {@link #update} method.
      * Each {@link #update} call clears this list.
      *
+     * <p>
+     * Note that the world reuses the manifold instances, so the manifolds must not be kept after
+     * the next {@link #update} call.
+     *
      * @return the current list of manifolds
      */
     public List<Manifold> getManifolds() {
         return manifolds;
     }
 
+    /**
+     * The method returns the list of {@link Island} from the last run of the {@link #update} method.
+     * Each island contains the manifolds of dynamic shapes which are connected to each other by contacts,
+     * the collisions of different islands are resolved independently.
+     * Each {@link #update} call clears this list.
+     *
+     * @return the current unmodifiable list of islands
+     */
+    public List<Island> getIslands() {
+        return islands;
+    }
+
     /**
      * The method returns the collision set of {@link ShapePair} from the last run of the {@link #update} method.
      * Each {@link #update} call clears this set.
@@ -101,20 +153,118 @@ public final class World {
      * Adds a new shape to the world.
      *
      * @param shape the new shape
+     * @throws IllegalArgumentException if the shape belongs to another world
      */
     public void addShape(IShape shape) {
-        shapes.add(shape);
-        context.getBroadPhaseMethod().addShape(shape);
+        if (shapes.add(shape)) {
+            arrayShapes = null;
+            shape.markMoved();
+        }
+        if (isSeparatedStaticShape(shape)) {
+            staticShapeTree.addShape(shape);
+        } else {
+            context.getBroadPhaseMethod().addShape(shape);
+        }
     }
 
     /**
      * Sets the new shapes in the world.
      *
      * @param shapes the new shapes
+     * @throws IllegalArgumentException if any of the shapes belongs to another world
      */
     public void setShapes(Set<IShape> shapes) {
-        this.shapes = new HashSet<>(shapes);
-        context.getBroadPhaseMethod().setShapes(shapes);
+        // The passed set may be the view of the current shapes, so it is copied before clearing
+        final List<IShape> newShapes = new ArrayList<>(shapes);
+        // The ownership is checked before clearing, so the world isn't left half-filled
+        checkCanAdd(newShapes);
+        this.shapes.clear();
+        for (IShape shape : newShapes) {
+            this.shapes.add(shape);
+            shape.markMoved();
+        }
+        arrayShapes = null;
+        if (staticShapeTree == null) {
+            context.getBroadPhaseMethod().setShapes(shapes);
+        } else {
+            staticShapeTree.clear();
+            List<IShape> staticShapes = new ArrayList<>();
+            Set<IShape> dynamicShapes = new HashSet<>();
+            for (IShape shape : shapes) {
+                if (isSeparatedStaticShape(shape)) {
+                    staticShapes.add(shape);
+                } else {
+                    dynamicShapes.add(shape);
+                }
+            }
+            staticShapeTree.addShapes(staticShapes);
+            context.getBroadPhaseMethod().setShapes(dynamicShapes);
+        }
+    }
+
+    /**
+     * Adds the new shapes to the world.
+     *
+     * <p>
+     * Unlike adding the shapes one by one, the shapes are passed to the broad phase in one batch, so the broad
+     * phase is able to build its structures in one pass (see {@link IBroadPhase#addShapes(Collection)}).
+     *
+     * @param shapes the new shapes
+     * @throws IllegalArgumentException if any of the shapes belongs to another world
+     */
+    public void addShapes(Collection<IShape> shapes) {
+        checkCanAdd(shapes);
+        List<IShape> staticShapes = new ArrayList<>();
+        List<IShape> dynamicShapes = new ArrayList<>();
+        for (IShape shape : shapes) {
+            if (!this.shapes.add(shape)) {
+                continue;
+            }
+            shape.markMoved();
+            if (isSeparatedStaticShape(shape)) {
+                staticShapes.add(shape);
+            } else {
+                dynamicShapes.add(shape);
+            }
+        }
+        arrayShapes = null;
+        if (!staticShapes.isEmpty()) {
+            staticShapeTree.addShapes(staticShapes);
+        }
+        context.getBroadPhaseMethod().addShapes(dynamicShapes);
+    }
+
+    /**
+     * Removes the shapes from the world.
+     *
+     * <p>
+     * Unlike removing the shapes one by one, the shapes are passed to the broad phase in one batch
+     * (see {@link IBroadPhase#removeShapes(Collection)}).
+     *
+     * @param shapes the shapes to be removed from this world, if present
+     * @return {@code true} if this world contained any of the specified shapes
+     */
+    public boolean removeShapes(Collection<IShape> shapes) {
+        List<IShape> removedShapes = new ArrayList<>();
+        for (IShape shape : shapes) {
+            if (this.shapes.contains(shape)) {
+                removedShapes.add(shape);
+                if (staticShapeTree != null) {
+                    staticShapeTree.remove(shape);
+                }
+            }
+        }
+        if (removedShapes.isEmpty()) {
+            return false;
+        }
+        arrayShapes = null;
+        // The broad phase may find the shapes by their slots, so the shapes are removed from it
+        // before they lose their slots
+        context.getBroadPhaseMethod().removeShapes(removedShapes);
+        for (IShape shape : removedShapes) {
+            this.shapes.remove(shape);
+        }
+        return true;
     }
 
     /**
@@ -124,8 +274,14 @@ public final class World {
      * @return {@code true} if this world contained the specified shape
      */
     public boolean remove(IShape shape) {
-        context.getBroadPhaseMethod().remove(shape);
-        return shapes.remove(shape);
+        if (staticShapeTree == null || !staticShapeTree.remove(shape)) {
+            context.getBroadPhaseMethod().remove(shape);
+        }
+        if (shapes.remove(shape)) {
+            arrayShapes = null;
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -133,7 +289,24 @@ public final class World {
      */
     public void clear() {
         context.getBroadPhaseMethod().clear();
+        if (staticShapeTree != null) {
+            staticShapeTree.clear();
+        }
+        // The broad phase reports the pairs of the removed shapes as ended on the next step, so the contacts
+        // are removed by them, only the manifolds which can't be warm started any more are forgotten
+        contactCache.clearManifolds();
         shapes.clear();
+        arrayShapes = null;
+    }
+
+    /**
+     * Shuts down the pool of workers created by the world for the {@link WorldProperties#getWorkerCount()}
+     * workers, the pool passed by the {@link WorldProperties#setForkJoinPool} isn't shut down. The method should
+     * be called when the world isn't needed any more, the world updated after the shutdown executes all passes
+     * sequentially.
+     */
+    public void shutdown() {
+        context.shutdown();
     }
 
     /**
@@ -142,56 +315,352 @@ public final class World {
      * @return the unmodifiable set of shapes in the world
      */
     public Set<IShape> getUnmodifiableShapes() {
-        return Collections.unmodifiableSet(shapes);
+        return shapes.asUnmodifiableSet();
     }
 
     private void step() {
+        // The per-body passes are independent for each body, so they are executed by the
+        // parallel executor which splits them into chunks if it is allowed by the world properties
+        final ParallelExecutor executor = context.getParallelExecutor();
+        final IShape[] stepShapes = getArrayShapes();
+        final boolean sleepingEnabled = context.isSleepingEnabled();
+
+        if (sleepingEnabled) {
+            // Wake up the sleeping bodies which have been pushed or moved from the outside since the last step
+            executor.forEach(stepShapes, stepShapes.length, World::wakeUpIfDisturbed);
+        }
+
         // Broad phase
-        mayBeCollision = context.getBroadPhaseMethod().calculateAabbCollisions();
+        // The broad phase keeps the persistent set of overlapping pairs and updates only its changes
+        final IBroadPhase broadPhase = context.getBroadPhaseMethod();
+        if (context.isDirtyTrackingEnabled()) {
+            // Only the shapes which have been moved since the previous broad phase are updated in it
+            movedShapes.clear();
+            for (final IShape shape : stepShapes) {
+                if (shape.isMoved()) {
+                    movedShapes.add(shape);
+                    shape.resetMoved();
+                }
+            }
+            broadPhase.calculateAabbCollisionChanges(movedShapes);
+        } else {
+            broadPhase.calculateAabbCollisionChanges();
+        }
+        // The persistent contacts are created and removed only by the changes of the overlapping pairs
+        contactCache.removeAll(broadPhase.getEndedPairs());
+        contactCache.addAll(broadPhase.getBeganPairs());
+        if (staticShapeTree != null) {
+            updateStaticContacts(stepShapes);
+        }
 
         // Integrate forces
         // Hanna modification Euler's method is used!
-        shapes.forEach(this::integrateForces);
+        final float halfDeltaTime = context.getFixedDeltaTime() * 0.5f;
+        final BodyStorage bodyStorage = context.getBodyStorage();
+        if (bodyStorage != null) {
+            // The bodies are gathered once, the solving works on the velocities in the arrays
+            bodyStorage.load(stepShapes, shapes.getSlotCapacity(), executor);
+            bodyStorage.integrateForces(halfDeltaTime, context.getGravity(), executor);
+        } else {
+            executor.forEach(stepShapes, stepShapes.length, this::integrateForces);
+        }
 
         // Narrow phase
-        manifolds.clear();
-        for (final ShapePair pair : mayBeCollision) {
-            if (!MathPie.areEqual(pair.getFirst().getBody().invertedMass + pair.getSecond().getBody().invertedMass, 0f)) {
+        // The manifolds of the previous step are needed by the contact cache, so they are returned to
+        // the pool only after the cache is updated
+        final List<Manifold> previousManifolds = manifolds;
+        manifolds = spareManifolds;
+        // The contacts are read by index, so the narrow phase doesn't create pair objects and the manifold of
+        // the previous step is found without searching
+        skippedContactCount = 0;
+        calculateManifolds(0, contactCache.size());
+        if (sleepingEnabled) {
+            wakeUpTouchedIslands();
+        }
+
+        manifoldPool.releaseAll(previousManifolds);
+        spareManifolds = previousManifolds;
+
+        // Split the manifolds into islands which don't share dynamic bodies, so they can be resolved independently
+        islands = islandBuilder.build(manifolds);
+        // Small worlds are not worth forking, in that case all islands are resolved in one chunk
+        final int islandsInChunk = manifolds.size() < executor.getMinChunkSize() ? islands.size() : 1;
+        // The big islands are colored, so their own manifolds are resolved in parallel batch by batch
+        final int minColoredIslandSize = context.isGraphColoringEnabled() && executor.isParallel()
+                ? 2 * executor.getMinChunkSize() : Integer.MAX_VALUE;
+
+        // Solve collisions
+        final int iterations = context.getCollisionSolveIterations();
+        executor.forEachChunk(0, islands.size(), islandsInChunk, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                final Island island = islands.get(i);
+                if (island.getManifolds().size() < minColoredIslandSize) {
+                    island.solve(iterations);
+                }
+            }
+        });
+        for (final Island island : islands) {
+            if (island.getManifolds().size() >= minColoredIslandSize) {
+                manifoldColoring.color(island);
+                island.solve(iterations, executor);
+            }
+        }
+
+        if (bodyStorage != null) {
+            // The bodies are scattered once, the positions are stored before the correction which needs them
+            bodyStorage.integrateVelocities(context.getFixedDeltaTime(), executor);
+            bodyStorage.integrateForces(halfDeltaTime, context.getGravity(), executor);
+            bodyStorage.storeAndClearForces(executor);
+        } else {
+            // Integrate velocities
+            executor.forEach(stepShapes, stepShapes.length, this::integrateVelocity);
+
+            // Integrate forces
+            // Hanna modification Euler's method is used!
+            executor.forEach(stepShapes, stepShapes.length, this::integrateForces);
+        }
+
+        // Correct positions
+        executor.forEachChunk(0, islands.size(), islandsInChunk, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                final Island island = islands.get(i);
+                if (island.getManifolds().size() < minColoredIslandSize) {
+                    island.correctPositions();
+                }
+            }
+        });
+        for (final Island island : islands) {
+            if (island.getManifolds().size() >= minColoredIslandSize) {
+                island.correctPositions(executor);
+            }
+        }
+
+        if (bodyStorage == null) {
+            // Clear all forces
+            executor.forEach(stepShapes, stepShapes.length, shape -> shape.getBody().force.set(0f, 0f));
+        }
+
+        if (sleepingEnabled) {
+            updateSleeping(executor, stepShapes, islandsInChunk);
+        }
+    }
+
+    private void calculateManifolds(int from, int to) {
+        for (int i = from; i < to; i++) {
+            final Body first = contactCache.getFirst(i).getBody();
+            final Body second = contactCache.getSecond(i).getBody();
+            if (MathPie.areEqual(first.invertedMass + second.invertedMass, 0f)) {
+                updateContact(i, null);
+            } else if (!World.isActive(first) && !World.isActive(second)) {
+                // The collisions of sleeping bodies with static or other sleeping bodies are skipped, but they are
+                // remembered in case one of the bodies is woken up by this step
+                if (skippedContactCount == skippedContacts.length) {
+                    skippedContacts = Arrays.copyOf(skippedContacts, 2 * skippedContacts.length);
+                }
+                skippedContacts[skippedContactCount++] = i;
+                updateContact(i, null);
+            } else {
+                updateContact(i, calculateManifold(i));
+            }
+        }
+    }
+
+    private Manifold calculateManifold(int index) {
+        final IShape firstShape = contactCache.getFirst(index);
+        final IShape secondShape = contactCache.getSecond(index);
+        final IShapeCollisionHandler handler = context.getShapeCollisionMapping()
+                .getMapping(firstShape.getClass(), secondShape.getClass());
+        if (handler == null) {
+            // TODO #18 Add logging about this situation
+            return null;
+        }
+        final Manifold manifold = manifoldPool.obtain(firstShape, secondShape, context);
+        if (handler.handleCollision(firstShape, secondShape, context, manifold)) {
+            manifolds.add(manifold);
+            return manifold;
+        }
+        manifoldPool.release(manifold);
+        return null;
+    }
+
+    private void updateContact(int index, Manifold manifold) {
+        if (context.isWarmStartingEnabled()) {
+            // Carry the accumulated impulses of the persistent contact over from the previous step
+            contactCache.update(index, manifold);
+        }
+    }
+
+    private void wakeUpTouchedIslands() {
+        // The awake body touches the sleeping one, so the sleeping one must take part in the collision solving
+        // together with the whole sleeping island it lies in. The woken bodies may touch other sleeping bodies
+        // by the skipped contacts, so the new manifolds are processed until no body is woken up.
+        int processedManifolds = 0;
+        int processedContacts = contactCache.size();
+        while (processedManifolds < manifolds.size()) {
+            final int manifoldsEnd = manifolds.size();
+            for (int i = processedManifolds; i < manifoldsEnd; i++) {
+                final Manifold manifold = manifolds.get(i);
+                wakeUpTouched(manifold.aShape);
+                wakeUpTouched(manifold.bShape);
+            }
+            processedManifolds = manifoldsEnd;
+
+            // The contacts of the woken bodies with the separated static shapes have just been added
+            final int contactsEnd = contactCache.size();
+            calculateManifolds(processedContacts, contactsEnd);
+            processedContacts = contactsEnd;
 
-                final IShapeCollisionHandler handler = context.getShapeCollisionMapping().getMapping(pair);
-                if (handler == null) {
-                    // TODO #18 Add logging about this situation
+            for (int i = 0; i < skippedContactCount; ) {
+                final int index = skippedContacts[i];
+                if (World.isActive(contactCache.getFirst(index).getBody())
+                        || World.isActive(contactCache.getSecond(index).getBody())) {
+                    skippedContacts[i] = skippedContacts[--skippedContactCount];
+                    updateContact(index, calculateManifold(index));
                 } else {
-                    final Manifold manifold = handler.handleCollision(pair.getFirst(), pair.getSecond(), context);
-                    if (manifold != null) {
-                        manifolds.add(manifold);
-                    }
+                    i++;
                 }
             }
         }
+    }
 
-        // Solve collisions
-        for (int i = 0; i < context.getCollisionSolveIterations(); i++) {
-            manifolds.forEach(Manifold::solve);
+    private void wakeUpTouched(IShape shape) {
+        final Body body = shape.getBody();
+        if (body.isAwake()) {
+            return;
         }
+        body.wakeUp();
+        final BodyStorage bodyStorage = context.getBodyStorage();
+        if (bodyStorage != null) {
+            final int index = bodyStorage.getIndex(shape);
+            if (index >= 0) {
+                // The body hasn't been active when it was loaded, so it is included into the integration now
+                bodyStorage.activate(index);
+            }
+        }
+        if (staticShapeTree != null && body.invertedMass != 0f) {
+            // The static contacts are queried only for the awake bodies, so the static contacts of the woken body
+            // are added to the pairs of this step
+            final int from = previousStaticPairs.size();
+            staticShapeTree.calculateAabbCollisions(shape, previousStaticPairs);
+            for (int i = from; i < previousStaticPairs.size(); i++) {
+                contactCache.add(previousStaticPairs.getFirst(i), previousStaticPairs.getSecond(i));
+            }
+        }
+    }
 
-        // Integrate velocities
-        shapes.forEach(this::integrateVelocity);
+    private void updateStaticContacts(IShape[] stepShapes) {
+        // The broad phase knows only the dynamic shapes, the static ones are found by querying the static
+        // tree with each awake dynamic shape, and the changes of these pairs are found by the previous pairs
+        staticPairs.clear();
+        for (final IShape shape : stepShapes) {
+            if (World.isActive(shape.getBody())) {
+                staticShapeTree.calculateAabbCollisions(shape, staticPairs);
+            }
+        }
+        for (int i = 0; i < previousStaticPairs.size(); i++) {
+            if (!staticPairs.contains(previousStaticPairs.getFirst(i), previousStaticPairs.getSecond(i))) {
+                contactCache.remove(previousStaticPairs.getFirst(i), previousStaticPairs.getSecond(i));
+            }
+        }
+        for (int i = 0; i < staticPairs.size(); i++) {
+            if (!previousStaticPairs.contains(staticPairs.getFirst(i), staticPairs.getSecond(i))) {
+                contactCache.add(staticPairs.getFirst(i), staticPairs.getSecond(i));
+            }
+        }
+        final PairBuffer swap = previousStaticPairs;
+        previousStaticPairs = staticPairs;
+        staticPairs = swap;
+    }
 
-        // Integrate forces
-        // Hanna modification Euler's method is used!
-        shapes.forEach(this::integrateForces);
+    private void updateSleeping(ParallelExecutor executor, IShape[] stepShapes, int islandsInChunk) {
+        executor.forEach(stepShapes, stepShapes.length, this::updateSleepTime);
 
-        // Correct positions
-        manifolds.forEach(Manifold::correctPosition);
+        // The bodies connected by contacts fall asleep only all together, so the resting
+        // time of each island body is limited by the resting time of the most active one
+        executor.forEachChunk(0, islands.size(), islandsInChunk, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                final List<IShape> islandShapes = islands.get(i).getShapes();
+                float minSleepTime = Float.MAX_VALUE;
+                for (final IShape shape : islandShapes) {
+                    minSleepTime = Math.min(minSleepTime, shape.getBody().sleepTime);
+                }
+                for (final IShape shape : islandShapes) {
+                    shape.getBody().sleepTime = minSleepTime;
+                }
+            }
+        });
+
+        final float timeToSleep = context.getTimeToSleep();
+        executor.forEach(stepShapes, stepShapes.length, shape -> {
+            final Body body = shape.getBody();
+            if (body.isAwake() && body.invertedMass != 0f && body.sleepTime >= timeToSleep) {
+                body.sleep();
+                // The broad phase doesn't recompute the Aabbs of sleeping shapes, so the Aabb and the cached
+                // world geometry of the shape are brought to its last position here, one thread per shape.
+                // Thus the narrow phase handlers only read the cached geometry of the sleeping shapes.
+                shape.computeAabb();
+            }
+        });
+    }
+
+    private void updateSleepTime(IShape shape) {
+        final Body body = shape.getBody();
+        if (!body.isAwake() || body.invertedMass == 0.0f) {
+            return;
+        }
 
-        // Clear all forces
-        shapes.forEach(shape -> shape.getBody().force.set(0f, 0f));
+        final float linearTolerance = context.getSleepLinearTolerance();
+        if (body.velocity.lengthWithoutSqrt() > linearTolerance * linearTolerance
+                || Math.abs(body.angularVelocity) > context.getSleepAngularTolerance()) {
+            body.sleepTime = 0f;
+        } else {
+            body.sleepTime += context.getFixedDeltaTime();
+        }
+    }
+
+    private static void wakeUpIfDisturbed(IShape shape) {
+        final Body body = shape.getBody();
+        if (!body.isAwake() && (body.isMovedWhileSleeping() || body.force.x != 0f || body.force.y != 0f
+                || body.torque != 0f)) {
+            body.wakeUp();
+            // The body could be moved directly through its position without marking
+            shape.markMoved();
+        }
+    }
+
+    private void checkCanAdd(Collection<IShape> shapes) {
+        for (IShape shape : shapes) {
+            if (!this.shapes.canAdd(shape)) {
+                throw new IllegalArgumentException(PieExceptionMessage.SHAPE_ALREADY_BELONGS_TO_ANOTHER_WORLD);
+            }
+        }
+    }
+
+    private boolean isSeparatedStaticShape(IShape shape) {
+        return staticShapeTree != null && shape.getBody().invertedMass == 0f;
+    }
+
+    private static boolean isActive(Body body) {
+        return body.isAwake() && body.invertedMass != 0f;
+    }
+
+    private IShape[] getArrayShapes() {
+        // The array is rebuilt only after the set of shapes has been changed
+        if (arrayShapes == null) {
+            // The separated static shapes don't take part in the per-body passes
+            arrayShapes = staticShapeTree == null ? shapes.toArray()
+                    : shapes.asUnmodifiableSet().stream().filter(shape -> !staticShapeTree.contains(shape))
+                            .toArray(IShape[]::new);
+            // The island builder and coloring index their arrays by the shape slots
+            islandBuilder.setSlotCapacity(shapes.getSlotCapacity());
+            manifoldColoring.setSlotCapacity(shapes.getSlotCapacity());
+        }
+        return arrayShapes;
     }
 
     private void integrateForces(IShape shape) {
         final Body body = shape.getBody();
-        if (body.invertedMass == 0.0f) {
+        if (body.invertedMass == 0.0f || !body.isAwake()) {
             return;
         }
 
@@ -202,7 +671,7 @@ public final class World {
 
     private void integrateVelocity(IShape shape) {
         final Body body = shape.getBody();
-        if (body.invertedMass == 0.0f) {
+        if (body.invertedMass == 0.0f || !body.isAwake()) {
             return;
         }
 
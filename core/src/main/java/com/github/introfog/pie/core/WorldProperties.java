@@ -18,11 +18,15 @@ package com.github.introfog.pie.core;
 import com.github.introfog.pie.core.collisions.Manifold;
 import com.github.introfog.pie.core.collisions.broadphase.BruteForceMethod;
 import com.github.introfog.pie.core.collisions.broadphase.IBroadPhase;
+import com.github.introfog.pie.core.collisions.broadphase.StaticShapeTree;
 import com.github.introfog.pie.core.collisions.narrowphase.IShapeCollisionHandler;
 import com.github.introfog.pie.core.collisions.narrowphase.ShapeCollisionHandlersMapper;
 import com.github.introfog.pie.core.math.Vector2f;
 import com.github.introfog.pie.core.shape.Aabb;
 import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.util.ParallelExecutor;
+
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Properties that will be used by the {@link World}.
@@ -33,6 +37,18 @@ public class WorldProperties {
     private float correctPositionPercent;
     private float minBorderSlop;
     private int collisionSolveIterations;
+    private int workerCount;
+    private int parallelChunkSize;
+    private ForkJoinPool forkJoinPool;
+    private boolean sleepingEnabled;
+    private boolean warmStartingEnabled;
+    private boolean graphColoringEnabled;
+    private boolean bodyStorageEnabled;
+    private boolean dirtyTrackingEnabled;
+    private boolean staticFastPathEnabled;
+    private float timeToSleep;
+    private float sleepLinearTolerance;
+    private float sleepAngularTolerance;
     private Vector2f gravity;
     private IBroadPhase broadPhaseMethod;
     private ShapeCollisionHandlersMapper shapeCollisionHandlersMapper;
@@ -46,6 +62,18 @@ public class WorldProperties {
         correctPositionPercent = 0.5f;
         minBorderSlop = 0.1f;
         collisionSolveIterations = 1;
+        workerCount = 1;
+        parallelChunkSize = ParallelExecutor.DEFAULT_MIN_CHUNK_SIZE;
+        forkJoinPool = null;
+        sleepingEnabled = false;
+        warmStartingEnabled = false;
+        graphColoringEnabled = false;
+        bodyStorageEnabled = false;
+        dirtyTrackingEnabled = false;
+        staticFastPathEnabled = false;
+        timeToSleep = 0.5f;
+        sleepLinearTolerance = 2f;
+        sleepAngularTolerance = 0.05f;
         // Earth value is (0f, 9.807f)
         gravity = new Vector2f(0f, 50f);
         broadPhaseMethod = new BruteForceMethod();
@@ -89,6 +117,356 @@ public class WorldProperties {
         return collisionSolveIterations;
     }
 
+    /**
+     * Sets whether the contact impulses are carried over between steps (warm starting).
+     *
+     * <p>
+     * With warm starting the contacts of the same shapes pair are matched between steps and the impulses
+     * accumulated on the previous step are applied before the collision solve iterations. The accumulated
+     * impulses are clamped (the normal impulse is never negative and the friction impulse is bounded by the
+     * normal one), so the stacks of shapes are stable with far fewer {@link #getCollisionSolveIterations()}.
+     *
+     * @param warmStartingEnabled {@code true} to enable warm starting
+     * @return the {@link WorldProperties} instance
+     */
+    public WorldProperties setWarmStartingEnabled(boolean warmStartingEnabled) {
+        this.warmStartingEnabled = warmStartingEnabled;
+        return this;
+    }
+
+    /**
+     * Checks whether the contact impulses are carried over between steps (warm starting).
+     *
+     * @return {@code true} if warm starting is enabled, otherwise {@code false}
+     * @see #setWarmStartingEnabled(boolean)
+     */
+    public boolean isWarmStartingEnabled() {
+        return warmStartingEnabled;
+    }
+
+    /**
+     * Sets whether the collisions of big islands are solved in parallel with the help of the contact graph coloring.
+     *
+     * <p>
+     * The manifolds of one island share bodies, so they are solved sequentially. With the graph coloring the
+     * manifolds of the island are split into batches in which no two manifolds touch the same dynamic body, the
+     * manifolds of each batch are solved in parallel and the batches are solved one after another on each
+     * iteration. The coloring is applied only when the world step is executed in parallel (see
+     * {@link #setWorkerCount(int)}) and to the islands which have at least two chunks of manifolds (see
+     * {@link #setParallelChunkSize(int)}). Note that the order in which manifolds are solved differs from
+     * the order without coloring, so the results are slightly different.
+     *
+     * @param graphColoringEnabled {@code true} to enable the graph coloring
+     * @return the {@link WorldProperties} instance
+     */
+    public WorldProperties setGraphColoringEnabled(boolean graphColoringEnabled) {
+        this.graphColoringEnabled = graphColoringEnabled;
+        return this;
+    }
+
+    /**
+     * Checks whether the collisions of big islands are solved in parallel with the help of the contact graph coloring.
+     *
+     * @return {@code true} if the graph coloring is enabled, otherwise {@code false}
+     * @see #setGraphColoringEnabled(boolean)
+     */
+    public boolean isGraphColoringEnabled() {
+        return graphColoringEnabled;
+    }
+
+    /**
+     * Sets whether the bodies are integrated over the dense arrays of their state (structure of arrays).
+     *
+     * <p>
+     * In this mode the world gathers the positions, velocities, forces, orientations, angular velocities and
+     * inverted masses and inertias of all bodies into primitive arrays once at the beginning of the step.
+     * Until the end of the step the arrays are the state of the bodies: they are integrated with linear loops
+     * over the arrays and the collisions are solved over the velocities in the arrays. The result is scattered
+     * back to the bodies once after the integration. The results can differ from the results without this mode
+     * in the last bits of floats because of the different rounding order.
+     *
+     * @param bodyStorageEnabled {@code true} to integrate the bodies over the arrays
+     * @return the {@link WorldProperties} instance
+     * @see com.github.introfog.pie.core.shape.BodyStorage
+     */
+    public WorldProperties setBodyStorageEnabled(boolean bodyStorageEnabled) {
+        this.bodyStorageEnabled = bodyStorageEnabled;
+        return this;
+    }
+
+    /**
+     * Checks whether the bodies are integrated over the dense arrays of their state (structure of arrays).
+     *
+     * @return {@code true} if the bodies are integrated over the arrays, otherwise {@code false}
+     * @see #setBodyStorageEnabled(boolean)
+     */
+    public boolean isBodyStorageEnabled() {
+        return bodyStorageEnabled;
+    }
+
+    /**
+     * Sets whether the broad phase gets only the shapes which have been moved since the previous step.
+     *
+     * <p>
+     * In this mode the Aabbs are recomputed and the broad phase structures are updated only for the moved
+     * shapes (see {@link com.github.introfog.pie.core.shape.IShape#isMoved()}), so the static and sleeping
+     * shapes cost nothing. The world marks the shapes which it moves itself, but if the position of a shape
+     * is changed directly through its body, the {@link com.github.introfog.pie.core.shape.IShape#markMoved()}
+     * method must be called, otherwise the broad phase will use the outdated Aabb of the shape.
+     *
+     * @param dirtyTrackingEnabled {@code true} to update the broad phase only for the moved shapes
+     * @return the {@link WorldProperties} instance
+     */
+    public WorldProperties setDirtyTrackingEnabled(boolean dirtyTrackingEnabled) {
+        this.dirtyTrackingEnabled = dirtyTrackingEnabled;
+        return this;
+    }
+
+    /**
+     * Checks whether the broad phase gets only the shapes which have been moved since the previous step.
+     *
+     * @return {@code true} if the broad phase is updated only for the moved shapes, otherwise {@code false}
+     * @see #setDirtyTrackingEnabled(boolean)
+     */
+    public boolean isDirtyTrackingEnabled() {
+        return dirtyTrackingEnabled;
+    }
+
+    /**
+     * Sets whether the static shapes (with zero inverted mass) are kept separately from the dynamic ones.
+     *
+     * <p>
+     * In this mode the static shapes are stored in the {@link StaticShapeTree} which is built once when
+     * the shapes are added, the broad phase method gets only the dynamic shapes and each awake dynamic
+     * shape queries the static tree. The per-body passes of the world step skip the static shapes
+     * entirely. The static shapes are considered immovable, so if a static shape needs to be moved or
+     * its mass is changed, it should be removed from the world and added again.
+     *
+     * @param staticFastPathEnabled {@code true} to keep the static shapes separately from the dynamic ones
+     * @return the {@link WorldProperties} instance
+     */
+    public WorldProperties setStaticFastPathEnabled(boolean staticFastPathEnabled) {
+        this.staticFastPathEnabled = staticFastPathEnabled;
+        return this;
+    }
+
+    /**
+     * Checks whether the static shapes are kept separately from the dynamic ones.
+     *
+     * @return {@code true} if the static shapes are kept separately, otherwise {@code false}
+     * @see #setStaticFastPathEnabled(boolean)
+     */
+    public boolean isStaticFastPathEnabled() {
+        return staticFastPathEnabled;
+    }
+
+    /**
+     * Sets the number of workers that execute the per-body passes of the world step.
+     *
+     * <p>
+     * The passes over all bodies (forces and velocities integration, forces clearing and the Aabbs computing in
+     * the broad phase) are independent for each body, so they can be split into chunks and executed in parallel.
+     * The value 1 means that all passes are executed sequentially in the thread that calls {@link World#update}.
+     * If the {@link ForkJoinPool} is set (see {@link #setForkJoinPool}), this value is ignored.
+     *
+     * @param workerCount the number of workers
+     * @return the {@link WorldProperties} instance
+     *
+     * @throws IllegalArgumentException if non-positive number passed
+     */
+    public WorldProperties setWorkerCount(int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException(PieExceptionMessage.WORKER_COUNT_MUST_BE_POSITIVE);
+        }
+        this.workerCount = workerCount;
+        return this;
+    }
+
+    /**
+     * Gets the number of workers that execute the per-body passes of the world step.
+     *
+     * <p>
+     * The passes over all bodies (forces and velocities integration, forces clearing and the Aabbs computing in
+     * the broad phase) are independent for each body, so they can be split into chunks and executed in parallel.
+     * The value 1 means that all passes are executed sequentially in the thread that calls {@link World#update}.
+     * If the {@link ForkJoinPool} is set (see {@link #setForkJoinPool}), this value is ignored.
+     *
+     * @return the number of workers
+     */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * Sets the pool which executes the per-body passes of the world step.
+     *
+     * <p>
+     * The pool is not owned by the world, so the same pool can be shared between several worlds and the
+     * application. If the pool is null, the world creates its own pool based on the {@link #getWorkerCount()},
+     * which is shut down by the {@link World#shutdown()} method.
+     *
+     * @param forkJoinPool the pool
+     * @return the {@link WorldProperties} instance
+     */
+    public WorldProperties setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+        return this;
+    }
+
+    /**
+     * Gets the pool which executes the per-body passes of the world step.
+     *
+     * <p>
+     * The pool is not owned by the world, so the same pool can be shared between several worlds and the
+     * application. If the pool is null, the world creates its own pool based on the {@link #getWorkerCount()},
+     * which is shut down by the {@link World#shutdown()} method.
+     *
+     * @return the pool or null if the pool is not set
+     */
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    /**
+     * Sets the minimal number of bodies that one worker processes at once.
+     *
+     * <p>
+     * Splitting a pass into chunks is not free, so the small passes are executed sequentially. The pass is
+     * executed in parallel only when it contains at least two chunks of the passed size.
+     *
+     * @param parallelChunkSize the minimal chunk size
+     * @return the {@link WorldProperties} instance
+     *
+     * @throws IllegalArgumentException if non-positive number passed
+     */
+    public WorldProperties setParallelChunkSize(int parallelChunkSize) {
+        if (parallelChunkSize < 1) {
+            throw new IllegalArgumentException(PieExceptionMessage.PARALLEL_CHUNK_SIZE_MUST_BE_POSITIVE);
+        }
+        this.parallelChunkSize = parallelChunkSize;
+        return this;
+    }
+
+    /**
+     * Gets the minimal number of bodies that one worker processes at once.
+     *
+     * <p>
+     * Splitting a pass into chunks is not free, so the small passes are executed sequentially. The pass is
+     * executed in parallel only when it contains at least two chunks of the passed size.
+     *
+     * @return the minimal chunk size
+     */
+    public int getParallelChunkSize() {
+        return parallelChunkSize;
+    }
+
+    /**
+     * Sets whether the resting bodies are allowed to fall asleep.
+     *
+     * <p>
+     * A sleeping body isn't integrated, its Aabb isn't recomputed and its collisions with static and other sleeping
+     * bodies aren't handled, so the cost of the world step depends mostly on the number of awake bodies.
+     * The dynamic bodies connected by contacts fall asleep only all together, when all of them have been resting
+     * for {@link #getTimeToSleep()} seconds. A sleeping body wakes up on contact with an awake body, on applying an
+     * impulse, a force or a torque to it and when its position or orientation is changed from the outside.
+     *
+     * @param sleepingEnabled {@code true} to allow bodies to fall asleep
+     * @return the {@link WorldProperties} instance
+     */
+    public WorldProperties setSleepingEnabled(boolean sleepingEnabled) {
+        this.sleepingEnabled = sleepingEnabled;
+        return this;
+    }
+
+    /**
+     * Checks whether the resting bodies are allowed to fall asleep.
+     *
+     * @return {@code true} if bodies can fall asleep, otherwise {@code false}
+     * @see #setSleepingEnabled(boolean)
+     */
+    public boolean isSleepingEnabled() {
+        return sleepingEnabled;
+    }
+
+    /**
+     * Sets the time in seconds during which a body must rest before falling asleep.
+     *
+     * @param timeToSleep the time to sleep
+     * @return the {@link WorldProperties} instance
+     *
+     * @throws IllegalArgumentException if negative number or NaN passed
+     */
+    public WorldProperties setTimeToSleep(float timeToSleep) {
+        if (!(timeToSleep >= 0)) {
+            throw new IllegalArgumentException(PieExceptionMessage.TIME_TO_SLEEP_MUST_NOT_BE_NEGATIVE);
+        }
+        this.timeToSleep = timeToSleep;
+        return this;
+    }
+
+    /**
+     * Gets the time in seconds during which a body must rest before falling asleep.
+     *
+     * @return the time to sleep
+     */
+    public float getTimeToSleep() {
+        return timeToSleep;
+    }
+
+    /**
+     * Sets the linear velocity below which a body is considered to be resting.
+     *
+     * <p>
+     * Note that a body lying on the ground keeps a part of the gravity velocity after the step, so the tolerance
+     * must be greater than half of the velocity gained by gravity for one {@link #getFixedDeltaTime()}.
+     *
+     * @param sleepLinearTolerance the linear velocity tolerance
+     * @return the {@link WorldProperties} instance
+     *
+     * @throws IllegalArgumentException if negative number or NaN passed
+     */
+    public WorldProperties setSleepLinearTolerance(float sleepLinearTolerance) {
+        if (!(sleepLinearTolerance >= 0)) {
+            throw new IllegalArgumentException(PieExceptionMessage.SLEEP_TOLERANCE_MUST_NOT_BE_NEGATIVE);
+        }
+        this.sleepLinearTolerance = sleepLinearTolerance;
+        return this;
+    }
+
+    /**
+     * Gets the linear velocity below which a body is considered to be resting.
+     *
+     * @return the linear velocity tolerance
+     */
+    public float getSleepLinearTolerance() {
+        return sleepLinearTolerance;
+    }
+
+    /**
+     * Sets the angular velocity in radians below which a body is considered to be resting.
+     *
+     * @param sleepAngularTolerance the angular velocity tolerance
+     * @return the {@link WorldProperties} instance
+     *
+     * @throws IllegalArgumentException if negative number or NaN passed
+     */
+    public WorldProperties setSleepAngularTolerance(float sleepAngularTolerance) {
+        if (!(sleepAngularTolerance >= 0)) {
+            throw new IllegalArgumentException(PieExceptionMessage.SLEEP_TOLERANCE_MUST_NOT_BE_NEGATIVE);
+        }
+        this.sleepAngularTolerance = sleepAngularTolerance;
+        return this;
+    }
+
+    /**
+     * Gets the angular velocity in radians below which a body is considered to be resting.
+     *
+     * @return the angular velocity tolerance
+     */
+    public float getSleepAngularTolerance() {
+        return sleepAngularTolerance;
+    }
+
     /**
      * Gets the dead loop border.
      *
@@ -0,0 +1,185 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions;
+
+import com.github.introfog.pie.core.collisions.broadphase.PairBuffer;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.ShapePair;
+
+import java.util.Arrays;
+
+/**
+ * The class keeps the persistent contacts, the shape pairs whose Aabbs overlap, together with the manifold of
+ * the previous step of each contact to carry the accumulated impulses of the contacts over to the next step
+ * (warm starting). The contacts of the same shapes pair are matched by the feature identifiers set by the narrow
+ * phase handlers (see {@link Manifold#contactIds}).
+ *
+ * <p>
+ * The contacts are created and removed by the pairs which have begun or ended overlapping
+ * (see {@link com.github.introfog.pie.core.collisions.broadphase.IBroadPhase#getBeganPairs()}), so the cache isn't
+ * rebuilt every step. The manifold of a contact is stored by the index of the contact, so the narrow phase which
+ * iterates the contacts by index doesn't search the manifolds and doesn't create objects.
+ */
+public class ContactCache {
+    private static final int MIN_CAPACITY = 16;
+
+    private final PairBuffer contacts;
+    /** The manifold of the contact with the same index, null if the shapes haven't collided on the last step. */
+    private Manifold[] manifolds;
+
+    /**
+     * Instantiates a new empty {@link ContactCache} instance.
+     */
+    public ContactCache() {
+        contacts = new PairBuffer();
+        manifolds = new Manifold[MIN_CAPACITY];
+    }
+
+    /**
+     * Creates the contacts of the passed pairs, the existing contacts are kept as is.
+     *
+     * @param pairs the pairs which have begun overlapping
+     */
+    public void addAll(PairBuffer pairs) {
+        for (int i = 0; i < pairs.size(); i++) {
+            add(pairs.getFirst(i), pairs.getSecond(i));
+        }
+    }
+
+    /**
+     * Creates the contact of the pair of shapes if there is no such contact yet.
+     *
+     * @param a the shape
+     * @param b the other shape
+     */
+    public void add(IShape a, IShape b) {
+        if (contacts.add(a, b) && contacts.size() > manifolds.length) {
+            manifolds = Arrays.copyOf(manifolds, 2 * manifolds.length);
+        }
+    }
+
+    /**
+     * Removes the contacts of the passed pairs together with their cached manifolds.
+     *
+     * @param pairs the pairs which have ended overlapping
+     */
+    public void removeAll(PairBuffer pairs) {
+        for (int i = 0; i < pairs.size(); i++) {
+            remove(pairs.getFirst(i), pairs.getSecond(i));
+        }
+    }
+
+    /**
+     * Removes the contact of the pair of shapes together with its cached manifold.
+     *
+     * <p>
+     * Note, the last contact takes the index of the removed contact, the same way as in the {@link PairBuffer}.
+     *
+     * @param a the shape
+     * @param b the other shape
+     */
+    public void remove(IShape a, IShape b) {
+        final int index = contacts.indexOf(a, b);
+        if (index == -1) {
+            return;
+        }
+        final int last = contacts.size() - 1;
+        contacts.remove(a, b);
+        manifolds[index] = manifolds[last];
+        manifolds[last] = null;
+    }
+
+    /**
+     * Gets the number of contacts.
+     *
+     * @return the number of contacts
+     */
+    public int size() {
+        return contacts.size();
+    }
+
+    /**
+     * Gets the first shape of the contact.
+     *
+     * @param index the index of the contact in the range {@code [0, size())}
+     * @return the first shape of the contact
+     */
+    public IShape getFirst(int index) {
+        return contacts.getFirst(index);
+    }
+
+    /**
+     * Gets the second shape of the contact.
+     *
+     * @param index the index of the contact in the range {@code [0, size())}
+     * @return the second shape of the contact
+     */
+    public IShape getSecond(int index) {
+        return contacts.getSecond(index);
+    }
+
+    /**
+     * Copies the accumulated impulses of the matching contacts from the cached manifold of the contact to
+     * the passed one and caches the passed manifold instead.
+     *
+     * @param index the index of the contact in the range {@code [0, size())}
+     * @param manifold the manifold of the current step, null if the shapes don't collide
+     */
+    public void update(int index, Manifold manifold) {
+        final Manifold cached = manifolds[index];
+        // If the shapes of the pair are swapped, the normal is flipped and the impulses can't be reused
+        if (manifold != null && cached != null && cached.aShape == manifold.aShape) {
+            manifold.matchImpulses(cached);
+        }
+        manifolds[index] = manifold;
+    }
+
+    /**
+     * Gets the cached manifold of the contact.
+     *
+     * @param index the index of the contact in the range {@code [0, size())}
+     * @return the cached manifold or null if the shapes haven't collided on the last step
+     */
+    public Manifold getManifold(int index) {
+        return manifolds[index];
+    }
+
+    /**
+     * Gets the cached manifold of the shapes pair.
+     *
+     * @param pair the shapes pair
+     * @return the cached manifold or null if there is no such contact or the shapes haven't collided on the last step
+     */
+    public Manifold get(ShapePair pair) {
+        final int index = contacts.indexOf(pair.getFirst(), pair.getSecond());
+        return index == -1 ? null : manifolds[index];
+    }
+
+    /**
+     * Forgets the cached manifolds, the contacts are kept.
+     */
+    public void clearManifolds() {
+        Arrays.fill(manifolds, 0, contacts.size(), null);
+    }
+
+    /**
+     * Removes all contacts.
+     */
+    public void clear() {
+        clearManifolds();
+        contacts.clear();
+    }
+}
@@ -19,6 +19,7 @@ import com.github.introfog.pie.core.shape.Body;
 import com.github.introfog.pie.core.Context;
 import com.github.introfog.pie.core.math.MathPie;
 import com.github.introfog.pie.core.math.Vector2f;
+import com.github.introfog.pie.core.shape.BodyStorage;
 import com.github.introfog.pie.core.shape.IShape;
 
 public class Manifold {
@@ -30,54 +31,199 @@ public class Manifold {
     public Vector2f normal;
     public int contactCount = 0;
     public Vector2f[] contacts;
+    // The identifiers of the shape features which produced the contacts, they are used to match
+    // the contacts of the same shapes pair from different steps (see ContactCache)
+    public int[] contactIds;
+    // The impulses accumulated over the solve iterations, with warm starting they are kept between steps
+    public float[] normalImpulses;
+    public float[] tangentImpulses;
     public Context context;
     public Body a;
     public Body b;
     public IShape aShape;
     public IShape bShape;
+    private final float[] velocityBiases;
+    private final Vector2f tangent;
+    // The state of the bodies is read once per solving call and the velocities are written back at its end,
+    // the bodies which are loaded to the body storage are read and written in its arrays (see BodyStorage#getIndex)
+    private BodyStorage bodyStorage;
+    private int aIndex;
+    private int bIndex;
+    private float aPositionX;
+    private float aPositionY;
+    private float aInvertedMass;
+    private float aInvertedInertia;
+    private float bPositionX;
+    private float bPositionY;
+    private float bInvertedMass;
+    private float bInvertedInertia;
+    private float aVelocityX;
+    private float aVelocityY;
+    private float aAngularVelocity;
+    private float bVelocityX;
+    private float bVelocityY;
+    private float bAngularVelocity;
 
     public Manifold(IShape aShape, IShape bShape, Context context) {
+        normal = new Vector2f();
+        contacts = Vector2f.arrayOf(2);
+        contactIds = new int[2];
+        normalImpulses = new float[2];
+        tangentImpulses = new float[2];
+        velocityBiases = new float[2];
+        tangent = new Vector2f();
+        reset(aShape, bShape, context);
+    }
+
+    /**
+     * Resets the manifold to the initial state for the new pair of shapes, so the manifold instance can be reused
+     * (see {@link ManifoldPool}).
+     *
+     * @param aShape the first shape
+     * @param bShape the second shape
+     * @param context the world context
+     */
+    public void reset(IShape aShape, IShape bShape, Context context) {
         this.aShape = aShape;
         this.bShape = bShape;
         this.a = aShape.getBody();
         this.b = bShape.getBody();
         this.context = context;
+        // The bodies are loaded to the storage before the narrow phase, so the indices are resolved once
+        this.bodyStorage = context.getBodyStorage();
+        this.aIndex = bodyStorage == null ? -1 : bodyStorage.getIndex(aShape);
+        this.bIndex = bodyStorage == null ? -1 : bodyStorage.getIndex(bShape);
 
         areBodiesCollision = true;
-        normal = new Vector2f();
-        contacts = Vector2f.arrayOf(2);
+        penetration = 0f;
+        e = 0f;
+        staticFriction = 0f;
+        dynamicFriction = 0f;
+        normal.set(0f, 0f);
+        contactCount = 0;
+        for (int i = 0; i < contacts.length; i++) {
+            contacts[i].set(0f, 0f);
+            contactIds[i] = 0;
+            normalImpulses[i] = 0f;
+            tangentImpulses[i] = 0f;
+        }
+    }
+
+    /**
+     * Copies the collision information of the other manifold to this one.
+     *
+     * @param other the manifold to be copied
+     */
+    public void set(Manifold other) {
+        reset(other.aShape, other.bShape, other.context);
+        areBodiesCollision = other.areBodiesCollision;
+        penetration = other.penetration;
+        normal.set(other.normal);
+        contactCount = other.contactCount;
+        for (int i = 0; i < other.contactCount; i++) {
+            contacts[i].set(other.contacts[i]);
+            contactIds[i] = other.contactIds[i];
+            normalImpulses[i] = other.normalImpulses[i];
+            tangentImpulses[i] = other.tangentImpulses[i];
+        }
+    }
+
+    /**
+     * Copies the accumulated impulses of the contacts which have the same feature identifiers from the manifold
+     * of the same shapes pair from the previous step.
+     *
+     * @param previous the manifold of the same shapes pair from the previous step
+     */
+    public void matchImpulses(Manifold previous) {
+        for (int i = 0; i < contactCount; i++) {
+            normalImpulses[i] = 0f;
+            tangentImpulses[i] = 0f;
+            for (int j = 0; j < previous.contactCount; j++) {
+                if (contactIds[i] == previous.contactIds[j]) {
+                    normalImpulses[i] = previous.normalImpulses[j];
+                    tangentImpulses[i] = previous.tangentImpulses[j];
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Prepares the manifold for the solve iterations and applies the impulses accumulated on the previous step,
+     * so the iterations start close to the solution. Does nothing if warm starting is disabled.
+     */
+    public void warmStart() {
+        if (!context.isWarmStartingEnabled()) {
+            return;
+        }
+        loadBodies();
+        initializeCollision();
+
+        normal.normalize();
+        final float tangentX = -normal.y;
+        final float tangentY = normal.x;
+
+        for (int i = 0; i < contactCount; i++) {
+            final float radAX = contacts[i].x - aPositionX;
+            final float radAY = contacts[i].y - aPositionY;
+            final float radBX = contacts[i].x - bPositionX;
+            final float radBY = contacts[i].y - bPositionY;
+
+            // The restitution is calculated once from the velocity before the solving, so it
+            // isn't accumulated over iterations
+            final float rvX = bVelocityX - aVelocityX + radBY * -bAngularVelocity - radAY * -aAngularVelocity;
+            final float rvY = bVelocityY - aVelocityY + radBX * bAngularVelocity - radAX * aAngularVelocity;
+            final float velAlongNormal = rvX * normal.x + rvY * normal.y;
+            velocityBiases[i] = velAlongNormal < 0f ? -e * velAlongNormal : 0f;
+
+            final float impulseX = normal.x * normalImpulses[i] + tangentX * tangentImpulses[i];
+            final float impulseY = normal.y * normalImpulses[i] + tangentY * tangentImpulses[i];
+            applyImpulse(impulseX, impulseY, radAX, radAY, radBX, radBY);
+        }
+        storeVelocities();
     }
 
     public void solve() {
+        loadBodies();
+        if (context.isWarmStartingEnabled()) {
+            solveWithAccumulatedImpulses();
+        } else {
+            solveWithoutAccumulation();
+        }
+        storeVelocities();
+    }
+
+    private void solveWithoutAccumulation() {
         initializeCollision();
 
         normal.normalize();
 
         for (int i = 0; i < contactCount; i++) {
             // Calculate the contact points regarding centers
-            Vector2f radA = Vector2f.sub(contacts[i], a.position);
-            Vector2f radB = Vector2f.sub(contacts[i], b.position);
+            final float radAX = contacts[i].x - aPositionX;
+            final float radAY = contacts[i].y - aPositionY;
+            final float radBX = contacts[i].x - bPositionX;
+            final float radBY = contacts[i].y - bPositionY;
 
             // Calculate the relative velocity
             // Vec2 rv = B->velocity + Cross( B->angularVelocity, rb ) -
             // A->velocity - Cross( A->angularVelocity, ra );
             // relativeVelocity
-            Vector2f rv = Vector2f.sub(b.velocity, a.velocity);
-            rv.add(Vector2f.crossProduct(b.angularVelocity, radB));
-            rv.sub(Vector2f.crossProduct(a.angularVelocity, radA));
+            float rvX = bVelocityX - aVelocityX + radBY * -bAngularVelocity - radAY * -aAngularVelocity;
+            float rvY = bVelocityY - aVelocityY + radBX * bAngularVelocity - radAX * aAngularVelocity;
 
             // Calculate the relative velocity relative to the normal direction
-            float velAlongNormal = Vector2f.dotProduct(rv, normal);
+            float velAlongNormal = rvX * normal.x + rvY * normal.y;
 
             // Do not perform calculations if the velocities are divided
             if (velAlongNormal > 0) {
                 return;
             }
 
-            float raCrossN = Vector2f.crossProduct(radA, normal);
-            float rbCrossN = Vector2f.crossProduct(radB, normal);
-            float invertMassSum = a.invertedMass + b.invertedMass + (raCrossN * raCrossN) * a.invertedInertia
-                    + (rbCrossN * rbCrossN) * b.invertedInertia;
+            float raCrossN = radAX * normal.y - radAY * normal.x;
+            float rbCrossN = radBX * normal.y - radBY * normal.x;
+            float invertMassSum = aInvertedMass + bInvertedMass + (raCrossN * raCrossN) * aInvertedInertia
+                    + (rbCrossN * rbCrossN) * bInvertedInertia;
 
             // Calculate the scalar of the force impulse
             float j = -(1.0f + e) * velAlongNormal;
@@ -85,26 +231,25 @@ public class Manifold {
             j /= contactCount;
 
             // Applying a force impulse
-            Vector2f impulse = Vector2f.mul(normal, j);
-            bShape.applyImpulse(impulse, radB);
-            impulse.negative();
-            aShape.applyImpulse(impulse, radA);
+            final float impulseX = normal.x * j;
+            final float impulseY = normal.y * j;
+            applyImpulse(impulseX, impulseY, radAX, radAY, radBX, radBY);
 
             // Friction work
 
             // Recalculation relative speed after application of a normal impulse
-            rv = Vector2f.sub(b.velocity, a.velocity); //relativeVelocity
-            rv.add(Vector2f.crossProduct(b.angularVelocity, radB));
-            rv.sub(Vector2f.crossProduct(a.angularVelocity, radA));
+            rvX = bVelocityX - aVelocityX + radBY * -bAngularVelocity - radAY * -aAngularVelocity;
+            rvY = bVelocityY - aVelocityY + radBX * bAngularVelocity - radAX * aAngularVelocity;
 
             // Calculate the tangent vector: tangent = rb - dotProduct (rv, normal) * normal
             // Vec2 t = rv - (normal * Dot( rv, normal ));
             // t.Normalize( );
-            Vector2f t = Vector2f.sub(rv, Vector2f.mul(normal, Vector2f.dotProduct(rv, normal)));
-            t.normalize();
+            final float rvAlongNormal = rvX * normal.x + rvY * normal.y;
+            tangent.set(rvX - normal.x * rvAlongNormal, rvY - normal.y * rvAlongNormal);
+            tangent.normalize();
 
             // Calculate the value applied along the friction vector
-            float jt = -Vector2f.dotProduct(rv, t);
+            float jt = -(rvX * tangent.x + rvY * tangent.y);
             jt /= invertMassSum;
             jt /= contactCount;
 
@@ -113,18 +258,74 @@ public class Manifold {
                 return;
             }
 
-            Vector2f frictionImpulse;
+            final float frictionImpulse;
             if (Math.abs(jt) < j * staticFriction) {
                 // Amonton-Coulomb Law (if j value is too small, then bodies should rest)
-                frictionImpulse = Vector2f.mul(t, jt);
+                frictionImpulse = jt;
             } else {
-                frictionImpulse = Vector2f.mul(t, -j * dynamicFriction);
+                frictionImpulse = -j * dynamicFriction;
             }
 
             // Apply impulse
-            bShape.applyImpulse(frictionImpulse, radB);
-            frictionImpulse.negative();
-            aShape.applyImpulse(frictionImpulse, radA);
+            final float frictionImpulseX = tangent.x * frictionImpulse;
+            final float frictionImpulseY = tangent.y * frictionImpulse;
+            applyImpulse(frictionImpulseX, frictionImpulseY, radAX, radAY, radBX, radBY);
+        }
+    }
+
+    private void solveWithAccumulatedImpulses() {
+        // The normal and friction directions are fixed for the whole step, so the accumulated impulses of
+        // different iterations and steps can be summed and clamped. Unlike the solve without accumulation,
+        // negative impulses are allowed while the accumulated impulse stays non-negative.
+        final float tangentX = -normal.y;
+        final float tangentY = normal.x;
+
+        for (int i = 0; i < contactCount; i++) {
+            final float radAX = contacts[i].x - aPositionX;
+            final float radAY = contacts[i].y - aPositionY;
+            final float radBX = contacts[i].x - bPositionX;
+            final float radBY = contacts[i].y - bPositionY;
+
+            float rvX = bVelocityX - aVelocityX + radBY * -bAngularVelocity - radAY * -aAngularVelocity;
+            float rvY = bVelocityY - aVelocityY + radBX * bAngularVelocity - radAX * aAngularVelocity;
+
+            float raCrossN = radAX * normal.y - radAY * normal.x;
+            float rbCrossN = radBX * normal.y - radBY * normal.x;
+            float normalMassSum = aInvertedMass + bInvertedMass + (raCrossN * raCrossN) * aInvertedInertia
+                    + (rbCrossN * rbCrossN) * bInvertedInertia;
+
+            float j = -(rvX * normal.x + rvY * normal.y - velocityBiases[i]) / normalMassSum;
+            float oldNormalImpulse = normalImpulses[i];
+            normalImpulses[i] = Math.max(oldNormalImpulse + j, 0f);
+            j = normalImpulses[i] - oldNormalImpulse;
+
+            final float impulseX = normal.x * j;
+            final float impulseY = normal.y * j;
+            applyImpulse(impulseX, impulseY, radAX, radAY, radBX, radBY);
+
+            // Friction work
+            rvX = bVelocityX - aVelocityX + radBY * -bAngularVelocity - radAY * -aAngularVelocity;
+            rvY = bVelocityY - aVelocityY + radBX * bAngularVelocity - radAX * aAngularVelocity;
+
+            float raCrossT = radAX * tangentY - radAY * tangentX;
+            float rbCrossT = radBX * tangentY - radBY * tangentX;
+            float tangentMassSum = aInvertedMass + bInvertedMass + (raCrossT * raCrossT) * aInvertedInertia
+                    + (rbCrossT * rbCrossT) * bInvertedInertia;
+
+            float jt = -(rvX * tangentX + rvY * tangentY) / tangentMassSum;
+            float oldTangentImpulse = tangentImpulses[i];
+            float newTangentImpulse = oldTangentImpulse + jt;
+            if (Math.abs(newTangentImpulse) > normalImpulses[i] * staticFriction) {
+                // Amonton-Coulomb Law, the static friction can't hold the bodies, so they slide
+                float maxFriction = normalImpulses[i] * dynamicFriction;
+                newTangentImpulse = Math.max(-maxFriction, Math.min(newTangentImpulse, maxFriction));
+            }
+            tangentImpulses[i] = newTangentImpulse;
+            jt = newTangentImpulse - oldTangentImpulse;
+
+            final float frictionImpulseX = tangentX * jt;
+            final float frictionImpulseY = tangentY * jt;
+            applyImpulse(frictionImpulseX, frictionImpulseY, radAX, radAY, radBX, radBY);
         }
     }
 
@@ -132,10 +333,109 @@ public class Manifold {
         if (penetration < context.getMinBorderSlop()) {
             return;
         }
-        Vector2f correction = Vector2f.mul(normal, penetration *
-                context.getCorrectPositionPercent() / (a.invertedMass + b.invertedMass));
-        a.position.sub(Vector2f.mul(correction, a.invertedMass));
-        b.position.add(Vector2f.mul(correction, b.invertedMass));
+        final float correction = penetration * context.getCorrectPositionPercent() / (a.invertedMass + b.invertedMass);
+        final float correctionX = normal.x * correction;
+        final float correctionY = normal.y * correction;
+        // Static bodies are shared between islands which are corrected in parallel, so they must not be touched
+        if (a.invertedMass != 0f) {
+            a.position.x -= correctionX * a.invertedMass;
+            a.position.y -= correctionY * a.invertedMass;
+            aShape.markMoved();
+        }
+        if (b.invertedMass != 0f) {
+            b.position.x += correctionX * b.invertedMass;
+            b.position.y += correctionY * b.invertedMass;
+            bShape.markMoved();
+        }
+    }
+
+    private void loadBodies() {
+        if (aIndex >= 0) {
+            aPositionX = bodyStorage.getPositionX(aIndex);
+            aPositionY = bodyStorage.getPositionY(aIndex);
+            aInvertedMass = bodyStorage.getInvertedMass(aIndex);
+            aInvertedInertia = bodyStorage.getInvertedInertia(aIndex);
+            aVelocityX = bodyStorage.getVelocityX(aIndex);
+            aVelocityY = bodyStorage.getVelocityY(aIndex);
+            aAngularVelocity = bodyStorage.getAngularVelocity(aIndex);
+        } else {
+            aPositionX = a.position.x;
+            aPositionY = a.position.y;
+            aInvertedMass = a.invertedMass;
+            aInvertedInertia = a.invertedInertia;
+            aVelocityX = a.velocity.x;
+            aVelocityY = a.velocity.y;
+            aAngularVelocity = a.angularVelocity;
+        }
+        if (bIndex >= 0) {
+            bPositionX = bodyStorage.getPositionX(bIndex);
+            bPositionY = bodyStorage.getPositionY(bIndex);
+            bInvertedMass = bodyStorage.getInvertedMass(bIndex);
+            bInvertedInertia = bodyStorage.getInvertedInertia(bIndex);
+            bVelocityX = bodyStorage.getVelocityX(bIndex);
+            bVelocityY = bodyStorage.getVelocityY(bIndex);
+            bAngularVelocity = bodyStorage.getAngularVelocity(bIndex);
+        } else {
+            bPositionX = b.position.x;
+            bPositionY = b.position.y;
+            bInvertedMass = b.invertedMass;
+            bInvertedInertia = b.invertedInertia;
+            bVelocityX = b.velocity.x;
+            bVelocityY = b.velocity.y;
+            bAngularVelocity = b.angularVelocity;
+        }
+    }
+
+    private void storeVelocities() {
+        // Static bodies are shared between islands which are solved in parallel, so they must not be touched
+        if (aInvertedMass != 0f) {
+            if (aIndex >= 0) {
+                bodyStorage.setVelocity(aIndex, aVelocityX, aVelocityY, aAngularVelocity);
+            } else {
+                a.velocity.set(aVelocityX, aVelocityY);
+                a.angularVelocity = aAngularVelocity;
+            }
+        }
+        if (bInvertedMass != 0f) {
+            if (bIndex >= 0) {
+                bodyStorage.setVelocity(bIndex, bVelocityX, bVelocityY, bAngularVelocity);
+            } else {
+                b.velocity.set(bVelocityX, bVelocityY);
+                b.angularVelocity = bAngularVelocity;
+            }
+        }
+    }
+
+    /**
+     * Applies the impulse to the second body and the opposite impulse to the first one, the same way as
+     * {@link IShape#applyImpulse(float, float, float, float)} does, but to the read velocities of the bodies.
+     */
+    private void applyImpulse(float impulseX, float impulseY, float radAX, float radAY, float radBX, float radBY) {
+        if (bInvertedMass != 0f) {
+            wakeUp(b, bIndex);
+            bVelocityX += impulseX * bInvertedMass;
+            bVelocityY += impulseY * bInvertedMass;
+            bAngularVelocity += bInvertedInertia * (radBX * impulseY - radBY * impulseX);
+        }
+        if (aInvertedMass != 0f) {
+            wakeUp(a, aIndex);
+            aVelocityX += -impulseX * aInvertedMass;
+            aVelocityY += -impulseY * aInvertedMass;
+            aAngularVelocity += aInvertedInertia * (radAX * -impulseY - radAY * -impulseX);
+        }
+    }
+
+    private void wakeUp(Body body, int index) {
+        if (index < 0) {
+            if (!body.isAwake()) {
+                body.wakeUp();
+            }
+        } else if (!bodyStorage.isActive(index)) {
+            // The dynamic body is inactive in the storage only if it has been sleeping when it was loaded,
+            // so it is included into the integration now
+            body.wakeUp();
+            bodyStorage.activate(index);
+        }
     }
 
     private void initializeCollision() {
@@ -151,28 +451,27 @@ public class Manifold {
         // Calculate the elasticity
         e = Math.min(a.restitution, b.restitution);
 
+        final float resting = context.getResting();
         for (int i = 0; i < contactCount; ++i) {
             // Calculate radii from COM to contact
             // Vec2 ra = contacts[i] - A->position;
             // Vec2 rb = contacts[i] - B->position;
-            Vector2f radA = Vector2f.sub(contacts[i], a.position);
-            Vector2f radB = Vector2f.sub(contacts[i], b.position);
+            final float radAX = contacts[i].x - aPositionX;
+            final float radAY = contacts[i].y - aPositionY;
+            final float radBX = contacts[i].x - bPositionX;
+            final float radBY = contacts[i].y - bPositionY;
 
-            // Vec2 rv = B->velocity + Cross( B->angularVelocity, rb ) -
-            // A->velocity - Cross( A->angularVelocity, ra );
             // Calculate the relative speed
             // Vec2 rv = B->velocity + Cross( B->angularVelocity, rb ) -
             // A->velocity - Cross( A->angularVelocity, ra );
-            //relativeVelocity
-            Vector2f rv = Vector2f.sub(b.velocity, a.velocity);
-            rv.add(Vector2f.crossProduct(b.angularVelocity, radB));
-            rv.sub(Vector2f.crossProduct(a.angularVelocity, radA));
+            final float rvX = bVelocityX - aVelocityX + radBY * -bAngularVelocity - radAY * -aAngularVelocity;
+            final float rvY = bVelocityY - aVelocityY + radBX * bAngularVelocity - radAX * aAngularVelocity;
 
             // Determine whether should perform a collision with a stop or not.
             // The idea is that the only thing that moves this object is gravity,
             // then the collision should be carried out without any restitution
             // if(rv.LenSqr( ) < (dt * gravity).LenSqr( ) + EPSILON)
-            if (rv.lengthWithoutSqrt() < context.getResting()) {
+            if (rvX * rvX + rvY * rvY < resting) {
                 e = 0.0f;
             }
         }
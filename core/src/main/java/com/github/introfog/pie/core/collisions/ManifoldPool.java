@@ -0,0 +1,94 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions;
+
+import com.github.introfog.pie.core.Context;
+import com.github.introfog.pie.core.shape.IShape;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The class stores the free {@link Manifold} instances to reuse them between steps instead of creating
+ * new ones for each colliding pair of shapes. The pool isn't thread-safe.
+ */
+public class ManifoldPool {
+    private final List<Manifold> free;
+    private int createdCount;
+
+    /**
+     * Instantiates a new empty {@link ManifoldPool} instance.
+     */
+    public ManifoldPool() {
+        free = new ArrayList<>();
+    }
+
+    /**
+     * Gets a free manifold from the pool or creates a new one if the pool is empty. The manifold is reset for
+     * the passed pair of shapes.
+     *
+     * @param aShape the first shape
+     * @param bShape the second shape
+     * @param context the world context
+     * @return the manifold
+     */
+    public Manifold obtain(IShape aShape, IShape bShape, Context context) {
+        if (free.isEmpty()) {
+            createdCount++;
+            return new Manifold(aShape, bShape, context);
+        }
+        final Manifold manifold = free.remove(free.size() - 1);
+        manifold.reset(aShape, bShape, context);
+        return manifold;
+    }
+
+    /**
+     * Returns the manifold to the pool. The manifold must not be used after that.
+     *
+     * @param manifold the manifold
+     */
+    public void release(Manifold manifold) {
+        free.add(manifold);
+    }
+
+    /**
+     * Returns all manifolds of the list to the pool and clears the list.
+     *
+     * @param manifolds the list of manifolds
+     */
+    public void releaseAll(List<Manifold> manifolds) {
+        free.addAll(manifolds);
+        manifolds.clear();
+    }
+
+    /**
+     * Gets the number of free manifolds in the pool.
+     *
+     * @return the number of free manifolds
+     */
+    public int getFreeCount() {
+        return free.size();
+    }
+
+    /**
+     * Gets the number of manifolds created by the pool.
+     *
+     * @return the number of created manifolds
+     */
+    public int getCreatedCount() {
+        return createdCount;
+    }
+}
@@ -16,9 +16,19 @@
 package com.github.introfog.pie.core.collisions.broadphase;
 
 import com.github.introfog.pie.core.collisions.broadphase.aabbtree.AabbTreeNode;
+import com.github.introfog.pie.core.shape.Aabb;
 import com.github.introfog.pie.core.shape.IShape;
-import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.ParallelExecutor;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -26,58 +36,214 @@ import java.util.Set;
  * node (not a leaf) has exactly 2 children and has an Aabb that fully contains the Aabbs of his children.
  *
  * <p>
- * This method is effective when have a large number of sedentary shapes.
+ * This method is effective when have a large number of sedentary shapes. If the moved shapes are known
+ * (see {@link #calculateAabbCollisions(Collection)}), only their leaves are updated.
+ *
+ * <p>
+ * If the static tree is enabled (see {@link #setStaticTreeEnabled(boolean)}), the static shapes (with zero
+ * inverted mass) are stored in the separate {@link StaticShapeTree}, which is built in one top-down pass and is
+ * never updated or checked against itself. Every iteration only the tree of the dynamic shapes is updated and
+ * checked against itself, and the dynamic shapes are searched in the static tree. So the pairs of two static
+ * shapes are never reported and the static shapes are considered immovable, if a static shape needs to be moved,
+ * it should be removed and added again.
+ *
+ * <p>
+ * If the displacement prediction is set (see {@link #setDisplacementPredictionTime(float)}), the leaf Aabbs are
+ * extended in the direction of the shape velocities, so the fast shapes aren't reinserted every iteration. The number
+ * of the leaves reinserted during the last calculation is available by {@link #getReinsertedLeafCount()}.
+ *
+ * <p>
+ * If the parallel executor is set (see {@link #setParallelExecutor(ParallelExecutor)}) and the tree is large, the
+ * traversal of the tree is split into the independent pairs of subtrees (see
+ * {@link AabbTreeNode#calculateAabbCollisions(AabbTreeNode, AabbTreeNode, PairBuffer)}), which are checked in
+ * parallel into the separate buffers.
  *
  * @see AbstractBroadPhase
  */
 public class AabbTreeMethod extends AbstractBroadPhase {
+    /**
+     * The tree is rebuilt from scratch if the number of added or removed shapes is not less than
+     * this part of the number of shapes in the tree, otherwise the leaves are inserted or removed one by one.
+     */
+    private static final float REBUILD_FRACTION = 0.25f;
+
+    /** The minimal number of the leaves for which the tree traversal is split into the parallel tasks. */
+    private static final int MIN_PARALLEL_LEAF_COUNT = 4096;
+
+    /** The number of the traversal tasks per worker, more tasks allow the pool to balance uneven subtrees. */
+    private static final int TASKS_PER_WORKER = 8;
+
     private float enlargedAabbCoefficient;
+    private float displacementPredictionTime;
+    private int reinsertedLeafCount;
     private AabbTreeNode root;
+    private final Map<IShape, AabbTreeNode> leaves;
+    private boolean staticTreeEnabled;
+    private final StaticShapeTree staticTree;
+    private final Set<IShape> movedShapesSet;
+    private final PairBuffer movedShapesPairs;
+    private PairBuffer nextPairs;
+    /** The stack reused by the queries of the moved shapes. */
+    private final Deque<AabbTreeNode> nodes;
+    private AabbTreeNode[] taskFirsts;
+    private AabbTreeNode[] taskSeconds;
+    private AabbTreeNode[] nextTaskFirsts;
+    private AabbTreeNode[] nextTaskSeconds;
+    private int taskCount;
+    private PairBuffer[] taskPairs;
+    private final ParallelExecutor.RangeAction taskAction;
 
     /**
      * Instantiates a new {@link AabbTreeMethod} instance.
      */
     public AabbTreeMethod() {
+        leaves = new HashMap<>();
+        staticTree = new StaticShapeTree();
+        movedShapesSet = new HashSet<>();
+        movedShapesPairs = new PairBuffer();
+        nextPairs = new PairBuffer();
+        nodes = new ArrayDeque<>();
+        taskFirsts = new AabbTreeNode[0];
+        taskSeconds = new AabbTreeNode[0];
+        nextTaskFirsts = new AabbTreeNode[0];
+        nextTaskSeconds = new AabbTreeNode[0];
+        taskPairs = new PairBuffer[0];
+        taskAction = this::processTasks;
         setEnlargedAabbCoefficient(AabbTreeNode.DEFAULT_ENLARGED_AABB_COEFFICIENT);
     }
 
+    /**
+     * Sets the broad phase method shapes, the tree is built in one top-down pass
+     * (see {@link AabbTreeNode#buildTree(Collection)}).
+     *
+     * @param shapes the shapes among which collisions will be calculated
+     */
     @Override
     public void setShapes(Set<IShape> shapes) {
+        // The passed set may be the view of the current shapes, so it is copied before clearing
+        final List<IShape> newShapes = new ArrayList<>(shapes);
         this.shapes.clear();
+        leaves.clear();
+        staticTree.clear();
         root = null;
-        shapes.forEach(this::addShape);
+        addShapes(newShapes);
     }
 
     @Override
     public void addShape(IShape shape) {
         super.addShape(shape);
+        if (isStaticShape(shape)) {
+            staticTree.addShape(shape);
+            return;
+        }
+        if (leaves.containsKey(shape)) {
+            return;
+        }
+        AabbTreeNode leaf = new AabbTreeNode(shape, enlargedAabbCoefficient, displacementPredictionTime);
+        leaves.put(shape, leaf);
         if (root == null) {
-            root = new AabbTreeNode(shape, enlargedAabbCoefficient);
+            root = leaf;
+        } else {
+            root = AabbTreeNode.insertNode(root, leaf);
+        }
+    }
+
+    /**
+     * Adds the shapes to the tree. If the number of shapes is large compared with the tree size, the whole
+     * tree is rebuilt in one top-down pass (see {@link AabbTreeNode#buildTree(Collection)}), which is much faster
+     * than inserting the leaves one by one and gives a better tree.
+     *
+     * @param shapes the shapes to be added
+     */
+    @Override
+    public void addShapes(Collection<IShape> shapes) {
+        List<AabbTreeNode> newLeaves = new ArrayList<>();
+        List<IShape> staticShapes = new ArrayList<>();
+        for (IShape shape : shapes) {
+            super.addShape(shape);
+            if (isStaticShape(shape)) {
+                staticShapes.add(shape);
+            } else if (!leaves.containsKey(shape)) {
+                AabbTreeNode leaf = new AabbTreeNode(shape, enlargedAabbCoefficient, displacementPredictionTime);
+                leaves.put(shape, leaf);
+                newLeaves.add(leaf);
+            }
+        }
+        if (!staticShapes.isEmpty()) {
+            staticTree.addShapes(staticShapes);
+        }
+        if (newLeaves.isEmpty()) {
+            return;
+        }
+        if (newLeaves.size() >= REBUILD_FRACTION * leaves.size()) {
+            root = AabbTreeNode.buildTree(leaves.values());
         } else {
-            root = AabbTreeNode.insertLeaf(root, shape);
+            for (AabbTreeNode leaf : newLeaves) {
+                root = AabbTreeNode.insertNode(root, leaf);
+            }
         }
     }
 
     @Override
     public boolean remove(IShape shape) {
         boolean removed = super.remove(shape);
-        if (removed) {
-            root = AabbTreeNode.removeLeaf(root, shape);
+        if (removed && !staticTree.remove(shape)) {
+            root = AabbTreeNode.removeNode(root, leaves.remove(shape));
         }
         return removed;
     }
 
+    /**
+     * Removes the shapes from the tree. If the number of removed shapes is large compared with the tree size,
+     * the tree is rebuilt from the remaining leaves in one top-down pass
+     * (see {@link AabbTreeNode#buildTree(Collection)}).
+     *
+     * @param shapes the shapes to be removed from this broad phase method, if present
+     * @return {@code true} if this broad phase method contained any of the specified shapes, otherwise {@code false}
+     */
+    @Override
+    public boolean removeShapes(Collection<IShape> shapes) {
+        int sizeBefore = leaves.size();
+        List<AabbTreeNode> removedLeaves = new ArrayList<>();
+        boolean removedStaticShape = false;
+        for (IShape shape : shapes) {
+            if (super.remove(shape)) {
+                if (staticTree.remove(shape)) {
+                    removedStaticShape = true;
+                } else {
+                    removedLeaves.add(leaves.remove(shape));
+                }
+            }
+        }
+        if (removedLeaves.isEmpty()) {
+            return removedStaticShape;
+        }
+        if (removedLeaves.size() >= REBUILD_FRACTION * sizeBefore) {
+            root = AabbTreeNode.buildTree(leaves.values());
+        } else {
+            for (AabbTreeNode leaf : removedLeaves) {
+                root = AabbTreeNode.removeNode(root, leaf);
+            }
+        }
+        return !removedLeaves.isEmpty();
+    }
+
     @Override
     public void clear() {
         super.clear();
+        leaves.clear();
+        staticTree.clear();
         root = null;
     }
 
     @Override
     public AabbTreeMethod newInstance() {
         AabbTreeMethod aabbTreeMethod = new AabbTreeMethod();
-        aabbTreeMethod.setShapes(shapes);
+        // The leaves are created with the current settings, so the settings are copied before the shapes
         aabbTreeMethod.setEnlargedAabbCoefficient(getEnlargedAabbCoefficient());
+        aabbTreeMethod.setDisplacementPredictionTime(getDisplacementPredictionTime());
+        aabbTreeMethod.setStaticTreeEnabled(staticTreeEnabled);
+        aabbTreeMethod.setShapes(shapes);
         return aabbTreeMethod;
     }
 
@@ -109,9 +275,274 @@ public class AabbTreeMethod extends AbstractBroadPhase {
         return enlargedAabbCoefficient;
     }
 
+    /**
+     * Sets the displacement prediction time for the Aabb tree, the new value is applied to the leaves
+     * when they are inserted or reinserted.
+     *
+     * <p>
+     * For more information see {@link AabbTreeNode#AabbTreeNode(IShape, float, float)}.
+     *
+     * @param displacementPredictionTime the displacement prediction time, zero disables the prediction
+     */
+    public void setDisplacementPredictionTime(float displacementPredictionTime) {
+        if (displacementPredictionTime < 0) {
+            // TODO log this situation
+            return;
+        }
+        this.displacementPredictionTime = displacementPredictionTime;
+    }
+
+    /**
+     * Gets the displacement prediction time for the Aabb tree.
+     *
+     * <p>
+     * For more information see {@link AabbTreeNode#AabbTreeNode(IShape, float, float)}.
+     *
+     * @return the displacement prediction time
+     */
+    public float getDisplacementPredictionTime() {
+        return displacementPredictionTime;
+    }
+
+    /**
+     * Gets the number of the leaves which went beyond their Aabbs and were reinserted into the tree
+     * during the last calculation of the collisions.
+     *
+     * @return the number of the reinserted leaves
+     */
+    public int getReinsertedLeafCount() {
+        return reinsertedLeafCount;
+    }
+
+    /**
+     * Enables or disables the separate tree of the static shapes, the shapes are redistributed between the trees.
+     *
+     * <p>
+     * If the static tree is enabled, the static shapes are never updated and the pairs of two static shapes
+     * are never reported. For more information see {@link AabbTreeMethod}.
+     *
+     * @param staticTreeEnabled {@code true} to store the static shapes in the separate tree
+     */
+    public void setStaticTreeEnabled(boolean staticTreeEnabled) {
+        if (this.staticTreeEnabled == staticTreeEnabled) {
+            return;
+        }
+        this.staticTreeEnabled = staticTreeEnabled;
+        setShapes(new HashSet<>(shapes));
+    }
+
+    /**
+     * Checks whether the separate tree of the static shapes is enabled.
+     *
+     * @return {@code true} if the static shapes are stored in the separate tree
+     */
+    public boolean isStaticTreeEnabled() {
+        return staticTreeEnabled;
+    }
+
+    @Override
+    protected void domesticCalculateAabbCollisions(PairBuffer collisions) {
+        reinsertedLeafCount = 0;
+        for (AabbTreeNode leaf : leaves.values()) {
+            updateLeaf(leaf);
+        }
+        calculateTreeAabbCollisions(collisions);
+        calculateStaticAabbCollisions(collisions);
+    }
+
     @Override
-    protected Set<ShapePair> domesticCalculateAabbCollisions() {
-        root = AabbTreeNode.updateTree(root);
-        return AabbTreeNode.calculateAabbCollisions(root);
+    protected void domesticCalculateAabbCollisions(Collection<IShape> movedShapes, PairBuffer collisions) {
+        reinsertedLeafCount = 0;
+        for (IShape shape : movedShapes) {
+            AabbTreeNode leaf = leaves.get(shape);
+            if (leaf != null) {
+                updateLeaf(leaf);
+            }
+        }
+        calculateTreeAabbCollisions(collisions);
+        calculateStaticAabbCollisions(collisions);
+    }
+
+    /**
+     * Updates the persistent set of overlapping pairs when only the passed shapes have been moved. Only
+     * the leaves of the moved shapes are updated and only the moved shapes are searched in the tree, the pairs
+     * of other shapes are kept as is, because their overlapping can't change. The moved static shapes of the static
+     * tree (for example the added ones) are searched in the tree of the dynamic shapes only.
+     *
+     * @param movedShapes the shapes which have been moved or rotated since the previous call
+     */
+    @Override
+    protected void domesticCalculateAabbCollisionChanges(Collection<IShape> movedShapes) {
+        movedShapesSet.clear();
+        movedShapesPairs.clear();
+        nextPairs.clear();
+        reinsertedLeafCount = 0;
+        for (IShape shape : movedShapes) {
+            AabbTreeNode leaf = leaves.get(shape);
+            if (leaf != null) {
+                if (movedShapesSet.add(shape)) {
+                    updateLeaf(leaf);
+                }
+            } else if (staticTree.contains(shape)) {
+                // The added static shapes are passed as moved, their pairs with the unmoved dynamic shapes
+                // are found only by the query of the static shape in the dynamic tree
+                movedShapesSet.add(shape);
+            }
+        }
+        for (IShape shape : movedShapesSet) {
+            AabbTreeNode.calculateAabbCollisions(root, shape, movedShapesPairs, nodes);
+            if (leaves.containsKey(shape)) {
+                staticTree.calculateAabbCollisions(shape, movedShapesPairs);
+            }
+        }
+
+        // The pairs of the moved shapes are replaced by the found ones, the pairs of the removed shapes are ended
+        for (int i = 0; i < pairs.size(); i++) {
+            IShape first = pairs.getFirst(i);
+            IShape second = pairs.getSecond(i);
+            if (!containsShape(first) || !containsShape(second)
+                    || ((movedShapesSet.contains(first) || movedShapesSet.contains(second))
+                    && !movedShapesPairs.contains(first, second))) {
+                endedPairs.add(first, second);
+            } else {
+                nextPairs.add(first, second);
+            }
+        }
+        for (int i = 0; i < movedShapesPairs.size(); i++) {
+            if (nextPairs.add(movedShapesPairs.getFirst(i), movedShapesPairs.getSecond(i))) {
+                beganPairs.add(movedShapesPairs.getFirst(i), movedShapesPairs.getSecond(i));
+            }
+        }
+        PairBuffer previousPairs = pairs;
+        pairs = nextPairs;
+        nextPairs = previousPairs;
+    }
+
+    private void updateLeaf(AabbTreeNode leaf) {
+        if (leaf != root && !Aabb.isContained(leaf.aabb, leaf.shape.getAabb())) {
+            reinsertedLeafCount++;
+        }
+        root = AabbTreeNode.updateLeaf(root, leaf, displacementPredictionTime);
+    }
+
+    private void calculateTreeAabbCollisions(PairBuffer collisions) {
+        if (root == null) {
+            return;
+        }
+        if (!parallelExecutor.isParallel() || leaves.size() < MIN_PARALLEL_LEAF_COUNT) {
+            AabbTreeNode.calculateAabbCollisions(root, collisions);
+            return;
+        }
+
+        splitTraversal(parallelExecutor.getParallelism() * TASKS_PER_WORKER);
+        parallelExecutor.forEachChunk(0, taskCount, 1, taskAction);
+
+        // The subtree pairs of the tasks don't overlap, so the tasks find different pairs
+        for (int task = 0; task < taskCount; task++) {
+            collisions.addAll(taskPairs[task]);
+            taskPairs[task].clear();
+        }
+        Arrays.fill(taskFirsts, 0, taskCount, null);
+        Arrays.fill(taskSeconds, 0, taskCount, null);
+    }
+
+    /**
+     * Splits the traversal of the whole tree into the pairs of subtrees level by level, until there are at least
+     * the passed number of the pairs or the pairs can't be split. The self pair of the node is split into the self
+     * pairs of its children and the pair of the children, the pair of two nodes is split by the children of
+     * the larger one, and the pairs of the disjoint nodes are dropped.
+     */
+    private void splitTraversal(int minTaskCount) {
+        ensureTaskCapacity(1);
+        taskFirsts[0] = root;
+        taskSeconds[0] = root;
+        taskCount = 1;
+        boolean split = true;
+        while (split && taskCount < minTaskCount) {
+            split = false;
+            if (nextTaskFirsts.length < 3 * taskCount) {
+                nextTaskFirsts = new AabbTreeNode[6 * taskCount];
+                nextTaskSeconds = new AabbTreeNode[6 * taskCount];
+            }
+            int nextTaskCount = 0;
+            for (int task = 0; task < taskCount; task++) {
+                final AabbTreeNode first = taskFirsts[task];
+                final AabbTreeNode second = taskSeconds[task];
+                if (first == second) {
+                    if (!first.isLeaf()) {
+                        nextTaskCount = addNextTask(nextTaskCount, first.children[0], first.children[0]);
+                        nextTaskCount = addNextTask(nextTaskCount, first.children[1], first.children[1]);
+                        nextTaskCount = addNextTask(nextTaskCount, first.children[0], first.children[1]);
+                        split = true;
+                    }
+                } else if (Aabb.isIntersected(first.aabb, second.aabb)) {
+                    if (first.isLeaf() && second.isLeaf()) {
+                        nextTaskCount = addNextTask(nextTaskCount, first, second);
+                    } else if (!first.isLeaf()
+                            && (second.isLeaf() || first.aabb.surfaceArea() >= second.aabb.surfaceArea())) {
+                        nextTaskCount = addNextTask(nextTaskCount, first.children[0], second);
+                        nextTaskCount = addNextTask(nextTaskCount, first.children[1], second);
+                        split = true;
+                    } else {
+                        nextTaskCount = addNextTask(nextTaskCount, first, second.children[0]);
+                        nextTaskCount = addNextTask(nextTaskCount, first, second.children[1]);
+                        split = true;
+                    }
+                }
+            }
+            Arrays.fill(taskFirsts, 0, taskCount, null);
+            Arrays.fill(taskSeconds, 0, taskCount, null);
+            AabbTreeNode[] previousTasks = taskFirsts;
+            taskFirsts = nextTaskFirsts;
+            nextTaskFirsts = previousTasks;
+            previousTasks = taskSeconds;
+            taskSeconds = nextTaskSeconds;
+            nextTaskSeconds = previousTasks;
+            taskCount = nextTaskCount;
+        }
+        ensureTaskCapacity(taskCount);
+    }
+
+    private int addNextTask(int nextTaskCount, AabbTreeNode first, AabbTreeNode second) {
+        nextTaskFirsts[nextTaskCount] = first;
+        nextTaskSeconds[nextTaskCount] = second;
+        return nextTaskCount + 1;
+    }
+
+    private void ensureTaskCapacity(int capacity) {
+        if (taskFirsts.length < capacity) {
+            taskFirsts = Arrays.copyOf(taskFirsts, capacity);
+            taskSeconds = Arrays.copyOf(taskSeconds, capacity);
+        }
+        if (taskPairs.length < capacity) {
+            final int previousLength = taskPairs.length;
+            taskPairs = Arrays.copyOf(taskPairs, capacity);
+            for (int task = previousLength; task < capacity; task++) {
+                taskPairs[task] = new PairBuffer();
+            }
+        }
+    }
+
+    private void processTasks(int fromTask, int toTask) {
+        for (int task = fromTask; task < toTask; task++) {
+            AabbTreeNode.calculateAabbCollisions(taskFirsts[task], taskSeconds[task], taskPairs[task]);
+        }
+    }
+
+    private void calculateStaticAabbCollisions(PairBuffer collisions) {
+        if (staticTree.size() == 0) {
+            return;
+        }
+        for (IShape shape : leaves.keySet()) {
+            staticTree.calculateAabbCollisions(shape, collisions);
+        }
+    }
+
+    private boolean isStaticShape(IShape shape) {
+        return staticTreeEnabled && shape.getBody().invertedMass == 0f;
+    }
+
+    private boolean containsShape(IShape shape) {
+        return leaves.containsKey(shape) || staticTree.contains(shape);
     }
 }
@@ -17,7 +17,10 @@ package com.github.introfog.pie.core.collisions.broadphase;
 
 import com.github.introfog.pie.core.shape.IShape;
 import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.ParallelExecutor;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -32,11 +35,43 @@ public abstract class AbstractBroadPhase implements IBroadPhase {
      */
     protected Set<IShape> shapes;
 
+    /**
+     * The executor for the work that can be done in parallel.
+     */
+    protected ParallelExecutor parallelExecutor;
+
+    /**
+     * The persistent set of the overlapping pairs which is updated by the {@link #calculateAabbCollisionChanges()}.
+     */
+    protected PairBuffer pairs;
+
+    /**
+     * The pairs which have begun overlapping during the last update of the {@link #pairs}.
+     */
+    protected final PairBuffer beganPairs;
+
+    /**
+     * The pairs which have ended overlapping during the last update of the {@link #pairs}.
+     */
+    protected final PairBuffer endedPairs;
+
+    private PairBuffer candidatePairs;
+
+    /** The array reused for the parallel update of the Aabbs, only the first {@link #arrayShapesCount} are actual. */
+    private IShape[] arrayShapes;
+    private int arrayShapesCount;
+
     /**
      * Instantiates a new {@link AbstractBroadPhase} instance.
      */
     public AbstractBroadPhase() {
         shapes = new HashSet<>();
+        parallelExecutor = ParallelExecutor.sequential();
+        pairs = new PairBuffer();
+        beganPairs = new PairBuffer();
+        endedPairs = new PairBuffer();
+        candidatePairs = new PairBuffer();
+        arrayShapes = new IShape[0];
     }
 
     /**
@@ -67,6 +102,11 @@ public abstract class AbstractBroadPhase implements IBroadPhase {
         shapes.clear();
     }
 
+    @Override
+    public void setParallelExecutor(ParallelExecutor parallelExecutor) {
+        this.parallelExecutor = parallelExecutor == null ? ParallelExecutor.sequential() : parallelExecutor;
+    }
+
     @Override
     public Set<IShape> getUnmodifiableShapes() {
         return Collections.unmodifiableSet(shapes);
@@ -76,27 +116,228 @@ public abstract class AbstractBroadPhase implements IBroadPhase {
      * Calculates the shape Aabb collisions.
      *
      * <p>
-     * Note, before calling the {@link #domesticCalculateAabbCollisions()} method, which calculates collisions,
-     * the {@link IShape#computeAabb()} method is called for all shapes from the {@link #shapes}, because the
-     * broad phase needs the up-to-date Aabbs.
+     * Note, before calling the {@link #domesticCalculateAabbCollisions(PairBuffer)} method, which calculates
+     * collisions, the {@link IShape#computeAabb()} method is called for all shapes from the {@link #shapes}, because
+     * the broad phase needs the up-to-date Aabbs. The Aabbs are computed in parallel if the {@link #parallelExecutor}
+     * allows it. The Aabbs of sleeping shapes aren't recomputed, because such shapes don't move.
      *
      * @return the {@link ShapePair} set in which each item represents
      * a unique shape pair and the Aabb of those shapes intersect
      */
     @Override
     public final Set<ShapePair> calculateAabbCollisions() {
-        shapes.forEach(IShape::computeAabb);
-        return domesticCalculateAabbCollisions();
+        PairBuffer collisions = new PairBuffer();
+        calculateAabbCollisions(collisions);
+        return collisions.toShapePairs();
     }
 
     /**
-     * Domestic method for calculating the shape Aabb collisions.
+     * Calculates the shape Aabb collisions when only the passed shapes have been moved since the previous call.
      *
      * <p>
-     * Note, when this method is called, all shapes from {@link #shapes} have an up-to-date Aabb.
+     * Note, the {@link IShape#computeAabb()} method is called only for the passed shapes, the Aabbs of other
+     * shapes are considered up-to-date. Then the {@link #domesticCalculateAabbCollisions(Collection, PairBuffer)}
+     * method calculates collisions.
      *
+     * @param movedShapes the shapes which have been moved or rotated since the previous call
      * @return the {@link ShapePair} set in which each item represents
      * a unique shape pair and the Aabb of those shapes intersect
      */
-    protected abstract Set<ShapePair> domesticCalculateAabbCollisions();
+    @Override
+    public final Set<ShapePair> calculateAabbCollisions(Collection<IShape> movedShapes) {
+        PairBuffer collisions = new PairBuffer();
+        calculateAabbCollisions(movedShapes, collisions);
+        return collisions.toShapePairs();
+    }
+
+    /**
+     * Calculates the shape Aabb collisions in the same way as the {@link #calculateAabbCollisions()} method,
+     * but writes the pairs to the passed buffer.
+     *
+     * @param collisions the buffer which is cleared and filled with the pairs of intersected Aabbs
+     */
+    @Override
+    public final void calculateAabbCollisions(PairBuffer collisions) {
+        computeAabbs();
+        collisions.clear();
+        domesticCalculateAabbCollisions(collisions);
+    }
+
+    /**
+     * Calculates the shape Aabb collisions in the same way as the {@link #calculateAabbCollisions(Collection)}
+     * method, but writes the pairs to the passed buffer.
+     *
+     * @param movedShapes the shapes which have been moved or rotated since the previous call
+     * @param collisions the buffer which is cleared and filled with the pairs of intersected Aabbs
+     */
+    @Override
+    public final void calculateAabbCollisions(Collection<IShape> movedShapes, PairBuffer collisions) {
+        computeAabbs(movedShapes);
+        collisions.clear();
+        domesticCalculateAabbCollisions(movedShapes, collisions);
+    }
+
+    /**
+     * Calculates the shape Aabb collisions and updates the persistent set of overlapping pairs.
+     *
+     * <p>
+     * The Aabbs are computed in the same way as in the {@link #calculateAabbCollisions()} method, then
+     * the {@link #domesticCalculateAabbCollisionChanges()} method updates the pairs.
+     */
+    @Override
+    public final void calculateAabbCollisionChanges() {
+        computeAabbs();
+        beganPairs.clear();
+        endedPairs.clear();
+        domesticCalculateAabbCollisionChanges();
+    }
+
+    /**
+     * Calculates the shape Aabb collisions when only the passed shapes have been moved since the previous call
+     * and updates the persistent set of overlapping pairs.
+     *
+     * <p>
+     * The Aabbs are computed in the same way as in the {@link #calculateAabbCollisions(Collection)} method, then
+     * the {@link #domesticCalculateAabbCollisionChanges(Collection)} method updates the pairs.
+     *
+     * @param movedShapes the shapes which have been moved or rotated since the previous call
+     */
+    @Override
+    public final void calculateAabbCollisionChanges(Collection<IShape> movedShapes) {
+        computeAabbs(movedShapes);
+        beganPairs.clear();
+        endedPairs.clear();
+        domesticCalculateAabbCollisionChanges(movedShapes);
+    }
+
+    @Override
+    public PairBuffer getPairs() {
+        return pairs;
+    }
+
+    @Override
+    public PairBuffer getBeganPairs() {
+        return beganPairs;
+    }
+
+    @Override
+    public PairBuffer getEndedPairs() {
+        return endedPairs;
+    }
+
+    /**
+     * Domestic method for calculating the shape Aabb collisions.
+     *
+     * <p>
+     * Note, when this method is called, all shapes from {@link #shapes} have an up-to-date Aabb.
+     *
+     * @param collisions the empty buffer to which the pairs of intersected Aabbs are added
+     */
+    protected abstract void domesticCalculateAabbCollisions(PairBuffer collisions);
+
+    /**
+     * Domestic method for calculating the shape Aabb collisions when only the passed shapes have been moved.
+     * The method can be overridden by the broad phase methods which are able to update only the moved
+     * shapes, by default it calls the {@link #domesticCalculateAabbCollisions(PairBuffer)} method.
+     *
+     * <p>
+     * Note, when this method is called, all shapes from {@link #shapes} have an up-to-date Aabb.
+     *
+     * @param movedShapes the shapes which have been moved or rotated since the previous call
+     * @param collisions the empty buffer to which the pairs of intersected Aabbs are added
+     */
+    protected void domesticCalculateAabbCollisions(Collection<IShape> movedShapes, PairBuffer collisions) {
+        domesticCalculateAabbCollisions(collisions);
+    }
+
+    /**
+     * Domestic method for updating the persistent set of overlapping pairs. The method can be overridden by
+     * the broad phase methods which keep track of the overlapping pairs themselves, by default the result of the
+     * {@link #domesticCalculateAabbCollisions(PairBuffer)} method is compared with the {@link #pairs}.
+     *
+     * <p>
+     * Note, when this method is called, all shapes from {@link #shapes} have an up-to-date Aabb and
+     * the {@link #beganPairs} and {@link #endedPairs} are empty.
+     */
+    protected void domesticCalculateAabbCollisionChanges() {
+        candidatePairs.clear();
+        domesticCalculateAabbCollisions(candidatePairs);
+        updatePairs();
+    }
+
+    /**
+     * Domestic method for updating the persistent set of overlapping pairs when only the passed shapes have been
+     * moved. The method can be overridden by the broad phase methods which are able to find the overlaps of the
+     * moved shapes only, by default the result of the
+     * {@link #domesticCalculateAabbCollisions(Collection, PairBuffer)} method is compared with the {@link #pairs}.
+     *
+     * <p>
+     * Note, when this method is called, all shapes from {@link #shapes} have an up-to-date Aabb and
+     * the {@link #beganPairs} and {@link #endedPairs} are empty.
+     *
+     * @param movedShapes the shapes which have been moved or rotated since the previous call
+     */
+    protected void domesticCalculateAabbCollisionChanges(Collection<IShape> movedShapes) {
+        candidatePairs.clear();
+        domesticCalculateAabbCollisions(movedShapes, candidatePairs);
+        updatePairs();
+    }
+
+    private void updatePairs() {
+        for (int i = 0; i < pairs.size(); i++) {
+            if (!candidatePairs.contains(pairs.getFirst(i), pairs.getSecond(i))) {
+                endedPairs.add(pairs.getFirst(i), pairs.getSecond(i));
+            }
+        }
+        for (int i = 0; i < candidatePairs.size(); i++) {
+            if (!pairs.contains(candidatePairs.getFirst(i), candidatePairs.getSecond(i))) {
+                beganPairs.add(candidatePairs.getFirst(i), candidatePairs.getSecond(i));
+            }
+        }
+        // The buffers are swapped instead of copying the pairs
+        PairBuffer previousPairs = pairs;
+        pairs = candidatePairs;
+        candidatePairs = previousPairs;
+    }
+
+    private void computeAabbs() {
+        if (parallelExecutor.isParallel()) {
+            fillArrayShapes(shapes);
+            parallelExecutor.forEach(arrayShapes, arrayShapesCount, AbstractBroadPhase::computeAabbIfAwake);
+        } else {
+            shapes.forEach(AbstractBroadPhase::computeAabbIfAwake);
+        }
+    }
+
+    private void computeAabbs(Collection<IShape> movedShapes) {
+        if (parallelExecutor.isParallel()) {
+            fillArrayShapes(movedShapes);
+            parallelExecutor.forEach(arrayShapes, arrayShapesCount, IShape::computeAabb);
+        } else {
+            movedShapes.forEach(IShape::computeAabb);
+        }
+    }
+
+    /**
+     * Copies the shapes to the reused array, a new array is created only if the shapes don't fit. The shapes
+     * are copied every time, because the subclasses change the {@link #shapes} directly.
+     */
+    private void fillArrayShapes(Collection<IShape> shapesToCopy) {
+        final int count = shapesToCopy.size();
+        if (arrayShapes.length < count) {
+            arrayShapes = new IShape[count];
+        }
+        shapesToCopy.toArray(arrayShapes);
+        // The shapes left from the previous copy aren't kept alive by the array
+        if (arrayShapesCount > count) {
+            Arrays.fill(arrayShapes, count, arrayShapesCount, null);
+        }
+        arrayShapesCount = count;
+    }
+
+    private static void computeAabbIfAwake(IShape shape) {
+        if (shape.getBody().isAwake()) {
+            shape.computeAabb();
+        }
+    }
 }
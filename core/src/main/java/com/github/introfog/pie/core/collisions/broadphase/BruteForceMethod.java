@@ -19,6 +19,7 @@ import com.github.introfog.pie.core.shape.Aabb;
 import com.github.introfog.pie.core.shape.IShape;
 import com.github.introfog.pie.core.shape.ShapePair;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -31,6 +32,15 @@ import java.util.Set;
  * @see AbstractBroadPhase
  */
 public class BruteForceMethod extends AbstractBroadPhase {
+    private IShape[] arrayShapes;
+
+    /**
+     * Instantiates a new {@link BruteForceMethod} instance.
+     */
+    public BruteForceMethod() {
+        arrayShapes = new IShape[0];
+    }
+
     @Override
     public BruteForceMethod newInstance() {
         BruteForceMethod bruteForceMethod = new BruteForceMethod();
@@ -39,8 +49,18 @@ public class BruteForceMethod extends AbstractBroadPhase {
     }
 
     @Override
-    protected Set<ShapePair> domesticCalculateAabbCollisions() {
-        return BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapes);
+    protected void domesticCalculateAabbCollisions(PairBuffer collisions) {
+        // The array is reused between calls, the tail after the shapes is cleared to not keep removed shapes
+        final int size = shapes.size();
+        arrayShapes = shapes.toArray(arrayShapes);
+        Arrays.fill(arrayShapes, size, arrayShapes.length, null);
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                if (Aabb.isIntersected(arrayShapes[i].getAabb(), arrayShapes[j].getAabb())) {
+                    collisions.add(arrayShapes[i], arrayShapes[j]);
+                }
+            }
+        }
     }
 
     /**
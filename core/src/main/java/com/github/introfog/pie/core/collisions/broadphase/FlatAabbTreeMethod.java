@@ -0,0 +1,394 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.collisions.broadphase.aabbtree.AabbTreeNode;
+import com.github.introfog.pie.core.collisions.broadphase.aabbtree.FlatAabbTree;
+import com.github.introfog.pie.core.shape.IShape;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The class is a Aabb tree method, the same as the {@link AabbTreeMethod}, which stores the tree in flat arrays
+ * (see {@link FlatAabbTree}) instead of the graph of the {@link AabbTreeNode} objects.
+ *
+ * <p>
+ * The nodes of the tree are reused, so moving the shapes doesn't create objects, and the index of the leaf of
+ * each shape is kept, so the leaf of the removed or moved shape is found without searching the tree. The leaves
+ * are indexed by the slots of the shapes in their world (see {@link IShape#getSlot()}), the map of the leaves
+ * is used only for the shapes which don't belong to any world. The shapes must keep their slots while they are
+ * in the method, which holds for the broad phase of a world.
+ *
+ * <p>
+ * This method is effective when have a large number of sedentary shapes. If the moved shapes are known
+ * (see {@link #calculateAabbCollisions(Collection)}), only their leaves are updated.
+ *
+ * <p>
+ * If the displacement prediction is set (see {@link #setDisplacementPredictionTime(float)}), the leaf bounds are
+ * extended in the direction of the shape velocities, so the fast shapes aren't reinserted every iteration. The number
+ * of the leaves reinserted during the last calculation is available by {@link #getReinsertedLeafCount()}.
+ *
+ * @see AbstractBroadPhase
+ * @see AabbTreeMethod
+ */
+public class FlatAabbTreeMethod extends AbstractBroadPhase {
+    /**
+     * The tree is rebuilt from scratch if the number of added or removed shapes is not less than
+     * this part of the number of shapes in the tree, otherwise the leaves are inserted or removed one by one.
+     */
+    private static final float REBUILD_FRACTION = 0.25f;
+
+    private final FlatAabbTree tree;
+    /** The leaves of the shapes increased by one indexed by the shape slots, zero marks an empty slot. */
+    private int[] slotLeaves;
+    private IShape[] slotShapes;
+    /** The leaves of the shapes without slots. */
+    private final Map<IShape, Integer> leaves;
+    private IShape[] buildShapes;
+    private int[] buildLeaves;
+    private boolean[] movedLeaves;
+    private final PairBuffer movedShapesPairs;
+    private PairBuffer nextPairs;
+    private int reinsertedLeafCount;
+
+    /**
+     * Instantiates a new {@link FlatAabbTreeMethod} instance.
+     */
+    public FlatAabbTreeMethod() {
+        tree = new FlatAabbTree(AabbTreeNode.DEFAULT_ENLARGED_AABB_COEFFICIENT);
+        slotLeaves = new int[0];
+        slotShapes = new IShape[0];
+        leaves = new HashMap<>();
+        buildShapes = new IShape[0];
+        buildLeaves = new int[0];
+        movedLeaves = new boolean[0];
+        movedShapesPairs = new PairBuffer();
+        nextPairs = new PairBuffer();
+    }
+
+    /**
+     * Sets the enlarged Aabb coefficient for the Aabb tree.
+     *
+     * <p>
+     * For more information see {@link AabbTreeNode#enlargedAabbCoefficient}.
+     *
+     * @param enlargedAabbCoefficient the enlarged Aabb coefficient
+     */
+    public void setEnlargedAabbCoefficient(float enlargedAabbCoefficient) {
+        if (enlargedAabbCoefficient < 0) {
+            return;
+        }
+        tree.setEnlargedAabbCoefficient(enlargedAabbCoefficient);
+    }
+
+    /**
+     * Gets the enlarged Aabb coefficient for the Aabb tree.
+     *
+     * <p>
+     * For more information see {@link AabbTreeNode#enlargedAabbCoefficient}.
+     *
+     * @return the enlarged Aabb coefficient
+     */
+    public float getEnlargedAabbCoefficient() {
+        return tree.getEnlargedAabbCoefficient();
+    }
+
+    /**
+     * Sets the displacement prediction time for the Aabb tree, the new value is applied to the leaves
+     * when they are inserted or reinserted.
+     *
+     * <p>
+     * For more information see {@link AabbTreeNode#AabbTreeNode(IShape, float, float)}.
+     *
+     * @param displacementPredictionTime the displacement prediction time, zero disables the prediction
+     */
+    public void setDisplacementPredictionTime(float displacementPredictionTime) {
+        if (displacementPredictionTime < 0) {
+            return;
+        }
+        tree.setDisplacementPredictionTime(displacementPredictionTime);
+    }
+
+    /**
+     * Gets the displacement prediction time for the Aabb tree.
+     *
+     * <p>
+     * For more information see {@link AabbTreeNode#AabbTreeNode(IShape, float, float)}.
+     *
+     * @return the displacement prediction time
+     */
+    public float getDisplacementPredictionTime() {
+        return tree.getDisplacementPredictionTime();
+    }
+
+    /**
+     * Gets the number of the leaves which went beyond their bounds and were reinserted into the tree
+     * during the last calculation of the collisions.
+     *
+     * @return the number of the reinserted leaves
+     */
+    public int getReinsertedLeafCount() {
+        return reinsertedLeafCount;
+    }
+
+    /**
+     * Gets the height of the tree.
+     *
+     * @return the height of the tree, zero if there are no shapes
+     */
+    public int getTreeHeight() {
+        return tree.getHeight();
+    }
+
+    /**
+     * Sets the broad phase method shapes, the tree is built in one top-down pass
+     * (see {@link FlatAabbTree#build(IShape[], int, int[])}).
+     *
+     * @param shapes the shapes among which collisions will be calculated
+     */
+    @Override
+    public void setShapes(Set<IShape> shapes) {
+        // The passed set may be the view of the current shapes, so it is copied before clearing
+        final List<IShape> newShapes = new ArrayList<>(shapes);
+        clear();
+        addShapes(newShapes);
+    }
+
+    @Override
+    public void addShape(IShape shape) {
+        super.addShape(shape);
+        if (getLeaf(shape) == -1) {
+            putLeaf(shape, tree.insertLeaf(shape));
+        }
+    }
+
+    /**
+     * Adds the shapes to the tree. If the number of shapes is large compared with the tree size, the whole
+     * tree is rebuilt in one top-down pass, which is much faster than inserting the leaves one by one.
+     *
+     * @param shapes the shapes to be added
+     */
+    @Override
+    public void addShapes(Collection<IShape> shapes) {
+        final int sizeBefore = this.shapes.size();
+        this.shapes.addAll(shapes);
+        final int addedCount = this.shapes.size() - sizeBefore;
+        if (addedCount >= REBUILD_FRACTION * this.shapes.size()) {
+            rebuildTree();
+        } else {
+            for (IShape shape : shapes) {
+                if (getLeaf(shape) == -1) {
+                    putLeaf(shape, tree.insertLeaf(shape));
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(IShape shape) {
+        boolean removed = super.remove(shape);
+        if (removed) {
+            tree.removeLeaf(removeLeaf(shape));
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the shapes from the tree. If the number of removed shapes is large compared with the tree size,
+     * the tree is rebuilt from the remaining shapes in one top-down pass.
+     *
+     * @param shapes the shapes to be removed from this broad phase method, if present
+     * @return {@code true} if this broad phase method contained any of the specified shapes, otherwise {@code false}
+     */
+    @Override
+    public boolean removeShapes(Collection<IShape> shapes) {
+        final int sizeBefore = this.shapes.size();
+        int removedCount = 0;
+        for (IShape shape : shapes) {
+            if (this.shapes.contains(shape)) {
+                removedCount++;
+            }
+        }
+        if (removedCount >= REBUILD_FRACTION * sizeBefore) {
+            this.shapes.removeAll(shapes);
+            rebuildTree();
+        } else {
+            for (IShape shape : shapes) {
+                remove(shape);
+            }
+        }
+        return removedCount != 0;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        clearLeaves();
+        tree.clear();
+    }
+
+    @Override
+    public FlatAabbTreeMethod newInstance() {
+        FlatAabbTreeMethod flatAabbTreeMethod = new FlatAabbTreeMethod();
+        flatAabbTreeMethod.setEnlargedAabbCoefficient(getEnlargedAabbCoefficient());
+        flatAabbTreeMethod.setDisplacementPredictionTime(getDisplacementPredictionTime());
+        flatAabbTreeMethod.setShapes(shapes);
+        return flatAabbTreeMethod;
+    }
+
+    @Override
+    protected void domesticCalculateAabbCollisions(PairBuffer collisions) {
+        reinsertedLeafCount = tree.updateTree();
+        tree.calculateAabbCollisions(collisions);
+    }
+
+    @Override
+    protected void domesticCalculateAabbCollisions(Collection<IShape> movedShapes, PairBuffer collisions) {
+        reinsertedLeafCount = 0;
+        for (IShape shape : movedShapes) {
+            final int leaf = getLeaf(shape);
+            if (leaf != -1 && tree.moveLeaf(leaf)) {
+                reinsertedLeafCount++;
+            }
+        }
+        tree.calculateAabbCollisions(collisions);
+    }
+
+    /**
+     * Updates the persistent set of overlapping pairs when only the passed shapes have been moved. Only
+     * the leaves of the moved shapes are updated and only the moved shapes are searched in the tree, the pairs
+     * of other shapes are kept as is, because their overlapping can't change.
+     *
+     * @param movedShapes the shapes which have been moved or rotated since the previous call
+     */
+    @Override
+    protected void domesticCalculateAabbCollisionChanges(Collection<IShape> movedShapes) {
+        movedShapesPairs.clear();
+        nextPairs.clear();
+        reinsertedLeafCount = 0;
+        if (movedLeaves.length < tree.getNodeCapacity()) {
+            movedLeaves = Arrays.copyOf(movedLeaves, 2 * tree.getNodeCapacity());
+        }
+        for (IShape shape : movedShapes) {
+            final int leaf = getLeaf(shape);
+            if (leaf != -1 && !movedLeaves[leaf]) {
+                movedLeaves[leaf] = true;
+                if (tree.moveLeaf(leaf)) {
+                    reinsertedLeafCount++;
+                }
+            }
+        }
+        for (IShape shape : movedShapes) {
+            if (getLeaf(shape) != -1) {
+                tree.calculateAabbCollisions(shape, movedShapesPairs);
+            }
+        }
+
+        // The pairs of the moved shapes are replaced by the found ones, the pairs of the removed shapes are ended
+        for (int i = 0; i < pairs.size(); i++) {
+            final IShape first = pairs.getFirst(i);
+            final IShape second = pairs.getSecond(i);
+            final int firstLeaf = getLeaf(first);
+            final int secondLeaf = getLeaf(second);
+            if (firstLeaf == -1 || secondLeaf == -1
+                    || ((movedLeaves[firstLeaf] || movedLeaves[secondLeaf])
+                    && !movedShapesPairs.contains(first, second))) {
+                endedPairs.add(first, second);
+            } else {
+                nextPairs.add(first, second);
+            }
+        }
+        for (int i = 0; i < movedShapesPairs.size(); i++) {
+            if (nextPairs.add(movedShapesPairs.getFirst(i), movedShapesPairs.getSecond(i))) {
+                beganPairs.add(movedShapesPairs.getFirst(i), movedShapesPairs.getSecond(i));
+            }
+        }
+        PairBuffer previousPairs = pairs;
+        pairs = nextPairs;
+        nextPairs = previousPairs;
+
+        for (IShape shape : movedShapes) {
+            final int leaf = getLeaf(shape);
+            if (leaf != -1) {
+                movedLeaves[leaf] = false;
+            }
+        }
+    }
+
+    private void rebuildTree() {
+        final int count = shapes.size();
+        buildShapes = shapes.toArray(buildShapes);
+        if (buildLeaves.length < count) {
+            buildLeaves = new int[count];
+        }
+        tree.build(buildShapes, count, buildLeaves);
+        clearLeaves();
+        for (int i = 0; i < count; i++) {
+            putLeaf(buildShapes[i], buildLeaves[i]);
+        }
+        Arrays.fill(buildShapes, null);
+    }
+
+    private int getLeaf(IShape shape) {
+        final int slot = shape.getSlot();
+        if (slot >= 0 && slot < slotShapes.length && slotShapes[slot] == shape) {
+            return slotLeaves[slot] - 1;
+        }
+        if (leaves.isEmpty()) {
+            return -1;
+        }
+        final Integer leaf = leaves.get(shape);
+        return leaf == null ? -1 : leaf;
+    }
+
+    private void putLeaf(IShape shape, int leaf) {
+        final int slot = shape.getSlot();
+        if (slot < 0) {
+            leaves.put(shape, leaf);
+            return;
+        }
+        if (slot >= slotShapes.length) {
+            final int capacity = Math.max(slot + 1, 2 * slotShapes.length);
+            slotShapes = Arrays.copyOf(slotShapes, capacity);
+            slotLeaves = Arrays.copyOf(slotLeaves, capacity);
+        }
+        slotShapes[slot] = shape;
+        slotLeaves[slot] = leaf + 1;
+    }
+
+    private int removeLeaf(IShape shape) {
+        final int slot = shape.getSlot();
+        if (slot >= 0 && slot < slotShapes.length && slotShapes[slot] == shape) {
+            slotShapes[slot] = null;
+            final int leaf = slotLeaves[slot] - 1;
+            slotLeaves[slot] = 0;
+            return leaf;
+        }
+        return leaves.remove(shape);
+    }
+
+    private void clearLeaves() {
+        Arrays.fill(slotShapes, null);
+        Arrays.fill(slotLeaves, 0);
+        leaves.clear();
+    }
+}
@@ -0,0 +1,300 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.shape.Aabb;
+import com.github.introfog.pie.core.shape.IShape;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * The class is a hierarchical grid method that divides space into several grids (levels), the size of the cells
+ * of each next level is twice the size of the cells of the previous level.
+ *
+ * <p>
+ * Each shape is placed in one cell, the cell of the minimum corner of its Aabb in the finest level whose cells
+ * are not smaller than the shape. So the shape can intersect only the shapes from the neighbouring cells of its
+ * own level and of the coarser levels, and the shapes are searched only there. Unlike the
+ * {@link SpatialHashingMethod}, which uses one cell size for all shapes and tends to O(n^2) when the sizes of
+ * the shapes are very different, the method stays near-linear for the scenes which mix tiny and huge shapes.
+ *
+ * <p>
+ * The size of the cells of the finest level is either set by the {@link #setBaseCellSize(float)} method or
+ * calculated every iteration from the smallest shape. The cells are stored in the open addressing hash table
+ * which is filled every iteration a new and doesn't create objects.
+ *
+ * @see AbstractBroadPhase
+ * @see SpatialHashingMethod
+ */
+public class HierarchicalGridMethod extends AbstractBroadPhase {
+    /** The maximal number of levels, the shapes larger than the cells of the last level are placed in it. */
+    private static final int MAX_LEVEL_COUNT = 31;
+
+    /** The cell coordinates are clamped, so the loops over the cell ranges never overflow. */
+    private static final int MAX_CELL_COORDINATE = 1 << 30;
+
+    private static final int EMPTY = -1;
+
+    private float baseCellSize;
+    private boolean fixedBaseCellSize;
+
+    private boolean shapeArrayChanged;
+    private IShape[] shapeArray;
+    private int shapeCount;
+
+    private int[] shapeLevels;
+    private int[] shapeCellX;
+    private int[] shapeCellY;
+    /** The index of the next shape of the same cell, the shapes of a cell form a linked list. */
+    private int[] nextShapes;
+
+    private int[] tableLevels;
+    private int[] tableCellX;
+    private int[] tableCellY;
+    /** The index of the first shape of the cell, {@link #EMPTY} marks an empty table cell. */
+    private int[] tableHeads;
+
+    private final float[] levelCellSizes;
+    private final float[] levelMaxExtents;
+    private int occupiedLevels;
+
+    /**
+     * Instantiates a new {@link HierarchicalGridMethod} instance, the size of the cells of the finest level
+     * is calculated from the smallest shape.
+     */
+    public HierarchicalGridMethod() {
+        shapeArray = new IShape[0];
+        shapeLevels = new int[0];
+        shapeCellX = new int[0];
+        shapeCellY = new int[0];
+        nextShapes = new int[0];
+        tableLevels = new int[0];
+        tableCellX = new int[0];
+        tableCellY = new int[0];
+        tableHeads = new int[0];
+        levelCellSizes = new float[MAX_LEVEL_COUNT];
+        levelMaxExtents = new float[MAX_LEVEL_COUNT];
+    }
+
+    /**
+     * Sets the size of the cells of the finest level.
+     *
+     * @param baseCellSize the size of the cells of the finest level, if not positive, the size will be
+     *                     calculated every iteration from the smallest shape
+     */
+    public void setBaseCellSize(float baseCellSize) {
+        fixedBaseCellSize = baseCellSize > 0;
+        this.baseCellSize = fixedBaseCellSize ? baseCellSize : 0;
+    }
+
+    /**
+     * Gets the size of the cells of the finest level.
+     *
+     * @return the size of the cells of the finest level, if the size isn't set, the size calculated
+     * at the previous iteration
+     */
+    public float getBaseCellSize() {
+        return baseCellSize;
+    }
+
+    @Override
+    public void setShapes(Set<IShape> shapes) {
+        super.setShapes(shapes);
+        shapeArrayChanged = true;
+    }
+
+    @Override
+    public void addShape(IShape shape) {
+        super.addShape(shape);
+        shapeArrayChanged = true;
+    }
+
+    @Override
+    public void addShapes(Collection<IShape> shapes) {
+        this.shapes.addAll(shapes);
+        shapeArrayChanged = true;
+    }
+
+    @Override
+    public boolean remove(IShape shape) {
+        boolean removed = super.remove(shape);
+        shapeArrayChanged |= removed;
+        return removed;
+    }
+
+    @Override
+    public boolean removeShapes(Collection<IShape> shapes) {
+        boolean removed = this.shapes.removeAll(shapes);
+        shapeArrayChanged |= removed;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        shapeArrayChanged = true;
+    }
+
+    @Override
+    public HierarchicalGridMethod newInstance() {
+        HierarchicalGridMethod hierarchicalGridMethod = new HierarchicalGridMethod();
+        if (fixedBaseCellSize) {
+            hierarchicalGridMethod.setBaseCellSize(baseCellSize);
+        }
+        hierarchicalGridMethod.setShapes(shapes);
+        return hierarchicalGridMethod;
+    }
+
+    @Override
+    protected void domesticCalculateAabbCollisions(PairBuffer collisions) {
+        // The complexity is O(n * l), where l is the number of occupied levels
+        prepareArrays();
+        if (shapeCount < 2) {
+            return;
+        }
+        calculateLevelCellSizes();
+        fillCells();
+
+        for (int shape = 0; shape < shapeCount; shape++) {
+            final int shapeLevel = shapeLevels[shape];
+            for (int level = shapeLevel; level < MAX_LEVEL_COUNT; level++) {
+                if ((occupiedLevels & (1 << level)) != 0) {
+                    findIntersections(shape, level, level == shapeLevel, collisions);
+                }
+            }
+        }
+    }
+
+    private void prepareArrays() {
+        if (shapeArrayChanged) {
+            shapeArray = shapes.toArray(new IShape[]{});
+            shapeArrayChanged = false;
+        }
+        shapeCount = shapes.size();
+        if (shapeLevels.length < shapeCount) {
+            shapeLevels = new int[shapeCount];
+            shapeCellX = new int[shapeCount];
+            shapeCellY = new int[shapeCount];
+            nextShapes = new int[shapeCount];
+        }
+        // The load factor of the table is kept not greater than 0.5
+        final int tableLength = Integer.highestOneBit(Math.max(1, 2 * shapeCount - 1)) << 1;
+        if (tableHeads.length < tableLength) {
+            tableLevels = new int[tableLength];
+            tableCellX = new int[tableLength];
+            tableCellY = new int[tableLength];
+            tableHeads = new int[tableLength];
+        }
+    }
+
+    private void calculateLevelCellSizes() {
+        if (!fixedBaseCellSize) {
+            float minExtent = Float.MAX_VALUE;
+            for (int i = 0; i < shapeCount; i++) {
+                final float extent = HierarchicalGridMethod.getExtent(shapeArray[i].getAabb());
+                if (extent > 0 && extent < minExtent) {
+                    minExtent = extent;
+                }
+            }
+            baseCellSize = minExtent == Float.MAX_VALUE ? 1 : minExtent;
+        }
+        float cellSize = baseCellSize;
+        for (int level = 0; level < MAX_LEVEL_COUNT; level++) {
+            levelCellSizes[level] = cellSize;
+            cellSize *= 2;
+        }
+    }
+
+    private void fillCells() {
+        Arrays.fill(tableHeads, EMPTY);
+        Arrays.fill(levelMaxExtents, 0);
+        occupiedLevels = 0;
+        for (int shape = 0; shape < shapeCount; shape++) {
+            final Aabb aabb = shapeArray[shape].getAabb();
+            final float extent = HierarchicalGridMethod.getExtent(aabb);
+            int level = 0;
+            while (level < MAX_LEVEL_COUNT - 1 && levelCellSizes[level] < extent) {
+                level++;
+            }
+            shapeLevels[shape] = level;
+            shapeCellX[shape] = getCellCoordinate(aabb.min.x, level);
+            shapeCellY[shape] = getCellCoordinate(aabb.min.y, level);
+            levelMaxExtents[level] = Math.max(levelMaxExtents[level], extent);
+            occupiedLevels |= 1 << level;
+
+            final int tableCell = findTableCell(level, shapeCellX[shape], shapeCellY[shape]);
+            if (tableHeads[tableCell] == EMPTY) {
+                tableLevels[tableCell] = level;
+                tableCellX[tableCell] = shapeCellX[shape];
+                tableCellY[tableCell] = shapeCellY[shape];
+            }
+            nextShapes[shape] = tableHeads[tableCell];
+            tableHeads[tableCell] = shape;
+        }
+    }
+
+    /**
+     * Finds the shapes of the level which intersect the shape. The shapes of the level are placed in the cells
+     * of the minimum corners of their Aabbs and aren't larger than the max extent of the level, so only the cells
+     * from the minimum of the shape Aabb decreased by the max extent to the maximum of the shape Aabb are checked.
+     */
+    private void findIntersections(int shape, int level, boolean sameLevel, PairBuffer collisions) {
+        final Aabb aabb = shapeArray[shape].getAabb();
+        final float maxExtent = levelMaxExtents[level];
+        final int minCellX = getCellCoordinate(aabb.min.x - maxExtent, level);
+        final int minCellY = getCellCoordinate(aabb.min.y - maxExtent, level);
+        final int maxCellX = getCellCoordinate(aabb.max.x, level);
+        final int maxCellY = getCellCoordinate(aabb.max.y, level);
+        for (int x = minCellX; x <= maxCellX; x++) {
+            for (int y = minCellY; y <= maxCellY; y++) {
+                final int tableCell = findTableCell(level, x, y);
+                for (int other = tableHeads[tableCell]; other != EMPTY; other = nextShapes[other]) {
+                    // The pair of shapes of the same level is checked only by the shape with the smaller index
+                    if ((!sameLevel || other > shape) && Aabb.isIntersected(aabb, shapeArray[other].getAabb())) {
+                        collisions.add(shapeArray[shape], shapeArray[other]);
+                    }
+                }
+            }
+        }
+    }
+
+    private int findTableCell(int level, int x, int y) {
+        final int mask = tableHeads.length - 1;
+        int tableCell = HierarchicalGridMethod.getTableCell(level, x, y, mask);
+        while (tableHeads[tableCell] != EMPTY && (tableLevels[tableCell] != level || tableCellX[tableCell] != x
+                || tableCellY[tableCell] != y)) {
+            tableCell = (tableCell + 1) & mask;
+        }
+        return tableCell;
+    }
+
+    private int getCellCoordinate(float value, int level) {
+        final double coordinate = Math.floor(value / levelCellSizes[level]);
+        return (int) Math.max(-MAX_CELL_COORDINATE, Math.min(MAX_CELL_COORDINATE, coordinate));
+    }
+
+    private static float getExtent(Aabb aabb) {
+        return Math.max(aabb.max.x - aabb.min.x, aabb.max.y - aabb.min.y);
+    }
+
+    private static int getTableCell(int level, int x, int y, int mask) {
+        final long hash = (((long) x * 73856093) ^ ((long) y * 19349663) ^ ((long) level * 83492791))
+                * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> Integer.SIZE)) & mask;
+    }
+}
@@ -18,7 +18,9 @@ package com.github.introfog.pie.core.collisions.broadphase;
 import com.github.introfog.pie.core.shape.Aabb;
 import com.github.introfog.pie.core.shape.IShape;
 import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.ParallelExecutor;
 
+import java.util.Collection;
 import java.util.Set;
 
 /**
@@ -30,6 +32,15 @@ import java.util.Set;
  * collide with each other. The output of the broad phase is the potentially colliding set of pairs of shapes
  * (the {@link ShapePair} set).
  *
+ * <p>
+ * Note that the methods which track the persistent set of overlapping pairs ({@link #calculateAabbCollisionChanges()},
+ * {@link #calculateAabbCollisionChanges(Collection)}, {@link #getPairs()}, {@link #getBeganPairs()} and
+ * {@link #getEndedPairs()}) have no default implementations, because the pairs are the state of the broad phase
+ * method and the interface can't keep it. So the implementations written before these methods were added must
+ * implement them to be used by the {@link com.github.introfog.pie.core.World}. The simplest way is to extend
+ * the {@link AbstractBroadPhase}, which keeps the pairs and compares them with the result of
+ * the {@link #calculateAabbCollisions(PairBuffer)} method, otherwise the same comparison should be implemented.
+ *
  * @see Aabb
  */
 public interface IBroadPhase {
@@ -55,6 +66,37 @@ public interface IBroadPhase {
      */
     boolean remove(IShape shape);
 
+    /**
+     * Adds the shapes to broad phase method.
+     *
+     * <p>
+     * By default the shapes are added one by one, the broad phase methods which are able to build their
+     * structures for many shapes in one pass override this method.
+     *
+     * @param shapes the shapes to be added
+     */
+    default void addShapes(Collection<IShape> shapes) {
+        shapes.forEach(this::addShape);
+    }
+
+    /**
+     * Removes the shapes from broad phase method.
+     *
+     * <p>
+     * By default the shapes are removed one by one, the broad phase methods which are able to rebuild their
+     * structures for many shapes in one pass override this method.
+     *
+     * @param shapes the shapes to be removed from this broad phase method, if present
+     * @return {@code true} if this broad phase method contained any of the specified shapes, otherwise {@code false}
+     */
+    default boolean removeShapes(Collection<IShape> shapes) {
+        boolean removed = false;
+        for (IShape shape : shapes) {
+            removed |= remove(shape);
+        }
+        return removed;
+    }
+
     /**
      * Clears all shapes from broad phase method.
      */
@@ -67,6 +109,18 @@ public interface IBroadPhase {
      */
     Set<IShape> getUnmodifiableShapes();
 
+    /**
+     * Sets the executor which is used by the broad phase method for the work that can be done in parallel,
+     * for example for updating the shape Aabbs.
+     *
+     * <p>
+     * By default the executor is ignored and the broad phase method works sequentially.
+     *
+     * @param parallelExecutor the parallel executor
+     */
+    default void setParallelExecutor(ParallelExecutor parallelExecutor) {
+    }
+
     /**
      * Create a new instance of corresponding broad phase method.
      * New instance is a deep copy of original broad phase method.
@@ -82,4 +136,107 @@ public interface IBroadPhase {
      * a unique shape pair and the Aabb of those shapes intersect
      */
     Set<ShapePair> calculateAabbCollisions();
+
+    /**
+     * Calculates the shape Aabb collisions when only the passed shapes have been moved since the previous call.
+     *
+     * <p>
+     * The broad phase method can use the passed shapes to update only the changed part of its structures.
+     * By default all shapes are considered moved and the {@link #calculateAabbCollisions()} method is called.
+     *
+     * @param movedShapes the shapes which have been moved or rotated since the previous call
+     * @return the {@link ShapePair} set in which each item represents
+     * a unique shape pair and the Aabb of those shapes intersect
+     */
+    default Set<ShapePair> calculateAabbCollisions(Collection<IShape> movedShapes) {
+        return calculateAabbCollisions();
+    }
+
+    /**
+     * Calculates the shape Aabb collisions and writes the pairs to the passed buffer instead of creating
+     * the {@link ShapePair} set, so the buffer can be reused between calls without allocations.
+     *
+     * <p>
+     * By default the result of the {@link #calculateAabbCollisions()} method is copied to the buffer.
+     *
+     * @param collisions the buffer which is cleared and filled with the pairs of intersected Aabbs
+     */
+    default void calculateAabbCollisions(PairBuffer collisions) {
+        collisions.clear();
+        for (ShapePair pair : calculateAabbCollisions()) {
+            collisions.add(pair.getFirst(), pair.getSecond());
+        }
+    }
+
+    /**
+     * Calculates the shape Aabb collisions when only the passed shapes have been moved since the previous call and
+     * writes the pairs to the passed buffer (see {@link #calculateAabbCollisions(PairBuffer)}).
+     *
+     * <p>
+     * By default the result of the {@link #calculateAabbCollisions(Collection)} method is copied to the buffer.
+     *
+     * @param movedShapes the shapes which have been moved or rotated since the previous call
+     * @param collisions the buffer which is cleared and filled with the pairs of intersected Aabbs
+     */
+    default void calculateAabbCollisions(Collection<IShape> movedShapes, PairBuffer collisions) {
+        collisions.clear();
+        for (ShapePair pair : calculateAabbCollisions(movedShapes)) {
+            collisions.add(pair.getFirst(), pair.getSecond());
+        }
+    }
+
+    /**
+     * Calculates the shape Aabb collisions and updates the persistent set of overlapping pairs
+     * (see {@link #getPairs()}). The pairs which have begun or ended overlapping since
+     * the previous call are reported by the {@link #getBeganPairs()} and {@link #getEndedPairs()} methods.
+     */
+    void calculateAabbCollisionChanges();
+
+    /**
+     * Calculates the shape Aabb collisions when only the passed shapes have been moved since the previous call
+     * and updates the persistent set of overlapping pairs. The method is the same as
+     * {@link #calculateAabbCollisionChanges()}, but the broad phase method can use the passed shapes to update only
+     * the pairs of moved shapes, because the overlapping of other shapes can't change.
+     *
+     * <p>
+     * Note that the shapes which have been added to the broad phase method since the previous call
+     * must be passed as moved.
+     *
+     * @param movedShapes the shapes which have been moved or rotated since the previous call
+     */
+    void calculateAabbCollisionChanges(Collection<IShape> movedShapes);
+
+    /**
+     * Gets the persistent set of the overlapping pairs which have been found by the last call of
+     * the {@link #calculateAabbCollisionChanges()} method.
+     *
+     * <p>
+     * Note that the buffer is owned by the broad phase method, it must not be modified and
+     * it is reused by the next call of the {@link #calculateAabbCollisionChanges()} method.
+     *
+     * @return the buffer of overlapping pairs
+     */
+    PairBuffer getPairs();
+
+    /**
+     * Gets the pairs which have begun overlapping during the last call of
+     * the {@link #calculateAabbCollisionChanges()} method.
+     *
+     * <p>
+     * Note that the buffer is owned by the broad phase method and must not be modified.
+     *
+     * @return the buffer of begun pairs
+     */
+    PairBuffer getBeganPairs();
+
+    /**
+     * Gets the pairs which have ended overlapping during the last call of
+     * the {@link #calculateAabbCollisionChanges()} method, including the pairs of the removed shapes.
+     *
+     * <p>
+     * Note that the buffer is owned by the broad phase method and must not be modified.
+     *
+     * @return the buffer of ended pairs
+     */
+    PairBuffer getEndedPairs();
 }
@@ -0,0 +1,622 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.shape.Aabb;
+import com.github.introfog.pie.core.shape.IShape;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The class is an incremental sweep and prune method that keeps the sorted endpoints (the minimum and
+ * the maximum) of the shape Aabbs on both axes between the calculations of collisions.
+ *
+ * <p>
+ * When the Aabb of a shape changes, its endpoints are moved to the new places with the insertion sort.
+ * Each swap of the minimum endpoint of one shape with the maximum endpoint of another shape means that
+ * the projections of these shapes on the axis have begun or ended overlapping, so the overlapping pairs are
+ * updated on the swaps only. The shapes move a little between the steps, so the endpoints are almost sorted and
+ * the calculation of collisions costs O(n + s), where s is the number of swaps. If the moved shapes are known
+ * (see {@link #calculateAabbCollisions(Collection)}), only their endpoints are updated.
+ *
+ * <p>
+ * This method is effective when have a large number of slowly moving shapes.
+ *
+ * @see AbstractBroadPhase
+ * @see SweepAndPruneMethod
+ */
+public class IncrementalSweepAndPruneMethod extends AbstractBroadPhase {
+    private static final int AXIS_COUNT = 2;
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * The endpoints are sorted from scratch if the number of added or removed shapes is not less than
+     * this part of the number of shapes, otherwise the endpoints are inserted or removed one by one.
+     */
+    private static final float REBUILD_FRACTION = 0.25f;
+
+    /**
+     * The minimal number of touched pairs after which the touched pairs are no longer tracked and
+     * the persistent pairs are updated by comparing them with all overlapping pairs.
+     */
+    private static final int MIN_TOUCHED_PAIRS_LIMIT = 64;
+
+    private final Map<IShape, Integer> proxies;
+    private IShape[] proxyShapes;
+    private int proxyCount;
+
+    /** The sorted endpoint values for each axis. */
+    private final float[][] endpointValues;
+    /** The endpoint handles for each axis, the handle is the proxy index shifted left, the lowest bit marks max. */
+    private final int[][] endpointHandles;
+    /** The indices of the minimum endpoints of the proxies for each axis. */
+    private final int[][] minIndices;
+    /** The indices of the maximum endpoints of the proxies for each axis. */
+    private final int[][] maxIndices;
+    /** The number of overlaps of each proxy, so the overlaps of the removed proxy are searched until all found. */
+    private int[] overlapCounts;
+    private boolean[] removedProxies;
+    /** The new indices of the last proxies which take the places of the removed ones. */
+    private int[] movedProxyIndices;
+
+    /** The pairs whose projections overlap on both axes, the set is changed on the swaps of the endpoints. */
+    private final PairBuffer overlaps;
+    /** The pairs which have been added to or removed from the overlaps since the last update of the pairs. */
+    private final PairBuffer touchedPairs;
+    private boolean touchedPairsOverflowed;
+
+    /**
+     * Instantiates a new {@link IncrementalSweepAndPruneMethod} instance.
+     */
+    public IncrementalSweepAndPruneMethod() {
+        proxies = new HashMap<>();
+        proxyShapes = new IShape[MIN_CAPACITY];
+        endpointValues = new float[AXIS_COUNT][2 * MIN_CAPACITY];
+        endpointHandles = new int[AXIS_COUNT][2 * MIN_CAPACITY];
+        minIndices = new int[AXIS_COUNT][MIN_CAPACITY];
+        maxIndices = new int[AXIS_COUNT][MIN_CAPACITY];
+        overlapCounts = new int[MIN_CAPACITY];
+        removedProxies = new boolean[MIN_CAPACITY];
+        movedProxyIndices = new int[MIN_CAPACITY];
+        overlaps = new PairBuffer();
+        touchedPairs = new PairBuffer();
+    }
+
+    /**
+     * Sets the broad phase method shapes, the endpoints are sorted in one pass
+     * (see {@link #addShapes(Collection)}).
+     *
+     * @param shapes the shapes among which collisions will be calculated
+     */
+    @Override
+    public void setShapes(Set<IShape> shapes) {
+        // The passed set may be the view of the current shapes, so it is copied before clearing
+        final List<IShape> newShapes = new ArrayList<>(shapes);
+        clear();
+        addShapes(newShapes);
+    }
+
+    @Override
+    public void addShape(IShape shape) {
+        super.addShape(shape);
+        if (proxies.containsKey(shape)) {
+            return;
+        }
+        insertProxy(appendProxy(shape));
+    }
+
+    /**
+     * Adds the shapes to the endpoint arrays. If the number of shapes is large compared with the number of
+     * already added shapes, the endpoints are sorted and the overlapping pairs are found from scratch, otherwise
+     * the endpoints are inserted one by one.
+     *
+     * @param shapes the shapes to be added
+     */
+    @Override
+    public void addShapes(Collection<IShape> shapes) {
+        final int firstNewProxy = proxyCount;
+        for (IShape shape : shapes) {
+            super.addShape(shape);
+            if (!proxies.containsKey(shape)) {
+                appendProxy(shape);
+            }
+        }
+        final int addedCount = proxyCount - firstNewProxy;
+        if (addedCount == 0) {
+            return;
+        }
+        if (addedCount >= REBUILD_FRACTION * proxyCount) {
+            rebuild();
+        } else {
+            for (int proxy = firstNewProxy; proxy < proxyCount; proxy++) {
+                insertProxy(proxy);
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(IShape shape) {
+        boolean removed = super.remove(shape);
+        if (removed) {
+            removeOverlaps(markRemoved(shape));
+            removeMarkedProxies(1);
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the shapes from the endpoint arrays. If the number of removed shapes is large compared with
+     * the number of shapes, the endpoints of the remaining shapes are sorted and the overlapping pairs are found
+     * from scratch, otherwise the overlaps of the removed shapes are removed one by one and the endpoint arrays
+     * are compacted once for all removed shapes.
+     *
+     * @param shapes the shapes to be removed from this broad phase method, if present
+     * @return {@code true} if this broad phase method contained any of the specified shapes, otherwise {@code false}
+     */
+    @Override
+    public boolean removeShapes(Collection<IShape> shapes) {
+        final int sizeBefore = proxyCount;
+        List<IShape> removedShapes = new ArrayList<>();
+        for (IShape shape : shapes) {
+            if (super.remove(shape)) {
+                removedShapes.add(shape);
+            }
+        }
+        if (removedShapes.size() >= REBUILD_FRACTION * sizeBefore) {
+            for (IShape shape : removedShapes) {
+                proxyShapes[proxies.remove(shape)] = null;
+            }
+            final IShape[] previousShapes = Arrays.copyOf(proxyShapes, sizeBefore);
+            Arrays.fill(proxyShapes, 0, sizeBefore, null);
+            proxyCount = 0;
+            for (IShape shape : previousShapes) {
+                if (shape != null) {
+                    appendProxy(shape);
+                }
+            }
+            rebuild();
+        } else if (!removedShapes.isEmpty()) {
+            for (IShape shape : removedShapes) {
+                removeOverlaps(markRemoved(shape));
+            }
+            removeMarkedProxies(removedShapes.size());
+        }
+        return !removedShapes.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        for (int i = 0; i < overlaps.size(); i++) {
+            touch(overlaps.getFirst(i), overlaps.getSecond(i));
+        }
+        overlaps.clear();
+        proxies.clear();
+        Arrays.fill(proxyShapes, 0, proxyCount, null);
+        Arrays.fill(overlapCounts, 0, proxyCount, 0);
+        proxyCount = 0;
+    }
+
+    @Override
+    public IncrementalSweepAndPruneMethod newInstance() {
+        IncrementalSweepAndPruneMethod sweepAndPruneMethod = new IncrementalSweepAndPruneMethod();
+        sweepAndPruneMethod.setShapes(shapes);
+        return sweepAndPruneMethod;
+    }
+
+    @Override
+    protected void domesticCalculateAabbCollisions(PairBuffer collisions) {
+        updateProxies();
+        collisions.addAll(overlaps);
+    }
+
+    @Override
+    protected void domesticCalculateAabbCollisions(Collection<IShape> movedShapes, PairBuffer collisions) {
+        updateProxies(movedShapes);
+        collisions.addAll(overlaps);
+    }
+
+    /**
+     * Updates the persistent set of overlapping pairs. The endpoints of all shapes are updated and only
+     * the pairs touched by the swaps of the endpoints are compared with the {@link #pairs}.
+     */
+    @Override
+    protected void domesticCalculateAabbCollisionChanges() {
+        if (touchedPairsOverflowed) {
+            super.domesticCalculateAabbCollisionChanges();
+            resetTouchedPairs();
+        } else {
+            updateProxies();
+            applyTouchedPairs();
+        }
+    }
+
+    /**
+     * Updates the persistent set of overlapping pairs when only the passed shapes have been moved. Only
+     * the endpoints of the moved shapes are updated and only the pairs touched by the swaps of the endpoints are
+     * compared with the {@link #pairs}.
+     *
+     * @param movedShapes the shapes which have been moved or rotated since the previous call
+     */
+    @Override
+    protected void domesticCalculateAabbCollisionChanges(Collection<IShape> movedShapes) {
+        if (touchedPairsOverflowed) {
+            super.domesticCalculateAabbCollisionChanges(movedShapes);
+            resetTouchedPairs();
+        } else {
+            updateProxies(movedShapes);
+            applyTouchedPairs();
+        }
+    }
+
+    private void updateProxies() {
+        for (int proxy = 0; proxy < proxyCount; proxy++) {
+            updateProxy(proxy);
+        }
+    }
+
+    private void updateProxies(Collection<IShape> movedShapes) {
+        for (IShape shape : movedShapes) {
+            Integer proxy = proxies.get(shape);
+            if (proxy != null) {
+                updateProxy(proxy);
+            }
+        }
+    }
+
+    private void updateProxy(int proxy) {
+        final Aabb aabb = proxyShapes[proxy].getAabb();
+        for (int axis = 0; axis < AXIS_COUNT; axis++) {
+            final float min = IncrementalSweepAndPruneMethod.getMin(aabb, axis);
+            final float max = IncrementalSweepAndPruneMethod.getMax(aabb, axis);
+            // The endpoints are moved in such order that the minimum never passes the maximum of the same proxy
+            if (min < endpointValues[axis][minIndices[axis][proxy]]) {
+                updateEndpoint(axis, minIndices[axis][proxy], min);
+                updateEndpoint(axis, maxIndices[axis][proxy], max);
+            } else {
+                updateEndpoint(axis, maxIndices[axis][proxy], max);
+                updateEndpoint(axis, minIndices[axis][proxy], min);
+            }
+        }
+    }
+
+    private void updateEndpoint(int axis, int index, float value) {
+        final float previousValue = endpointValues[axis][index];
+        endpointValues[axis][index] = value;
+        if (value < previousValue) {
+            sortDown(axis, index);
+        } else if (value > previousValue) {
+            sortUp(axis, index);
+        }
+    }
+
+    private void sortDown(int axis, int index) {
+        final float[] values = endpointValues[axis];
+        final int[] handles = endpointHandles[axis];
+        final float value = values[index];
+        final int handle = handles[index];
+        while (index > 0
+                && IncrementalSweepAndPruneMethod.isLess(value, handle, values[index - 1], handles[index - 1])) {
+            final int otherHandle = handles[index - 1];
+            setEndpoint(axis, index, values[index - 1], otherHandle);
+            index--;
+            setEndpoint(axis, index, value, handle);
+            if (IncrementalSweepAndPruneMethod.isMax(handle) != IncrementalSweepAndPruneMethod.isMax(otherHandle)) {
+                if (IncrementalSweepAndPruneMethod.isMax(handle)) {
+                    // The maximum has passed the minimum of the other proxy, the projections don't overlap anymore
+                    removeOverlap(handle >>> 1, otherHandle >>> 1);
+                } else {
+                    addOverlapIfOverlapped(handle >>> 1, otherHandle >>> 1);
+                }
+            }
+        }
+    }
+
+    private void sortUp(int axis, int index) {
+        final float[] values = endpointValues[axis];
+        final int[] handles = endpointHandles[axis];
+        final float value = values[index];
+        final int handle = handles[index];
+        final int endpointCount = 2 * proxyCount;
+        while (index < endpointCount - 1
+                && IncrementalSweepAndPruneMethod.isLess(values[index + 1], handles[index + 1], value, handle)) {
+            final int otherHandle = handles[index + 1];
+            setEndpoint(axis, index, values[index + 1], otherHandle);
+            index++;
+            setEndpoint(axis, index, value, handle);
+            if (IncrementalSweepAndPruneMethod.isMax(handle) != IncrementalSweepAndPruneMethod.isMax(otherHandle)) {
+                if (IncrementalSweepAndPruneMethod.isMax(handle)) {
+                    addOverlapIfOverlapped(handle >>> 1, otherHandle >>> 1);
+                } else {
+                    // The minimum has passed the maximum of the other proxy, the projections don't overlap anymore
+                    removeOverlap(handle >>> 1, otherHandle >>> 1);
+                }
+            }
+        }
+    }
+
+    private void setEndpoint(int axis, int index, float value, int handle) {
+        endpointValues[axis][index] = value;
+        endpointHandles[axis][index] = handle;
+        if (IncrementalSweepAndPruneMethod.isMax(handle)) {
+            maxIndices[axis][handle >>> 1] = index;
+        } else {
+            minIndices[axis][handle >>> 1] = index;
+        }
+    }
+
+    private void addOverlapIfOverlapped(int proxy, int otherProxy) {
+        for (int axis = 0; axis < AXIS_COUNT; axis++) {
+            if (!isOverlapped(axis, proxy, otherProxy)) {
+                return;
+            }
+        }
+        addOverlap(proxy, otherProxy);
+    }
+
+    private void addOverlap(int proxy, int otherProxy) {
+        if (overlaps.add(proxyShapes[proxy], proxyShapes[otherProxy])) {
+            overlapCounts[proxy]++;
+            overlapCounts[otherProxy]++;
+            touch(proxyShapes[proxy], proxyShapes[otherProxy]);
+        }
+    }
+
+    private boolean removeOverlap(int proxy, int otherProxy) {
+        if (overlaps.remove(proxyShapes[proxy], proxyShapes[otherProxy])) {
+            overlapCounts[proxy]--;
+            overlapCounts[otherProxy]--;
+            touch(proxyShapes[proxy], proxyShapes[otherProxy]);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isOverlapped(int axis, int proxy, int otherProxy) {
+        // The minimum is placed before the maximum with the same value, so touching projections overlap
+        return minIndices[axis][proxy] < maxIndices[axis][otherProxy]
+                && minIndices[axis][otherProxy] < maxIndices[axis][proxy];
+    }
+
+    private void touch(IShape a, IShape b) {
+        if (touchedPairsOverflowed) {
+            return;
+        }
+        touchedPairs.add(a, b);
+        if (touchedPairs.size() > MIN_TOUCHED_PAIRS_LIMIT + 2 * (overlaps.size() + proxyCount)) {
+            // Comparing all overlapping pairs with the persistent pairs is cheaper now
+            touchedPairsOverflowed = true;
+            touchedPairs.clear();
+        }
+    }
+
+    private void applyTouchedPairs() {
+        for (int i = 0; i < touchedPairs.size(); i++) {
+            final IShape first = touchedPairs.getFirst(i);
+            final IShape second = touchedPairs.getSecond(i);
+            if (overlaps.contains(first, second)) {
+                if (pairs.add(first, second)) {
+                    beganPairs.add(first, second);
+                }
+            } else if (pairs.remove(first, second)) {
+                endedPairs.add(first, second);
+            }
+        }
+        touchedPairs.clear();
+    }
+
+    private void resetTouchedPairs() {
+        touchedPairs.clear();
+        touchedPairsOverflowed = false;
+    }
+
+    /**
+     * Appends the proxy of the shape with the endpoints placed after all endpoints of other proxies,
+     * so the proxy doesn't overlap any other proxy until its endpoints are sorted.
+     */
+    private int appendProxy(IShape shape) {
+        ensureCapacity(proxyCount + 1);
+        final int proxy = proxyCount++;
+        proxyShapes[proxy] = shape;
+        proxies.put(shape, proxy);
+        overlapCounts[proxy] = 0;
+        final Aabb aabb = shape.getAabb();
+        for (int axis = 0; axis < AXIS_COUNT; axis++) {
+            setEndpoint(axis, 2 * proxy, IncrementalSweepAndPruneMethod.getMin(aabb, axis), proxy << 1);
+            setEndpoint(axis, 2 * proxy + 1, IncrementalSweepAndPruneMethod.getMax(aabb, axis), (proxy << 1) | 1);
+        }
+        return proxy;
+    }
+
+    private void insertProxy(int proxy) {
+        for (int axis = 0; axis < AXIS_COUNT; axis++) {
+            sortDown(axis, minIndices[axis][proxy]);
+            sortDown(axis, maxIndices[axis][proxy]);
+        }
+    }
+
+    private int markRemoved(IShape shape) {
+        final int proxy = proxies.remove(shape);
+        removedProxies[proxy] = true;
+        return proxy;
+    }
+
+    /**
+     * Removes the overlaps of the proxy. The overlapping proxy either has an endpoint inside the projection of
+     * the proxy on the x-axis or its projection contains the projection of the proxy, so only the projection of
+     * the proxy is walked and then the endpoints before it until all overlaps of the proxy are found.
+     */
+    private void removeOverlaps(int proxy) {
+        final int[] handles = endpointHandles[0];
+        final int minIndex = minIndices[0][proxy];
+        final int maxIndex = maxIndices[0][proxy];
+        for (int i = minIndex + 1; i < maxIndex && overlapCounts[proxy] > 0; i++) {
+            removeOverlap(proxy, handles[i] >>> 1);
+        }
+        for (int i = minIndex - 1; i >= 0 && overlapCounts[proxy] > 0; i--) {
+            final int otherProxy = handles[i] >>> 1;
+            if (!IncrementalSweepAndPruneMethod.isMax(handles[i]) && maxIndices[0][otherProxy] > maxIndex) {
+                removeOverlap(proxy, otherProxy);
+            }
+        }
+    }
+
+    /**
+     * Removes the marked proxies, whose overlaps are already removed, and their endpoints in one pass.
+     * The last proxies take the places of the removed ones.
+     */
+    private void removeMarkedProxies(int removedCount) {
+        final int endpointCount = 2 * proxyCount;
+        final int newProxyCount = proxyCount - removedCount;
+        int lastProxy = proxyCount;
+        for (int proxy = 0; proxy < newProxyCount; proxy++) {
+            if (removedProxies[proxy]) {
+                do {
+                    lastProxy--;
+                } while (removedProxies[lastProxy]);
+                movedProxyIndices[lastProxy] = proxy;
+                proxyShapes[proxy] = proxyShapes[lastProxy];
+                proxies.put(proxyShapes[proxy], proxy);
+                overlapCounts[proxy] = overlapCounts[lastProxy];
+            }
+        }
+        for (int axis = 0; axis < AXIS_COUNT; axis++) {
+            final float[] values = endpointValues[axis];
+            final int[] handles = endpointHandles[axis];
+            int count = 0;
+            for (int i = 0; i < endpointCount; i++) {
+                final int proxy = handles[i] >>> 1;
+                if (!removedProxies[proxy]) {
+                    final int newProxy = proxy < newProxyCount ? proxy : movedProxyIndices[proxy];
+                    setEndpoint(axis, count++, values[i], (newProxy << 1) | (handles[i] & 1));
+                }
+            }
+        }
+        Arrays.fill(removedProxies, 0, proxyCount, false);
+        Arrays.fill(proxyShapes, newProxyCount, proxyCount, null);
+        proxyCount = newProxyCount;
+    }
+
+    /**
+     * Sorts the endpoints of all proxies from scratch and finds the overlapping pairs with one sweep along
+     * the x-axis.
+     */
+    private void rebuild() {
+        for (int i = 0; i < overlaps.size(); i++) {
+            touch(overlaps.getFirst(i), overlaps.getSecond(i));
+        }
+        overlaps.clear();
+        Arrays.fill(overlapCounts, 0, proxyCount, 0);
+        final int endpointCount = 2 * proxyCount;
+        final long[] sortKeys = new long[endpointCount];
+        for (int axis = 0; axis < AXIS_COUNT; axis++) {
+            for (int i = 0; i < endpointCount; i++) {
+                sortKeys[i] = IncrementalSweepAndPruneMethod.getSortKey(endpointValues[axis][i],
+                        endpointHandles[axis][i]);
+            }
+            Arrays.sort(sortKeys);
+            for (int i = 0; i < endpointCount; i++) {
+                setEndpoint(axis, i, IncrementalSweepAndPruneMethod.getSortKeyValue(sortKeys[i]),
+                        IncrementalSweepAndPruneMethod.getSortKeyHandle(sortKeys[i]));
+            }
+        }
+
+        final int[] activeProxies = new int[proxyCount];
+        final int[] activePositions = new int[proxyCount];
+        int activeCount = 0;
+        for (int i = 0; i < endpointCount; i++) {
+            final int handle = endpointHandles[0][i];
+            final int proxy = handle >>> 1;
+            if (IncrementalSweepAndPruneMethod.isMax(handle)) {
+                final int position = activePositions[proxy];
+                final int lastActiveProxy = activeProxies[--activeCount];
+                activeProxies[position] = lastActiveProxy;
+                activePositions[lastActiveProxy] = position;
+            } else {
+                // The projections on the x-axis of all active proxies overlap the projection of the proxy
+                for (int j = 0; j < activeCount; j++) {
+                    if (isOverlapped(1, proxy, activeProxies[j])) {
+                        addOverlap(proxy, activeProxies[j]);
+                    }
+                }
+                activeProxies[activeCount] = proxy;
+                activePositions[proxy] = activeCount++;
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= proxyShapes.length) {
+            return;
+        }
+        final int newCapacity = Math.max(2 * proxyShapes.length, capacity);
+        proxyShapes = Arrays.copyOf(proxyShapes, newCapacity);
+        overlapCounts = Arrays.copyOf(overlapCounts, newCapacity);
+        removedProxies = Arrays.copyOf(removedProxies, newCapacity);
+        movedProxyIndices = Arrays.copyOf(movedProxyIndices, newCapacity);
+        for (int axis = 0; axis < AXIS_COUNT; axis++) {
+            endpointValues[axis] = Arrays.copyOf(endpointValues[axis], 2 * newCapacity);
+            endpointHandles[axis] = Arrays.copyOf(endpointHandles[axis], 2 * newCapacity);
+            minIndices[axis] = Arrays.copyOf(minIndices[axis], newCapacity);
+            maxIndices[axis] = Arrays.copyOf(maxIndices[axis], newCapacity);
+        }
+    }
+
+    private static boolean isMax(int handle) {
+        return (handle & 1) != 0;
+    }
+
+    private static boolean isLess(float value, int handle, float otherValue, int otherHandle) {
+        // The minimum is placed before the maximum with the same value
+        return value < otherValue || (value == otherValue && (handle & 1) < (otherHandle & 1));
+    }
+
+    private static float getMin(Aabb aabb, int axis) {
+        return axis == 0 ? aabb.min.x : aabb.min.y;
+    }
+
+    private static float getMax(Aabb aabb, int axis) {
+        return axis == 0 ? aabb.max.x : aabb.max.y;
+    }
+
+    /**
+     * Composes the key which orders the endpoints in the same way as the {@link #isLess(float, int, float, int)}
+     * method, the high bits are the value bits reordered to be compared as an integer.
+     */
+    private static long getSortKey(float value, int handle) {
+        // The addition of zero turns the negative zero into the positive one, so they are equal as in float
+        final int bits = Float.floatToIntBits(value + 0f);
+        final int orderedBits = bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+        final int lowBits = ((handle & 1) << 31) | (handle >>> 1);
+        return ((long) orderedBits << Integer.SIZE) | (lowBits & 0xFFFFFFFFL);
+    }
+
+    private static float getSortKeyValue(long sortKey) {
+        final int orderedBits = (int) (sortKey >> Integer.SIZE);
+        return Float.intBitsToFloat(orderedBits ^ ((orderedBits >> 31) & Integer.MAX_VALUE));
+    }
+
+    private static int getSortKeyHandle(long sortKey) {
+        final int lowBits = (int) sortKey;
+        return ((lowBits & Integer.MAX_VALUE) << 1) | (lowBits >>> 31);
+    }
+}
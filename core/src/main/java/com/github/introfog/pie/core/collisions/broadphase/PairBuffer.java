@@ -0,0 +1,302 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.PieExceptionMessage;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.ShapePair;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The class is a reusable buffer of unique shape pairs which is filled by the broad phase methods instead of
+ * the {@link ShapePair} set, so the calculation of collisions doesn't create objects per pair.
+ *
+ * <p>
+ * The pairs are stored in the arrays in the order of adding. The uniqueness is checked with the open addressing
+ * hash table (with linear probing) of the long keys, the key of a pair is composed of the hash codes of its
+ * shapes, which are unique ids of the shapes. The shapes of a pair are ordered in the same way as in
+ * the {@link ShapePair}, so the first shape has the smaller hash code.
+ *
+ * <p>
+ * Clearing the buffer keeps its arrays, so the buffer which is filled each step doesn't create garbage
+ * after its capacity has reached the number of pairs.
+ */
+public class PairBuffer {
+    private static final int MIN_CAPACITY = 16;
+
+    private IShape[] firsts;
+    private IShape[] seconds;
+    private long[] keys;
+    private int size;
+    /** The hash table of the pair indices increased by one, zero marks an empty table cell. */
+    private int[] table;
+
+    /**
+     * Instantiates a new empty {@link PairBuffer} instance.
+     */
+    public PairBuffer() {
+        firsts = new IShape[MIN_CAPACITY];
+        seconds = new IShape[MIN_CAPACITY];
+        keys = new long[MIN_CAPACITY];
+        table = new int[2 * MIN_CAPACITY];
+    }
+
+    /**
+     * Adds the pair of shapes to the buffer if the buffer doesn't contain it yet.
+     *
+     * @param a the shape
+     * @param b the other shape
+     * @return {@code true} if the pair has been added, {@code false} if the buffer already contained it
+     * @throws IllegalArgumentException if the same shapes are passed
+     */
+    public boolean add(IShape a, IShape b) {
+        if (a == b) {
+            throw new IllegalArgumentException(PieExceptionMessage.SAME_SHAPES_PASSED_TO_SHAPE_PAIR_CONSTRUCTOR);
+        }
+        final IShape first = a.hashCode() < b.hashCode() ? a : b;
+        final IShape second = first == a ? b : a;
+        final long key = PairBuffer.getKey(first, second);
+        int cell = PairBuffer.getCell(key, table.length);
+        while (table[cell] != 0) {
+            if (keys[table[cell] - 1] == key) {
+                return false;
+            }
+            cell = (cell + 1) & (table.length - 1);
+        }
+
+        if (size == keys.length) {
+            firsts = Arrays.copyOf(firsts, 2 * size);
+            seconds = Arrays.copyOf(seconds, 2 * size);
+            keys = Arrays.copyOf(keys, 2 * size);
+        }
+        firsts[size] = first;
+        seconds[size] = second;
+        keys[size] = key;
+        size++;
+        // The load factor of the table is kept not greater than 0.5
+        if (2 * size > table.length) {
+            rehash(2 * table.length);
+        } else {
+            table[cell] = size;
+        }
+        return true;
+    }
+
+    /**
+     * Adds all pairs of the passed buffer to this buffer.
+     *
+     * @param pairs the buffer of pairs
+     */
+    public void addAll(PairBuffer pairs) {
+        for (int i = 0; i < pairs.size; i++) {
+            add(pairs.firsts[i], pairs.seconds[i]);
+        }
+    }
+
+    /**
+     * Removes the pair of shapes from the buffer, the order of shapes doesn't matter.
+     *
+     * <p>
+     * Note, the last pair of the buffer takes the place of the removed pair, so the order of pairs isn't kept.
+     *
+     * @param a the shape
+     * @param b the other shape
+     * @return {@code true} if the pair has been removed, {@code false} if the buffer didn't contain it
+     */
+    public boolean remove(IShape a, IShape b) {
+        if (a == b) {
+            return false;
+        }
+        final long key = a.hashCode() < b.hashCode() ? PairBuffer.getKey(a, b) : PairBuffer.getKey(b, a);
+        final int cell = findCell(key);
+        if (cell == -1) {
+            return false;
+        }
+        final int index = table[cell] - 1;
+        removeCell(cell);
+
+        final int last = size - 1;
+        if (index != last) {
+            firsts[index] = firsts[last];
+            seconds[index] = seconds[last];
+            keys[index] = keys[last];
+            table[findCell(keys[index])] = index + 1;
+        }
+        firsts[last] = null;
+        seconds[last] = null;
+        size = last;
+        return true;
+    }
+
+    /**
+     * Checks whether the buffer contains the pair of shapes, the order of shapes doesn't matter.
+     *
+     * @param a the shape
+     * @param b the other shape
+     * @return {@code true} if the buffer contains the pair
+     */
+    public boolean contains(IShape a, IShape b) {
+        if (a == b) {
+            return false;
+        }
+        final long key = a.hashCode() < b.hashCode() ? PairBuffer.getKey(a, b) : PairBuffer.getKey(b, a);
+        return findCell(key) != -1;
+    }
+
+    /**
+     * Gets the index of the pair of shapes in the buffer, the order of shapes doesn't matter.
+     *
+     * <p>
+     * Note, the index of a pair is kept until a pair is removed from the buffer.
+     *
+     * @param a the shape
+     * @param b the other shape
+     * @return the index of the pair in the range {@code [0, size())} or -1 if the buffer doesn't contain the pair
+     */
+    public int indexOf(IShape a, IShape b) {
+        if (a == b) {
+            return -1;
+        }
+        final long key = a.hashCode() < b.hashCode() ? PairBuffer.getKey(a, b) : PairBuffer.getKey(b, a);
+        final int cell = findCell(key);
+        return cell == -1 ? -1 : table[cell] - 1;
+    }
+
+    /**
+     * Gets the number of pairs in the buffer.
+     *
+     * @return the number of pairs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the buffer is empty.
+     *
+     * @return {@code true} if the buffer has no pairs
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the first shape of the pair (the shape with the smaller hash code).
+     *
+     * @param index the index of the pair in the range {@code [0, size())}
+     * @return the first shape of the pair
+     */
+    public IShape getFirst(int index) {
+        return firsts[index];
+    }
+
+    /**
+     * Gets the second shape of the pair (the shape with the bigger hash code).
+     *
+     * @param index the index of the pair in the range {@code [0, size())}
+     * @return the second shape of the pair
+     */
+    public IShape getSecond(int index) {
+        return seconds[index];
+    }
+
+    /**
+     * Removes all pairs from the buffer, the capacity of the buffer is kept.
+     */
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(firsts, 0, size, null);
+        Arrays.fill(seconds, 0, size, null);
+        // Only the occupied table cells are cleared, so the cost doesn't depend on the capacity of the table.
+        // The cells of the probe sequence from the cell of each key to the next empty cell are occupied by
+        // the pairs of the buffer, so they are cleared together, each cell only once
+        final int mask = table.length - 1;
+        for (int i = 0; i < size; i++) {
+            int cell = PairBuffer.getCell(keys[i], table.length);
+            while (table[cell] != 0) {
+                table[cell] = 0;
+                cell = (cell + 1) & mask;
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * Creates the new set of {@link ShapePair} with the pairs of the buffer.
+     *
+     * @return the set of shape pairs
+     */
+    public Set<ShapePair> toShapePairs() {
+        Set<ShapePair> shapePairs = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            shapePairs.add(new ShapePair(firsts[i], seconds[i]));
+        }
+        return shapePairs;
+    }
+
+    private int findCell(long key) {
+        int cell = PairBuffer.getCell(key, table.length);
+        while (table[cell] != 0) {
+            if (keys[table[cell] - 1] == key) {
+                return cell;
+            }
+            cell = (cell + 1) & (table.length - 1);
+        }
+        return -1;
+    }
+
+    private void removeCell(int cell) {
+        // The following cells of the probe sequence are shifted back, so no tombstones are needed
+        final int mask = table.length - 1;
+        int hole = cell;
+        int next = (hole + 1) & mask;
+        while (table[next] != 0) {
+            final int ideal = PairBuffer.getCell(keys[table[next] - 1], table.length);
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[hole] = 0;
+    }
+
+    private void rehash(int tableLength) {
+        table = new int[tableLength];
+        for (int i = 0; i < size; i++) {
+            int cell = PairBuffer.getCell(keys[i], tableLength);
+            while (table[cell] != 0) {
+                cell = (cell + 1) & (tableLength - 1);
+            }
+            table[cell] = i + 1;
+        }
+    }
+
+    private static long getKey(IShape first, IShape second) {
+        return ((long) first.hashCode() << Integer.SIZE) | (second.hashCode() & 0xFFFFFFFFL);
+    }
+
+    private static int getCell(long key, int tableLength) {
+        // The multiplication by the golden ratio mixes the bits of both shape ids
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> Integer.SIZE)) & (tableLength - 1);
+    }
+}
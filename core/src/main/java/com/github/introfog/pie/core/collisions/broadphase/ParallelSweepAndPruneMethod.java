@@ -0,0 +1,344 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.shape.Aabb;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.util.ParallelExecutor.RangeAction;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * The class is a sweep and prune method for a very large number of shapes which sorts the shapes and sweeps
+ * them with the workers of the {@link #parallelExecutor}.
+ *
+ * <p>
+ * The shapes are sorted by the minimum of the Aabb projection on the axis with the highest variance at
+ * the previous iteration of collision calculation. The sort is the parallel least significant digit radix sort of
+ * the float keys: each worker counts the digits of its chunk of keys, then the chunks scatter their keys to
+ * the offsets computed from the counts. After that the sorted shapes are split into chunks, and each chunk is swept
+ * by a worker which writes the found pairs into its own {@link PairBuffer}, so the workers don't need any lock.
+ * The buffers of the chunks are merged when all chunks are swept.
+ *
+ * <p>
+ * If the executor is sequential, all stages are executed in the calling thread as one chunk. The result is always
+ * the same as the result of the {@link SweepAndPruneMethod}.
+ *
+ * @see AbstractBroadPhase
+ * @see SweepAndPruneMethod
+ */
+public class ParallelSweepAndPruneMethod extends AbstractBroadPhase {
+    /** The minimal number of shapes in one chunk, smaller chunks don't pay for their scheduling. */
+    private static final int MIN_CHUNK_SIZE = 1024;
+
+    /** The number of chunks per worker, more chunks allow the pool to balance uneven chunks. */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int RADIX_MASK = RADIX - 1;
+
+    /** The number of statistics which are collected per chunk to select the sweep axis (see {@link #selectAxis()}). */
+    private static final int STATISTIC_COUNT = 4;
+
+    private int currentAxis;
+    private boolean shapeArrayChanged;
+    private IShape[] shapeArray;
+    private int shapeCount;
+
+    private int chunkCount;
+    private long[] keys;
+    private long[] sortBuffer;
+    private int[][] digitCounts;
+    private int radixShift;
+    private IShape[] sortedShapes;
+    private float[] sortedMin;
+    private float[] sortedMax;
+    private double[][] chunkStatistics;
+    private PairBuffer[] chunkPairs;
+
+    private final ChunkAction fillKeysStage;
+    private final ChunkAction countDigitsStage;
+    private final ChunkAction scatterKeysStage;
+    private final ChunkAction fillSortedShapesStage;
+    private final ChunkAction sweepStage;
+    /** The stage which is executed for the chunks by the {@link #stageAction}. */
+    private ChunkAction stage;
+    private final RangeAction stageAction;
+
+    /**
+     * Instantiates a new {@link ParallelSweepAndPruneMethod} instance.
+     */
+    public ParallelSweepAndPruneMethod() {
+        shapeArray = new IShape[0];
+        keys = new long[0];
+        sortBuffer = new long[0];
+        sortedShapes = new IShape[0];
+        sortedMin = new float[0];
+        sortedMax = new float[0];
+        digitCounts = new int[0][];
+        chunkStatistics = new double[0][];
+        chunkPairs = new PairBuffer[0];
+        // The actions are created once, so the calculation of collisions doesn't create them each time
+        fillKeysStage = this::fillKeys;
+        countDigitsStage = this::countDigits;
+        scatterKeysStage = this::scatterKeys;
+        fillSortedShapesStage = this::fillSortedShapes;
+        sweepStage = this::sweep;
+        stageAction = this::executeStage;
+    }
+
+    @Override
+    public void setShapes(Set<IShape> shapes) {
+        super.setShapes(shapes);
+        shapeArrayChanged = true;
+    }
+
+    @Override
+    public void addShape(IShape shape) {
+        super.addShape(shape);
+        shapeArrayChanged = true;
+    }
+
+    @Override
+    public void addShapes(Collection<IShape> shapes) {
+        this.shapes.addAll(shapes);
+        shapeArrayChanged = true;
+    }
+
+    @Override
+    public boolean remove(IShape shape) {
+        boolean removed = super.remove(shape);
+        shapeArrayChanged |= removed;
+        return removed;
+    }
+
+    @Override
+    public boolean removeShapes(Collection<IShape> shapes) {
+        boolean removed = this.shapes.removeAll(shapes);
+        shapeArrayChanged |= removed;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        shapeArrayChanged = true;
+    }
+
+    @Override
+    public ParallelSweepAndPruneMethod newInstance() {
+        ParallelSweepAndPruneMethod sweepAndPruneMethod = new ParallelSweepAndPruneMethod();
+        sweepAndPruneMethod.setShapes(shapes);
+        sweepAndPruneMethod.setParallelExecutor(parallelExecutor);
+        return sweepAndPruneMethod;
+    }
+
+    @Override
+    protected void domesticCalculateAabbCollisions(PairBuffer collisions) {
+        prepareArrays();
+        if (shapeCount < 2) {
+            return;
+        }
+
+        execute(fillKeysStage);
+        for (radixShift = Integer.SIZE; radixShift < Long.SIZE; radixShift += RADIX_BITS) {
+            execute(countDigitsStage);
+            if (computeDigitOffsets()) {
+                execute(scatterKeysStage);
+                long[] sortedKeys = sortBuffer;
+                sortBuffer = keys;
+                keys = sortedKeys;
+            }
+        }
+        execute(fillSortedShapesStage);
+        execute(sweepStage);
+
+        // The chunks find different pairs, because the pair is found only by the chunk of its first sorted shape
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            collisions.addAll(chunkPairs[chunk]);
+        }
+        selectAxis();
+    }
+
+    private void prepareArrays() {
+        if (shapeArrayChanged) {
+            shapeArray = shapes.toArray(new IShape[]{});
+            shapeArrayChanged = false;
+        }
+        shapeCount = shapes.size();
+        if (keys.length < shapeCount) {
+            keys = new long[shapeCount];
+            sortBuffer = new long[shapeCount];
+            sortedShapes = new IShape[shapeCount];
+            sortedMin = new float[shapeCount];
+            sortedMax = new float[shapeCount];
+        }
+
+        final int parallelism = parallelExecutor.isParallel() ? parallelExecutor.getParallelism() : 1;
+        chunkCount = Math.max(1, Math.min(parallelism * CHUNKS_PER_WORKER, shapeCount / MIN_CHUNK_SIZE));
+        if (digitCounts.length < chunkCount) {
+            digitCounts = new int[chunkCount][RADIX];
+            chunkStatistics = new double[chunkCount][STATISTIC_COUNT];
+            PairBuffer[] previousChunkPairs = chunkPairs;
+            chunkPairs = Arrays.copyOf(chunkPairs, chunkCount);
+            for (int chunk = previousChunkPairs.length; chunk < chunkCount; chunk++) {
+                chunkPairs[chunk] = new PairBuffer();
+            }
+        }
+    }
+
+    private void execute(ChunkAction stage) {
+        this.stage = stage;
+        parallelExecutor.forEachChunk(0, chunkCount, 1, stageAction);
+    }
+
+    private void executeStage(int fromChunk, int toChunk) {
+        for (int chunk = fromChunk; chunk < toChunk; chunk++) {
+            stage.apply(chunk, (int) ((long) shapeCount * chunk / chunkCount),
+                    (int) ((long) shapeCount * (chunk + 1) / chunkCount));
+        }
+    }
+
+    /**
+     * Writes the keys of the shapes, the high half of the key is the ordered bits of the Aabb minimum and
+     * the low half is the index of the shape. Also collects the statistics of the Aabb centres of the chunk.
+     */
+    private void fillKeys(int chunk, int from, int to) {
+        double sumX = 0;
+        double sumY = 0;
+        double sumSquaredX = 0;
+        double sumSquaredY = 0;
+        for (int i = from; i < to; i++) {
+            final Aabb aabb = shapeArray[i].getAabb();
+            final float min = currentAxis == 0 ? aabb.min.x : aabb.min.y;
+            keys[i] = ((long) ParallelSweepAndPruneMethod.getOrderedBits(min) << Integer.SIZE) | i;
+
+            final double centreX = (aabb.min.x + aabb.max.x) / 2.0;
+            final double centreY = (aabb.min.y + aabb.max.y) / 2.0;
+            sumX += centreX;
+            sumY += centreY;
+            sumSquaredX += centreX * centreX;
+            sumSquaredY += centreY * centreY;
+        }
+        final double[] statistics = chunkStatistics[chunk];
+        statistics[0] = sumX;
+        statistics[1] = sumY;
+        statistics[2] = sumSquaredX;
+        statistics[3] = sumSquaredY;
+    }
+
+    private void countDigits(int chunk, int from, int to) {
+        final int[] counts = digitCounts[chunk];
+        Arrays.fill(counts, 0);
+        for (int i = from; i < to; i++) {
+            counts[(int) (keys[i] >>> radixShift) & RADIX_MASK]++;
+        }
+    }
+
+    /**
+     * Replaces the digit counts of the chunks with the offsets at which the chunks place their keys
+     * with the digit, so the sort is stable.
+     *
+     * @return {@code false} if all keys have the same digit and the pass can be skipped
+     */
+    private boolean computeDigitOffsets() {
+        int offset = 0;
+        for (int digit = 0; digit < RADIX; digit++) {
+            int digitCount = 0;
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                digitCount += digitCounts[chunk][digit];
+            }
+            if (digitCount == shapeCount) {
+                return false;
+            }
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                final int count = digitCounts[chunk][digit];
+                digitCounts[chunk][digit] = offset;
+                offset += count;
+            }
+        }
+        return true;
+    }
+
+    private void scatterKeys(int chunk, int from, int to) {
+        final int[] offsets = digitCounts[chunk];
+        for (int i = from; i < to; i++) {
+            final long key = keys[i];
+            sortBuffer[offsets[(int) (key >>> radixShift) & RADIX_MASK]++] = key;
+        }
+    }
+
+    private void fillSortedShapes(int chunk, int from, int to) {
+        for (int i = from; i < to; i++) {
+            final IShape shape = shapeArray[(int) keys[i]];
+            final Aabb aabb = shape.getAabb();
+            sortedShapes[i] = shape;
+            sortedMin[i] = currentAxis == 0 ? aabb.min.x : aabb.min.y;
+            sortedMax[i] = currentAxis == 0 ? aabb.max.x : aabb.max.y;
+        }
+    }
+
+    private void sweep(int chunk, int from, int to) {
+        final PairBuffer collisions = chunkPairs[chunk];
+        collisions.clear();
+        for (int i = from; i < to; i++) {
+            final Aabb aabb = sortedShapes[i].getAabb();
+            final float max = sortedMax[i];
+            for (int j = i + 1; j < shapeCount && sortedMin[j] <= max; j++) {
+                if (Aabb.isIntersected(aabb, sortedShapes[j].getAabb())) {
+                    collisions.add(sortedShapes[i], sortedShapes[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * With the help of variance, selects the axis for the next iteration (looks for the axis along which
+     * the coordinates of the shapes are most different) to make fewer checks.
+     */
+    private void selectAxis() {
+        double sumX = 0;
+        double sumY = 0;
+        double sumSquaredX = 0;
+        double sumSquaredY = 0;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            sumX += chunkStatistics[chunk][0];
+            sumY += chunkStatistics[chunk][1];
+            sumSquaredX += chunkStatistics[chunk][2];
+            sumSquaredY += chunkStatistics[chunk][3];
+        }
+        final double varianceX = sumSquaredX / shapeCount - (sumX / shapeCount) * (sumX / shapeCount);
+        final double varianceY = sumSquaredY / shapeCount - (sumY / shapeCount) * (sumY / shapeCount);
+        currentAxis = varianceY > varianceX ? 1 : 0;
+    }
+
+    /**
+     * Converts the float to the bits which are ordered in the same way as the floats when they are compared as
+     * unsigned integers, the negative zero is considered equal to the positive one.
+     */
+    private static int getOrderedBits(float value) {
+        final int bits = Float.floatToIntBits(value + 0f);
+        return bits ^ ((bits >> 31) | Integer.MIN_VALUE);
+    }
+
+    @FunctionalInterface
+    private interface ChunkAction {
+        void apply(int chunk, int from, int to);
+    }
+}
@@ -0,0 +1,587 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.shape.Aabb;
+import com.github.introfog.pie.core.shape.IShape;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The class is a spatial hashing method that keeps the cells between the calculations of collisions.
+ *
+ * <p>
+ * Unlike the {@link SpatialHashingMethod}, which fills the hash table from scratch every iteration, the method
+ * remembers the range of cells covered by the Aabb of each shape and moves the shape between the cells only when
+ * the range changes, which is rare for the shapes moving slower than a cell per step. The cells are found by
+ * the open addressing hash table of the cell coordinates, and the shapes of a cell are stored in a compact
+ * array of the proxy indices, so the cells don't create objects per shape.
+ *
+ * <p>
+ * If the moved shapes are known (see {@link #calculateAabbCollisionChanges(Collection)}), only the cells of
+ * the moved shapes are updated and only the moved shapes are searched in the cells, so the cost of a step is
+ * proportional to the number of moved shapes (plus one pass over the persistent pairs).
+ *
+ * <p>
+ * The size of the cells is either set by the {@link #setCellSize(float)} method or calculated from the average
+ * size of the shapes. The calculated size follows the shapes: if the average size of the shapes drifts more than
+ * twice from the one the cells were built for, because of the added, removed or changed shapes, the size is
+ * recalculated and the shapes are redistributed among the new cells.
+ *
+ * <p>
+ * This method is effective for liquids and crowds of similar-sized shapes.
+ *
+ * @see AbstractBroadPhase
+ * @see SpatialHashingMethod
+ */
+public class PersistentSpatialHashingMethod extends AbstractBroadPhase {
+    private static final int MIN_CAPACITY = 16;
+    private static final int MIN_CELL_CAPACITY = 4;
+    private static final int RANGE_SIZE = 4;
+    private static final float CELL_SIZE_DRIFT = 2f;
+
+    /** The cell coordinates are clamped, so the loops over the cell ranges never overflow. */
+    private static final int MAX_CELL_COORDINATE = 1 << 30;
+
+    private float cellSize;
+    private boolean fixedCellSize;
+
+    private final Map<IShape, Integer> proxies;
+    private IShape[] proxyShapes;
+    /** The covered cell ranges of the proxies, four values per proxy: min x, min y, max x and max y. */
+    private int[] proxyRanges;
+    private boolean[] movedProxies;
+    /** The greater side of the Aabb of each proxy at the moment the proxy was last updated. */
+    private float[] proxyExtents;
+    private float extentSum;
+    private int proxyCount;
+
+    private long[] cellKeys;
+    private int[][] cellMembers;
+    private int[] cellSizes;
+    private int cellCount;
+    private int[] freeCells;
+    private int freeCellCount;
+    /** The hash table of the cell indices increased by one, zero marks an empty table cell. */
+    private int[] table;
+    private int tableSize;
+
+    private final PairBuffer movedShapesPairs;
+    private PairBuffer nextPairs;
+
+    /**
+     * Instantiates a new {@link PersistentSpatialHashingMethod} instance, the size of the cells is calculated
+     * from the average size of the shapes.
+     */
+    public PersistentSpatialHashingMethod() {
+        proxies = new HashMap<>();
+        proxyShapes = new IShape[MIN_CAPACITY];
+        proxyRanges = new int[RANGE_SIZE * MIN_CAPACITY];
+        movedProxies = new boolean[MIN_CAPACITY];
+        proxyExtents = new float[MIN_CAPACITY];
+        cellKeys = new long[MIN_CAPACITY];
+        cellMembers = new int[MIN_CAPACITY][];
+        cellSizes = new int[MIN_CAPACITY];
+        freeCells = new int[MIN_CAPACITY];
+        table = new int[2 * MIN_CAPACITY];
+        movedShapesPairs = new PairBuffer();
+        nextPairs = new PairBuffer();
+    }
+
+    /**
+     * Sets the size of the cells, all shapes are redistributed among the new cells.
+     *
+     * @param cellSize the size of the cells, if not positive, the size will be calculated
+     *                 from the average size of the shapes
+     */
+    public void setCellSize(float cellSize) {
+        fixedCellSize = cellSize > 0;
+        this.cellSize = fixedCellSize ? cellSize : PersistentSpatialHashingMethod.calculateCellSize(extentSum,
+                proxyCount);
+        rebuildCells();
+    }
+
+    /**
+     * Gets the size of the cells.
+     *
+     * @return the size of the cells, zero if the size isn't set and there are no shapes yet
+     */
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    @Override
+    public void setShapes(Set<IShape> shapes) {
+        // The passed set may be the view of the current shapes, so it is copied before clearing
+        final List<IShape> newShapes = new ArrayList<>(shapes);
+        clear();
+        addShapes(newShapes);
+    }
+
+    @Override
+    public void addShape(IShape shape) {
+        super.addShape(shape);
+        if (proxies.containsKey(shape)) {
+            return;
+        }
+        updateCellSize(PersistentSpatialHashingMethod.getExtent(shape.getAabb()), 1);
+        insertProxy(shape);
+    }
+
+    /**
+     * Adds the shapes to the cells. If the size of the cells isn't set, the size is checked against the average
+     * size of all shapes together with the added ones before the shapes are added, so the bulk adding creates
+     * the cells only once.
+     *
+     * @param shapes the shapes to be added
+     */
+    @Override
+    public void addShapes(Collection<IShape> shapes) {
+        float addedExtentSum = 0;
+        int addedCount = 0;
+        for (IShape shape : shapes) {
+            if (!proxies.containsKey(shape)) {
+                addedExtentSum += PersistentSpatialHashingMethod.getExtent(shape.getAabb());
+                addedCount++;
+            }
+        }
+        updateCellSize(addedExtentSum, addedCount);
+        for (IShape shape : shapes) {
+            super.addShape(shape);
+            if (!proxies.containsKey(shape)) {
+                insertProxy(shape);
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(IShape shape) {
+        boolean removed = super.remove(shape);
+        if (removed) {
+            removeProxy(proxies.remove(shape));
+        }
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        proxies.clear();
+        Arrays.fill(proxyShapes, 0, proxyCount, null);
+        proxyCount = 0;
+        extentSum = 0;
+        clearCells();
+    }
+
+    @Override
+    public PersistentSpatialHashingMethod newInstance() {
+        PersistentSpatialHashingMethod spatialHashingMethod = new PersistentSpatialHashingMethod();
+        if (fixedCellSize) {
+            spatialHashingMethod.setCellSize(cellSize);
+        }
+        spatialHashingMethod.setShapes(shapes);
+        return spatialHashingMethod;
+    }
+
+    @Override
+    protected void domesticCalculateAabbCollisions(PairBuffer collisions) {
+        for (int proxy = 0; proxy < proxyCount; proxy++) {
+            updateProxy(proxy);
+        }
+        updateCellSize(0, 0);
+        computePossibleAabbIntersections(collisions);
+    }
+
+    @Override
+    protected void domesticCalculateAabbCollisions(Collection<IShape> movedShapes, PairBuffer collisions) {
+        for (IShape shape : movedShapes) {
+            Integer proxy = proxies.get(shape);
+            if (proxy != null) {
+                updateProxy(proxy);
+            }
+        }
+        updateCellSize(0, 0);
+        computePossibleAabbIntersections(collisions);
+    }
+
+    /**
+     * Updates the persistent set of overlapping pairs when only the passed shapes have been moved. Only
+     * the cells of the moved shapes are updated and only the moved shapes are searched in the cells, the pairs
+     * of other shapes are kept as is, because their overlapping can't change.
+     *
+     * @param movedShapes the shapes which have been moved or rotated since the previous call
+     */
+    @Override
+    protected void domesticCalculateAabbCollisionChanges(Collection<IShape> movedShapes) {
+        movedShapesPairs.clear();
+        nextPairs.clear();
+        for (IShape shape : movedShapes) {
+            Integer proxy = proxies.get(shape);
+            if (proxy != null && !movedProxies[proxy]) {
+                movedProxies[proxy] = true;
+                updateProxy(proxy);
+            }
+        }
+        // The cells don't affect the found pairs, so the pairs of the not moved shapes stay valid after rebuilding
+        updateCellSize(0, 0);
+        for (IShape shape : movedShapes) {
+            Integer proxy = proxies.get(shape);
+            if (proxy != null) {
+                findProxyIntersections(proxy, movedShapesPairs);
+            }
+        }
+
+        // The pairs of the moved shapes are replaced by the found ones, the pairs of the removed shapes are ended
+        for (int i = 0; i < pairs.size(); i++) {
+            final IShape first = pairs.getFirst(i);
+            final IShape second = pairs.getSecond(i);
+            final Integer firstProxy = proxies.get(first);
+            final Integer secondProxy = proxies.get(second);
+            if (firstProxy == null || secondProxy == null
+                    || ((movedProxies[firstProxy] || movedProxies[secondProxy])
+                    && !movedShapesPairs.contains(first, second))) {
+                endedPairs.add(first, second);
+            } else {
+                nextPairs.add(first, second);
+            }
+        }
+        for (int i = 0; i < movedShapesPairs.size(); i++) {
+            if (nextPairs.add(movedShapesPairs.getFirst(i), movedShapesPairs.getSecond(i))) {
+                beganPairs.add(movedShapesPairs.getFirst(i), movedShapesPairs.getSecond(i));
+            }
+        }
+        PairBuffer previousPairs = pairs;
+        pairs = nextPairs;
+        nextPairs = previousPairs;
+
+        for (IShape shape : movedShapes) {
+            Integer proxy = proxies.get(shape);
+            if (proxy != null) {
+                movedProxies[proxy] = false;
+            }
+        }
+    }
+
+    private void computePossibleAabbIntersections(PairBuffer collisions) {
+        // The buffer keeps the pairs unique, for example, two shapes can intersect in several cells at once
+        for (int cell = 0; cell < cellCount; cell++) {
+            final int size = cellSizes[cell];
+            final int[] members = cellMembers[cell];
+            for (int i = 0; i < size; i++) {
+                final IShape shape = proxyShapes[members[i]];
+                for (int j = i + 1; j < size; j++) {
+                    if (Aabb.isIntersected(shape.getAabb(), proxyShapes[members[j]].getAabb())) {
+                        collisions.add(shape, proxyShapes[members[j]]);
+                    }
+                }
+            }
+        }
+    }
+
+    private void findProxyIntersections(int proxy, PairBuffer collisions) {
+        final IShape shape = proxyShapes[proxy];
+        final int offset = RANGE_SIZE * proxy;
+        for (int x = proxyRanges[offset]; x <= proxyRanges[offset + 2]; x++) {
+            for (int y = proxyRanges[offset + 1]; y <= proxyRanges[offset + 3]; y++) {
+                final int cell = findCell(PersistentSpatialHashingMethod.getCellKey(x, y));
+                final int[] members = cellMembers[cell];
+                for (int i = 0; i < cellSizes[cell]; i++) {
+                    if (members[i] != proxy && Aabb.isIntersected(shape.getAabb(),
+                            proxyShapes[members[i]].getAabb())) {
+                        collisions.add(shape, proxyShapes[members[i]]);
+                    }
+                }
+            }
+        }
+    }
+
+    private void insertProxy(IShape shape) {
+        if (proxyCount == proxyShapes.length) {
+            final int capacity = 2 * proxyCount;
+            proxyShapes = Arrays.copyOf(proxyShapes, capacity);
+            proxyRanges = Arrays.copyOf(proxyRanges, RANGE_SIZE * capacity);
+            movedProxies = Arrays.copyOf(movedProxies, capacity);
+            proxyExtents = Arrays.copyOf(proxyExtents, capacity);
+        }
+        final int proxy = proxyCount++;
+        proxyShapes[proxy] = shape;
+        proxies.put(shape, proxy);
+        proxyExtents[proxy] = PersistentSpatialHashingMethod.getExtent(shape.getAabb());
+        extentSum += proxyExtents[proxy];
+        final int offset = RANGE_SIZE * proxy;
+        computeRange(shape.getAabb(), offset);
+        addToCells(proxy, proxyRanges[offset], proxyRanges[offset + 1], proxyRanges[offset + 2],
+                proxyRanges[offset + 3]);
+    }
+
+    private void removeProxy(int proxy) {
+        extentSum -= proxyExtents[proxy];
+        final int offset = RANGE_SIZE * proxy;
+        // The kept range is empty, because its minimum is greater than its maximum
+        removeFromCells(proxy, proxyRanges[offset], proxyRanges[offset + 1], proxyRanges[offset + 2],
+                proxyRanges[offset + 3], 1, 1, 0, 0);
+
+        // The last proxy takes the place of the removed one, so its index is replaced in its cells
+        final int lastProxy = --proxyCount;
+        if (proxy != lastProxy) {
+            final int lastOffset = RANGE_SIZE * lastProxy;
+            for (int x = proxyRanges[lastOffset]; x <= proxyRanges[lastOffset + 2]; x++) {
+                for (int y = proxyRanges[lastOffset + 1]; y <= proxyRanges[lastOffset + 3]; y++) {
+                    final int cell = findCell(PersistentSpatialHashingMethod.getCellKey(x, y));
+                    final int[] members = cellMembers[cell];
+                    for (int i = 0; i < cellSizes[cell]; i++) {
+                        if (members[i] == lastProxy) {
+                            members[i] = proxy;
+                            break;
+                        }
+                    }
+                }
+            }
+            proxyShapes[proxy] = proxyShapes[lastProxy];
+            proxies.put(proxyShapes[proxy], proxy);
+            System.arraycopy(proxyRanges, lastOffset, proxyRanges, offset, RANGE_SIZE);
+            movedProxies[proxy] = movedProxies[lastProxy];
+            proxyExtents[proxy] = proxyExtents[lastProxy];
+        }
+        proxyShapes[lastProxy] = null;
+        movedProxies[lastProxy] = false;
+    }
+
+    /**
+     * Moves the proxy between the cells if the range of the cells covered by its Aabb has changed.
+     */
+    private void updateProxy(int proxy) {
+        final float extent = PersistentSpatialHashingMethod.getExtent(proxyShapes[proxy].getAabb());
+        extentSum += extent - proxyExtents[proxy];
+        proxyExtents[proxy] = extent;
+        final int offset = RANGE_SIZE * proxy;
+        final int oldMinX = proxyRanges[offset];
+        final int oldMinY = proxyRanges[offset + 1];
+        final int oldMaxX = proxyRanges[offset + 2];
+        final int oldMaxY = proxyRanges[offset + 3];
+        computeRange(proxyShapes[proxy].getAabb(), offset);
+        final int minX = proxyRanges[offset];
+        final int minY = proxyRanges[offset + 1];
+        final int maxX = proxyRanges[offset + 2];
+        final int maxY = proxyRanges[offset + 3];
+        if (minX == oldMinX && minY == oldMinY && maxX == oldMaxX && maxY == oldMaxY) {
+            return;
+        }
+        removeFromCells(proxy, oldMinX, oldMinY, oldMaxX, oldMaxY, minX, minY, maxX, maxY);
+        addToCells(proxy, minX, minY, maxX, maxY, oldMinX, oldMinY, oldMaxX, oldMaxY);
+    }
+
+    private void computeRange(Aabb aabb, int offset) {
+        proxyRanges[offset] = getCellCoordinate(aabb.min.x);
+        proxyRanges[offset + 1] = getCellCoordinate(aabb.min.y);
+        proxyRanges[offset + 2] = getCellCoordinate(aabb.max.x);
+        proxyRanges[offset + 3] = getCellCoordinate(aabb.max.y);
+    }
+
+    private int getCellCoordinate(float value) {
+        final double coordinate = Math.floor(value / cellSize);
+        return (int) Math.max(-MAX_CELL_COORDINATE, Math.min(MAX_CELL_COORDINATE, coordinate));
+    }
+
+    private void addToCells(int proxy, int minX, int minY, int maxX, int maxY) {
+        addToCells(proxy, minX, minY, maxX, maxY, 1, 1, 0, 0);
+    }
+
+    /**
+     * Adds the proxy to the cells of the range which aren't in the excluded range.
+     */
+    private void addToCells(int proxy, int minX, int minY, int maxX, int maxY,
+            int excludedMinX, int excludedMinY, int excludedMaxX, int excludedMaxY) {
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                if (x < excludedMinX || x > excludedMaxX || y < excludedMinY || y > excludedMaxY) {
+                    final int cell = getOrCreateCell(PersistentSpatialHashingMethod.getCellKey(x, y));
+                    if (cellSizes[cell] == cellMembers[cell].length) {
+                        cellMembers[cell] = Arrays.copyOf(cellMembers[cell], 2 * cellSizes[cell]);
+                    }
+                    cellMembers[cell][cellSizes[cell]++] = proxy;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the proxy from the cells of the range which aren't in the kept range.
+     */
+    private void removeFromCells(int proxy, int minX, int minY, int maxX, int maxY,
+            int keptMinX, int keptMinY, int keptMaxX, int keptMaxY) {
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                if (x < keptMinX || x > keptMaxX || y < keptMinY || y > keptMaxY) {
+                    final int tableCell = findTableCell(PersistentSpatialHashingMethod.getCellKey(x, y));
+                    final int cell = table[tableCell] - 1;
+                    final int[] members = cellMembers[cell];
+                    final int size = cellSizes[cell];
+                    for (int i = 0; i < size; i++) {
+                        if (members[i] == proxy) {
+                            members[i] = members[size - 1];
+                            break;
+                        }
+                    }
+                    cellSizes[cell] = size - 1;
+                    if (size == 1) {
+                        removeCell(tableCell);
+                    }
+                }
+            }
+        }
+    }
+
+    private int findCell(long key) {
+        return table[findTableCell(key)] - 1;
+    }
+
+    private int findTableCell(long key) {
+        int tableCell = PersistentSpatialHashingMethod.getTableCell(key, table.length);
+        while (table[tableCell] != 0 && cellKeys[table[tableCell] - 1] != key) {
+            tableCell = (tableCell + 1) & (table.length - 1);
+        }
+        return tableCell;
+    }
+
+    private int getOrCreateCell(long key) {
+        final int tableCell = findTableCell(key);
+        if (table[tableCell] != 0) {
+            return table[tableCell] - 1;
+        }
+
+        final int cell;
+        if (freeCellCount > 0) {
+            cell = freeCells[--freeCellCount];
+        } else {
+            if (cellCount == cellKeys.length) {
+                cellKeys = Arrays.copyOf(cellKeys, 2 * cellCount);
+                cellMembers = Arrays.copyOf(cellMembers, 2 * cellCount);
+                cellSizes = Arrays.copyOf(cellSizes, 2 * cellCount);
+                freeCells = Arrays.copyOf(freeCells, 2 * cellCount);
+            }
+            cell = cellCount++;
+            cellMembers[cell] = new int[MIN_CELL_CAPACITY];
+        }
+        cellKeys[cell] = key;
+        table[tableCell] = cell + 1;
+        tableSize++;
+        // The load factor of the table is kept not greater than 0.5
+        if (2 * tableSize > table.length) {
+            rehash(2 * table.length);
+        }
+        return cell;
+    }
+
+    private void removeCell(int tableCell) {
+        // The empty cell keeps its member array and is reused by the next created cell
+        freeCells[freeCellCount++] = table[tableCell] - 1;
+        tableSize--;
+
+        // The following cells of the probe sequence are shifted back, so no tombstones are needed
+        final int mask = table.length - 1;
+        int hole = tableCell;
+        int next = (hole + 1) & mask;
+        while (table[next] != 0) {
+            final int ideal = PersistentSpatialHashingMethod.getTableCell(cellKeys[table[next] - 1], table.length);
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[hole] = 0;
+    }
+
+    private void rehash(int tableLength) {
+        final int[] previousTable = table;
+        table = new int[tableLength];
+        for (int entry : previousTable) {
+            if (entry != 0) {
+                int tableCell = PersistentSpatialHashingMethod.getTableCell(cellKeys[entry - 1], tableLength);
+                while (table[tableCell] != 0) {
+                    tableCell = (tableCell + 1) & (tableLength - 1);
+                }
+                table[tableCell] = entry;
+            }
+        }
+    }
+
+    private void clearCells() {
+        Arrays.fill(cellSizes, 0, cellCount, 0);
+        Arrays.fill(table, 0);
+        tableSize = 0;
+        freeCellCount = 0;
+        for (int cell = cellCount - 1; cell >= 0; cell--) {
+            freeCells[freeCellCount++] = cell;
+        }
+    }
+
+    /**
+     * Recalculates the size of the cells and redistributes the shapes if the average size of the shapes together
+     * with the ones about to be added has drifted too far from the size the cells were built for.
+     */
+    private void updateCellSize(float addedExtentSum, int addedCount) {
+        if (fixedCellSize || proxyCount + addedCount == 0) {
+            return;
+        }
+        final float idealCellSize = PersistentSpatialHashingMethod.calculateCellSize(extentSum + addedExtentSum,
+                proxyCount + addedCount);
+        if (cellSize == 0 || idealCellSize > CELL_SIZE_DRIFT * cellSize
+                || CELL_SIZE_DRIFT * idealCellSize < cellSize) {
+            cellSize = idealCellSize;
+            rebuildCells();
+        }
+    }
+
+    private void rebuildCells() {
+        clearCells();
+        // The sum is recalculated, so the rounding errors of the incremental updates don't accumulate
+        extentSum = 0;
+        for (int proxy = 0; proxy < proxyCount; proxy++) {
+            proxyExtents[proxy] = PersistentSpatialHashingMethod.getExtent(proxyShapes[proxy].getAabb());
+            extentSum += proxyExtents[proxy];
+            final int offset = RANGE_SIZE * proxy;
+            computeRange(proxyShapes[proxy].getAabb(), offset);
+            addToCells(proxy, proxyRanges[offset], proxyRanges[offset + 1], proxyRanges[offset + 2],
+                    proxyRanges[offset + 3]);
+        }
+    }
+
+    private static float calculateCellSize(float extentSum, int count) {
+        final float averageMaxBodiesSize = extentSum / Math.max(1, count);
+        return averageMaxBodiesSize <= 0 ? 1 : 2 * averageMaxBodiesSize;
+    }
+
+    private static float getExtent(Aabb aabb) {
+        return Math.max(aabb.max.x - aabb.min.x, aabb.max.y - aabb.min.y);
+    }
+
+    private static long getCellKey(int x, int y) {
+        return ((long) x << Integer.SIZE) | (y & 0xFFFFFFFFL);
+    }
+
+    private static int getTableCell(long key, int tableLength) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> Integer.SIZE)) & (tableLength - 1);
+    }
+}
@@ -18,8 +18,9 @@ package com.github.introfog.pie.core.collisions.broadphase;
 import com.github.introfog.pie.core.math.MathPie;
 import com.github.introfog.pie.core.shape.Aabb;
 import com.github.introfog.pie.core.shape.IShape;
-import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.ParallelExecutor;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -35,13 +36,37 @@ import java.util.Set;
  * Note, the calculation of the size of the cells and filling the hash table occurs every iteration a new.
  *
  * <p>
+ * By default the pair of shapes which lies in several common cells is found in each of them and the duplicates
+ * are dropped by the {@link PairBuffer}. If the cell ownership is enabled (see
+ * {@link #setCellOwnershipEnabled(boolean)}), the pair is reported only by the cell which contains the minimum
+ * corner of the intersection of the shape Aabbs, so the cells are independent. Then the cells are split into
+ * chunks which are processed by the workers of the {@link #parallelExecutor}, each worker writes the found pairs
+ * into its own {@link PairBuffer} and the buffers are merged when all chunks are processed.
+ *
+ * <p>
  * This method is effective for liquids.
  *
  * @see AbstractBroadPhase
  */
 public class SpatialHashingMethod extends AbstractBroadPhase {
+    /** The minimal number of cells in one chunk, smaller chunks don't pay for their scheduling. */
+    private static final int MIN_CHUNK_SIZE = 256;
+
+    /** The number of chunks per worker, more chunks allow the pool to balance uneven chunks. */
+    private static final int CHUNKS_PER_WORKER = 4;
+
     private int cellSize;
     private final Map<Integer, Set<IShape>> cells;
+    private IShape[] cellShapes;
+
+    private boolean cellOwnershipEnabled;
+    private Set<IShape>[] cellArray;
+    private int[] cellKeys;
+    private int cellCount;
+    private int chunkCount;
+    private IShape[][] chunkCellShapes;
+    private PairBuffer[] chunkPairs;
+    private final ParallelExecutor.RangeAction chunkAction;
 
     /**
      * Instantiates a new {@link SpatialHashingMethod} instance.
@@ -49,24 +74,55 @@ public class SpatialHashingMethod extends AbstractBroadPhase {
     public SpatialHashingMethod() {
         cellSize = 0;
         cells = new HashMap<>();
+        cellShapes = new IShape[0];
+        cellArray = SpatialHashingMethod.createCellArray(0);
+        cellKeys = new int[0];
+        chunkCellShapes = new IShape[0][];
+        chunkPairs = new PairBuffer[0];
+        chunkAction = this::processChunks;
+    }
+
+    /**
+     * Enables or disables the cell ownership. If the ownership is enabled, the pair of shapes is reported only by
+     * the cell which contains the minimum corner of the intersection of the shape Aabbs, and the cells are
+     * processed in parallel if the {@link #parallelExecutor} allows it.
+     *
+     * @param cellOwnershipEnabled {@code true} to enable the cell ownership
+     */
+    public void setCellOwnershipEnabled(boolean cellOwnershipEnabled) {
+        this.cellOwnershipEnabled = cellOwnershipEnabled;
+    }
+
+    /**
+     * Checks whether the cell ownership is enabled.
+     *
+     * @return {@code true} if the cell ownership is enabled
+     */
+    public boolean isCellOwnershipEnabled() {
+        return cellOwnershipEnabled;
     }
 
     @Override
     public SpatialHashingMethod newInstance() {
         SpatialHashingMethod spatialHashingMethod = new SpatialHashingMethod();
+        spatialHashingMethod.setCellOwnershipEnabled(cellOwnershipEnabled);
         spatialHashingMethod.setShapes(shapes);
         return spatialHashingMethod;
     }
 
     @Override
-    protected Set<ShapePair> domesticCalculateAabbCollisions() {
+    protected void domesticCalculateAabbCollisions(PairBuffer collisions) {
         // The complexity is O(n), if the minimum and maximum size of the objects are not very different,
         // but if very different, then the complexity tends to O(n^2)
         calculateCellSize();
         cells.clear();
         shapes.forEach(this::insert);
 
-        return computePossibleAabbIntersections();
+        if (cellOwnershipEnabled) {
+            computeOwnedAabbIntersections(collisions);
+        } else {
+            computePossibleAabbIntersections(collisions);
+        }
     }
 
     private void calculateCellSize() {
@@ -81,20 +137,21 @@ public class SpatialHashingMethod extends AbstractBroadPhase {
     }
 
     private int generateKey(float x, float y) {
-        return ((MathPie.fastFloor(x / cellSize) * 73856093) ^ (MathPie.fastFloor(y / cellSize) * 19349663));
+        return SpatialHashingMethod.generateKey(MathPie.fastFloor(x / cellSize), MathPie.fastFloor(y / cellSize));
     }
 
     private void insert(IShape shape) {
         final Aabb aabb = shape.getAabb();
         int key;
-        int cellX = MathPie.fastFloor(aabb.max.x / cellSize) - MathPie.fastFloor(aabb.min.x / cellSize);
-        int cellY = MathPie.fastFloor(aabb.max.y / cellSize) - MathPie.fastFloor(aabb.min.y / cellSize);
-        // Increment the values of cellX and cellY so that the ends of the shape entering the other cells are also processed
-        cellX++;
-        cellY++;
-        for (int i = 0; i < cellX; i++) {
-            for (int j = 0; j < cellY; j++) {
-                key = generateKey(aabb.min.x + i * cellSize, aabb.min.y + j * cellSize);
+        // The cells are iterated by their integer coordinates, so the shape is placed in exactly the cells in which
+        // the minimum corners of its intersections with other shapes can lie
+        final int minCellX = MathPie.fastFloor(aabb.min.x / cellSize);
+        final int minCellY = MathPie.fastFloor(aabb.min.y / cellSize);
+        final int maxCellX = MathPie.fastFloor(aabb.max.x / cellSize);
+        final int maxCellY = MathPie.fastFloor(aabb.max.y / cellSize);
+        for (int i = minCellX; i <= maxCellX; i++) {
+            for (int j = minCellY; j <= maxCellY; j++) {
+                key = SpatialHashingMethod.generateKey(i, j);
 
                 if (!cells.containsKey(key)) {
                     cells.put(key, new HashSet<>());
@@ -104,12 +161,97 @@ public class SpatialHashingMethod extends AbstractBroadPhase {
         }
     }
 
-    private Set<ShapePair> computePossibleAabbIntersections() {
-        // HashSet is used because requires the uniqueness of pairs,
-        // for example, two shapes can intersect in several cells at once
-        Set<ShapePair> possibleIntersect = new HashSet<>();
-        cells.forEach((cell, set) ->
-                possibleIntersect.addAll(BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(set)));
-        return possibleIntersect;
+    private void computePossibleAabbIntersections(PairBuffer collisions) {
+        // The buffer keeps the pairs unique, for example, two shapes can intersect in several cells at once
+        for (Set<IShape> cell : cells.values()) {
+            final int size = cell.size();
+            cellShapes = cell.toArray(cellShapes);
+            for (int i = 0; i < size; i++) {
+                for (int j = i + 1; j < size; j++) {
+                    if (Aabb.isIntersected(cellShapes[i].getAabb(), cellShapes[j].getAabb())) {
+                        collisions.add(cellShapes[i], cellShapes[j]);
+                    }
+                }
+            }
+        }
+        Arrays.fill(cellShapes, null);
+    }
+
+    private void computeOwnedAabbIntersections(PairBuffer collisions) {
+        prepareChunks();
+        parallelExecutor.forEachChunk(0, chunkCount, 1, chunkAction);
+
+        // The chunks find different pairs, because the pair is found only by the cell which owns it
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            collisions.addAll(chunkPairs[chunk]);
+            chunkPairs[chunk].clear();
+        }
+        Arrays.fill(cellArray, 0, cellCount, null);
+    }
+
+    private void prepareChunks() {
+        cellCount = cells.size();
+        if (cellArray.length < cellCount) {
+            cellArray = SpatialHashingMethod.createCellArray(cellCount);
+            cellKeys = new int[cellCount];
+        }
+        int cell = 0;
+        for (Map.Entry<Integer, Set<IShape>> entry : cells.entrySet()) {
+            cellArray[cell] = entry.getValue();
+            cellKeys[cell] = entry.getKey();
+            cell++;
+        }
+
+        final int parallelism = parallelExecutor.isParallel() ? parallelExecutor.getParallelism() : 1;
+        chunkCount = Math.max(1, Math.min(parallelism * CHUNKS_PER_WORKER, cellCount / MIN_CHUNK_SIZE));
+        if (chunkPairs.length < chunkCount) {
+            final int previousLength = chunkPairs.length;
+            chunkPairs = Arrays.copyOf(chunkPairs, chunkCount);
+            chunkCellShapes = Arrays.copyOf(chunkCellShapes, chunkCount);
+            for (int chunk = previousLength; chunk < chunkCount; chunk++) {
+                chunkPairs[chunk] = new PairBuffer();
+                chunkCellShapes[chunk] = new IShape[0];
+            }
+        }
+    }
+
+    private void processChunks(int fromChunk, int toChunk) {
+        for (int chunk = fromChunk; chunk < toChunk; chunk++) {
+            final int fromCell = (int) ((long) cellCount * chunk / chunkCount);
+            final int toCell = (int) ((long) cellCount * (chunk + 1) / chunkCount);
+            for (int cell = fromCell; cell < toCell; cell++) {
+                processOwnedCell(cellArray[cell], cellKeys[cell], chunk);
+            }
+            Arrays.fill(chunkCellShapes[chunk], null);
+        }
+    }
+
+    private void processOwnedCell(Set<IShape> cell, int cellKey, int chunk) {
+        final int size = cell.size();
+        if (size < 2) {
+            return;
+        }
+        final IShape[] shapesOfCell = cell.toArray(chunkCellShapes[chunk]);
+        chunkCellShapes[chunk] = shapesOfCell;
+        final PairBuffer collisions = chunkPairs[chunk];
+        for (int i = 0; i < size; i++) {
+            final Aabb aabb = shapesOfCell[i].getAabb();
+            for (int j = i + 1; j < size; j++) {
+                final Aabb other = shapesOfCell[j].getAabb();
+                if (Aabb.isIntersected(aabb, other) && generateKey(Math.max(aabb.min.x, other.min.x),
+                        Math.max(aabb.min.y, other.min.y)) == cellKey) {
+                    collisions.add(shapesOfCell[i], shapesOfCell[j]);
+                }
+            }
+        }
+    }
+
+    private static int generateKey(int cellX, int cellY) {
+        return (cellX * 73856093) ^ (cellY * 19349663);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<IShape>[] createCellArray(int length) {
+        return (Set<IShape>[]) new Set[length];
     }
 }
@@ -0,0 +1,162 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.collisions.broadphase.aabbtree.AabbTreeNode;
+import com.github.introfog.pie.core.shape.Aabb;
+import com.github.introfog.pie.core.shape.IShape;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The class stores static shapes (with zero inverted mass) in an Aabb tree which is built once, when the shapes
+ * are added, and then is only queried with the Aabbs of dynamic shapes. The static shapes never collide with
+ * each other, so the pairs of static shapes are never tested.
+ *
+ * <p>
+ * The static shapes are considered immovable, the Aabb of a shape is computed when the shape is added. If
+ * a static shape needs to be moved, it should be removed from the tree and added again.
+ *
+ * @see AabbTreeNode
+ */
+public class StaticShapeTree {
+    private AabbTreeNode root;
+    private final Map<IShape, AabbTreeNode> leaves;
+    private final Deque<AabbTreeNode> nodes;
+
+    /**
+     * Instantiates a new {@link StaticShapeTree} instance.
+     */
+    public StaticShapeTree() {
+        leaves = new HashMap<>();
+        nodes = new ArrayDeque<>();
+    }
+
+    /**
+     * Adds the static shape to the tree.
+     *
+     * @param shape the static shape
+     */
+    public void addShape(IShape shape) {
+        if (leaves.containsKey(shape)) {
+            return;
+        }
+        shape.computeAabb();
+        // The static shapes don't move, so the leaf Aabb isn't enlarged
+        AabbTreeNode leaf = new AabbTreeNode(shape, 0f);
+        leaves.put(shape, leaf);
+        if (root == null) {
+            root = leaf;
+        } else {
+            root = AabbTreeNode.insertNode(root, leaf);
+        }
+    }
+
+    /**
+     * Adds the static shapes to the tree, the whole tree is rebuilt in one top-down pass
+     * (see {@link AabbTreeNode#buildTree(Collection)}).
+     *
+     * @param shapes the static shapes
+     */
+    public void addShapes(Collection<IShape> shapes) {
+        boolean added = false;
+        for (IShape shape : shapes) {
+            if (!leaves.containsKey(shape)) {
+                shape.computeAabb();
+                leaves.put(shape, new AabbTreeNode(shape, 0f));
+                added = true;
+            }
+        }
+        if (added) {
+            root = AabbTreeNode.buildTree(leaves.values());
+        }
+    }
+
+    /**
+     * Removes the shape from the tree.
+     *
+     * @param shape the shape to be removed from the tree, if present
+     * @return {@code true} if the tree contained the specified shape, otherwise {@code false}
+     */
+    public boolean remove(IShape shape) {
+        AabbTreeNode leaf = leaves.remove(shape);
+        if (leaf == null) {
+            return false;
+        }
+        root = AabbTreeNode.removeNode(root, leaf);
+        return true;
+    }
+
+    /**
+     * Checks whether the tree contains the shape.
+     *
+     * @param shape the shape
+     * @return {@code true} if the tree contains the specified shape, otherwise {@code false}
+     */
+    public boolean contains(IShape shape) {
+        return leaves.containsKey(shape);
+    }
+
+    /**
+     * Gets the number of static shapes in the tree.
+     *
+     * @return the number of shapes
+     */
+    public int size() {
+        return leaves.size();
+    }
+
+    /**
+     * Clears all shapes from the tree.
+     */
+    public void clear() {
+        leaves.clear();
+        root = null;
+    }
+
+    /**
+     * Calculates the collisions of the passed shape Aabb with the Aabbs of static shapes
+     * and adds the found pairs to the passed set.
+     *
+     * @param shape the shape, usually dynamic one, with the up-to-date Aabb
+     * @param collisions the buffer to which the pairs of intersected Aabbs are added
+     */
+    public void calculateAabbCollisions(IShape shape, PairBuffer collisions) {
+        if (root == null) {
+            return;
+        }
+        final Aabb aabb = shape.getAabb();
+        nodes.push(root);
+        while (!nodes.isEmpty()) {
+            AabbTreeNode currentNode = nodes.pop();
+            if (!Aabb.isIntersected(currentNode.aabb, aabb)) {
+                continue;
+            }
+            if (currentNode.isLeaf()) {
+                if (currentNode.shape != shape) {
+                    collisions.add(shape, currentNode.shape);
+                }
+            } else {
+                nodes.push(currentNode.children[0]);
+                nodes.push(currentNode.children[1]);
+            }
+        }
+    }
+}
@@ -18,9 +18,9 @@ package com.github.introfog.pie.core.collisions.broadphase;
 import com.github.introfog.pie.core.math.Vector2f;
 import com.github.introfog.pie.core.shape.Aabb;
 import com.github.introfog.pie.core.shape.IShape;
-import com.github.introfog.pie.core.shape.ShapePair;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -60,6 +60,7 @@ public class SweepAndPruneMethod extends AbstractBroadPhase {
         super.setShapes(shapes);
         xAxisProjection = new ArrayList<>(shapes);
         yAxisProjection = new ArrayList<>(shapes);
+        sortProjections();
     }
 
     @Override
@@ -79,6 +80,45 @@ public class SweepAndPruneMethod extends AbstractBroadPhase {
         return removed;
     }
 
+    /**
+     * Adds the shapes to the projections and sorts the projections once, so the next calculation
+     * of collisions sorts the almost sorted projections.
+     *
+     * @param shapes the shapes to be added
+     */
+    @Override
+    public void addShapes(Collection<IShape> shapes) {
+        for (IShape shape : shapes) {
+            if (this.shapes.add(shape)) {
+                xAxisProjection.add(shape);
+                yAxisProjection.add(shape);
+            }
+        }
+        sortProjections();
+    }
+
+    /**
+     * Removes the shapes from the projections in one pass over each projection.
+     *
+     * @param shapes the shapes to be removed from this broad phase method, if present
+     * @return {@code true} if this broad phase method contained any of the specified shapes, otherwise {@code false}
+     */
+    @Override
+    public boolean removeShapes(Collection<IShape> shapes) {
+        Set<IShape> removedShapes = new HashSet<>();
+        for (IShape shape : shapes) {
+            if (this.shapes.remove(shape)) {
+                removedShapes.add(shape);
+            }
+        }
+        if (removedShapes.isEmpty()) {
+            return false;
+        }
+        xAxisProjection.removeIf(removedShapes::contains);
+        yAxisProjection.removeIf(removedShapes::contains);
+        return true;
+    }
+
     @Override
     public void clear() {
         super.clear();
@@ -94,17 +134,16 @@ public class SweepAndPruneMethod extends AbstractBroadPhase {
     }
 
     @Override
-    protected Set<ShapePair> domesticCalculateAabbCollisions() {
+    protected void domesticCalculateAabbCollisions(PairBuffer collisions) {
         // The best case is O(n*logn) or O(k*n), in the worst O(n^2)
         // Looking for possible intersections along the current axis, and then use brute force algorithm
         // Each time using variance select the next axis
-        Set<ShapePair> possibleCollisionSet = new HashSet<>();
 
         // TODO use insertion sorting (effective when the list is almost sorted)
         if (currentSweepAndPruneAxis == 0) {
-            xAxisProjection.sort((a, b) -> Float.compare(a.getAabb().min.x, b.getAabb().min.x));
+            xAxisProjection.sort(SweepAndPruneMethod::compareByMinX);
         } else {
-            yAxisProjection.sort((a, b) -> Float.compare(a.getAabb().min.y, b.getAabb().min.y));
+            yAxisProjection.sort(SweepAndPruneMethod::compareByMinY);
         }
 
         p.set(0f, 0f);
@@ -134,9 +173,9 @@ public class SweepAndPruneMethod extends AbstractBroadPhase {
 
 
                 if (currentSweepAndPruneAxis == 0 && Aabb.isIntersected(xAxisProjection.get(j).getAabb(), currAabb)) {
-                    possibleCollisionSet.add(new ShapePair(xAxisProjection.get(j), xAxisProjection.get(i)));
+                    collisions.add(xAxisProjection.get(j), xAxisProjection.get(i));
                 } else if (currentSweepAndPruneAxis == 1 && Aabb.isIntersected(yAxisProjection.get(j).getAabb(), currAabb)) {
-                    possibleCollisionSet.add(new ShapePair(yAxisProjection.get(j), yAxisProjection.get(i)));
+                    collisions.add(yAxisProjection.get(j), yAxisProjection.get(i));
                 }
             }
         }
@@ -152,7 +191,18 @@ public class SweepAndPruneMethod extends AbstractBroadPhase {
         if (variance.y > variance.x) {
             currentSweepAndPruneAxis = 1;
         }
+    }
+
+    private void sortProjections() {
+        xAxisProjection.sort(SweepAndPruneMethod::compareByMinX);
+        yAxisProjection.sort(SweepAndPruneMethod::compareByMinY);
+    }
+
+    private static int compareByMinX(IShape a, IShape b) {
+        return Float.compare(a.getAabb().min.x, b.getAabb().min.x);
+    }
 
-        return possibleCollisionSet;
+    private static int compareByMinY(IShape a, IShape b) {
+        return Float.compare(a.getAabb().min.y, b.getAabb().min.y);
     }
 }
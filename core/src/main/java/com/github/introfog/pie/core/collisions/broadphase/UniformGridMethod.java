@@ -0,0 +1,290 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.PieExceptionMessage;
+import com.github.introfog.pie.core.shape.Aabb;
+import com.github.introfog.pie.core.shape.IShape;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * The class is a uniform grid method for the worlds with known bounds. The bounds are divided into cells of
+ * the same size, and if the shape Aabb intersects with a cell, then the reference to this shape is placed
+ * in the cell. Then the shapes of each cell are checked pairwise.
+ *
+ * <p>
+ * Unlike the {@link SpatialHashingMethod}, the cells are not hashed, the cell of a point is calculated
+ * directly from its coordinates, and the grid is stored in flat int arrays. Every iteration the shapes are
+ * counted per cell, the counts are turned into the start indices of the cells and the shapes are placed
+ * in one array in the order of the cells (like in the counting sort), so the iteration doesn't create objects.
+ * The pair of shapes which lies in several common cells is reported only by the cell which contains
+ * the minimum corner of the intersection of their Aabbs.
+ *
+ * <p>
+ * The parts of the shapes which are outside of the bounds are placed in the border cells, so such shapes are
+ * still processed correctly, but if there are many of them, the border cells become overcrowded.
+ *
+ * <p>
+ * This method is effective for the arena-style worlds filled with the shapes of similar size, the cell size
+ * should be close to the size of the shapes.
+ *
+ * @see AbstractBroadPhase
+ * @see SpatialHashingMethod
+ */
+public class UniformGridMethod extends AbstractBroadPhase {
+    /** The maximal number of cells, the grid keeps two int arrays of this length. */
+    public static final int MAX_CELL_COUNT = 1 << 24;
+
+    private final float minX;
+    private final float minY;
+    private final float maxX;
+    private final float maxY;
+    private final float cellSize;
+    private final float inverseCellSize;
+    private final int columnCount;
+    private final int rowCount;
+
+    private boolean shapeArrayChanged;
+    private IShape[] shapeArray;
+    private int shapeCount;
+
+    /** The ranges of the cells of the shapes, four values per shape: min column, min row, max column, max row. */
+    private int[] shapeCellRanges;
+    /** The index of the first entry of each cell in the {@link #cellEntries}, the last value is the entry count. */
+    private final int[] cellStarts;
+    private final int[] cellFillCounts;
+    /** The indices of the shapes in the order of the cells. */
+    private int[] cellEntries;
+
+    /**
+     * Instantiates a new {@link UniformGridMethod} instance.
+     *
+     * @param worldBounds the bounds of the world which are divided into cells
+     * @param cellSize the size of the cells
+     *
+     * @throws IllegalArgumentException if the cell size isn't positive, the bounds are empty or
+     * the number of cells is greater than {@link #MAX_CELL_COUNT}
+     */
+    public UniformGridMethod(Aabb worldBounds, float cellSize) {
+        if (!(cellSize > 0) || Float.isInfinite(cellSize)) {
+            throw new IllegalArgumentException(PieExceptionMessage.GRID_CELL_SIZE_MUST_BE_POSITIVE);
+        }
+        final float width = worldBounds.max.x - worldBounds.min.x;
+        final float height = worldBounds.max.y - worldBounds.min.y;
+        if (!(width > 0) || !(height > 0) || Float.isInfinite(width) || Float.isInfinite(height)) {
+            throw new IllegalArgumentException(PieExceptionMessage.GRID_BOUNDS_MUST_NOT_BE_EMPTY);
+        }
+        final double columns = Math.ceil(width / (double) cellSize);
+        final double rows = Math.ceil(height / (double) cellSize);
+        if (columns * rows > MAX_CELL_COUNT) {
+            throw new IllegalArgumentException(PieExceptionMessage.TOO_MANY_GRID_CELLS);
+        }
+
+        minX = worldBounds.min.x;
+        minY = worldBounds.min.y;
+        maxX = worldBounds.max.x;
+        maxY = worldBounds.max.y;
+        this.cellSize = cellSize;
+        inverseCellSize = 1 / cellSize;
+        columnCount = (int) columns;
+        rowCount = (int) rows;
+
+        shapeArray = new IShape[0];
+        shapeCellRanges = new int[0];
+        cellStarts = new int[columnCount * rowCount + 1];
+        cellFillCounts = new int[columnCount * rowCount];
+        cellEntries = new int[0];
+    }
+
+    /**
+     * Gets the bounds of the world which are divided into cells.
+     *
+     * @return the copy of the bounds
+     */
+    public Aabb getWorldBounds() {
+        Aabb worldBounds = new Aabb();
+        worldBounds.min.set(minX, minY);
+        worldBounds.max.set(maxX, maxY);
+        return worldBounds;
+    }
+
+    /**
+     * Gets the size of the cells.
+     *
+     * @return the size of the cells
+     */
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    @Override
+    public void setShapes(Set<IShape> shapes) {
+        super.setShapes(shapes);
+        shapeArrayChanged = true;
+    }
+
+    @Override
+    public void addShape(IShape shape) {
+        super.addShape(shape);
+        shapeArrayChanged = true;
+    }
+
+    @Override
+    public void addShapes(Collection<IShape> shapes) {
+        this.shapes.addAll(shapes);
+        shapeArrayChanged = true;
+    }
+
+    @Override
+    public boolean remove(IShape shape) {
+        boolean removed = super.remove(shape);
+        shapeArrayChanged |= removed;
+        return removed;
+    }
+
+    @Override
+    public boolean removeShapes(Collection<IShape> shapes) {
+        boolean removed = this.shapes.removeAll(shapes);
+        shapeArrayChanged |= removed;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        shapeArrayChanged = true;
+    }
+
+    @Override
+    public UniformGridMethod newInstance() {
+        UniformGridMethod uniformGridMethod = new UniformGridMethod(getWorldBounds(), cellSize);
+        uniformGridMethod.setShapes(shapes);
+        return uniformGridMethod;
+    }
+
+    @Override
+    protected void domesticCalculateAabbCollisions(PairBuffer collisions) {
+        // The complexity is O(n + c), where c is the number of cells, if the shapes are not much larger
+        // than the cells and are not crowded in a few cells
+        prepareArrays();
+        if (shapeCount < 2) {
+            return;
+        }
+        countCellEntries();
+        fillCellEntries();
+
+        for (int row = 0; row < rowCount; row++) {
+            for (int column = 0; column < columnCount; column++) {
+                final int cell = row * columnCount + column;
+                if (cellStarts[cell + 1] - cellStarts[cell] > 1) {
+                    findIntersections(cell, column, row, collisions);
+                }
+            }
+        }
+    }
+
+    private void prepareArrays() {
+        if (shapeArrayChanged) {
+            shapeArray = shapes.toArray(new IShape[]{});
+            shapeArrayChanged = false;
+        }
+        shapeCount = shapes.size();
+        if (shapeCellRanges.length < 4 * shapeCount) {
+            shapeCellRanges = new int[4 * shapeCount];
+        }
+    }
+
+    private void countCellEntries() {
+        Arrays.fill(cellStarts, 0);
+        int entryCount = 0;
+        for (int shape = 0; shape < shapeCount; shape++) {
+            final Aabb aabb = shapeArray[shape].getAabb();
+            final int minColumn = getColumn(aabb.min.x);
+            final int minRow = getRow(aabb.min.y);
+            final int maxColumn = getColumn(aabb.max.x);
+            final int maxRow = getRow(aabb.max.y);
+            shapeCellRanges[4 * shape] = minColumn;
+            shapeCellRanges[4 * shape + 1] = minRow;
+            shapeCellRanges[4 * shape + 2] = maxColumn;
+            shapeCellRanges[4 * shape + 3] = maxRow;
+
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    cellStarts[row * columnCount + column]++;
+                }
+            }
+            entryCount += (maxColumn - minColumn + 1) * (maxRow - minRow + 1);
+        }
+
+        // The counts are turned into the start indices of the cells
+        int start = 0;
+        for (int cell = 0; cell < cellFillCounts.length; cell++) {
+            final int count = cellStarts[cell];
+            cellStarts[cell] = start;
+            start += count;
+        }
+        cellStarts[cellFillCounts.length] = start;
+        if (cellEntries.length < entryCount) {
+            cellEntries = new int[entryCount];
+        }
+    }
+
+    private void fillCellEntries() {
+        Arrays.fill(cellFillCounts, 0);
+        for (int shape = 0; shape < shapeCount; shape++) {
+            final int minColumn = shapeCellRanges[4 * shape];
+            final int minRow = shapeCellRanges[4 * shape + 1];
+            final int maxColumn = shapeCellRanges[4 * shape + 2];
+            final int maxRow = shapeCellRanges[4 * shape + 3];
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    final int cell = row * columnCount + column;
+                    cellEntries[cellStarts[cell] + cellFillCounts[cell]++] = shape;
+                }
+            }
+        }
+    }
+
+    private void findIntersections(int cell, int column, int row, PairBuffer collisions) {
+        final int end = cellStarts[cell + 1];
+        for (int i = cellStarts[cell]; i < end; i++) {
+            final Aabb aabb = shapeArray[cellEntries[i]].getAabb();
+            for (int j = i + 1; j < end; j++) {
+                final Aabb other = shapeArray[cellEntries[j]].getAabb();
+                // The pair is reported only by the cell which contains the minimum corner of the Aabbs intersection,
+                // so the pair which lies in several common cells is reported once
+                if (Aabb.isIntersected(aabb, other) && getColumn(Math.max(aabb.min.x, other.min.x)) == column
+                        && getRow(Math.max(aabb.min.y, other.min.y)) == row) {
+                    collisions.add(shapeArray[cellEntries[i]], shapeArray[cellEntries[j]]);
+                }
+            }
+        }
+    }
+
+    private int getColumn(float x) {
+        final float column = (x - minX) * inverseCellSize;
+        // The coordinates outside of the bounds are clamped to the border cells, NaN is placed in the first cell
+        return column > 0 ? Math.min((int) column, columnCount - 1) : 0;
+    }
+
+    private int getRow(float y) {
+        final float row = (y - minY) * inverseCellSize;
+        return row > 0 ? Math.min((int) row, rowCount - 1) : 0;
+    }
+}
@@ -16,14 +16,16 @@
 package com.github.introfog.pie.core.collisions.broadphase.aabbtree;
 
 import com.github.introfog.pie.core.collisions.broadphase.AabbTreeMethod;
+import com.github.introfog.pie.core.collisions.broadphase.PairBuffer;
 import com.github.introfog.pie.core.shape.Aabb;
 import com.github.introfog.pie.core.shape.IShape;
 import com.github.introfog.pie.core.shape.ShapePair;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Deque;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -37,11 +39,8 @@ public class AabbTreeNode {
     /** The constant DEFAULT_ENLARGED_AABB_COEFFICIENT. */
     public static final float DEFAULT_ENLARGED_AABB_COEFFICIENT = 0.15f;
 
-    /**
-     * Auxiliary flag that is used when calculating collisions and is used to
-     * mark that the children of the marked node have already been viewed.
-     */
-    public boolean checked;
+    /** The number of bins along the split axis which are used by the {@link #buildTree(Collection)}. */
+    private static final int SAH_BIN_COUNT = 16;
 
     /**
      * The enlarged Aabb coefficient that is used when initializing a tree leaf and is used to create a larger
@@ -84,9 +83,28 @@ public class AabbTreeNode {
      * @param enlargedAabbCoefficient the enlarged Aabb coefficient
      */
     public AabbTreeNode(IShape shape, float enlargedAabbCoefficient) {
-        this.checked = false;
+        this(shape, enlargedAabbCoefficient, 0f);
+    }
+
+    /**
+     * Instantiates a new {@link AabbTreeNode} instance based on shape with the predicted displacement
+     * of the shape. This node is a leaf in the tree.
+     *
+     * <p>
+     * The leaf Aabb, enlarged by the {@link #enlargedAabbCoefficient}, is additionally extended in the direction
+     * of the shape body velocity by the velocity multiplied by the displacement prediction time, so the fast shape
+     * stays inside its leaf for several iterations instead of being reinserted every iteration. Usually the time
+     * is the fixed delta time of the world multiplied by the number of iterations for which the leaf should be
+     * valid, zero disables the prediction. The time isn't stored in the node, so the time of the reinserted
+     * leaf is passed to {@link #updateLeaf(AabbTreeNode, AabbTreeNode, float)}.
+     *
+     * @param shape the leaf shape
+     * @param enlargedAabbCoefficient the enlarged Aabb coefficient
+     * @param displacementPredictionTime the displacement prediction time
+     */
+    public AabbTreeNode(IShape shape, float enlargedAabbCoefficient, float displacementPredictionTime) {
         this.enlargedAabbCoefficient = enlargedAabbCoefficient;
-        AabbTreeNode.calculateEnlargedAabb(this, shape);
+        AabbTreeNode.calculateEnlargedAabb(this, shape, displacementPredictionTime);
         this.parent = null;
         this.children = new AabbTreeNode[2];
         this.shape = shape;
@@ -103,7 +121,6 @@ public class AabbTreeNode {
      * @param enlargedAabbCoefficient the enlarged Aabb coefficient
      */
     protected AabbTreeNode(Aabb aabb, float enlargedAabbCoefficient) {
-        this.checked = false;
         this.enlargedAabbCoefficient = enlargedAabbCoefficient;
         this.aabb = aabb;
         this.parent = null;
@@ -115,6 +132,10 @@ public class AabbTreeNode {
      * Calculates the shape Aabb collisions.
      *
      * <p>
+     * The traversal doesn't change the nodes, so several threads may calculate the collisions of the same tree
+     * at once, if the tree isn't modified meanwhile.
+     *
+     * <p>
      * Note, when this method is called, all shapes from tree have an up-to-date Aabb.
      *
      * @param treeRoot the root of the Aabb tree
@@ -122,20 +143,97 @@ public class AabbTreeNode {
      * a unique shape pair and the Aabb of those shapes intersect
      */
     public static Set<ShapePair> calculateAabbCollisions(AabbTreeNode treeRoot) {
-        Set<ShapePair> collisions = new HashSet<>();
+        PairBuffer collisions = new PairBuffer();
+        AabbTreeNode.calculateAabbCollisions(treeRoot, collisions);
+        return collisions.toShapePairs();
+    }
+
+    /**
+     * Calculates the shape Aabb collisions in the same way as the {@link #calculateAabbCollisions(AabbTreeNode)}
+     * method, but adds the pairs to the passed buffer.
+     *
+     * @param treeRoot the root of the Aabb tree
+     * @param collisions the buffer to which the pairs of intersected Aabbs are added
+     */
+    public static void calculateAabbCollisions(AabbTreeNode treeRoot, PairBuffer collisions) {
         if (treeRoot == null || treeRoot.parent != null) {
             // TODO add log message
             // It is necessary to start from tree root, otherwise the inherited cost will be calculated incorrectly
-            return collisions;
+            return;
         }
-        if (treeRoot.isLeaf()) {
-            return collisions;
+        AabbTreeNode.calculateSelfCollisions(treeRoot, collisions);
+    }
+
+    /**
+     * Calculates the collisions of the shape Aabbs of two subtrees and adds the found pairs to the passed buffer.
+     * If the same node is passed twice, the collisions of the shapes inside the subtree are calculated.
+     *
+     * <p>
+     * The subtree pairs are the independent parts of the tree traversal: the pairs found for {@code (node, node)}
+     * are the pairs found for {@code (left, left)}, {@code (right, right)} and {@code (left, right)} of its children,
+     * so the parts may be calculated in parallel into the separate buffers without repeated pairs.
+     *
+     * <p>
+     * Note, when this method is called, all shapes from the subtrees have an up-to-date Aabb.
+     *
+     * @param first the root of the first subtree
+     * @param second the root of the second subtree, the same node as the first one to check the subtree itself
+     * @param collisions the buffer to which the pairs of intersected Aabbs are added
+     */
+    public static void calculateAabbCollisions(AabbTreeNode first, AabbTreeNode second, PairBuffer collisions) {
+        if (first == second) {
+            AabbTreeNode.calculateSelfCollisions(first, collisions);
+        } else {
+            AabbTreeNode.calculateCrossCollisions(first, second, collisions);
         }
+    }
 
-        AabbTreeNode.clearCheckedFlag(treeRoot);
-        AabbTreeNode.calculateAabbCollisionsHelper(treeRoot.children[0], treeRoot.children[1], collisions);
+    /**
+     * Calculates the collisions of the passed shape Aabb with the Aabbs of the tree shapes
+     * and adds the found pairs to the passed set.
+     *
+     * <p>
+     * Note, when this method is called, all shapes from tree and the passed shape have an up-to-date Aabb.
+     *
+     * @param treeRoot the root of the Aabb tree
+     * @param shape the shape, the pair of the shape with itself isn't added if the shape is in the tree
+     * @param collisions the buffer to which the pairs of intersected Aabbs are added
+     */
+    public static void calculateAabbCollisions(AabbTreeNode treeRoot, IShape shape, PairBuffer collisions) {
+        AabbTreeNode.calculateAabbCollisions(treeRoot, shape, collisions, new ArrayDeque<>());
+    }
 
-        return collisions;
+    /**
+     * Calculates the collisions of the passed shape Aabb with the Aabbs of the tree shapes in the same way as
+     * the {@link #calculateAabbCollisions(AabbTreeNode, IShape, PairBuffer)} method, but uses the passed stack
+     * for the traversal, so the callers querying the tree for many shapes don't create a stack per query.
+     *
+     * @param treeRoot the root of the Aabb tree
+     * @param shape the shape, the pair of the shape with itself isn't added if the shape is in the tree
+     * @param collisions the buffer to which the pairs of intersected Aabbs are added
+     * @param nodes the empty stack of the nodes to be visited, it is empty again after the method returns
+     */
+    public static void calculateAabbCollisions(AabbTreeNode treeRoot, IShape shape, PairBuffer collisions,
+            Deque<AabbTreeNode> nodes) {
+        if (treeRoot == null) {
+            return;
+        }
+        final Aabb aabb = shape.getAabb();
+        nodes.push(treeRoot);
+        while (!nodes.isEmpty()) {
+            AabbTreeNode currentNode = nodes.pop();
+            if (!Aabb.isIntersected(currentNode.aabb, aabb)) {
+                continue;
+            }
+            if (currentNode.isLeaf()) {
+                if (currentNode.shape != shape && Aabb.isIntersected(currentNode.shape.getAabb(), aabb)) {
+                    collisions.add(shape, currentNode.shape);
+                }
+            } else {
+                nodes.push(currentNode.children[0]);
+                nodes.push(currentNode.children[1]);
+            }
+        }
     }
 
     /**
@@ -157,13 +255,56 @@ public class AabbTreeNode {
             return treeRoot;
         }
         if (treeRoot.isLeaf()) {
-            AabbTreeNode.calculateEnlargedAabb(treeRoot, treeRoot.shape);
+            AabbTreeNode.calculateEnlargedAabb(treeRoot, treeRoot.shape, 0f);
         }
 
         List<AabbTreeNode> invalidNodes = getInvalidLeafs(treeRoot);
         for (AabbTreeNode node : invalidNodes) {
-            treeRoot = AabbTreeNode.removeNode(treeRoot, node);
-            treeRoot = AabbTreeNode.insertLeaf(treeRoot, node.shape);
+            treeRoot = AabbTreeNode.reinsertLeaf(treeRoot, node, 0f);
+        }
+        return treeRoot;
+    }
+
+    /**
+     * Updates the one leaf of the Aabb tree. Unlike {@link #updateTree(AabbTreeNode)}, the method doesn't walk
+     * the whole tree, so it is used when the moved shapes are known.
+     *
+     * <p>
+     * If the shape went beyond the leaf Aabb, the leaf is removed and inserted in the tree again, the same
+     * leaf instance is kept in the tree. Note that the root of the tree may change, so the actual reference
+     * to the tree root is returned from the method.
+     *
+     * @param treeRoot the tree root
+     * @param leaf the leaf of the tree to be updated
+     * @return the new or old tree root depending on how the tree was updated
+     */
+    public static AabbTreeNode updateLeaf(AabbTreeNode treeRoot, AabbTreeNode leaf) {
+        return AabbTreeNode.updateLeaf(treeRoot, leaf, 0f);
+    }
+
+    /**
+     * Updates the one leaf of the Aabb tree in the same way as the {@link #updateLeaf(AabbTreeNode, AabbTreeNode)}
+     * method, but the new Aabb of the reinserted leaf is extended along the predicted displacement of the shape
+     * (see {@link #AabbTreeNode(IShape, float, float)}).
+     *
+     * @param treeRoot the tree root
+     * @param leaf the leaf of the tree to be updated
+     * @param displacementPredictionTime the current displacement prediction time
+     * @return the new or old tree root depending on how the tree was updated
+     */
+    public static AabbTreeNode updateLeaf(AabbTreeNode treeRoot, AabbTreeNode leaf,
+            float displacementPredictionTime) {
+        if (treeRoot == null || treeRoot.parent != null) {
+            // TODO add log message
+            // It is necessary to start from tree root, otherwise the inherited cost will be calculated incorrectly
+            return treeRoot;
+        }
+        if (leaf == treeRoot) {
+            AabbTreeNode.calculateEnlargedAabb(treeRoot, treeRoot.shape, displacementPredictionTime);
+            return treeRoot;
+        }
+        if (!Aabb.isContained(leaf.aabb, leaf.shape.getAabb())) {
+            treeRoot = AabbTreeNode.reinsertLeaf(treeRoot, leaf, displacementPredictionTime);
         }
         return treeRoot;
     }
@@ -184,7 +325,26 @@ public class AabbTreeNode {
             // It is necessary to start from tree root, otherwise the inherited cost will be calculated incorrectly
             return treeRoot;
         }
-        AabbTreeNode leaf = new AabbTreeNode(shape, treeRoot.enlargedAabbCoefficient);
+        return AabbTreeNode.insertNode(treeRoot, new AabbTreeNode(shape, treeRoot.enlargedAabbCoefficient));
+    }
+
+    /**
+     * Inserts the leaf to the tree. The method is the same as {@link #insertLeaf(AabbTreeNode, IShape)},
+     * but the leaf is created by the caller, so the caller can keep the reference to the leaf.
+     *
+     * <p>
+     * Note that the root of the tree may change, so the actual reference to the tree root is returned from the method.
+     *
+     * @param treeRoot the tree root to insert the leaf into
+     * @param leaf the leaf which isn't in any tree
+     * @return the new or old tree root depending on how the leaf was inserted
+     */
+    public static AabbTreeNode insertNode(AabbTreeNode treeRoot, AabbTreeNode leaf) {
+        if (treeRoot == null || treeRoot.parent != null) {
+            // TODO add log message
+            // It is necessary to start from tree root, otherwise the inherited cost will be calculated incorrectly
+            return treeRoot;
+        }
 
         // Stage 1: find the best sibling for the new leaf
         AabbTreeNode bestSibling = AabbTreeNode.findBestSibling(treeRoot, leaf);
@@ -213,14 +373,79 @@ public class AabbTreeNode {
             return treeRoot;
         }
 
-        AabbTreeNode leaf = AabbTreeNode.findLeaf(treeRoot, shape);
+        return AabbTreeNode.removeNode(treeRoot, AabbTreeNode.findLeaf(treeRoot, shape));
+    }
+
+    /**
+     * Removes the leaf from aabb tree. The method is the same as {@link #removeLeaf(AabbTreeNode, IShape)},
+     * but it doesn't search the leaf of shape in the tree.
+     *
+     * @param treeRoot the tree root to remove the leaf from
+     * @param leaf the leaf to be removed from the tree
+     * @return the new or old tree root depending on how the leaf
+     * was removed, can be null in case when tree root removed
+     */
+    public static AabbTreeNode removeNode(AabbTreeNode treeRoot, AabbTreeNode leaf) {
+        if (treeRoot == null || treeRoot.parent != null) {
+            // TODO add log message
+            // It is necessary to start from tree root, otherwise the inherited cost will be calculated incorrectly
+            return treeRoot;
+        }
         if (leaf == null) {
             return treeRoot;
         }
         if (leaf == treeRoot) {
             return null;
         }
-        return AabbTreeNode.removeNode(treeRoot, leaf);
+        AabbTreeNode newTreeRoot = AabbTreeNode.detachNode(treeRoot, leaf);
+        leaf.parent = null;
+        return newTreeRoot;
+    }
+
+    /**
+     * Builds the new tree from the leaves in one top-down pass. The leaves are split recursively by the surface
+     * area heuristic (SAH) over the binned centres of their Aabbs, which gives a better tree than the insertion of
+     * leaves one by one and takes O(n*logn) time.
+     *
+     * <p>
+     * Note that the leaves must be detached from any tree, their current parents are ignored, and the leaf
+     * Aabbs aren't recalculated. The internal nodes get the enlarged Aabb coefficient of the first leaf.
+     *
+     * @param leaves the leaves of the new tree
+     * @return the root of the new tree or null if there are no leaves
+     */
+    public static AabbTreeNode buildTree(Collection<AabbTreeNode> leaves) {
+        if (leaves.isEmpty()) {
+            return null;
+        }
+        AabbTreeNode[] nodes = leaves.toArray(new AabbTreeNode[]{});
+        float coefficient = nodes[0].enlargedAabbCoefficient;
+        float[] binBounds = new float[4 * SAH_BIN_COUNT];
+        int[] binCounts = new int[SAH_BIN_COUNT];
+
+        AabbTreeNode root = null;
+        // The explicit stack is used, because the SAH splits may be unbalanced and the recursion may be too deep
+        Deque<BuildTask> tasks = new ArrayDeque<>();
+        tasks.push(new BuildTask(null, 0, 0, nodes.length));
+        while (!tasks.isEmpty()) {
+            BuildTask task = tasks.pop();
+            AabbTreeNode node;
+            if (task.to - task.from == 1) {
+                node = nodes[task.from];
+            } else {
+                node = new AabbTreeNode(AabbTreeNode.unionAabb(nodes, task.from, task.to), coefficient);
+                int middle = AabbTreeNode.partitionBySah(nodes, task.from, task.to, binBounds, binCounts);
+                tasks.push(new BuildTask(node, 1, middle, task.to));
+                tasks.push(new BuildTask(node, 0, task.from, middle));
+            }
+            node.parent = task.parent;
+            if (task.parent == null) {
+                root = node;
+            } else {
+                task.parent.children[task.childIndex] = node;
+            }
+        }
+        return root;
     }
 
     public boolean isLeaf() {
@@ -275,7 +500,15 @@ public class AabbTreeNode {
         return null;
     }
 
-    private static AabbTreeNode removeNode(AabbTreeNode treeRoot, final AabbTreeNode node) {
+    private static AabbTreeNode reinsertLeaf(AabbTreeNode treeRoot, AabbTreeNode leaf,
+            float displacementPredictionTime) {
+        treeRoot = AabbTreeNode.detachNode(treeRoot, leaf);
+        leaf.parent = null;
+        AabbTreeNode.calculateEnlargedAabb(leaf, leaf.shape, displacementPredictionTime);
+        return AabbTreeNode.insertNode(treeRoot, leaf);
+    }
+
+    private static AabbTreeNode detachNode(AabbTreeNode treeRoot, final AabbTreeNode node) {
         AabbTreeNode parent = node.parent;
         AabbTreeNode sibling = parent.children[0] == node ? parent.children[1] : parent.children[0];
         AabbTreeNode grandpa = parent.parent;
@@ -319,51 +552,35 @@ public class AabbTreeNode {
         return bestSibling;
     }
 
-    private static void clearCheckedFlag(AabbTreeNode node) {
-        node.checked = false;
-        if (!node.isLeaf()) {
-            AabbTreeNode.clearCheckedFlag(node.children[0]);
-            AabbTreeNode.clearCheckedFlag(node.children[1]);
+    private static void calculateSelfCollisions(AabbTreeNode node, PairBuffer collisions) {
+        if (node.isLeaf()) {
+            return;
         }
+        AabbTreeNode.calculateSelfCollisions(node.children[0], collisions);
+        AabbTreeNode.calculateSelfCollisions(node.children[1], collisions);
+        AabbTreeNode.calculateCrossCollisions(node.children[0], node.children[1], collisions);
     }
 
-    private static void checkChild(AabbTreeNode node, Set<ShapePair> collisions) {
-        if (!node.checked) {
-            calculateAabbCollisionsHelper(node.children[0], node.children[1], collisions);
-            node.checked = true;
+    private static void calculateCrossCollisions(AabbTreeNode first, AabbTreeNode second, PairBuffer collisions) {
+        if (!Aabb.isIntersected(first.aabb, second.aabb)) {
+            return;
         }
-    }
-
-    private static void calculateAabbCollisionsHelper(AabbTreeNode first, AabbTreeNode second, Set<ShapePair> collisions) {
         if (first.isLeaf()) {
             if (second.isLeaf()) {
                 if (Aabb.isIntersected(first.shape.getAabb(), second.shape.getAabb())) {
-                    collisions.add(new ShapePair(first.shape, second.shape));
+                    collisions.add(first.shape, second.shape);
                 }
             } else {
-                checkChild(second, collisions);
-                if (Aabb.isIntersected(first.aabb, second.aabb)) {
-                    calculateAabbCollisionsHelper(first, second.children[0], collisions);
-                    calculateAabbCollisionsHelper(first, second.children[1], collisions);
-                }
+                AabbTreeNode.calculateCrossCollisions(first, second.children[0], collisions);
+                AabbTreeNode.calculateCrossCollisions(first, second.children[1], collisions);
             }
+        } else if (second.isLeaf() || first.aabb.surfaceArea() >= second.aabb.surfaceArea()) {
+            // The larger node is descended, so the smaller node is checked against the smaller children
+            AabbTreeNode.calculateCrossCollisions(first.children[0], second, collisions);
+            AabbTreeNode.calculateCrossCollisions(first.children[1], second, collisions);
         } else {
-            if (second.isLeaf()) {
-                checkChild(first, collisions);
-                if (Aabb.isIntersected(first.aabb, second.aabb)) {
-                    calculateAabbCollisionsHelper(first.children[0], second, collisions);
-                    calculateAabbCollisionsHelper(first.children[1], second, collisions);
-                }
-            } else {
-                checkChild(first, collisions);
-                checkChild(second, collisions);
-                if (Aabb.isIntersected(first.aabb, second.aabb)) {
-                    calculateAabbCollisionsHelper(first.children[0], second.children[0], collisions);
-                    calculateAabbCollisionsHelper(first.children[0], second.children[1], collisions);
-                    calculateAabbCollisionsHelper(first.children[1], second.children[0], collisions);
-                    calculateAabbCollisionsHelper(first.children[1], second.children[1], collisions);
-                }
-            }
+            AabbTreeNode.calculateCrossCollisions(first, second.children[0], collisions);
+            AabbTreeNode.calculateCrossCollisions(first, second.children[1], collisions);
         }
     }
 
@@ -458,7 +675,132 @@ public class AabbTreeNode {
         }
     }
 
-    private static void calculateEnlargedAabb(AabbTreeNode node, IShape shape) {
+    private static Aabb unionAabb(AabbTreeNode[] nodes, int from, int to) {
+        Aabb result = new Aabb();
+        result.min.set(Float.MAX_VALUE, Float.MAX_VALUE);
+        result.max.set(-Float.MAX_VALUE, -Float.MAX_VALUE);
+        for (int i = from; i < to; i++) {
+            Aabb aabb = nodes[i].aabb;
+            result.min.set(Math.min(result.min.x, aabb.min.x), Math.min(result.min.y, aabb.min.y));
+            result.max.set(Math.max(result.max.x, aabb.max.x), Math.max(result.max.y, aabb.max.y));
+        }
+        return result;
+    }
+
+    private static float centre(AabbTreeNode node, boolean xAxis) {
+        // The doubled centre is used, it doesn't change the order of the nodes
+        return xAxis ? node.aabb.min.x + node.aabb.max.x : node.aabb.min.y + node.aabb.max.y;
+    }
+
+    private static int partitionBySah(AabbTreeNode[] nodes, int from, int to, float[] binBounds, int[] binCounts) {
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            float x = AabbTreeNode.centre(nodes[i], true);
+            float y = AabbTreeNode.centre(nodes[i], false);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        // The centres are binned along the axis with the largest extent
+        final boolean xAxis = maxX - minX >= maxY - minY;
+        final float min = xAxis ? minX : minY;
+        final float extent = xAxis ? maxX - minX : maxY - minY;
+        if (extent == 0f) {
+            // All centres coincide, so any split is equal
+            return (from + to) >>> 1;
+        }
+
+        Arrays.fill(binCounts, 0);
+        for (int bin = 0; bin < SAH_BIN_COUNT; bin++) {
+            binBounds[4 * bin] = Float.MAX_VALUE;
+            binBounds[4 * bin + 1] = Float.MAX_VALUE;
+            binBounds[4 * bin + 2] = -Float.MAX_VALUE;
+            binBounds[4 * bin + 3] = -Float.MAX_VALUE;
+        }
+        for (int i = from; i < to; i++) {
+            int bin = AabbTreeNode.getBin(AabbTreeNode.centre(nodes[i], xAxis), min, extent);
+            Aabb aabb = nodes[i].aabb;
+            binCounts[bin]++;
+            binBounds[4 * bin] = Math.min(binBounds[4 * bin], aabb.min.x);
+            binBounds[4 * bin + 1] = Math.min(binBounds[4 * bin + 1], aabb.min.y);
+            binBounds[4 * bin + 2] = Math.max(binBounds[4 * bin + 2], aabb.max.x);
+            binBounds[4 * bin + 3] = Math.max(binBounds[4 * bin + 3], aabb.max.y);
+        }
+
+        // The cost of the split after the bin is the sum of the areas of both parts multiplied
+        // by the numbers of their nodes, the right part costs are accumulated from the end
+        float[] rightCosts = new float[SAH_BIN_COUNT];
+        float rMinX = Float.MAX_VALUE;
+        float rMinY = Float.MAX_VALUE;
+        float rMaxX = -Float.MAX_VALUE;
+        float rMaxY = -Float.MAX_VALUE;
+        int rightCount = 0;
+        for (int bin = SAH_BIN_COUNT - 1; bin > 0; bin--) {
+            if (binCounts[bin] != 0) {
+                rMinX = Math.min(rMinX, binBounds[4 * bin]);
+                rMinY = Math.min(rMinY, binBounds[4 * bin + 1]);
+                rMaxX = Math.max(rMaxX, binBounds[4 * bin + 2]);
+                rMaxY = Math.max(rMaxY, binBounds[4 * bin + 3]);
+                rightCount += binCounts[bin];
+            }
+            rightCosts[bin - 1] = rightCount == 0 ? 0f : rightCount * (rMaxX - rMinX) * (rMaxY - rMinY);
+        }
+
+        float lMinX = Float.MAX_VALUE;
+        float lMinY = Float.MAX_VALUE;
+        float lMaxX = -Float.MAX_VALUE;
+        float lMaxY = -Float.MAX_VALUE;
+        int leftCount = 0;
+        int bestBin = -1;
+        float bestCost = Float.MAX_VALUE;
+        int bestImbalance = Integer.MAX_VALUE;
+        final int count = to - from;
+        for (int bin = 0; bin < SAH_BIN_COUNT - 1; bin++) {
+            if (binCounts[bin] != 0) {
+                lMinX = Math.min(lMinX, binBounds[4 * bin]);
+                lMinY = Math.min(lMinY, binBounds[4 * bin + 1]);
+                lMaxX = Math.max(lMaxX, binBounds[4 * bin + 2]);
+                lMaxY = Math.max(lMaxY, binBounds[4 * bin + 3]);
+                leftCount += binCounts[bin];
+            }
+            if (leftCount == 0 || leftCount == count) {
+                continue;
+            }
+            float cost = leftCount * (lMaxX - lMinX) * (lMaxY - lMinY) + rightCosts[bin];
+            int imbalance = Math.abs(2 * leftCount - count);
+            // The balanced split is preferred among the equal ones, for example when all Aabbs are degenerate
+            if (cost < bestCost || (cost == bestCost && imbalance < bestImbalance)) {
+                bestBin = bin;
+                bestCost = cost;
+                bestImbalance = imbalance;
+            }
+        }
+        if (bestBin == -1) {
+            return (from + to) >>> 1;
+        }
+
+        int middle = from;
+        for (int i = from; i < to; i++) {
+            if (AabbTreeNode.getBin(AabbTreeNode.centre(nodes[i], xAxis), min, extent) <= bestBin) {
+                AabbTreeNode temp = nodes[i];
+                nodes[i] = nodes[middle];
+                nodes[middle] = temp;
+                middle++;
+            }
+        }
+        return middle;
+    }
+
+    private static int getBin(float centre, float min, float extent) {
+        int bin = (int) (SAH_BIN_COUNT * (centre - min) / extent);
+        return Math.min(SAH_BIN_COUNT - 1, Math.max(0, bin));
+    }
+
+    private static void calculateEnlargedAabb(AabbTreeNode node, IShape shape, float displacementPredictionTime) {
         node.aabb = new Aabb();
         float width = shape.getAabb().max.x - shape.getAabb().min.x;
         float height = shape.getAabb().max.y - shape.getAabb().min.y;
@@ -466,5 +808,34 @@ public class AabbTreeNode {
                 shape.getAabb().min.y - node.enlargedAabbCoefficient * height);
         node.aabb.max.set(shape.getAabb().max.x + node.enlargedAabbCoefficient * width,
                 shape.getAabb().max.y + node.enlargedAabbCoefficient * height);
+        if (displacementPredictionTime > 0f) {
+            // The Aabb is extended only on the side towards which the shape moves
+            final float displacementX = shape.getBody().velocity.x * displacementPredictionTime;
+            final float displacementY = shape.getBody().velocity.y * displacementPredictionTime;
+            if (displacementX < 0f) {
+                node.aabb.min.x += displacementX;
+            } else {
+                node.aabb.max.x += displacementX;
+            }
+            if (displacementY < 0f) {
+                node.aabb.min.y += displacementY;
+            } else {
+                node.aabb.max.y += displacementY;
+            }
+        }
+    }
+
+    private static final class BuildTask {
+        private final AabbTreeNode parent;
+        private final int childIndex;
+        private final int from;
+        private final int to;
+
+        BuildTask(AabbTreeNode parent, int childIndex, int from, int to) {
+            this.parent = parent;
+            this.childIndex = childIndex;
+            this.from = from;
+            this.to = to;
+        }
     }
 }
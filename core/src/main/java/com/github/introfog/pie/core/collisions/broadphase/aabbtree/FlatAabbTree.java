@@ -0,0 +1,697 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase.aabbtree;
+
+import com.github.introfog.pie.core.collisions.broadphase.FlatAabbTreeMethod;
+import com.github.introfog.pie.core.collisions.broadphase.PairBuffer;
+import com.github.introfog.pie.core.math.Vector2f;
+import com.github.introfog.pie.core.shape.Aabb;
+import com.github.introfog.pie.core.shape.IShape;
+
+import java.util.Arrays;
+
+/**
+ * The class is a binary Aabb tree, the same as the tree of {@link AabbTreeNode}, which is stored in flat arrays.
+ *
+ * <p>
+ * The nodes are int indices in the arrays of the node bounds, parents and children, the free nodes are chained
+ * in the free list and reused, so inserting, removing and moving the leaves don't create objects after the arrays
+ * have reached the number of nodes. The index of a leaf doesn't change while the leaf is in the tree, so the caller
+ * can keep it to remove or move the leaf in O(log n) without searching the tree.
+ *
+ * <p>
+ * The leaves are inserted with the same branch and bound search of the best sibling and the same rotations as
+ * in the {@link AabbTreeNode}, and the leaf bounds are enlarged by the same enlarged Aabb coefficient
+ * (see {@link AabbTreeNode#enlargedAabbCoefficient}) and extended along the predicted displacement of the shape
+ * (see {@link AabbTreeNode#AabbTreeNode(IShape, float, float)}).
+ *
+ * @see FlatAabbTreeMethod
+ * @see AabbTreeNode
+ */
+public class FlatAabbTree {
+    /** The index which marks the absence of a node. */
+    public static final int NULL_NODE = -1;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private float enlargedAabbCoefficient;
+    private float displacementPredictionTime;
+
+    private float[] minX;
+    private float[] minY;
+    private float[] maxX;
+    private float[] maxY;
+    /** The parent of the node, the free nodes use this array to keep the next free node. */
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] secondChildren;
+    /** The shape of the leaf, null for the internal and free nodes. */
+    private IShape[] shapes;
+
+    private int nodeCount;
+    private int freeList;
+    private int root;
+    private int leafCount;
+
+    private int[] stack;
+    private float[] costStack;
+    private int[] buildLeaves;
+
+    /**
+     * Instantiates a new empty {@link FlatAabbTree} instance.
+     *
+     * @param enlargedAabbCoefficient the enlarged Aabb coefficient of the leaves
+     */
+    public FlatAabbTree(float enlargedAabbCoefficient) {
+        this.enlargedAabbCoefficient = enlargedAabbCoefficient;
+        minX = new float[MIN_CAPACITY];
+        minY = new float[MIN_CAPACITY];
+        maxX = new float[MIN_CAPACITY];
+        maxY = new float[MIN_CAPACITY];
+        parents = new int[MIN_CAPACITY];
+        firstChildren = new int[MIN_CAPACITY];
+        secondChildren = new int[MIN_CAPACITY];
+        shapes = new IShape[MIN_CAPACITY];
+        stack = new int[MIN_CAPACITY];
+        costStack = new float[MIN_CAPACITY];
+        buildLeaves = new int[0];
+        freeList = NULL_NODE;
+        root = NULL_NODE;
+    }
+
+    /**
+     * Sets the enlarged Aabb coefficient, the leaves get the new bounds when they are inserted or moved.
+     *
+     * @param enlargedAabbCoefficient the enlarged Aabb coefficient
+     */
+    public void setEnlargedAabbCoefficient(float enlargedAabbCoefficient) {
+        this.enlargedAabbCoefficient = enlargedAabbCoefficient;
+    }
+
+    /**
+     * Gets the enlarged Aabb coefficient.
+     *
+     * @return the enlarged Aabb coefficient
+     */
+    public float getEnlargedAabbCoefficient() {
+        return enlargedAabbCoefficient;
+    }
+
+    /**
+     * Sets the displacement prediction time, the leaves get the new bounds when they are inserted or moved.
+     *
+     * <p>
+     * For more information see {@link AabbTreeNode#AabbTreeNode(IShape, float, float)}.
+     *
+     * @param displacementPredictionTime the displacement prediction time, zero disables the prediction
+     */
+    public void setDisplacementPredictionTime(float displacementPredictionTime) {
+        this.displacementPredictionTime = displacementPredictionTime;
+    }
+
+    /**
+     * Gets the displacement prediction time.
+     *
+     * @return the displacement prediction time
+     */
+    public float getDisplacementPredictionTime() {
+        return displacementPredictionTime;
+    }
+
+    /**
+     * Gets the number of leaves in the tree.
+     *
+     * @return the number of leaves
+     */
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * Gets the number of node indices which have ever been used, all node indices are less than this number.
+     *
+     * @return the upper bound of the node indices
+     */
+    public int getNodeCapacity() {
+        return nodeCount;
+    }
+
+    /**
+     * Gets the height of the tree, the tree of one leaf has the height 1.
+     *
+     * @return the height of the tree, zero if the tree is empty
+     */
+    public int getHeight() {
+        return root == NULL_NODE ? 0 : getHeight(root);
+    }
+
+    /**
+     * Gets the shape of the leaf.
+     *
+     * @param leaf the index of the leaf
+     * @return the shape of the leaf
+     */
+    public IShape getShape(int leaf) {
+        return shapes[leaf];
+    }
+
+    /**
+     * Inserts the leaf of the shape into the tree.
+     *
+     * @param shape the shape with the up-to-date Aabb
+     * @return the index of the new leaf which is kept while the leaf is in the tree
+     */
+    public int insertLeaf(IShape shape) {
+        final int leaf = allocateNode();
+        shapes[leaf] = shape;
+        calculateEnlargedAabb(leaf);
+        insertNode(leaf);
+        leafCount++;
+        return leaf;
+    }
+
+    /**
+     * Removes the leaf from the tree, the index of the leaf can be reused by the next inserted leaf.
+     *
+     * @param leaf the index of the leaf
+     */
+    public void removeLeaf(int leaf) {
+        if (leaf != root) {
+            detachNode(leaf);
+        } else {
+            root = NULL_NODE;
+        }
+        freeNode(leaf);
+        leafCount--;
+    }
+
+    /**
+     * Moves the leaf if the shape went beyond the leaf bounds. The leaf is removed and inserted in the tree again,
+     * its index is kept.
+     *
+     * <p>
+     * Note, when this method is called, the shape of the leaf has the up-to-date Aabb.
+     *
+     * @param leaf the index of the leaf
+     * @return {@code true} if the leaf has been reinserted, {@code false} if the leaf bounds still contain the shape
+     */
+    public boolean moveLeaf(int leaf) {
+        final Aabb aabb = shapes[leaf].getAabb();
+        if (minX[leaf] <= aabb.min.x && minY[leaf] <= aabb.min.y && maxX[leaf] >= aabb.max.x
+                && maxY[leaf] >= aabb.max.y) {
+            return false;
+        }
+        if (leaf == root) {
+            calculateEnlargedAabb(leaf);
+            return true;
+        }
+        detachNode(leaf);
+        calculateEnlargedAabb(leaf);
+        insertNode(leaf);
+        return true;
+    }
+
+    /**
+     * Moves all leaves whose shapes went beyond the leaf bounds (see {@link #moveLeaf(int)}).
+     *
+     * @return the number of reinserted leaves
+     */
+    public int updateTree() {
+        int reinsertedCount = 0;
+        // The leaves keep their indices when they are reinserted, so each leaf is visited once
+        for (int node = 0; node < nodeCount; node++) {
+            if (shapes[node] != null && moveLeaf(node)) {
+                reinsertedCount++;
+            }
+        }
+        return reinsertedCount;
+    }
+
+    /**
+     * Builds the tree from scratch in one top-down pass, the previous leaves are removed. The leaves are split
+     * recursively at the median of their centres along the axis with the largest extent of the centres.
+     *
+     * <p>
+     * Note, when this method is called, all passed shapes have an up-to-date Aabb.
+     *
+     * @param buildShapes the shapes of the new leaves
+     * @param count the number of shapes from the beginning of the array
+     * @param leaves the array in which the index of the leaf of each shape is written
+     */
+    public void build(IShape[] buildShapes, int count, int[] leaves) {
+        clear();
+        if (count == 0) {
+            return;
+        }
+        if (buildLeaves.length < count) {
+            buildLeaves = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            final int leaf = allocateNode();
+            shapes[leaf] = buildShapes[i];
+            calculateEnlargedAabb(leaf);
+            leaves[i] = leaf;
+            buildLeaves[i] = leaf;
+        }
+        leafCount = count;
+
+        // The explicit stack of the ranges is used, each range is the parent, the child slot and the leaves
+        int top = 0;
+        stack = FlatAabbTree.ensureCapacity(stack, 4);
+        stack[top++] = NULL_NODE;
+        stack[top++] = 0;
+        stack[top++] = 0;
+        stack[top++] = count;
+        while (top > 0) {
+            final int to = stack[--top];
+            final int from = stack[--top];
+            final int childSlot = stack[--top];
+            final int parent = stack[--top];
+            int node;
+            if (to - from == 1) {
+                node = buildLeaves[from];
+            } else {
+                node = allocateNode();
+                final int middle = partitionByMedian(from, to);
+                stack = FlatAabbTree.ensureCapacity(stack, top + 8);
+                stack[top++] = node;
+                stack[top++] = 1;
+                stack[top++] = middle;
+                stack[top++] = to;
+                stack[top++] = node;
+                stack[top++] = 0;
+                stack[top++] = from;
+                stack[top++] = middle;
+            }
+            parents[node] = parent;
+            if (parent == NULL_NODE) {
+                root = node;
+            } else if (childSlot == 0) {
+                firstChildren[parent] = node;
+            } else {
+                secondChildren[parent] = node;
+            }
+        }
+        refitInternalNodes();
+    }
+
+    /**
+     * Removes all leaves from the tree, the arrays are kept.
+     */
+    public void clear() {
+        Arrays.fill(shapes, 0, nodeCount, null);
+        nodeCount = 0;
+        freeList = NULL_NODE;
+        root = NULL_NODE;
+        leafCount = 0;
+    }
+
+    /**
+     * Calculates the collisions of the Aabbs of the shapes of the tree and adds the pairs to the passed buffer.
+     *
+     * <p>
+     * Note, when this method is called, all shapes from tree have an up-to-date Aabb.
+     *
+     * @param collisions the buffer to which the pairs of intersected Aabbs are added
+     */
+    public void calculateAabbCollisions(PairBuffer collisions) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        // The stack keeps the pairs of nodes to be checked, the pair of the same node means its self check
+        int top = 0;
+        stack[top++] = root;
+        stack[top++] = root;
+        while (top > 0) {
+            final int second = stack[--top];
+            final int first = stack[--top];
+            stack = FlatAabbTree.ensureCapacity(stack, top + 6);
+            if (first == second) {
+                if (shapes[first] == null) {
+                    stack[top++] = firstChildren[first];
+                    stack[top++] = firstChildren[first];
+                    stack[top++] = secondChildren[first];
+                    stack[top++] = secondChildren[first];
+                    stack[top++] = firstChildren[first];
+                    stack[top++] = secondChildren[first];
+                }
+            } else if (isIntersected(first, second)) {
+                final boolean firstIsLeaf = shapes[first] != null;
+                final boolean secondIsLeaf = shapes[second] != null;
+                if (firstIsLeaf && secondIsLeaf) {
+                    if (Aabb.isIntersected(shapes[first].getAabb(), shapes[second].getAabb())) {
+                        collisions.add(shapes[first], shapes[second]);
+                    }
+                } else if (secondIsLeaf || (!firstIsLeaf && getArea(first) >= getArea(second))) {
+                    // The larger node is descended, so the both subtrees are descended evenly
+                    stack[top++] = firstChildren[first];
+                    stack[top++] = second;
+                    stack[top++] = secondChildren[first];
+                    stack[top++] = second;
+                } else {
+                    stack[top++] = first;
+                    stack[top++] = firstChildren[second];
+                    stack[top++] = first;
+                    stack[top++] = secondChildren[second];
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the collisions of the passed shape Aabb with the Aabbs of the tree shapes
+     * and adds the found pairs to the passed buffer.
+     *
+     * <p>
+     * Note, when this method is called, all shapes from tree and the passed shape have an up-to-date Aabb.
+     *
+     * @param shape the shape, the pair of the shape with itself isn't added if the shape is in the tree
+     * @param collisions the buffer to which the pairs of intersected Aabbs are added
+     */
+    public void calculateAabbCollisions(IShape shape, PairBuffer collisions) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        final Aabb aabb = shape.getAabb();
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            final int node = stack[--top];
+            if (minX[node] > aabb.max.x || maxX[node] < aabb.min.x || minY[node] > aabb.max.y
+                    || maxY[node] < aabb.min.y) {
+                continue;
+            }
+            if (shapes[node] != null) {
+                if (shapes[node] != shape && Aabb.isIntersected(shapes[node].getAabb(), aabb)) {
+                    collisions.add(shape, shapes[node]);
+                }
+            } else {
+                stack = FlatAabbTree.ensureCapacity(stack, top + 2);
+                stack[top++] = firstChildren[node];
+                stack[top++] = secondChildren[node];
+            }
+        }
+    }
+
+    private int allocateNode() {
+        int node;
+        if (freeList != NULL_NODE) {
+            node = freeList;
+            freeList = parents[node];
+        } else {
+            if (nodeCount == parents.length) {
+                final int capacity = 2 * nodeCount;
+                minX = Arrays.copyOf(minX, capacity);
+                minY = Arrays.copyOf(minY, capacity);
+                maxX = Arrays.copyOf(maxX, capacity);
+                maxY = Arrays.copyOf(maxY, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                firstChildren = Arrays.copyOf(firstChildren, capacity);
+                secondChildren = Arrays.copyOf(secondChildren, capacity);
+                shapes = Arrays.copyOf(shapes, capacity);
+            }
+            node = nodeCount++;
+        }
+        parents[node] = NULL_NODE;
+        firstChildren[node] = NULL_NODE;
+        secondChildren[node] = NULL_NODE;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        shapes[node] = null;
+        parents[node] = freeList;
+        freeList = node;
+    }
+
+    private void insertNode(int leaf) {
+        if (root == NULL_NODE) {
+            root = leaf;
+            parents[leaf] = NULL_NODE;
+            return;
+        }
+
+        // Stage 1: find the best sibling for the new leaf
+        final int sibling = findBestSibling(leaf);
+
+        // Stage 2: create a new parent
+        final int oldParent = parents[sibling];
+        final int newParent = allocateNode();
+        parents[newParent] = oldParent;
+        setUnion(newParent, sibling, leaf);
+        firstChildren[newParent] = sibling;
+        secondChildren[newParent] = leaf;
+        parents[sibling] = newParent;
+        parents[leaf] = newParent;
+        if (oldParent == NULL_NODE) {
+            root = newParent;
+        } else if (firstChildren[oldParent] == sibling) {
+            firstChildren[oldParent] = newParent;
+        } else {
+            secondChildren[oldParent] = newParent;
+        }
+
+        // Stage 3: walk back up the tree refitting Aabbs
+        for (int node = newParent; node != NULL_NODE; node = parents[node]) {
+            setUnion(node, firstChildren[node], secondChildren[node]);
+            attemptToRotate(node);
+        }
+    }
+
+    private void detachNode(int node) {
+        final int parent = parents[node];
+        final int sibling = firstChildren[parent] == node ? secondChildren[parent] : firstChildren[parent];
+        final int grandpa = parents[parent];
+        if (grandpa == NULL_NODE) {
+            root = sibling;
+            parents[sibling] = NULL_NODE;
+        } else {
+            if (firstChildren[grandpa] == parent) {
+                firstChildren[grandpa] = sibling;
+            } else {
+                secondChildren[grandpa] = sibling;
+            }
+            parents[sibling] = grandpa;
+            for (int ancestor = grandpa; ancestor != NULL_NODE; ancestor = parents[ancestor]) {
+                setUnion(ancestor, firstChildren[ancestor], secondChildren[ancestor]);
+            }
+        }
+        freeNode(parent);
+        parents[node] = NULL_NODE;
+    }
+
+    private int findBestSibling(int leaf) {
+        final float leafArea = getArea(leaf);
+        int bestSibling = root;
+        float bestCost = Float.MAX_VALUE;
+        int top = 0;
+        stack[top] = root;
+        costStack[top++] = 0;
+        while (top > 0) {
+            top--;
+            final int node = stack[top];
+            final float inheritedCost = costStack[top];
+            final float unionArea = getUnionArea(node, leaf);
+            // The cost of the sibling is the area of the new parent plus the growth of the areas of the ancestors
+            final float cost = unionArea + inheritedCost;
+            if (cost < bestCost) {
+                bestSibling = node;
+                bestCost = cost;
+            }
+
+            final float childInheritedCost = inheritedCost + unionArea - getArea(node);
+            if (shapes[node] == null && leafArea + childInheritedCost < bestCost) {
+                stack = FlatAabbTree.ensureCapacity(stack, top + 2);
+                costStack = FlatAabbTree.ensureCapacity(costStack, top + 2);
+                stack[top] = firstChildren[node];
+                costStack[top++] = childInheritedCost;
+                stack[top] = secondChildren[node];
+                costStack[top++] = childInheritedCost;
+            }
+        }
+        return bestSibling;
+    }
+
+    private void attemptToRotate(int node) {
+        final int parent = parents[node];
+        if (parent == NULL_NODE || shapes[node] != null) {
+            return;
+        }
+        final int sibling = firstChildren[parent] == node ? secondChildren[parent] : firstChildren[parent];
+        final int first = firstChildren[node];
+        final int second = secondChildren[node];
+
+        final float currentSa = getArea(node);
+        final float firstChildRotateSa = getUnionArea(sibling, first);
+        final float secondChildRotateSa = getUnionArea(sibling, second);
+        if (Math.min(firstChildRotateSa, secondChildRotateSa) < currentSa) {
+            int child;
+            if (firstChildRotateSa < secondChildRotateSa) {
+                child = second;
+                secondChildren[node] = sibling;
+            } else {
+                child = first;
+                firstChildren[node] = sibling;
+            }
+            setUnion(node, firstChildren[node], secondChildren[node]);
+            parents[sibling] = node;
+
+            if (firstChildren[parent] == node) {
+                secondChildren[parent] = child;
+            } else {
+                firstChildren[parent] = child;
+            }
+            parents[child] = parent;
+        }
+    }
+
+    private int partitionByMedian(int from, int to) {
+        float centreMinX = Float.MAX_VALUE;
+        float centreMinY = Float.MAX_VALUE;
+        float centreMaxX = -Float.MAX_VALUE;
+        float centreMaxY = -Float.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            final int leaf = buildLeaves[i];
+            centreMinX = Math.min(centreMinX, minX[leaf] + maxX[leaf]);
+            centreMinY = Math.min(centreMinY, minY[leaf] + maxY[leaf]);
+            centreMaxX = Math.max(centreMaxX, minX[leaf] + maxX[leaf]);
+            centreMaxY = Math.max(centreMaxY, minY[leaf] + maxY[leaf]);
+        }
+        final boolean xAxis = centreMaxX - centreMinX >= centreMaxY - centreMinY;
+        final int middle = (from + to) >>> 1;
+
+        // The quick select places the leaf with the median centre in the middle of the range
+        int left = from;
+        int right = to - 1;
+        while (left < right) {
+            final float pivot = getCentre(buildLeaves[(left + right) >>> 1], xAxis);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (getCentre(buildLeaves[i], xAxis) < pivot) {
+                    i++;
+                }
+                while (getCentre(buildLeaves[j], xAxis) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    final int temp = buildLeaves[i];
+                    buildLeaves[i] = buildLeaves[j];
+                    buildLeaves[j] = temp;
+                    i++;
+                    j--;
+                }
+            }
+            if (middle <= j) {
+                right = j;
+            } else if (middle >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return middle;
+    }
+
+    private void refitInternalNodes() {
+        // The children are always allocated after their parent by the build, so the reverse order refits them first
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            if (shapes[node] == null) {
+                setUnion(node, firstChildren[node], secondChildren[node]);
+            }
+        }
+    }
+
+    private int getHeight(int node) {
+        int height = 0;
+        int top = 0;
+        stack = FlatAabbTree.ensureCapacity(stack, 2);
+        stack[top++] = node;
+        stack[top++] = 1;
+        while (top > 0) {
+            final int depth = stack[--top];
+            final int current = stack[--top];
+            height = Math.max(height, depth);
+            if (shapes[current] == null) {
+                stack = FlatAabbTree.ensureCapacity(stack, top + 4);
+                stack[top++] = firstChildren[current];
+                stack[top++] = depth + 1;
+                stack[top++] = secondChildren[current];
+                stack[top++] = depth + 1;
+            }
+        }
+        return height;
+    }
+
+    private void calculateEnlargedAabb(int leaf) {
+        final Aabb aabb = shapes[leaf].getAabb();
+        final float width = aabb.max.x - aabb.min.x;
+        final float height = aabb.max.y - aabb.min.y;
+        minX[leaf] = aabb.min.x - enlargedAabbCoefficient * width;
+        minY[leaf] = aabb.min.y - enlargedAabbCoefficient * height;
+        maxX[leaf] = aabb.max.x + enlargedAabbCoefficient * width;
+        maxY[leaf] = aabb.max.y + enlargedAabbCoefficient * height;
+        if (displacementPredictionTime > 0f) {
+            final Vector2f velocity = shapes[leaf].getBody().velocity;
+            final float displacementX = velocity.x * displacementPredictionTime;
+            final float displacementY = velocity.y * displacementPredictionTime;
+            if (displacementX < 0f) {
+                minX[leaf] += displacementX;
+            } else {
+                maxX[leaf] += displacementX;
+            }
+            if (displacementY < 0f) {
+                minY[leaf] += displacementY;
+            } else {
+                maxY[leaf] += displacementY;
+            }
+        }
+    }
+
+    private void setUnion(int node, int first, int second) {
+        minX[node] = Math.min(minX[first], minX[second]);
+        minY[node] = Math.min(minY[first], minY[second]);
+        maxX[node] = Math.max(maxX[first], maxX[second]);
+        maxY[node] = Math.max(maxY[first], maxY[second]);
+    }
+
+    private boolean isIntersected(int first, int second) {
+        return maxX[first] >= minX[second] && minX[first] <= maxX[second] && maxY[first] >= minY[second]
+                && minY[first] <= maxY[second];
+    }
+
+    private float getArea(int node) {
+        return (maxX[node] - minX[node]) * (maxY[node] - minY[node]);
+    }
+
+    private float getUnionArea(int first, int second) {
+        return (Math.max(maxX[first], maxX[second]) - Math.min(minX[first], minX[second]))
+                * (Math.max(maxY[first], maxY[second]) - Math.min(minY[first], minY[second]));
+    }
+
+    private float getCentre(int leaf, boolean xAxis) {
+        // The doubled centre is used, it doesn't change the order of the leaves
+        return xAxis ? minX[leaf] + maxX[leaf] : minY[leaf] + maxY[leaf];
+    }
+
+    private static int[] ensureCapacity(int[] array, int length) {
+        return array.length >= length ? array : Arrays.copyOf(array, Math.max(length, 2 * array.length));
+    }
+
+    private static float[] ensureCapacity(float[] array, int length) {
+        return array.length >= length ? array : Arrays.copyOf(array, Math.max(length, 2 * array.length));
+    }
+}
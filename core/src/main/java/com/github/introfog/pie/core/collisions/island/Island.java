@@ -0,0 +1,171 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.island;
+
+import com.github.introfog.pie.core.collisions.Manifold;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.util.ParallelExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The class represents a group of dynamic shapes which are connected to each other by contacts. The shapes of
+ * different islands never touch each other directly (only through static shapes which don't move), so the
+ * collisions of different islands can be resolved independently and in parallel.
+ *
+ * @see IslandBuilder
+ */
+public class Island {
+    private final List<Manifold> manifolds;
+    private final List<IShape> shapes;
+    private final List<List<Manifold>> batches;
+    private final List<Manifold> uncoloredManifolds;
+    private int batchCount;
+
+    /**
+     * Instantiates a new empty {@link Island} instance.
+     */
+    public Island() {
+        manifolds = new ArrayList<>();
+        shapes = new ArrayList<>();
+        batches = new ArrayList<>();
+        uncoloredManifolds = new ArrayList<>();
+    }
+
+    /**
+     * Gets the manifolds of the island.
+     *
+     * @return the list of manifolds
+     */
+    public List<Manifold> getManifolds() {
+        return manifolds;
+    }
+
+    /**
+     * Gets the dynamic shapes of the island.
+     *
+     * @return the list of shapes
+     */
+    public List<IShape> getShapes() {
+        return shapes;
+    }
+
+    /**
+     * Gets the colored batches of the island manifolds, the manifolds of one batch don't share dynamic bodies.
+     * The batches are filled by {@link ManifoldColoring#color(Island)}.
+     *
+     * @return the unmodifiable list of batches
+     */
+    public List<List<Manifold>> getBatches() {
+        return Collections.unmodifiableList(batches.subList(0, batchCount));
+    }
+
+    /**
+     * Gets the manifolds which haven't got a color, they are solved sequentially after all batches.
+     *
+     * @return the list of uncolored manifolds
+     */
+    public List<Manifold> getUncoloredManifolds() {
+        return uncoloredManifolds;
+    }
+
+    /**
+     * Resolves the island collisions. If warm starting is enabled, the impulses accumulated on the previous step
+     * are applied before the iterations (see {@link Manifold#warmStart()}).
+     *
+     * @param iterations the number of collision solve iterations
+     */
+    public void solve(int iterations) {
+        for (Manifold manifold : manifolds) {
+            manifold.warmStart();
+        }
+        for (int i = 0; i < iterations; i++) {
+            for (Manifold manifold : manifolds) {
+                manifold.solve();
+            }
+        }
+    }
+
+    /**
+     * Corrects the positions of the island shapes.
+     */
+    public void correctPositions() {
+        for (Manifold manifold : manifolds) {
+            manifold.correctPosition();
+        }
+    }
+
+    /**
+     * Resolves the island collisions batch by batch, the manifolds of each batch are solved in parallel.
+     * The island must be colored by {@link ManifoldColoring#color(Island)} before calling this method.
+     *
+     * @param iterations the number of collision solve iterations
+     * @param executor the executor which solves the manifolds of one batch in parallel
+     */
+    public void solve(int iterations, ParallelExecutor executor) {
+        forEachBatch(executor, Manifold::warmStart);
+        for (int i = 0; i < iterations; i++) {
+            forEachBatch(executor, Manifold::solve);
+        }
+    }
+
+    /**
+     * Corrects the positions of the island shapes batch by batch, the manifolds of each batch are corrected
+     * in parallel. The island must be colored by {@link ManifoldColoring#color(Island)} before calling this method.
+     *
+     * @param executor the executor which corrects the manifolds of one batch in parallel
+     */
+    public void correctPositions(ParallelExecutor executor) {
+        forEachBatch(executor, Manifold::correctPosition);
+    }
+
+    void clear() {
+        manifolds.clear();
+        shapes.clear();
+        clearBatches();
+    }
+
+    void clearBatches() {
+        for (int i = 0; i < batchCount; i++) {
+            batches.get(i).clear();
+        }
+        batchCount = 0;
+        uncoloredManifolds.clear();
+    }
+
+    List<Manifold> getBatch(int color) {
+        while (batches.size() <= color) {
+            batches.add(new ArrayList<>());
+        }
+        batchCount = Math.max(batchCount, color + 1);
+        return batches.get(color);
+    }
+
+    private void forEachBatch(ParallelExecutor executor, Consumer<Manifold> action) {
+        for (int i = 0; i < batchCount; i++) {
+            final List<Manifold> batch = batches.get(i);
+            executor.forEachChunk(0, batch.size(), (from, to) -> {
+                for (int j = from; j < to; j++) {
+                    action.accept(batch.get(j));
+                }
+            });
+        }
+        uncoloredManifolds.forEach(action);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.island;
+
+import com.github.introfog.pie.core.collisions.Manifold;
+import com.github.introfog.pie.core.shape.IShape;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The class splits the manifolds into {@link Island}s with the help of the union-find (disjoint set) structure
+ * over the shapes connected by manifolds. The static shapes (with zero inverted mass) act as separators, i.e.
+ * two dynamic shapes lying on the same static shape belong to different islands if they don't touch each other.
+ *
+ * <p>
+ * The builder reuses its arrays and islands between calls, the union-find is reset lazily with the help of
+ * the build stamps, so the building time depends only on the number of manifolds, not on the number of shapes.
+ */
+public class IslandBuilder {
+    private final List<Island> islands;
+    private int islandCount;
+    private int currentStamp;
+    private int[] parents;
+    private int[] parentStamps;
+    private int[] islandIndices;
+    private int[] islandStamps;
+    private int[] shapeStamps;
+
+    /**
+     * Instantiates a new {@link IslandBuilder} instance.
+     */
+    public IslandBuilder() {
+        islands = new ArrayList<>();
+        parents = new int[0];
+        parentStamps = new int[0];
+        islandIndices = new int[0];
+        islandStamps = new int[0];
+        shapeStamps = new int[0];
+    }
+
+    /**
+     * Ensures that the builder can handle the shapes with the slots less than the passed capacity,
+     * the shapes are indexed by their {@link IShape#getSlot()}. The arrays only grow, so the method is cheap
+     * when the capacity hasn't been increased.
+     *
+     * @param slotCapacity the upper bound of the shape slots
+     * @see com.github.introfog.pie.core.shape.ShapeRegistry#getSlotCapacity()
+     */
+    public void setSlotCapacity(int slotCapacity) {
+        if (slotCapacity <= parents.length) {
+            return;
+        }
+        final int capacity = Math.max(slotCapacity, 2 * parents.length);
+        parents = Arrays.copyOf(parents, capacity);
+        parentStamps = Arrays.copyOf(parentStamps, capacity);
+        islandIndices = Arrays.copyOf(islandIndices, capacity);
+        islandStamps = Arrays.copyOf(islandStamps, capacity);
+        shapeStamps = Arrays.copyOf(shapeStamps, capacity);
+    }
+
+    /**
+     * Splits the manifolds into islands.
+     *
+     * <p>
+     * Note that the returned islands are reused by the next call of this method.
+     *
+     * @param manifolds the manifolds
+     * @return the unmodifiable list of islands
+     */
+    public List<Island> build(List<Manifold> manifolds) {
+        currentStamp++;
+        for (int i = 0; i < islandCount; i++) {
+            islands.get(i).clear();
+        }
+        islandCount = 0;
+
+        for (Manifold manifold : manifolds) {
+            int a = getDynamicIndex(manifold.aShape);
+            int b = getDynamicIndex(manifold.bShape);
+            if (a != -1 && b != -1) {
+                union(a, b);
+            }
+        }
+
+        for (Manifold manifold : manifolds) {
+            int a = getDynamicIndex(manifold.aShape);
+            int b = getDynamicIndex(manifold.bShape);
+            Island island = getIsland(a != -1 ? a : b);
+            island.getManifolds().add(manifold);
+            addShape(island, manifold.aShape, a);
+            addShape(island, manifold.bShape, b);
+        }
+
+        return Collections.unmodifiableList(islands.subList(0, islandCount));
+    }
+
+    private int getDynamicIndex(IShape shape) {
+        if (shape.getBody().invertedMass == 0f) {
+            return -1;
+        }
+        final int slot = shape.getSlot();
+        return slot < parents.length ? slot : -1;
+    }
+
+    private int find(int index) {
+        if (parentStamps[index] != currentStamp) {
+            parentStamps[index] = currentStamp;
+            parents[index] = index;
+            return index;
+        }
+        while (parents[index] != index) {
+            // Path halving
+            parents[index] = parents[parents[index]];
+            index = parents[index];
+        }
+        return index;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA != rootB) {
+            parents[rootA] = rootB;
+        }
+    }
+
+    private Island getIsland(int index) {
+        if (index == -1) {
+            // The manifold doesn't contain known dynamic shapes, so it forms its own island
+            return nextIsland();
+        }
+        int root = find(index);
+        if (islandStamps[root] != currentStamp) {
+            islandStamps[root] = currentStamp;
+            islandIndices[root] = islandCount;
+            return nextIsland();
+        }
+        return islands.get(islandIndices[root]);
+    }
+
+    private Island nextIsland() {
+        if (islandCount == islands.size()) {
+            islands.add(new Island());
+        }
+        return islands.get(islandCount++);
+    }
+
+    private void addShape(Island island, IShape shape, int index) {
+        if (index != -1 && shapeStamps[index] != currentStamp) {
+            shapeStamps[index] = currentStamp;
+            island.getShapes().add(shape);
+        }
+    }
+}
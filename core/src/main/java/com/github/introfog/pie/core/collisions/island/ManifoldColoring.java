@@ -0,0 +1,117 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.island;
+
+import com.github.introfog.pie.core.collisions.Manifold;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.util.ParallelExecutor;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The class colors the contact graph of the {@link Island}, i.e. splits the island manifolds into the batches
+ * in which no two manifolds touch the same dynamic body. The manifolds of one batch can be solved in parallel,
+ * and the batches are solved one after another (see {@link Island#solve(int, ParallelExecutor)}).
+ *
+ * <p>
+ * The coloring is greedy, each manifold gets the first color which isn't used by the manifolds of its bodies.
+ * The used colors of each body are stored as a bit mask, so the number of colors is limited by
+ * {@link #MAX_COLOR_COUNT}, the manifolds which don't fit into the colors are solved sequentially after all
+ * batches. The static shapes (with zero inverted mass) aren't changed by the solving, so they don't limit colors.
+ */
+public class ManifoldColoring {
+    /** The maximal number of colors. */
+    public static final int MAX_COLOR_COUNT = Long.SIZE;
+
+    private int currentStamp;
+    private long[] usedColors;
+    private int[] usedColorStamps;
+
+    /**
+     * Instantiates a new {@link ManifoldColoring} instance.
+     */
+    public ManifoldColoring() {
+        usedColors = new long[0];
+        usedColorStamps = new int[0];
+    }
+
+    /**
+     * Ensures that the coloring can handle the shapes with the slots less than the passed capacity,
+     * the shapes are indexed by their {@link IShape#getSlot()}. The arrays only grow, so the method is cheap
+     * when the capacity hasn't been increased.
+     *
+     * @param slotCapacity the upper bound of the shape slots
+     * @see com.github.introfog.pie.core.shape.ShapeRegistry#getSlotCapacity()
+     */
+    public void setSlotCapacity(int slotCapacity) {
+        if (slotCapacity <= usedColors.length) {
+            return;
+        }
+        final int capacity = Math.max(slotCapacity, 2 * usedColors.length);
+        usedColors = Arrays.copyOf(usedColors, capacity);
+        usedColorStamps = Arrays.copyOf(usedColorStamps, capacity);
+    }
+
+    /**
+     * Splits the island manifolds into the colored batches, the batches are stored in the island.
+     *
+     * @param island the island to be colored
+     */
+    public void color(Island island) {
+        currentStamp++;
+        island.clearBatches();
+
+        for (Manifold manifold : island.getManifolds()) {
+            int a = getDynamicIndex(manifold.aShape);
+            int b = getDynamicIndex(manifold.bShape);
+            long used = getUsedColors(a) | getUsedColors(b);
+            if (used == -1L) {
+                island.getUncoloredManifolds().add(manifold);
+                continue;
+            }
+
+            int color = Long.numberOfTrailingZeros(~used);
+            long colorBit = 1L << color;
+            if (a != -1) {
+                usedColors[a] |= colorBit;
+            }
+            if (b != -1) {
+                usedColors[b] |= colorBit;
+            }
+            island.getBatch(color).add(manifold);
+        }
+    }
+
+    private int getDynamicIndex(IShape shape) {
+        if (shape.getBody().invertedMass == 0f) {
+            return -1;
+        }
+        final int slot = shape.getSlot();
+        return slot < usedColors.length ? slot : -1;
+    }
+
+    private long getUsedColors(int index) {
+        if (index == -1) {
+            return 0L;
+        }
+        if (usedColorStamps[index] != currentStamp) {
+            usedColorStamps[index] = currentStamp;
+            usedColors[index] = 0L;
+        }
+        return usedColors[index];
+    }
+}
@@ -39,4 +39,30 @@ public interface IShapeCollisionHandler {
      * @throws IllegalArgumentException if wrong shape types passed
      */
     Manifold handleCollision(IShape aShape, IShape bShape, Context context);
+
+    /**
+     * Handles a collision between two {@link IShape} and writes the collision information to the passed
+     * {@link Manifold} instance instead of creating a new one, so the manifolds can be reused between steps.
+     * The manifold is reset by the handler, so its previous content doesn't matter.
+     *
+     * <p>
+     * The default implementation calls {@link #handleCollision(IShape, IShape, Context)} and copies its result,
+     * the handlers which care about allocations should override this method.
+     *
+     * @param aShape the first shape
+     * @param bShape the second shape
+     * @param context the world context
+     * @param manifold the manifold to which the collision information will be written
+     * @return {@code true} if the shapes collide, otherwise {@code false} and the manifold content is undefined
+     *
+     * @throws IllegalArgumentException if wrong shape types passed
+     */
+    default boolean handleCollision(IShape aShape, IShape bShape, Context context, Manifold manifold) {
+        final Manifold result = handleCollision(aShape, bShape, context);
+        if (result == null) {
+            return false;
+        }
+        manifold.set(result);
+        return true;
+    }
 }
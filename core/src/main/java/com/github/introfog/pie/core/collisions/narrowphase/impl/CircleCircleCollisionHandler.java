@@ -29,6 +29,12 @@ import com.github.introfog.pie.core.shape.IShape;
 public class CircleCircleCollisionHandler implements IShapeCollisionHandler {
     @Override
     public Manifold handleCollision(IShape aShape, IShape bShape, Context context) {
+        Manifold manifold = new Manifold(aShape, bShape, context);
+        return handleCollision(aShape, bShape, context, manifold) ? manifold : null;
+    }
+
+    @Override
+    public boolean handleCollision(IShape aShape, IShape bShape, Context context, Manifold manifold) {
         if (!Circle.class.equals(aShape.getClass()) || !Circle.class.equals(bShape.getClass())) {
             throw new IllegalArgumentException(PieExceptionMessage.INVALID_SHAPES_TYPE_FOR_NARROW_PHASE_HANDLER);
         }
@@ -36,15 +42,17 @@ public class CircleCircleCollisionHandler implements IShapeCollisionHandler {
         Circle circleA = (Circle) aShape;
         Circle circleB = (Circle) bShape;
 
-        Manifold manifold = new Manifold(circleA, circleB, context);
-        manifold.normal = Vector2f.sub(circleB.getBody().position, circleA.getBody().position);
+        manifold.reset(circleA, circleB, context);
+        manifold.normal.set(circleB.getBody().position);
+        manifold.normal.sub(circleA.getBody().position);
         final float distanceWithoutSqrt = manifold.normal.lengthWithoutSqrt();
 
         if (!CircleCircleCollisionHandler.areIntersected(circleA, circleB, distanceWithoutSqrt)) {
-            return null;
+            return false;
         }
 
         manifold.contactCount = 1;
+        manifold.contactIds[0] = 0;
         manifold.penetration = circleA.getRadius() + circleB.getRadius() - (float) Math.sqrt(distanceWithoutSqrt);
         // m->contacts[0] = m->normal * A->radius + a->position;
         manifold.normal.normalize();
@@ -58,7 +66,7 @@ public class CircleCircleCollisionHandler implements IShapeCollisionHandler {
             manifold.contacts[0].set(circleA.getBody().position);
         }
 
-        return manifold;
+        return true;
     }
 
     private static boolean areIntersected(Circle a, Circle b, float distanceWithoutSqrt) {
@@ -29,6 +29,12 @@ import com.github.introfog.pie.core.math.Vector2f;
  * Class is used to handle possible collision between {@link Circle} and {@link Polygon}.
  */
 public class CirclePolygonCollisionHandler implements IShapeCollisionHandler {
+    /** The flag of the contact identifier which means that the circle touches a vertex, not a face. */
+    private static final int VERTEX_FEATURE = 1 << 16;
+
+    /** The scratch buffers, they are per thread because the handler can be called from several threads at once. */
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
     /**
      * Handles a collision between {@link Circle} and {@link Polygon}. It doesn't matter what order the parameters
      * are in, circle and polygon or polygon and circle. In the course of this method, it is determined whether
@@ -43,18 +49,26 @@ public class CirclePolygonCollisionHandler implements IShapeCollisionHandler {
      */
     @Override
     public Manifold handleCollision(IShape aShape, IShape bShape, Context context) {
-        if ((Circle.class.equals(aShape.getClass()) && Polygon.class.equals(bShape.getClass()))
-                || (Polygon.class.equals(aShape.getClass()) && Circle.class.equals(bShape.getClass()))) {
+        Manifold manifold = new Manifold(aShape, bShape, context);
+        return handleCollision(aShape, bShape, context, manifold) ? manifold : null;
+    }
+
+    @Override
+    public boolean handleCollision(IShape aShape, IShape bShape, Context context, Manifold manifold) {
+        if (!(Circle.class.equals(aShape.getClass()) && Polygon.class.equals(bShape.getClass()))
+                && !(Polygon.class.equals(aShape.getClass()) && Circle.class.equals(bShape.getClass()))) {
             throw new IllegalArgumentException(PieExceptionMessage.INVALID_SHAPES_TYPE_FOR_NARROW_PHASE_HANDLER);
         }
 
         Circle circleA = Circle.class.equals(aShape.getClass()) ? (Circle) aShape : (Circle) bShape;
         Polygon polygonB = Polygon.class.equals(aShape.getClass()) ? (Polygon) aShape : (Polygon) bShape;
 
-        Manifold manifold = new Manifold(circleA, polygonB, context);
+        manifold.reset(circleA, polygonB, context);
+        final Buffers buffers = BUFFERS.get();
         // Translate center coordinates to polygon coordinates
         // center = B->u.Transpose( ) * (center - b->position);
-        Vector2f centerA = new Vector2f(circleA.getBody().position);
+        Vector2f centerA = buffers.center;
+        centerA.set(circleA.getBody().position);
         centerA.sub(polygonB.getBody().position);
         polygonB.getRotateMatrix().transposeMul(centerA, centerA);
 
@@ -65,19 +79,20 @@ public class CirclePolygonCollisionHandler implements IShapeCollisionHandler {
         int indexFaceNormalIfCircleInPolygon = 0;
         int indexFaceNormal = 0;
         float dotProduct;
-        Vector2f projection = new Vector2f();
-        Vector2f realProjection = new Vector2f();
-        Vector2f tmpV = new Vector2f();
+        Vector2f projection = buffers.projection;
+        Vector2f realProjection = buffers.realProjection;
+        Vector2f tmpV = buffers.tmp;
         for (int i = 0; i < polygonB.getVertexCount(); i++) {
+            Vector2f normal = polygonB.getNormal(i);
             tmpV.set(centerA);
-            tmpV.sub(polygonB.getVertices()[i]);
-            dotProduct = Vector2f.dotProduct(polygonB.getNormals()[i], tmpV);
-            projection.x = dotProduct * polygonB.getNormals()[i].x;
-            projection.y = dotProduct * polygonB.getNormals()[i].y;
+            tmpV.sub(polygonB.getVertex(i));
+            dotProduct = Vector2f.dotProduct(normal, tmpV);
+            projection.x = dotProduct * normal.x;
+            projection.y = dotProduct * normal.y;
 
             // The sign of the scalar product indicates whether the center is on the opposite side of the line from the normal
             if (dotProduct > 0f && projection.lengthWithoutSqrt() > circleA.getRadius() * circleA.getRadius()) {
-                return null;
+                return false;
             }
 
             if (dotProduct > separation) {
@@ -100,85 +115,89 @@ public class CirclePolygonCollisionHandler implements IShapeCollisionHandler {
             // m->contacts[0] = m->normal * A->radius + a->position;
 
             manifold.contactCount = 1;
-            polygonB.getRotateMatrix().mul(polygonB.getNormals()[indexFaceNormalIfCircleInPolygon], manifold.normal);
+            manifold.contactIds[0] = indexFaceNormalIfCircleInPolygon;
+            manifold.normal.set(polygonB.getWorldNormal(indexFaceNormalIfCircleInPolygon));
             manifold.normal.negative();
 
             manifold.contacts[0].set(manifold.normal);
             manifold.contacts[0].mul(circleA.getRadius());
             manifold.contacts[0].add(circleA.getBody().position);
             manifold.penetration = circleA.getRadius();
-            return manifold;
+            return true;
         }
 
         // Found the nearest edge to the center of the circle, and the center of the circle lies outside the polygon.
         // Now define the Voronoi region in which the center of the circle is located relative to the nearest edge of the polygon
-        Vector2f v1 = new Vector2f(polygonB.getVertices()[indexFaceNormal]);
-        Vector2f v2 = new Vector2f(polygonB.getVertices()[(indexFaceNormal + 1) % polygonB.getVertexCount()]);
+        Vector2f v1 = polygonB.getVertex(indexFaceNormal);
+        Vector2f v2 = polygonB.getVertex((indexFaceNormal + 1) % polygonB.getVertexCount());
 
-        float dot1 = Vector2f.dotProduct(Vector2f.sub(centerA, v1), Vector2f.sub(v2, v1));
-        float dot2 = Vector2f.dotProduct(Vector2f.sub(centerA, v2), Vector2f.sub(v1, v2));
+        float dot1 = (centerA.x - v1.x) * (v2.x - v1.x) + (centerA.y - v1.y) * (v2.y - v1.y);
+        float dot2 = (centerA.x - v2.x) * (v1.x - v2.x) + (centerA.y - v2.y) * (v1.y - v2.y);
 
         if (dot1 <= 0f) {
             // Closer to the first vertex
             if (Vector2f.distanceWithoutSqrt(centerA, v1) > circleA.getRadius() * circleA.getRadius()) {
-                return null;
+                return false;
             }
 
             manifold.penetration = circleA.getRadius() - (float) Math.sqrt(Vector2f.distanceWithoutSqrt(centerA, v1));
 
             manifold.contactCount = 1;
+            manifold.contactIds[0] = VERTEX_FEATURE | indexFaceNormal;
             // Vec2 n = v1 - center;
             // n = B->u * n;
             // n.Normalize( );
             // m->normal = n;
             // v1 = B->u * v1 + b->position;
             // m->contacts[0] = v1;
-            Vector2f n = Vector2f.sub(v1, centerA);
-            polygonB.getRotateMatrix().mul(n, n);
-            n.normalize();
-            manifold.normal.set(n);
-            polygonB.getRotateMatrix().mul(v1, v1);
-            v1.add(polygonB.getBody().position);
-            manifold.contacts[0].set(v1);
+            manifold.normal.set(v1);
+            manifold.normal.sub(centerA);
+            polygonB.getRotateMatrix().mul(manifold.normal, manifold.normal);
+            manifold.normal.normalize();
+            manifold.contacts[0].set(polygonB.getWorldVertex(indexFaceNormal));
         } else if (dot2 <= 0f) {
             // Closer to the second vertex
             if (Vector2f.distanceWithoutSqrt(centerA, v2) > circleA.getRadius() * circleA.getRadius()) {
-                return null;
+                return false;
             }
 
             manifold.penetration = circleA.getRadius() - (float) Math.sqrt(Vector2f.distanceWithoutSqrt(centerA, v2));
 
             manifold.contactCount = 1;
+            manifold.contactIds[0] = VERTEX_FEATURE | ((indexFaceNormal + 1) % polygonB.getVertexCount());
             // Vec2 n = v2 - center;
             // v2 = B->u * v2 + b->position;
             // m->contacts[0] = v2;
             // n = B->u * n;
             // n.Normalize( );
             // m->normal = n;
-            Vector2f n = Vector2f.sub(v2, centerA);
-            polygonB.getRotateMatrix().mul(n, n);
-            n.normalize();
-            manifold.normal.set(n);
-            polygonB.getRotateMatrix().mul(v2, v2);
-            v2.add(polygonB.getBody().position);
-            manifold.contacts[0].set(v2);
+            manifold.normal.set(v2);
+            manifold.normal.sub(centerA);
+            polygonB.getRotateMatrix().mul(manifold.normal, manifold.normal);
+            manifold.normal.normalize();
+            manifold.contacts[0].set(polygonB.getWorldVertex((indexFaceNormal + 1) % polygonB.getVertexCount()));
         } else {
             // Closer to the front vertex
-            Vector2f n = new Vector2f(polygonB.getNormals()[indexFaceNormal]);
-
             manifold.penetration = circleA.getRadius() - (float) Math.sqrt(realProjection.lengthWithoutSqrt());
 
             manifold.contactCount = 1;
+            manifold.contactIds[0] = indexFaceNormal;
             // n = B->u * n;
             // m->normal = -n;
             // m->contacts[0] = m->normal * A->radius + a->position;
-            polygonB.getRotateMatrix().mul(n, n);
-            n.negative();
-            manifold.normal.set(n);
+            manifold.normal.set(polygonB.getWorldNormal(indexFaceNormal));
+            manifold.normal.negative();
             manifold.contacts[0].set(manifold.normal);
             manifold.contacts[0].mul(circleA.getRadius());
             manifold.contacts[0].add(circleA.getBody().position);
         }
-        return manifold;
+        return true;
+    }
+
+    private static final class Buffers {
+        private final Vector2f center = new Vector2f();
+        private final Vector2f projection = new Vector2f();
+        private final Vector2f realProjection = new Vector2f();
+        private final Vector2f tmp = new Vector2f();
     }
 }
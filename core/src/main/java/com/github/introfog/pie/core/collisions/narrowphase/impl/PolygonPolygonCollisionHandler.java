@@ -28,28 +28,44 @@ import com.github.introfog.pie.core.math.Vector2f;
  * Class is used to handle possible collision between two {@link Polygon}.
  */
 public class PolygonPolygonCollisionHandler implements IShapeCollisionHandler {
+    /** The flag of the contact identifier which means that the reference face belongs to the second polygon. */
+    private static final int FLIP_FEATURE = 1 << 30;
+    /** The flag of the contact identifier which means that the contact was clipped by the side plane. */
+    private static final int CLIP_FEATURE = 1 << 15;
+
+    /** The scratch buffers, they are per thread because the handler can be called from several threads at once. */
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
     @Override
     public Manifold handleCollision(IShape aShape, IShape bShape, Context context) {
+        Manifold manifold = new Manifold(aShape, bShape, context);
+        return handleCollision(aShape, bShape, context, manifold) ? manifold : null;
+    }
+
+    @Override
+    public boolean handleCollision(IShape aShape, IShape bShape, Context context, Manifold manifold) {
         if (!Polygon.class.equals(aShape.getClass()) || !Polygon.class.equals(bShape.getClass())) {
             throw new IllegalArgumentException(PieExceptionMessage.INVALID_SHAPES_TYPE_FOR_NARROW_PHASE_HANDLER);
         }
         Polygon polygonA = (Polygon) aShape;
         Polygon polygonB = (Polygon) bShape;
 
-        Manifold manifold = new Manifold(polygonA, polygonB, context);
+        manifold.reset(polygonA, polygonB, context);
+        final Buffers buffers = BUFFERS.get();
+
         // Looking for a dividing axis with external faces A
-        int[] faceA = {0};
-        float penetrationA = PolygonPolygonCollisionHandler.findAxisLeastPenetration(faceA, polygonA, polygonB);
+        float penetrationA = PolygonPolygonCollisionHandler.findAxisLeastPenetration(buffers, polygonA, polygonB);
         if (penetrationA >= 0.0f) {
-            return null;
+            return false;
         }
+        final int faceA = buffers.faceIndex;
 
         // Looking for a dividing axis with external faces В
-        int[] faceB = {0};
-        float penetrationB = PolygonPolygonCollisionHandler.findAxisLeastPenetration(faceB, polygonB, polygonA);
+        float penetrationB = PolygonPolygonCollisionHandler.findAxisLeastPenetration(buffers, polygonB, polygonA);
         if (penetrationB >= 0.0f) {
-            return null;
+            return false;
         }
+        final int faceB = buffers.faceIndex;
 
         int referenceIndex;
         // Always indicate from a to b
@@ -64,19 +80,22 @@ public class PolygonPolygonCollisionHandler implements IShapeCollisionHandler {
         if (MathPie.gt(penetrationA, penetrationB)) {
             refPoly = polygonA;
             incPoly = polygonB;
-            referenceIndex = faceA[0];
+            referenceIndex = faceA;
             flip = false;
         } else {
             refPoly = polygonB;
             incPoly = polygonA;
-            referenceIndex = faceB[0];
+            referenceIndex = faceB;
             flip = true;
         }
 
         // World space incident face
-        Vector2f[] incidentFace = Vector2f.arrayOf(2);
+        Vector2f[] incidentFace = buffers.incidentFace;
+        // The features of the incident face points, they are kept through the clipping to identify contacts
+        int[] incidentIds = buffers.incidentIds;
+        final int featureBase = (flip ? FLIP_FEATURE : 0) | referenceIndex << 16;
 
-        findIncidentFace(incidentFace, refPoly, incPoly, referenceIndex);
+        findIncidentFace(buffers, refPoly, incPoly, referenceIndex);
 
         // y
         // ^ .n ^
@@ -91,28 +110,25 @@ public class PolygonPolygonCollisionHandler implements IShapeCollisionHandler {
         // c : clipped point
         // n : incident normal
 
-        // Setup reference face vertices
-        Vector2f v1 = new Vector2f(refPoly.getVertices()[referenceIndex]);
-        referenceIndex = referenceIndex + 1 == refPoly.getVertexCount() ? 0 : referenceIndex + 1;
-        Vector2f v2 = new Vector2f(refPoly.getVertices()[referenceIndex]);
-
-        // Transform vectors to world coordinates
+        // Setup reference face vertices in world coordinates
         // v1 = RefPoly->u * v1 + RefPoly->body->position;
         // v2 = RefPoly->u * v2 + RefPoly->body->position;
-        refPoly.getRotateMatrix().mul(v1, v1);
-        v1.add(refPoly.getBody().position);
-        refPoly.getRotateMatrix().mul(v2, v2);
-        v2.add(refPoly.getBody().position);
+        Vector2f v1 = refPoly.getWorldVertex(referenceIndex);
+        referenceIndex = referenceIndex + 1 == refPoly.getVertexCount() ? 0 : referenceIndex + 1;
+        Vector2f v2 = refPoly.getWorldVertex(referenceIndex);
 
         // Calculate reference face side normal in world space
         // Vec2 sidePlaneNormal = (v2 - v1);
         // sidePlaneNormal.Normalize( );
-        Vector2f sidePlaneNormal = Vector2f.sub(v2, v1);
+        Vector2f sidePlaneNormal = buffers.sidePlaneNormal;
+        sidePlaneNormal.set(v2);
+        sidePlaneNormal.sub(v1);
         sidePlaneNormal.normalize();
 
         // Orthogonalize
         // Vec2 refFaceNormal( sidePlaneNormal.y, -sidePlaneNormal.x );
-        Vector2f refFaceNormal = new Vector2f(sidePlaneNormal.y, -sidePlaneNormal.x);
+        Vector2f refFaceNormal = buffers.refFaceNormal;
+        refFaceNormal.set(sidePlaneNormal.y, -sidePlaneNormal.x);
 
         // ax + by = c
         // c - distance from source
@@ -126,16 +142,16 @@ public class PolygonPolygonCollisionHandler implements IShapeCollisionHandler {
         // Clip incident face to reference face side planes
         // if(Clip( -sidePlaneNormal, negSide, incidentFace ) < 2)
         sidePlaneNormal.negative();
-        if (clip(sidePlaneNormal, negSide, incidentFace) < 2) {
+        if (clip(buffers, sidePlaneNormal, negSide, CLIP_FEATURE) < 2) {
             // Due to floating point error, possible to not have required points
-            return null;
+            return false;
         }
         sidePlaneNormal.negative();
 
         // if (Clip( sidePlaneNormal, posSide, incidentFace ) < 2)
-        if (clip(sidePlaneNormal, posSide, incidentFace) < 2) {
+        if (clip(buffers, sidePlaneNormal, posSide, CLIP_FEATURE | 1) < 2) {
             // Due to floating point error, possible to not have required points
-            return null;
+            return false;
         }
 
         // Flip
@@ -150,6 +166,7 @@ public class PolygonPolygonCollisionHandler implements IShapeCollisionHandler {
         float separation = Vector2f.dotProduct(refFaceNormal, incidentFace[0]) - refC;
         if (separation <= 0.0f) {
             manifold.contacts[cp].set(incidentFace[0]);
+            manifold.contactIds[cp] = featureBase | incidentIds[0];
             manifold.penetration = -separation;
             ++cp;
         } else {
@@ -160,6 +177,7 @@ public class PolygonPolygonCollisionHandler implements IShapeCollisionHandler {
 
         if (separation <= 0.0f) {
             manifold.contacts[cp].set(incidentFace[1]);
+            manifold.contactIds[cp] = featureBase | incidentIds[1];
 
             manifold.penetration += -separation;
             ++cp;
@@ -170,28 +188,20 @@ public class PolygonPolygonCollisionHandler implements IShapeCollisionHandler {
 
         manifold.contactCount = cp;
 
-        return manifold;
+        return true;
     }
 
-    private void findIncidentFace(Vector2f[] v, Polygon refPoly, Polygon incPoly, int referenceIndex) {
-        Vector2f referenceNormal = new Vector2f(refPoly.getNormals()[referenceIndex]);
-
-        // Calculate normal in incident's frame of reference
-        // referenceNormal = RefPoly->u * referenceNormal; // To world space
-        // referenceNormal = IncPoly->u.Transpose( ) * referenceNormal; // To
-        // incident's model space
-        refPoly.getRotateMatrix().mul(referenceNormal, referenceNormal); // To world space
-        incPoly.getRotateMatrix().transposeMul(referenceNormal, referenceNormal);// To
-        // incident's
-        // model
-        // space
+    private static void findIncidentFace(Buffers buffers, Polygon refPoly, Polygon incPoly, int referenceIndex) {
+        // The normals of both polygons are taken in world space, so the reference
+        // normal doesn't need to be transformed into the incident's model space
+        Vector2f referenceNormal = refPoly.getWorldNormal(referenceIndex);
 
         // Find most anti-normal face on incident polygon
         int incidentFace = 0;
         float minDot = Float.MAX_VALUE;
         for (int i = 0; i < incPoly.getVertexCount(); ++i) {
             // real dot = Dot( referenceNormal, IncPoly->m_normals[i] );
-            float dotProduct = Vector2f.dotProduct(referenceNormal, incPoly.getNormals()[i]);
+            float dotProduct = Vector2f.dotProduct(referenceNormal, incPoly.getWorldNormal(i));
 
             if (dotProduct < minDot) {
                 minDot = dotProduct;
@@ -200,22 +210,28 @@ public class PolygonPolygonCollisionHandler implements IShapeCollisionHandler {
         }
 
         // Assign face vertices for incidentFace
-        // v[0] = IncPoly->u * IncPoly->m_vertices[incidentFace] +
-        // IncPoly->body->position;
-        // incidentFace = incidentFace + 1 >= (int32)IncPoly->m_vertexCount ? 0 :
-        // incidentFace + 1;
-        // v[1] = IncPoly->u * IncPoly->m_vertices[incidentFace] +
-        // IncPoly->body->position;
-        incPoly.getRotateMatrix().mul(incPoly.getVertices()[incidentFace], v[0]);
-        v[0].add(incPoly.getBody().position);
+        // v[0] = IncPoly->u * IncPoly->m_vertices[incidentFace] + IncPoly->body->position;
+        // incidentFace = incidentFace + 1 >= (int32)IncPoly->m_vertexCount ? 0 : incidentFace + 1;
+        // v[1] = IncPoly->u * IncPoly->m_vertices[incidentFace] + IncPoly->body->position;
+        Vector2f[] v = buffers.incidentFace;
+        int[] ids = buffers.incidentIds;
+        v[0].set(incPoly.getWorldVertex(incidentFace));
+        ids[0] = incidentFace;
         incidentFace = incidentFace + 1 >= incPoly.getVertexCount() ? 0 : incidentFace + 1;
-        incPoly.getRotateMatrix().mul(incPoly.getVertices()[incidentFace], v[1]);
-        v[1].add(incPoly.getBody().position);
+        v[1].set(incPoly.getWorldVertex(incidentFace));
+        ids[1] = incidentFace;
     }
 
-    private int clip(Vector2f n, float c, Vector2f[] face) {
+    private static int clip(Buffers buffers, Vector2f n, float c, int clipId) {
+        Vector2f[] face = buffers.incidentFace;
+        int[] ids = buffers.incidentIds;
+        Vector2f[] out = buffers.clippedFace;
+        int[] outIds = buffers.clippedIds;
+        out[0].set(face[0]);
+        out[1].set(face[1]);
+        outIds[0] = ids[0];
+        outIds[1] = ids[1];
         int sp = 0;
-        Vector2f[] out = {new Vector2f(face[0]), new Vector2f(face[1])};
 
         // Retrieve distances from each endpoint to the line
         // d = ax + by - c
@@ -228,9 +244,11 @@ public class PolygonPolygonCollisionHandler implements IShapeCollisionHandler {
         // if(d1 <= 0.0f) out[sp++] = face[0];
         // if(d2 <= 0.0f) out[sp++] = face[1];
         if (d1 <= 0.0f) {
+            outIds[sp] = ids[0];
             out[sp++].set(face[0]);
         }
         if (d2 <= 0.0f) {
+            outIds[sp] = ids[1];
             out[sp++].set(face[1]);
         }
 
@@ -243,57 +261,38 @@ public class PolygonPolygonCollisionHandler implements IShapeCollisionHandler {
             // ++sp;
 
             float alpha = d1 / (d1 - d2);
-            out[sp] = Vector2f.sub(face[1], face[0]);
-            out[sp].mul(alpha);
-            out[sp].add(face[0]);
+            out[sp].set((face[1].x - face[0].x) * alpha + face[0].x, (face[1].y - face[0].y) * alpha + face[0].y);
+            outIds[sp] = clipId;
             sp++;
         }
 
         // Assign our new converted values
-        face[0] = out[0];
-        face[1] = out[1];
+        face[0].set(out[0]);
+        face[1].set(out[1]);
+        ids[0] = outIds[0];
+        ids[1] = outIds[1];
 
         return sp;
     }
 
-    private static float findAxisLeastPenetration(int[] faceIndex, Polygon polygonA, Polygon polygonB) {
-        // Looking for the axis of least penetration
+    private static float findAxisLeastPenetration(Buffers buffers, Polygon polygonA, Polygon polygonB) {
+        // Looking for the axis of least penetration, all calculations are made in world
+        // space with the cached world space geometry of polygons
         float bestDistance = -Float.MAX_VALUE;
         int bestIndex = 0;
 
         for (int i = 0; i < polygonA.getVertexCount(); ++i) {
-            // Retrieve a face normal from A
-            // Vec2 n = A->m_normals[i];
-            // Vec2 nw = A->u * n;
-            Vector2f nw = new Vector2f();
-            polygonA.getRotateMatrix().mul(polygonA.getNormals()[i], nw);
-
-            // Transform face normal into B's model space
-            // Mat2 buT = B->u.Transpose( );
-            // n = buT * nw;
-            Vector2f n = new Vector2f();
-            polygonB.getRotateMatrix().transposeMul(nw, n);
+            // Retrieve a face normal and a face vertex from A
+            Vector2f n = polygonA.getWorldNormal(i);
+            Vector2f v = polygonA.getWorldVertex(i);
 
             // Retrieve support point from B along -n
             // Vector2f s = B->GetSupport( -n );
-            n.negative();
-            Vector2f s = polygonB.calculateSupportVertex(n);
-            n.negative();
-
-            // Translate the face A to the local coordinates of B
-            // Vec2 v = A->m_vertices[i];
-            // v = A->u * v + A->body->position;
-            // v -= B->body->position;
-            // v = buT * v;
-            Vector2f v = new Vector2f(polygonA.getVertices()[i]);
-            polygonA.getRotateMatrix().mul(v, v);
-            v.add(polygonA.getBody().position);
-            v.sub(polygonB.getBody().position);
-            polygonB.getRotateMatrix().transposeMul(v, v);
-
-            // Calculate penetration (in local coordinates B)
+            Vector2f s = polygonB.getWorldVertex(polygonB.calculateWorldSupportVertexIndex(-n.x, -n.y));
+
+            // Calculate penetration
             // real d = Dot( n, s - v );
-            float d = Vector2f.dotProduct(n, Vector2f.sub(s, v));
+            float d = n.x * (s.x - v.x) + n.y * (s.y - v.y);
 
             // Remember the best penetration
             if (d > bestDistance) {
@@ -302,7 +301,17 @@ public class PolygonPolygonCollisionHandler implements IShapeCollisionHandler {
             }
         }
 
-        faceIndex[0] = bestIndex;
+        buffers.faceIndex = bestIndex;
         return bestDistance;
     }
+
+    private static final class Buffers {
+        private final Vector2f[] incidentFace = Vector2f.arrayOf(2);
+        private final int[] incidentIds = new int[2];
+        private final Vector2f[] clippedFace = Vector2f.arrayOf(2);
+        private final int[] clippedIds = new int[2];
+        private final Vector2f sidePlaneNormal = new Vector2f();
+        private final Vector2f refFaceNormal = new Vector2f();
+        private int faceIndex;
+    }
 }
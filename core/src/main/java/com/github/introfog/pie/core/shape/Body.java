@@ -48,6 +48,12 @@ public class Body {
     public Vector2f force;
     /** The velocity. */
     public Vector2f velocity;
+    /** The time in seconds during which the body has been resting. */
+    public float sleepTime;
+
+    private boolean awake;
+    private final Vector2f sleepPosition;
+    private float sleepOrientation;
 
     /**
      * Instantiates a new {@link Body} instance.
@@ -67,6 +73,47 @@ public class Body {
         torque = 0f;
         force = new Vector2f(0f, 0f);
         velocity = new Vector2f(0f, 0f);
+        awake = true;
+        sleepTime = 0f;
+        sleepPosition = new Vector2f();
+    }
+
+    /**
+     * Checks whether the body is awake. Only the awake bodies are integrated and handled by the world.
+     *
+     * @return {@code true} if the body is awake, otherwise {@code false}
+     */
+    public boolean isAwake() {
+        return awake;
+    }
+
+    /**
+     * Puts the body to sleep. The velocities of the body are reset and the current position and orientation
+     * are remembered to detect their change from the outside (see {@link #isMovedWhileSleeping()}).
+     */
+    public void sleep() {
+        awake = false;
+        velocity.set(0f, 0f);
+        angularVelocity = 0f;
+        sleepPosition.set(position);
+        sleepOrientation = orientation;
+    }
+
+    /**
+     * Wakes up the body and resets its resting time.
+     */
+    public void wakeUp() {
+        awake = true;
+        sleepTime = 0f;
+    }
+
+    /**
+     * Checks whether the position or orientation of the sleeping body have been changed since it fell asleep.
+     *
+     * @return {@code true} if the sleeping body has been moved, otherwise {@code false}
+     */
+    public boolean isMovedWhileSleeping() {
+        return !awake && (!position.equals(sleepPosition) || Float.compare(orientation, sleepOrientation) != 0);
     }
 
     @Override
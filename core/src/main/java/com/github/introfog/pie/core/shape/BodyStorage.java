@@ -0,0 +1,303 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.shape;
+
+import com.github.introfog.pie.core.math.Vector2f;
+import com.github.introfog.pie.core.util.ParallelExecutor;
+
+/**
+ * The class keeps the state of the bodies which is needed for the integration in dense primitive arrays
+ * (structure of arrays) indexed by the position of the shape in the loaded shapes array.
+ *
+ * <p>
+ * The {@link Body} fields stay the state of the bodies between the world steps, because they are a part of
+ * the public API. During the step the arrays are the state of the bodies: the storage gathers the bodies in
+ * one pass at the beginning of the step, the integration passes are branchless loops over the arrays, which are
+ * cache-friendly and can be vectorized by JIT, and the collision solving reads and writes the velocities of
+ * the dynamic bodies in the arrays too (see {@link #getIndex(IShape)}). The result is scattered back to
+ * the bodies in one pass after the integration. The static and sleeping bodies are excluded from
+ * the integration by the zero activity factor, not by branches.
+ */
+public class BodyStorage {
+    private IShape[] shapes;
+    private int size;
+    /** The indices of the loaded shapes in the arrays by the shape slots (see {@link IShape#getSlot()}). */
+    private int[] indices;
+    private float[] positionX;
+    private float[] positionY;
+    private float[] velocityX;
+    private float[] velocityY;
+    private float[] forceX;
+    private float[] forceY;
+    private float[] orientation;
+    private float[] angularVelocity;
+    private float[] torque;
+    private float[] invertedMass;
+    private float[] invertedInertia;
+    private float[] activity;
+
+    /**
+     * Instantiates a new empty {@link BodyStorage} instance.
+     */
+    public BodyStorage() {
+        shapes = new IShape[0];
+        indices = new int[0];
+        ensureCapacity(0);
+    }
+
+    /**
+     * Gets the number of loaded bodies.
+     *
+     * @return the number of bodies
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gathers the state of the shapes bodies into the arrays, the index of each body is its index in the passed
+     * array. The shapes which belong to a world are also indexed by their slots (see {@link #getIndex(IShape)}).
+     *
+     * @param shapes the shapes whose bodies will be loaded
+     * @param slotCapacity the number of the slots of the world shapes, zero if the shapes don't belong to a world
+     * @param executor the executor which splits the slots into chunks
+     */
+    public void load(IShape[] shapes, int slotCapacity, ParallelExecutor executor) {
+        this.shapes = shapes;
+        this.size = shapes.length;
+        ensureCapacity(size);
+        if (indices.length < slotCapacity) {
+            indices = new int[slotCapacity];
+        }
+        executor.forEachChunk(0, size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                final IShape shape = shapes[i];
+                final Body body = shape.getBody();
+                positionX[i] = body.position.x;
+                positionY[i] = body.position.y;
+                velocityX[i] = body.velocity.x;
+                velocityY[i] = body.velocity.y;
+                forceX[i] = body.force.x;
+                forceY[i] = body.force.y;
+                orientation[i] = body.orientation;
+                angularVelocity[i] = body.angularVelocity;
+                torque[i] = body.torque;
+                invertedMass[i] = body.invertedMass;
+                invertedInertia[i] = body.invertedInertia;
+                activity[i] = body.invertedMass != 0f && body.isAwake() ? 1f : 0f;
+                if (shape.slot >= 0 && shape.slot < slotCapacity) {
+                    indices[shape.slot] = i;
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the index of the loaded body of the shape in the arrays.
+     *
+     * @param shape the shape
+     * @return the index of the body or -1 if the body of the shape isn't loaded
+     */
+    public int getIndex(IShape shape) {
+        final int slot = shape.slot;
+        if (slot < 0 || slot >= indices.length) {
+            return -1;
+        }
+        // The indices of the free slots and of the slots of not loaded shapes aren't cleared
+        final int index = indices[slot];
+        return index < size && shapes[index] == shape ? index : -1;
+    }
+
+    /**
+     * Includes the body into the further integration after it has been woken up since the loading.
+     *
+     * @param index the index of the body
+     */
+    public void activate(int index) {
+        activity[index] = invertedMass[index] != 0f ? 1f : 0f;
+    }
+
+    /**
+     * Checks whether the body is integrated, i.e. it is dynamic and it has been awake when it was loaded or
+     * it has been activated since the loading.
+     *
+     * @param index the index of the body
+     * @return {@code true} if the body is integrated, otherwise {@code false}
+     */
+    public boolean isActive(int index) {
+        return activity[index] != 0f;
+    }
+
+    /**
+     * Gets the position of the body in X axis.
+     *
+     * @param index the index of the body
+     * @return the position in X axis
+     */
+    public float getPositionX(int index) {
+        return positionX[index];
+    }
+
+    /**
+     * Gets the position of the body in Y axis.
+     *
+     * @param index the index of the body
+     * @return the position in Y axis
+     */
+    public float getPositionY(int index) {
+        return positionY[index];
+    }
+
+    /**
+     * Gets the inverted mass of the body.
+     *
+     * @param index the index of the body
+     * @return the inverted mass
+     */
+    public float getInvertedMass(int index) {
+        return invertedMass[index];
+    }
+
+    /**
+     * Gets the inverted inertia of the body.
+     *
+     * @param index the index of the body
+     * @return the inverted inertia
+     */
+    public float getInvertedInertia(int index) {
+        return invertedInertia[index];
+    }
+
+    /**
+     * Gets the velocity of the body in X axis.
+     *
+     * @param index the index of the body
+     * @return the velocity in X axis
+     */
+    public float getVelocityX(int index) {
+        return velocityX[index];
+    }
+
+    /**
+     * Gets the velocity of the body in Y axis.
+     *
+     * @param index the index of the body
+     * @return the velocity in Y axis
+     */
+    public float getVelocityY(int index) {
+        return velocityY[index];
+    }
+
+    /**
+     * Gets the angular velocity of the body.
+     *
+     * @param index the index of the body
+     * @return the angular velocity
+     */
+    public float getAngularVelocity(int index) {
+        return angularVelocity[index];
+    }
+
+    /**
+     * Sets the velocities of the body.
+     *
+     * @param index the index of the body
+     * @param velocityX the velocity in X axis
+     * @param velocityY the velocity in Y axis
+     * @param angularVelocity the angular velocity
+     */
+    public void setVelocity(int index, float velocityX, float velocityY, float angularVelocity) {
+        this.velocityX[index] = velocityX;
+        this.velocityY[index] = velocityY;
+        this.angularVelocity[index] = angularVelocity;
+    }
+
+    /**
+     * Integrates the forces and the gravity for the passed time.
+     *
+     * @param deltaTime the time of the integration
+     * @param gravity the gravity
+     * @param executor the executor which splits the slots into chunks
+     */
+    public void integrateForces(float deltaTime, Vector2f gravity, ParallelExecutor executor) {
+        final float gravityX = gravity.x * deltaTime;
+        final float gravityY = gravity.y * deltaTime;
+        executor.forEachChunk(0, size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                final float factor = invertedMass[i] * deltaTime;
+                velocityX[i] += (forceX[i] * factor + gravityX) * activity[i];
+                velocityY[i] += (forceY[i] * factor + gravityY) * activity[i];
+                angularVelocity[i] += torque[i] * invertedInertia[i] * deltaTime * activity[i];
+            }
+        });
+    }
+
+    /**
+     * Integrates the velocities for the passed time.
+     *
+     * @param deltaTime the time of the integration
+     * @param executor the executor which splits the slots into chunks
+     */
+    public void integrateVelocities(float deltaTime, ParallelExecutor executor) {
+        executor.forEachChunk(0, size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                final float factor = deltaTime * activity[i];
+                positionX[i] += velocityX[i] * factor;
+                positionY[i] += velocityY[i] * factor;
+                orientation[i] += angularVelocity[i] * factor;
+            }
+        });
+    }
+
+    /**
+     * Scatters the positions, orientations and velocities of the active bodies back to the bodies and
+     * clears the forces of all bodies.
+     *
+     * @param executor the executor which splits the slots into chunks
+     */
+    public void storeAndClearForces(ParallelExecutor executor) {
+        executor.forEachChunk(0, size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                final Body body = shapes[i].getBody();
+                if (activity[i] != 0f) {
+                    body.position.set(positionX[i], positionY[i]);
+                    body.velocity.set(velocityX[i], velocityY[i]);
+                    body.angularVelocity = angularVelocity[i];
+                    shapes[i].setOrientation(orientation[i]);
+                }
+                body.force.set(0f, 0f);
+            }
+        });
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (positionX != null && positionX.length >= capacity) {
+            return;
+        }
+        positionX = new float[capacity];
+        positionY = new float[capacity];
+        velocityX = new float[capacity];
+        velocityY = new float[capacity];
+        forceX = new float[capacity];
+        forceY = new float[capacity];
+        orientation = new float[capacity];
+        angularVelocity = new float[capacity];
+        torque = new float[capacity];
+        invertedMass = new float[capacity];
+        invertedInertia = new float[capacity];
+        activity = new float[capacity];
+    }
+}
@@ -35,6 +35,11 @@ public abstract class IShape {
     protected final RotationMatrix2x2 rotateMatrix;
 
     private final int shapeId;
+    private boolean moved;
+    /** The registry which the shape belongs to, the field is managed by the {@link ShapeRegistry}. */
+    ShapeRegistry registry;
+    /** The slot of the shape in its registry, the field is managed by the {@link ShapeRegistry}. */
+    int slot;
 
     /**
      * Instantiates a new {@link IShape} instance.
@@ -45,6 +50,20 @@ public abstract class IShape {
         body = new Body(centreX, centreY, density, restitution);
         rotateMatrix = new RotationMatrix2x2();
         rotateMatrix.setAngle(0f);
+        moved = true;
+        slot = -1;
+    }
+
+    /**
+     * Gets the slot of the shape in the registry of the world which the shape belongs to. The slot is
+     * a small non-negative number which doesn't change while the shape is in the world, so it can be used
+     * as an index of the arrays with the shape data.
+     *
+     * @return the slot or -1 if the shape doesn't belong to any world
+     * @see ShapeRegistry
+     */
+    public int getSlot() {
+        return slot;
     }
 
     /**
@@ -55,17 +74,74 @@ public abstract class IShape {
     public void setOrientation(float radian) {
         body.orientation = radian;
         rotateMatrix.setAngle(radian);
+        moved = true;
+    }
+
+    /**
+     * Marks that the shape has been moved or rotated, so its Aabb must be recomputed in the next broad phase.
+     *
+     * <p>
+     * The world marks the shapes which it moves itself and {@link #setOrientation(float)} marks the shape too,
+     * but if the position of the shape is changed directly through the {@link Body#position}, this method
+     * must be called when the world works with the dirty tracking
+     * (see {@link com.github.introfog.pie.core.WorldProperties#setDirtyTrackingEnabled(boolean)}).
+     */
+    public void markMoved() {
+        moved = true;
+    }
+
+    /**
+     * Checks whether the shape has been moved or rotated since the flag was reset last time.
+     * A new shape is considered moved.
+     *
+     * @return {@code true} if the shape has been moved, otherwise {@code false}
+     * @see #markMoved()
+     */
+    public boolean isMoved() {
+        return moved;
+    }
+
+    /**
+     * Resets the moved flag, the method is called by the world when the moved shapes have been passed to
+     * the broad phase.
+     */
+    public void resetMoved() {
+        moved = false;
     }
 
     /**
      * Apply impulse to shape.
      *
+     * <p>
+     * Note, the impulse doesn't change static shapes (with zero inverted mass) and wakes up the sleeping shape.
+     *
      * @param impulse the impulse vector
      * @param contactVector the point of impulse application (coordinates are set relative to the center of the shape)
      */
     public void applyImpulse(Vector2f impulse, Vector2f contactVector) {
-        body.velocity.add(impulse, body.invertedMass);
-        body.angularVelocity += body.invertedInertia * Vector2f.crossProduct(contactVector, impulse);
+        applyImpulse(impulse.x, impulse.y, contactVector.x, contactVector.y);
+    }
+
+    /**
+     * Apply impulse to shape. The method is the same as {@link #applyImpulse(Vector2f, Vector2f)},
+     * but it takes the vectors coordinates, so the caller doesn't need to create vectors.
+     *
+     * @param impulseX the impulse vector coordinate in X axis
+     * @param impulseY the impulse vector coordinate in Y axis
+     * @param contactX the point of impulse application coordinate in X axis (relative to the center of the shape)
+     * @param contactY the point of impulse application coordinate in Y axis (relative to the center of the shape)
+     */
+    public void applyImpulse(float impulseX, float impulseY, float contactX, float contactY) {
+        if (body.invertedMass == 0f) {
+            // Static bodies are not moved by impulses
+            return;
+        }
+        if (!body.isAwake()) {
+            body.wakeUp();
+        }
+        body.velocity.x += impulseX * body.invertedMass;
+        body.velocity.y += impulseY * body.invertedMass;
+        body.angularVelocity += body.invertedInertia * (contactX * impulseY - contactY * impulseX);
     }
 
     /**
@@ -35,6 +35,21 @@ public class Polygon extends IShape {
     /** The array of polygon normals. */
     protected final Vector2f[] normals;
 
+    // The world space vertices and normals are calculated lazily and are reused while
+    // the position and the rotation of the polygon are the same as during the calculation.
+    // The cache is written without synchronization, in the world it is refreshed by the computeAabb
+    // method called for each moved shape from one thread before the narrow phase, so the narrow
+    // phase handlers only read it
+    private final Vector2f[] worldVertices;
+    private final Vector2f[] worldNormals;
+    private boolean worldGeometryValid;
+    private float worldPositionX;
+    private float worldPositionY;
+    private float worldM00;
+    private float worldM01;
+    private float worldM10;
+    private float worldM11;
+
     /**
      * Instantiates a new {@link Polygon} instance based on density,
      * restitution, coordinates of center and list of vertices.
@@ -71,6 +86,8 @@ public class Polygon extends IShape {
 
         this.vertices = Vector2f.arrayOf(vertexCount);
         this.normals = Vector2f.arrayOf(vertexCount);
+        this.worldVertices = Vector2f.arrayOf(vertexCount);
+        this.worldNormals = Vector2f.arrayOf(vertexCount);
 
         for (int i = 0; i < vertexCount; i++) {
             this.vertices[i].set(vertices.get(hull.get(i)));
@@ -138,6 +155,70 @@ public class Polygon extends IShape {
         return Arrays.copyOf(normals, normals.length);
     }
 
+    /**
+     * Gets the polygon vertex by index without copying, the vertex is specified relative to the center of polygon.
+     *
+     * <p>
+     * The returned vector is the internal state of the polygon, so it must not be modified. The cache isn't
+     * synchronized, so if the polygon has been moved after the last {@link #computeAabb()} call, the method must
+     * not be called for this polygon from several threads at once.
+     *
+     * @param index the index of vertex
+     * @return the vertex
+     */
+    public Vector2f getVertex(int index) {
+        return vertices[index];
+    }
+
+    /**
+     * Gets the polygon normal by index without copying, the normal is specified in the polygon model space.
+     *
+     * <p>
+     * The returned vector is the internal state of the polygon, so it must not be modified. The cache isn't
+     * synchronized, so if the polygon has been moved after the last {@link #computeAabb()} call, the method must
+     * not be called for this polygon from several threads at once.
+     *
+     * @param index the index of normal
+     * @return the normal
+     */
+    public Vector2f getNormal(int index) {
+        return normals[index];
+    }
+
+    /**
+     * Gets the polygon vertex by index in world space. The world space vertices are calculated once
+     * after the position or the orientation of polygon is changed and then are reused.
+     *
+     * <p>
+     * The returned vector is the internal state of the polygon, so it must not be modified. The cache isn't
+     * synchronized, so if the polygon has been moved after the last {@link #computeAabb()} call, the method must
+     * not be called for this polygon from several threads at once.
+     *
+     * @param index the index of vertex
+     * @return the vertex in world space
+     */
+    public Vector2f getWorldVertex(int index) {
+        updateWorldGeometry();
+        return worldVertices[index];
+    }
+
+    /**
+     * Gets the polygon normal by index in world space. The world space normals are calculated once
+     * after the position or the orientation of polygon is changed and then are reused.
+     *
+     * <p>
+     * The returned vector is the internal state of the polygon, so it must not be modified. The cache isn't
+     * synchronized, so if the polygon has been moved after the last {@link #computeAabb()} call, the method must
+     * not be called for this polygon from several threads at once.
+     *
+     * @param index the index of normal
+     * @return the normal in world space
+     */
+    public Vector2f getWorldNormal(int index) {
+        updateWorldGeometry();
+        return worldNormals[index];
+    }
+
     @Override
     public void computeAabb() {
         aabb.min.x = Float.MAX_VALUE;
@@ -146,10 +227,9 @@ public class Polygon extends IShape {
         aabb.max.x = -Float.MAX_VALUE;
         aabb.max.y = -Float.MAX_VALUE;
 
-        Vector2f tmpV = new Vector2f();
+        updateWorldGeometry();
         for (int i = 0; i < vertexCount; i++) {
-            tmpV.set(vertices[i]);
-            rotateMatrix.mul(tmpV, tmpV);
+            Vector2f tmpV = worldVertices[i];
             if (tmpV.x < aabb.min.x) {
                 aabb.min.x = tmpV.x;
             }
@@ -163,9 +243,6 @@ public class Polygon extends IShape {
                 aabb.max.y = tmpV.y;
             }
         }
-
-        aabb.min.add(body.position);
-        aabb.max.add(body.position);
     }
 
     @Override
@@ -184,21 +261,62 @@ public class Polygon extends IShape {
      * distant polygon vertex in the given direction
      */
     public Vector2f calculateSupportVertex(Vector2f direction) {
+        return new Vector2f(vertices[calculateSupportVertexIndex(direction.x, direction.y)]);
+    }
+
+    /**
+     * Calculates the index of the most distant polygon vertex in a passed direction. Unlike
+     * {@link #calculateSupportVertex(Vector2f)} the method doesn't create any objects.
+     *
+     * @param directionX the X coordinate of direction in the polygon model space
+     * @param directionY the Y coordinate of direction in the polygon model space
+     * @return the index of the most distant vertex, see {@link #getVertex(int)}
+     */
+    public int calculateSupportVertexIndex(float directionX, float directionY) {
         // Looking for the most distant vertex in a given direction
         float bestProjection = -Float.MAX_VALUE;
-        final Vector2f bestVertex = new Vector2f();
+        int bestIndex = 0;
 
         for (int i = 0; i < vertexCount; ++i) {
             Vector2f v = vertices[i];
-            float projection = Vector2f.dotProduct(v, direction);
+            float projection = v.x * directionX + v.y * directionY;
+
+            if (projection > bestProjection) {
+                bestIndex = i;
+                bestProjection = projection;
+            }
+        }
+
+        return bestIndex;
+    }
+
+    /**
+     * Calculates the index of the most distant polygon vertex in a passed direction specified in world space.
+     * The method is the same as {@link #calculateSupportVertexIndex(float, float)}, but it uses
+     * the world space vertices, so the direction doesn't need to be transformed into the polygon model space.
+     * The same as for {@link #getWorldVertex(int)}, the method must not be called from several threads at once
+     * if the polygon has been moved after the last {@link #computeAabb()} call.
+     *
+     * @param directionX the X coordinate of direction in world space
+     * @param directionY the Y coordinate of direction in world space
+     * @return the index of the most distant vertex, see {@link #getWorldVertex(int)}
+     */
+    public int calculateWorldSupportVertexIndex(float directionX, float directionY) {
+        updateWorldGeometry();
+        float bestProjection = -Float.MAX_VALUE;
+        int bestIndex = 0;
+
+        for (int i = 0; i < vertexCount; ++i) {
+            Vector2f v = worldVertices[i];
+            float projection = v.x * directionX + v.y * directionY;
 
             if (projection > bestProjection) {
-                bestVertex.set(v);
+                bestIndex = i;
                 bestProjection = projection;
             }
         }
 
-        return bestVertex;
+        return bestIndex;
     }
 
     @Override
@@ -228,6 +346,28 @@ public class Polygon extends IShape {
         body.invertedInertia = (inertia != 0f) ? 1f / inertia : 0f;
     }
 
+    private void updateWorldGeometry() {
+        final Vector2f position = body.position;
+        if (worldGeometryValid && worldPositionX == position.x && worldPositionY == position.y
+                && worldM00 == rotateMatrix.m00 && worldM01 == rotateMatrix.m01
+                && worldM10 == rotateMatrix.m10 && worldM11 == rotateMatrix.m11) {
+            return;
+        }
+
+        for (int i = 0; i < vertexCount; i++) {
+            rotateMatrix.mul(vertices[i], worldVertices[i]);
+            worldVertices[i].add(position);
+            rotateMatrix.mul(normals[i], worldNormals[i]);
+        }
+        worldPositionX = position.x;
+        worldPositionY = position.y;
+        worldM00 = rotateMatrix.m00;
+        worldM01 = rotateMatrix.m01;
+        worldM10 = rotateMatrix.m10;
+        worldM11 = rotateMatrix.m11;
+        worldGeometryValid = true;
+    }
+
     private static List<Integer> calculateHullIndices(List<Vector2f> vertices) {
         Vector2f tmpV = new Vector2f();
         Vector2f tmpV2 = new Vector2f();
@@ -0,0 +1,234 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.shape;
+
+import com.github.introfog.pie.core.PieExceptionMessage;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The class stores the shapes of one world and hands out a dense integer slot to each of them.
+ *
+ * <p>
+ * The shapes are kept in a contiguous array, a removed shape is replaced by the last one (swap-remove),
+ * so both adding and removing take constant time. The slot of a shape doesn't change while the shape is
+ * in the registry and the slots of removed shapes are recycled, so the slots stay in the range
+ * {@code [0, getSlotCapacity())} and can be used as indices of arrays instead of maps keyed by shapes.
+ *
+ * <p>
+ * A shape can belong to only one registry at the same time.
+ */
+public class ShapeRegistry {
+    private IShape[] shapes;
+    private int size;
+    private int[] denseIndices;
+    private int[] freeSlots;
+    private int freeSlotCount;
+    private int slotCapacity;
+    private final Set<IShape> unmodifiableSet;
+
+    /**
+     * Instantiates a new empty {@link ShapeRegistry} instance.
+     */
+    public ShapeRegistry() {
+        shapes = new IShape[16];
+        denseIndices = new int[16];
+        freeSlots = new int[16];
+        unmodifiableSet = Collections.unmodifiableSet(new RegistrySet());
+    }
+
+    /**
+     * Adds the shape to the registry and assigns a slot to it.
+     *
+     * @param shape the shape to be added
+     * @return {@code true} if the shape has been added, {@code false} if the registry already contained it
+     * @throws IllegalArgumentException if the shape belongs to another registry
+     */
+    public boolean add(IShape shape) {
+        if (shape.registry == this) {
+            return false;
+        }
+        if (shape.registry != null) {
+            throw new IllegalArgumentException(PieExceptionMessage.SHAPE_ALREADY_BELONGS_TO_ANOTHER_WORLD);
+        }
+
+        final int slot;
+        if (freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        } else {
+            slot = slotCapacity++;
+            if (slot == denseIndices.length) {
+                denseIndices = Arrays.copyOf(denseIndices, 2 * slot);
+            }
+        }
+        if (size == shapes.length) {
+            shapes = Arrays.copyOf(shapes, 2 * size);
+        }
+
+        shapes[size] = shape;
+        denseIndices[slot] = size;
+        size++;
+        shape.registry = this;
+        shape.slot = slot;
+        return true;
+    }
+
+    /**
+     * Removes the shape from the registry, its slot will be handed out to one of the next added shapes.
+     *
+     * @param shape the shape to be removed
+     * @return {@code true} if the registry contained the shape
+     */
+    public boolean remove(IShape shape) {
+        if (shape.registry != this) {
+            return false;
+        }
+
+        final int slot = shape.slot;
+        final int index = denseIndices[slot];
+        final IShape last = shapes[--size];
+        shapes[index] = last;
+        denseIndices[last.slot] = index;
+        shapes[size] = null;
+
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, 2 * freeSlotCount);
+        }
+        freeSlots[freeSlotCount++] = slot;
+        shape.registry = null;
+        shape.slot = -1;
+        return true;
+    }
+
+    /**
+     * Checks whether the shape can be added to the registry, that is it doesn't belong to another registry.
+     *
+     * @param shape the shape
+     * @return {@code true} if the shape doesn't belong to any registry or already belongs to this one
+     */
+    public boolean canAdd(IShape shape) {
+        return shape.registry == null || shape.registry == this;
+    }
+
+    /**
+     * Checks whether the shape is in the registry.
+     *
+     * @param shape the shape
+     * @return {@code true} if the registry contains the shape
+     */
+    public boolean contains(IShape shape) {
+        return shape.registry == this;
+    }
+
+    /**
+     * Removes all shapes from the registry and releases all slots.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            shapes[i].registry = null;
+            shapes[i].slot = -1;
+            shapes[i] = null;
+        }
+        size = 0;
+        freeSlotCount = 0;
+        slotCapacity = 0;
+    }
+
+    /**
+     * Gets the number of shapes in the registry.
+     *
+     * @return the number of shapes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the shape by its index in the dense array. Note that the indices of the shapes are changed
+     * by the removing, unlike their slots.
+     *
+     * @param index the index in the range {@code [0, size())}
+     * @return the shape
+     */
+    public IShape get(int index) {
+        return shapes[index];
+    }
+
+    /**
+     * Gets the upper bound of the slots, all slots of the shapes in the registry are less than it.
+     * The arrays indexed by slots must have at least this length.
+     *
+     * @return the slot capacity
+     */
+    public int getSlotCapacity() {
+        return slotCapacity;
+    }
+
+    /**
+     * Copies the shapes into a new array in the order of the dense array.
+     *
+     * @return the array of shapes
+     */
+    public IShape[] toArray() {
+        return Arrays.copyOf(shapes, size);
+    }
+
+    /**
+     * Gets the unmodifiable set view of the registry, the view reflects the further changes of the registry.
+     *
+     * @return the unmodifiable set of shapes
+     */
+    public Set<IShape> asUnmodifiableSet() {
+        return unmodifiableSet;
+    }
+
+    private final class RegistrySet extends AbstractSet<IShape> {
+        @Override
+        public Iterator<IShape> iterator() {
+            return new Iterator<IShape>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < size;
+                }
+
+                @Override
+                public IShape next() {
+                    if (index >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    return shapes[index++];
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof IShape && ShapeRegistry.this.contains((IShape) o);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
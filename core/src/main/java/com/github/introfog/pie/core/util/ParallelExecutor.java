@@ -0,0 +1,207 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * The class splits a range of indices into chunks and executes them on the {@link ForkJoinPool}.
+ *
+ * <p>
+ * If there is no pool, the pool has only one worker or the range is smaller than the minimal chunk size,
+ * the range is executed sequentially in the calling thread. The chunks never intersect, so if the action
+ * touches only the element with the passed index, the result is the same as in the sequential execution.
+ */
+public class ParallelExecutor {
+    /** The constant DEFAULT_MIN_CHUNK_SIZE. */
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 256;
+
+    private static final ParallelExecutor SEQUENTIAL_EXECUTOR = new ParallelExecutor(null);
+
+    /** The number of chunks per worker, more chunks allow the pool to balance uneven chunks. */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final ForkJoinPool pool;
+    private final int minChunkSize;
+
+    /**
+     * Instantiates a new {@link ParallelExecutor} instance with the {@link #DEFAULT_MIN_CHUNK_SIZE}.
+     *
+     * @param pool the pool on which the chunks will be executed, if null all ranges will be executed sequentially
+     */
+    public ParallelExecutor(ForkJoinPool pool) {
+        this(pool, DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * Instantiates a new {@link ParallelExecutor} instance.
+     *
+     * @param pool the pool on which the chunks will be executed, if null all ranges will be executed sequentially
+     * @param minChunkSize the minimal number of indices in one chunk
+     */
+    public ParallelExecutor(ForkJoinPool pool, int minChunkSize) {
+        this.pool = pool;
+        this.minChunkSize = Math.max(1, minChunkSize);
+    }
+
+    /**
+     * Gets the executor that always executes ranges sequentially in the calling thread.
+     *
+     * @return the sequential executor
+     */
+    public static ParallelExecutor sequential() {
+        return SEQUENTIAL_EXECUTOR;
+    }
+
+    /**
+     * Gets the pool on which the chunks are executed.
+     *
+     * @return the pool or null if the executor is sequential
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Gets the minimal number of indices in one chunk.
+     *
+     * @return the minimal chunk size
+     */
+    public int getMinChunkSize() {
+        return minChunkSize;
+    }
+
+    /**
+     * Gets the number of workers that can execute chunks at the same time.
+     *
+     * @return the parallelism level
+     */
+    public int getParallelism() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    /**
+     * Checks whether the executor is able to execute chunks in parallel.
+     *
+     * @return {@code true} if chunks can be executed in parallel, otherwise {@code false}
+     */
+    public boolean isParallel() {
+        return getParallelism() > 1;
+    }
+
+    /**
+     * Executes the action for each of the first elements of the array.
+     *
+     * @param array the array of elements
+     * @param size the number of elements from the beginning of the array to process
+     * @param action the action to be executed for each element
+     * @param <T> the type of elements
+     */
+    public <T> void forEach(T[] array, int size, Consumer<? super T> action) {
+        forEachChunk(0, size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                action.accept(array[i]);
+            }
+        });
+    }
+
+    /**
+     * Splits the range into chunks and executes the action for each of them. The method returns
+     * when all chunks are executed. An exception thrown by any chunk is rethrown in the calling thread.
+     *
+     * @param from the first index of the range (inclusive)
+     * @param to the last index of the range (exclusive)
+     * @param action the action to be executed for each chunk
+     */
+    public void forEachChunk(int from, int to, RangeAction action) {
+        forEachChunk(from, to, minChunkSize, action);
+    }
+
+    /**
+     * Splits the range into chunks which are not smaller than the passed chunk size and executes the action for
+     * each of them. The method is used when the elements of the range are heavy, for example when each element
+     * is a group of bodies. The method returns when all chunks are executed. An exception thrown by any chunk is
+     * rethrown in the calling thread.
+     *
+     * @param from the first index of the range (inclusive)
+     * @param to the last index of the range (exclusive)
+     * @param minChunkSize the minimal number of indices in one chunk
+     * @param action the action to be executed for each chunk
+     */
+    public void forEachChunk(int from, int to, int minChunkSize, RangeAction action) {
+        final int size = to - from;
+        if (size <= 0) {
+            return;
+        }
+        final int minSize = Math.max(1, minChunkSize);
+        if (!isParallel() || size < 2 * minSize) {
+            action.apply(from, to);
+            return;
+        }
+
+        final int chunkSize = Math.max(minSize, (size + getParallelism() * CHUNKS_PER_WORKER - 1)
+                / (getParallelism() * CHUNKS_PER_WORKER));
+        final RangeTask task = new RangeTask(from, to, chunkSize, action);
+        if (ForkJoinTask.getPool() == pool) {
+            // Already in the worker of the pool, so the task can be forked directly
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    /**
+     * The action that is executed for the chunk of a range.
+     */
+    @FunctionalInterface
+    public interface RangeAction {
+        /**
+         * Executes the action for the chunk.
+         *
+         * @param from the first index of the chunk (inclusive)
+         * @param to the last index of the chunk (exclusive)
+         */
+        void apply(int from, int to);
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+        private final transient RangeAction action;
+
+        RangeTask(int from, int to, int chunkSize, RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                action.apply(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            ForkJoinTask.invokeAll(new RangeTask(from, middle, chunkSize, action),
+                    new RangeTask(middle, to, chunkSize, action));
+        }
+    }
+}
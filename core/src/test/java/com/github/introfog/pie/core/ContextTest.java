@@ -20,9 +20,12 @@ import com.github.introfog.pie.core.collisions.narrowphase.ShapeCollisionHandler
 import com.github.introfog.pie.core.math.Vector2f;
 import com.github.introfog.pie.core.shape.Circle;
 import com.github.introfog.pie.core.shape.Polygon;
+import com.github.introfog.pie.test.AssertUtil;
 import com.github.introfog.pie.test.PieTest;
 import com.github.introfog.pie.test.annotations.UnitTest;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -59,6 +62,49 @@ public class ContextTest extends PieTest {
         Assert.assertEquals(1.5f, context.getMinBorderSlop(), FLOAT_EPSILON_COMPARISON);
     }
 
+    @Test
+    public void warmStartingTest() {
+        Assert.assertFalse(new Context(new WorldProperties()).isWarmStartingEnabled());
+        Assert.assertTrue(new Context(new WorldProperties().setWarmStartingEnabled(true)).isWarmStartingEnabled());
+    }
+
+    @Test
+    public void graphColoringTest() {
+        Assert.assertFalse(new Context(new WorldProperties()).isGraphColoringEnabled());
+        Assert.assertTrue(new Context(new WorldProperties().setGraphColoringEnabled(true)).isGraphColoringEnabled());
+    }
+
+    @Test
+    public void bodyStorageTest() {
+        Assert.assertFalse(new Context(new WorldProperties()).isBodyStorageEnabled());
+        Assert.assertTrue(new Context(new WorldProperties().setBodyStorageEnabled(true)).isBodyStorageEnabled());
+        Assert.assertNull(new Context(new WorldProperties()).getBodyStorage());
+        Assert.assertNotNull(new Context(new WorldProperties().setBodyStorageEnabled(true)).getBodyStorage());
+    }
+
+    @Test
+    public void dirtyTrackingTest() {
+        Assert.assertFalse(new Context(new WorldProperties()).isDirtyTrackingEnabled());
+        Assert.assertTrue(new Context(new WorldProperties().setDirtyTrackingEnabled(true)).isDirtyTrackingEnabled());
+    }
+
+    @Test
+    public void staticFastPathTest() {
+        Assert.assertFalse(new Context(new WorldProperties()).isStaticFastPathEnabled());
+        Assert.assertTrue(new Context(new WorldProperties().setStaticFastPathEnabled(true))
+                .isStaticFastPathEnabled());
+    }
+
+    @Test
+    public void sleepingTest() {
+        Context context = new Context(new WorldProperties().setSleepingEnabled(true).setTimeToSleep(1.1f)
+                .setSleepLinearTolerance(1.2f).setSleepAngularTolerance(1.3f));
+        Assert.assertTrue(context.isSleepingEnabled());
+        Assert.assertEquals(1.1f, context.getTimeToSleep(), FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(1.2f, context.getSleepLinearTolerance(), FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(1.3f, context.getSleepAngularTolerance(), FLOAT_EPSILON_COMPARISON);
+    }
+
     @Test
     public void setGravityTest() {
         Vector2f gravity = new Vector2f(1.6f, 1.7f);
@@ -83,6 +129,42 @@ public class ContextTest extends PieTest {
         Assert.assertNotNull(actualMapper.getMapping(Polygon.class, Polygon.class));
     }
 
+    @Test
+    public void parallelExecutorTest() {
+        Context context = new Context(new WorldProperties());
+        Assert.assertFalse(context.getParallelExecutor().isParallel());
+
+        context = new Context(new WorldProperties().setWorkerCount(3).setParallelChunkSize(7));
+        Assert.assertEquals(3, context.getParallelExecutor().getParallelism());
+        Assert.assertEquals(7, context.getParallelExecutor().getMinChunkSize());
+        context.shutdown();
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        context = new Context(new WorldProperties().setWorkerCount(5).setForkJoinPool(pool));
+        Assert.assertSame(pool, context.getParallelExecutor().getPool());
+        pool.shutdown();
+    }
+
+    @Test
+    public void shutdownOwnedPoolTest() {
+        Context context = new Context(new WorldProperties().setWorkerCount(3));
+        ForkJoinPool ownPool = context.getParallelExecutor().getPool();
+        context.shutdown();
+        Assert.assertTrue(ownPool.isShutdown());
+        Assert.assertFalse(context.getParallelExecutor().isParallel());
+        AssertUtil.doesNotThrow(context::shutdown);
+    }
+
+    @Test
+    public void shutdownSuppliedPoolTest() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        Context context = new Context(new WorldProperties().setForkJoinPool(pool));
+        context.shutdown();
+        Assert.assertFalse(pool.isShutdown());
+        Assert.assertSame(pool, context.getParallelExecutor().getPool());
+        pool.shutdown();
+    }
+
     @Test
     public void getRestingTest() {
         Context context = new Context(new WorldProperties()
@@ -22,8 +22,11 @@ import com.github.introfog.pie.core.math.Vector2f;
 import com.github.introfog.pie.core.shape.Circle;
 import com.github.introfog.pie.core.shape.Polygon;
 import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.core.util.ParallelExecutor;
 import com.github.introfog.pie.test.annotations.UnitTest;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -39,6 +42,18 @@ public class WorldPropertiesTest extends PieTest {
         Assert.assertEquals(0.5f, properties.getCorrectPositionPercent(), FLOAT_EPSILON_COMPARISON);
         Assert.assertEquals(0.1f, properties.getMinBorderSlop(), FLOAT_EPSILON_COMPARISON);
         Assert.assertEquals(1, properties.getCollisionSolveIterations());
+        Assert.assertEquals(1, properties.getWorkerCount());
+        Assert.assertEquals(ParallelExecutor.DEFAULT_MIN_CHUNK_SIZE, properties.getParallelChunkSize());
+        Assert.assertNull(properties.getForkJoinPool());
+        Assert.assertFalse(properties.isSleepingEnabled());
+        Assert.assertFalse(properties.isWarmStartingEnabled());
+        Assert.assertFalse(properties.isGraphColoringEnabled());
+        Assert.assertFalse(properties.isBodyStorageEnabled());
+        Assert.assertFalse(properties.isDirtyTrackingEnabled());
+        Assert.assertFalse(properties.isStaticFastPathEnabled());
+        Assert.assertEquals(0.5f, properties.getTimeToSleep(), FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(2f, properties.getSleepLinearTolerance(), FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(0.05f, properties.getSleepAngularTolerance(), FLOAT_EPSILON_COMPARISON);
         Assert.assertEquals(0f, properties.getGravity().x, FLOAT_EPSILON_COMPARISON);
         Assert.assertEquals(50f, properties.getGravity().y, FLOAT_EPSILON_COMPARISON);
         Assert.assertEquals(BruteForceMethod.class, properties.getBroadPhaseMethod().getClass());
@@ -59,6 +74,110 @@ public class WorldPropertiesTest extends PieTest {
                 IllegalArgumentException.class, () -> properties.setCollisionSolveIterations(-2));
     }
 
+    @Test
+    public void setWorkerCountTest() {
+        WorldProperties properties = new WorldProperties();
+
+        Assert.assertEquals(properties, properties.setWorkerCount(4));
+        Assert.assertEquals(4, properties.getWorkerCount());
+
+        Assert.assertThrows(PieExceptionMessage.WORKER_COUNT_MUST_BE_POSITIVE,
+                IllegalArgumentException.class, () -> properties.setWorkerCount(0));
+    }
+
+    @Test
+    public void setParallelChunkSizeTest() {
+        WorldProperties properties = new WorldProperties();
+
+        Assert.assertEquals(properties, properties.setParallelChunkSize(16));
+        Assert.assertEquals(16, properties.getParallelChunkSize());
+
+        Assert.assertThrows(PieExceptionMessage.PARALLEL_CHUNK_SIZE_MUST_BE_POSITIVE,
+                IllegalArgumentException.class, () -> properties.setParallelChunkSize(0));
+    }
+
+    @Test
+    public void setForkJoinPoolTest() {
+        WorldProperties properties = new WorldProperties();
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        Assert.assertSame(properties, properties.setForkJoinPool(pool));
+        Assert.assertSame(pool, properties.getForkJoinPool());
+        pool.shutdown();
+    }
+
+    @Test
+    public void setWarmStartingEnabledTest() {
+        WorldProperties properties = new WorldProperties();
+
+        Assert.assertSame(properties, properties.setWarmStartingEnabled(true));
+        Assert.assertTrue(properties.isWarmStartingEnabled());
+    }
+
+    @Test
+    public void setGraphColoringEnabledTest() {
+        WorldProperties properties = new WorldProperties();
+
+        Assert.assertSame(properties, properties.setGraphColoringEnabled(true));
+        Assert.assertTrue(properties.isGraphColoringEnabled());
+    }
+
+    @Test
+    public void setBodyStorageEnabledTest() {
+        WorldProperties properties = new WorldProperties();
+
+        Assert.assertSame(properties, properties.setBodyStorageEnabled(true));
+        Assert.assertTrue(properties.isBodyStorageEnabled());
+    }
+
+    @Test
+    public void setDirtyTrackingEnabledTest() {
+        WorldProperties properties = new WorldProperties();
+
+        Assert.assertSame(properties, properties.setDirtyTrackingEnabled(true));
+        Assert.assertTrue(properties.isDirtyTrackingEnabled());
+    }
+
+    @Test
+    public void setStaticFastPathEnabledTest() {
+        WorldProperties properties = new WorldProperties();
+
+        Assert.assertSame(properties, properties.setStaticFastPathEnabled(true));
+        Assert.assertTrue(properties.isStaticFastPathEnabled());
+    }
+
+    @Test
+    public void setSleepingTest() {
+        WorldProperties properties = new WorldProperties();
+
+        Assert.assertSame(properties, properties.setSleepingEnabled(true));
+        Assert.assertTrue(properties.isSleepingEnabled());
+        Assert.assertSame(properties, properties.setTimeToSleep(1.1f));
+        Assert.assertEquals(1.1f, properties.getTimeToSleep(), FLOAT_EPSILON_COMPARISON);
+        Assert.assertSame(properties, properties.setSleepLinearTolerance(1.2f));
+        Assert.assertEquals(1.2f, properties.getSleepLinearTolerance(), FLOAT_EPSILON_COMPARISON);
+        Assert.assertSame(properties, properties.setSleepAngularTolerance(1.3f));
+        Assert.assertEquals(1.3f, properties.getSleepAngularTolerance(), FLOAT_EPSILON_COMPARISON);
+    }
+
+    @Test
+    public void setInvalidSleepingTest() {
+        WorldProperties properties = new WorldProperties();
+
+        Assert.assertThrows(PieExceptionMessage.TIME_TO_SLEEP_MUST_NOT_BE_NEGATIVE,
+                IllegalArgumentException.class, () -> properties.setTimeToSleep(-1f));
+        Assert.assertThrows(PieExceptionMessage.TIME_TO_SLEEP_MUST_NOT_BE_NEGATIVE,
+                IllegalArgumentException.class, () -> properties.setTimeToSleep(Float.NaN));
+        Assert.assertThrows(PieExceptionMessage.SLEEP_TOLERANCE_MUST_NOT_BE_NEGATIVE,
+                IllegalArgumentException.class, () -> properties.setSleepLinearTolerance(-1f));
+        Assert.assertThrows(PieExceptionMessage.SLEEP_TOLERANCE_MUST_NOT_BE_NEGATIVE,
+                IllegalArgumentException.class, () -> properties.setSleepLinearTolerance(Float.NaN));
+        Assert.assertThrows(PieExceptionMessage.SLEEP_TOLERANCE_MUST_NOT_BE_NEGATIVE,
+                IllegalArgumentException.class, () -> properties.setSleepAngularTolerance(-1f));
+        Assert.assertThrows(PieExceptionMessage.SLEEP_TOLERANCE_MUST_NOT_BE_NEGATIVE,
+                IllegalArgumentException.class, () -> properties.setSleepAngularTolerance(Float.NaN));
+    }
+
     @Test
     public void setFixedDeltaTimeTest() {
         WorldProperties properties = new WorldProperties();
@@ -16,19 +16,27 @@
 package com.github.introfog.pie.core;
 
 import com.github.introfog.pie.core.collisions.Manifold;
+import com.github.introfog.pie.core.collisions.broadphase.AabbTreeMethod;
 import com.github.introfog.pie.core.math.MathPie;
 import com.github.introfog.pie.core.math.Vector2f;
+import com.github.introfog.pie.core.shape.Body;
 import com.github.introfog.pie.core.shape.Circle;
 import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.Polygon;
 import com.github.introfog.pie.core.shape.ShapePair;
 import com.github.introfog.pie.core.util.TestUtil;
 import com.github.introfog.pie.test.AssertUtil;
 import com.github.introfog.pie.test.PieTest;
 import com.github.introfog.pie.test.annotations.IntegrationTest;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -317,4 +325,527 @@ public class WorldTest extends PieTest {
         world.addShape(c2);
         AssertUtil.doesNotThrow(() -> world.update(1));
     }
+
+    @Test
+    public void updateAfterShutdownTest() {
+        WorldProperties properties = new WorldProperties().setFixedDeltaTime(1f / 60).setDeadLoopBorder(1f);
+        World world = new World(properties.setWorkerCount(2).setParallelChunkSize(8));
+        WorldTest.addSeparatedShapes(world);
+        world.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+        world.shutdown();
+        AssertUtil.doesNotThrow(() -> world.update(properties.getFixedDeltaTime() + MathPie.EPSILON));
+    }
+
+    @Test
+    public void parallelPassesGiveSameResultsAsSequentialTest() {
+        WorldProperties properties = new WorldProperties().setFixedDeltaTime(1f / 60).setDeadLoopBorder(1f);
+        World sequentialWorld = new World(properties);
+        List<IShape> sequentialShapes = WorldTest.addSeparatedShapes(sequentialWorld);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        World parallelWorld = new World(properties.setForkJoinPool(pool).setParallelChunkSize(8));
+        List<IShape> parallelShapes = WorldTest.addSeparatedShapes(parallelWorld);
+
+        for (int i = 0; i < 10; i++) {
+            sequentialWorld.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+            parallelWorld.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+        }
+        pool.shutdown();
+
+        for (int i = 0; i < sequentialShapes.size(); i++) {
+            IShape expected = sequentialShapes.get(i);
+            IShape actual = parallelShapes.get(i);
+            Assert.assertEquals(expected.getBody().position, actual.getBody().position);
+            Assert.assertEquals(expected.getBody().velocity, actual.getBody().velocity);
+            Assert.assertEquals(expected.getBody().orientation, actual.getBody().orientation, 0f);
+            Assert.assertEquals(expected.getAabb().min, actual.getAabb().min);
+            Assert.assertEquals(expected.getAabb().max, actual.getAabb().max);
+            Assert.assertEquals(new Vector2f(), actual.getBody().force);
+        }
+    }
+
+    @Test
+    public void warmStartingKeepsStackTest() {
+        WorldProperties properties = new WorldProperties().setCollisionSolveIterations(4);
+        IShape top = WorldTest.simulateBoxStack(properties);
+        // Without warm starting the stack falls apart
+        Assert.assertTrue(top.getBody().position.y > 0f);
+
+        top = WorldTest.simulateBoxStack(properties.setWarmStartingEnabled(true));
+        Assert.assertEquals(-59.3f, top.getBody().position.y, 1f);
+        Assert.assertEquals(0f, top.getBody().position.x, 1f);
+    }
+
+    @Test
+    public void circleOnPolygonTest() {
+        WorldProperties properties = new WorldProperties();
+        World world = new World(properties);
+        world.addShape(Polygon.generateRectangle(0, 100, 400, 20, MathPie.STATIC_BODY_DENSITY, 0f));
+        IShape circle = new Circle(10, 0, 80, 1f, 0f);
+        world.addShape(circle);
+
+        WorldTest.stepSeconds(world, properties, 2f);
+        Assert.assertEquals(1, world.getManifolds().size());
+        Assert.assertEquals(80f, circle.getBody().position.y, 1f);
+    }
+
+    @Test
+    public void graphColoringKeepsStackTest() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        WorldProperties properties = new WorldProperties().setCollisionSolveIterations(4).setWarmStartingEnabled(true)
+                .setGraphColoringEnabled(true).setForkJoinPool(pool).setParallelChunkSize(1);
+        IShape top = WorldTest.simulateBoxStack(properties);
+        pool.shutdown();
+
+        Assert.assertEquals(-59.3f, top.getBody().position.y, 1f);
+        Assert.assertEquals(0f, top.getBody().position.x, 1f);
+    }
+
+    @Test
+    public void graphColoringOfBigIslandTest() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        WorldProperties properties = new WorldProperties().setGraphColoringEnabled(true).setForkJoinPool(pool)
+                .setParallelChunkSize(2);
+        World world = new World(properties);
+        world.addShape(Polygon.generateRectangle(0, 100, 4000, 20, MathPie.STATIC_BODY_DENSITY, 0f));
+        // The row of touching circles lying on the ground is one big island
+        List<IShape> circles = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            IShape circle = new Circle(10, i * 19.5f - 400, 80, 1f, 0f);
+            circles.add(circle);
+            world.addShape(circle);
+        }
+        WorldTest.stepSeconds(world, properties, 1f);
+        pool.shutdown();
+
+        Assert.assertEquals(1, world.getIslands().size());
+        Assert.assertFalse(world.getIslands().get(0).getBatches().isEmpty());
+        for (IShape circle : circles) {
+            Assert.assertEquals(80f, circle.getBody().position.y, 1f);
+        }
+    }
+
+    @Test
+    public void bodyStorageGivesSameResultsTest() {
+        WorldProperties properties = new WorldProperties().setFixedDeltaTime(1f / 60).setDeadLoopBorder(1f);
+        World world = new World(properties);
+        List<IShape> shapes = WorldTest.addSeparatedShapes(world);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        World storageWorld = new World(new WorldProperties().setFixedDeltaTime(1f / 60).setDeadLoopBorder(1f)
+                .setBodyStorageEnabled(true).setForkJoinPool(pool).setParallelChunkSize(8));
+        List<IShape> storageShapes = WorldTest.addSeparatedShapes(storageWorld);
+
+        for (int i = 0; i < 10; i++) {
+            world.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+            storageWorld.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+        }
+        pool.shutdown();
+
+        for (int i = 0; i < shapes.size(); i++) {
+            Body expected = shapes.get(i).getBody();
+            Body actual = storageShapes.get(i).getBody();
+            Assert.assertEquals(expected.position.x, actual.position.x, 1e-3f);
+            Assert.assertEquals(expected.position.y, actual.position.y, 1e-3f);
+            Assert.assertEquals(expected.velocity.x, actual.velocity.x, 1e-3f);
+            Assert.assertEquals(expected.velocity.y, actual.velocity.y, 1e-3f);
+            Assert.assertEquals(expected.orientation, actual.orientation, 1e-4f);
+            Assert.assertEquals(new Vector2f(), actual.force);
+        }
+    }
+
+    @Test
+    public void bodyStorageKeepsStackTest() {
+        WorldProperties properties = new WorldProperties().setCollisionSolveIterations(4).setWarmStartingEnabled(true)
+                .setBodyStorageEnabled(true);
+        IShape top = WorldTest.simulateBoxStack(properties);
+
+        Assert.assertEquals(-59.3f, top.getBody().position.y, 1f);
+        Assert.assertEquals(0f, top.getBody().position.x, 1f);
+    }
+
+    @Test
+    public void bodyStorageGivesSameStackTest() {
+        for (boolean warmStarting : new boolean[] {false, true}) {
+            WorldProperties properties = new WorldProperties().setCollisionSolveIterations(4)
+                    .setWarmStartingEnabled(warmStarting).setSleepingEnabled(true);
+            Body expected = WorldTest.simulateBoxStack(properties).getBody();
+            Body actual = WorldTest.simulateBoxStack(properties.setBodyStorageEnabled(true)).getBody();
+
+            Assert.assertEquals(expected.position.x, actual.position.x, 0.1f);
+            Assert.assertEquals(expected.position.y, actual.position.y, 0.1f);
+            Assert.assertEquals(expected.isAwake(), actual.isAwake());
+        }
+    }
+
+    @Test
+    public void shapeCanBelongToOneWorldTest() {
+        World first = new World(new WorldProperties());
+        World second = new World(new WorldProperties());
+        IShape circle = new Circle(1, 0, 0, 1, 0);
+        first.addShape(circle);
+
+        Assert.assertThrows(PieExceptionMessage.SHAPE_ALREADY_BELONGS_TO_ANOTHER_WORLD,
+                IllegalArgumentException.class, () -> second.addShape(circle));
+
+        first.remove(circle);
+        second.addShape(circle);
+        Assert.assertTrue(second.getUnmodifiableShapes().contains(circle));
+        Assert.assertTrue(first.getUnmodifiableShapes().isEmpty());
+    }
+
+    @Test
+    public void setShapesOfAnotherWorldKeepsShapesTest() {
+        World first = new World(new WorldProperties());
+        World second = new World(new WorldProperties());
+        IShape foreign = new Circle(1, 0, 0, 1, 0);
+        IShape own = new Circle(1, 10, 0, 1, 0);
+        IShape added = new Circle(1, 20, 0, 1, 0);
+        first.addShape(foreign);
+        second.addShape(own);
+
+        Assert.assertThrows(PieExceptionMessage.SHAPE_ALREADY_BELONGS_TO_ANOTHER_WORLD, IllegalArgumentException.class,
+                () -> second.setShapes(new HashSet<>(Arrays.asList(added, foreign))));
+        Assert.assertThrows(PieExceptionMessage.SHAPE_ALREADY_BELONGS_TO_ANOTHER_WORLD, IllegalArgumentException.class,
+                () -> second.addShapes(Arrays.asList(added, foreign)));
+        Assert.assertEquals(Collections.singleton(own), second.getUnmodifiableShapes());
+        Assert.assertEquals(-1, added.getSlot());
+    }
+
+    @Test
+    public void dirtyTrackingKeepsStackTest() {
+        WorldProperties properties = new WorldProperties().setCollisionSolveIterations(4).setWarmStartingEnabled(true)
+                .setDirtyTrackingEnabled(true).setBroadPhaseMethod(new AabbTreeMethod());
+        IShape top = WorldTest.simulateBoxStack(properties);
+
+        Assert.assertEquals(-59.3f, top.getBody().position.y, 1f);
+        Assert.assertEquals(0f, top.getBody().position.x, 1f);
+    }
+
+    @Test
+    public void dirtyTrackingUpdatesOnlyMovedShapesTest() {
+        WorldProperties properties = new WorldProperties().setDirtyTrackingEnabled(true).setGravity(new Vector2f());
+        World world = new World(properties);
+        IShape ground = new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0f);
+        IShape circle = new Circle(10, 100, 0, 1f, 0f);
+        world.addShape(ground);
+        world.addShape(circle);
+        world.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+        Assert.assertTrue(world.getManifolds().isEmpty());
+        Assert.assertFalse(ground.isMoved());
+
+        // The static shape is moved directly, so the world doesn't know about it until it is marked
+        ground.getBody().position.set(95, 0);
+        world.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+        Assert.assertTrue(world.getManifolds().isEmpty());
+
+        ground.markMoved();
+        world.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+        Assert.assertEquals(1, world.getManifolds().size());
+    }
+
+    @Test
+    public void staticFastPathKeepsStackTest() {
+        WorldProperties properties = new WorldProperties().setCollisionSolveIterations(4).setWarmStartingEnabled(true)
+                .setStaticFastPathEnabled(true);
+        IShape top = WorldTest.simulateBoxStack(properties);
+
+        Assert.assertEquals(-59.3f, top.getBody().position.y, 1f);
+        Assert.assertEquals(0f, top.getBody().position.x, 1f);
+    }
+
+    @Test
+    public void staticFastPathTest() {
+        WorldProperties properties = new WorldProperties().setStaticFastPathEnabled(true);
+        World world = new World(properties);
+        IShape ground = Polygon.generateRectangle(0, 100, 400, 20, MathPie.STATIC_BODY_DENSITY, 0f);
+        IShape wall = Polygon.generateRectangle(0, 80, 20, 60, MathPie.STATIC_BODY_DENSITY, 0f);
+        IShape circle = new Circle(10, 100, 85, 1f, 0f);
+        world.addShape(ground);
+        world.addShape(wall);
+        world.addShape(circle);
+        Assert.assertEquals(3, world.getUnmodifiableShapes().size());
+
+        world.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(ground, circle));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, world.getCollisions()));
+
+        Assert.assertTrue(world.remove(ground));
+        world.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+        Assert.assertTrue(world.getManifolds().isEmpty());
+        Assert.assertEquals(2, world.getUnmodifiableShapes().size());
+    }
+
+    @Test
+    public void addShapesAndRemoveShapesTest() {
+        WorldProperties properties = new WorldProperties().setBroadPhaseMethod(new AabbTreeMethod())
+                .setStaticFastPathEnabled(true);
+        World world = new World(properties);
+        IShape ground = Polygon.generateRectangle(0, 100, 400, 20, MathPie.STATIC_BODY_DENSITY, 0f);
+        IShape wall = Polygon.generateRectangle(0, 80, 20, 60, MathPie.STATIC_BODY_DENSITY, 0f);
+        IShape circle = new Circle(10, 100, 85, 1f, 0f);
+        IShape farCircle = new Circle(10, 1000, 85, 1f, 0f);
+        world.addShapes(Arrays.asList(ground, wall, circle, farCircle, circle));
+        Assert.assertEquals(4, world.getUnmodifiableShapes().size());
+
+        world.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(ground, circle));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, world.getCollisions()));
+
+        Assert.assertTrue(world.removeShapes(Arrays.asList(ground, farCircle)));
+        Assert.assertFalse(world.removeShapes(Collections.singletonList(farCircle)));
+        world.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+        Assert.assertTrue(world.getManifolds().isEmpty());
+        Assert.assertEquals(2, world.getUnmodifiableShapes().size());
+    }
+
+    @Test
+    public void manifoldsAreReusedTest() {
+        WorldProperties properties = new WorldProperties().setWarmStartingEnabled(true);
+        World world = new World(properties);
+        world.addShape(Polygon.generateRectangle(0, 100, 400, 20, MathPie.STATIC_BODY_DENSITY, 0f));
+        world.addShape(Polygon.generateRectangle(0, 81, 20, 20, 1f, 0f));
+
+        Set<Manifold> usedManifolds = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 60; i++) {
+            world.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+            Assert.assertTrue(world.getManifolds().size() <= 1);
+            usedManifolds.addAll(world.getManifolds());
+        }
+        // The manifolds of the current and previous steps are alive at the same time because of the contact cache
+        Assert.assertFalse(usedManifolds.isEmpty());
+        Assert.assertTrue(usedManifolds.size() <= 2);
+    }
+
+    private static IShape simulateBoxStack(WorldProperties properties) {
+        World world = new World(properties);
+        world.addShape(Polygon.generateRectangle(0, 100, 400, 20, MathPie.STATIC_BODY_DENSITY, 0f));
+        IShape box = null;
+        for (int i = 0; i < 8; i++) {
+            box = Polygon.generateRectangle(0, 80 - i * 20.5f, 20, 20, 1f, 0f);
+            world.addShape(box);
+        }
+        WorldTest.stepSeconds(world, properties, 10f);
+        return box;
+    }
+
+    private static List<IShape> addSeparatedShapes(World world) {
+        List<IShape> shapes = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            IShape shape = i % 2 == 0
+                    ? new Circle(2, i * 100, 0, 1f, 0.2f)
+                    : Polygon.generateRectangle(i * 100, 0, 4, 3, 1f, 0.2f);
+            shape.getBody().velocity.set(i % 7, -i % 5);
+            shape.getBody().angularVelocity = (i % 3) * 0.5f;
+            shape.getBody().force.set(i, 2 * i);
+            shapes.add(shape);
+            world.addShape(shape);
+        }
+        return shapes;
+    }
+
+    @Test
+    public void islandsTest() {
+        WorldProperties properties = new WorldProperties().setFixedDeltaTime(1f).setDeadLoopBorder(10f);
+        World world = new World(properties);
+
+        IShape ground = new Circle(50, 0, 0, MathPie.STATIC_BODY_DENSITY, 0.2f);
+        IShape c1 = new Circle(10, 0, -59, 1f, 0.2f);
+        IShape c2 = new Circle(10, 0, -77, 1f, 0.2f);
+        IShape c3 = new Circle(10, 0, 59, 1f, 0.2f);
+        world.addShape(ground);
+        world.addShape(c1);
+        world.addShape(c2);
+        world.addShape(c3);
+
+        world.update(1.5f);
+        Assert.assertEquals(3, world.getManifolds().size());
+        // The ground is static, so it doesn't connect the pile of c1 and c2 with c3
+        Assert.assertEquals(2, world.getIslands().size());
+        int manifoldsInIslands = world.getIslands().stream().mapToInt(island -> island.getManifolds().size()).sum();
+        Assert.assertEquals(3, manifoldsInIslands);
+        Assert.assertEquals(new Vector2f(0, 0), ground.getBody().position);
+    }
+
+    @Test
+    public void parallelIslandsGiveSameResultsAsSequentialTest() {
+        WorldProperties properties = new WorldProperties().setFixedDeltaTime(1f / 60).setDeadLoopBorder(1f);
+        World sequentialWorld = new World(properties);
+        List<IShape> sequentialShapes = WorldTest.addSeparatedPiles(sequentialWorld);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        World parallelWorld = new World(properties.setForkJoinPool(pool).setParallelChunkSize(1));
+        List<IShape> parallelShapes = WorldTest.addSeparatedPiles(parallelWorld);
+
+        for (int i = 0; i < 30; i++) {
+            sequentialWorld.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+            parallelWorld.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+        }
+        pool.shutdown();
+
+        Assert.assertEquals(50, parallelWorld.getIslands().size());
+        for (int i = 0; i < sequentialShapes.size(); i++) {
+            IShape expected = sequentialShapes.get(i);
+            IShape actual = parallelShapes.get(i);
+            Assert.assertEquals(expected.getBody().position, actual.getBody().position);
+            Assert.assertEquals(expected.getBody().velocity, actual.getBody().velocity);
+            Assert.assertEquals(expected.getBody().angularVelocity, actual.getBody().angularVelocity, 0f);
+        }
+    }
+
+    private static List<IShape> addSeparatedPiles(World world) {
+        // Each static circle is shared by two islands with a single contact, so the
+        // result doesn't depend on the order of manifolds in the island
+        List<IShape> shapes = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            shapes.add(new Circle(10, i * 100, 0, MathPie.STATIC_BODY_DENSITY, 0.2f));
+            shapes.add(new Circle(5, i * 100 - 8 - (i % 3), -10, 1f, 0.2f));
+            shapes.add(new Circle(3, i * 100 + 9, -8 - (i % 2), 1f, 0.2f));
+        }
+        shapes.forEach(world::addShape);
+        return shapes;
+    }
+
+    @Test
+    public void restingShapeFallsAsleepTest() {
+        WorldProperties properties = new WorldProperties().setSleepingEnabled(true);
+        World world = new World(properties);
+        IShape ground = new Circle(1000, 0, 1010, MathPie.STATIC_BODY_DENSITY, 0f);
+        IShape circle = new Circle(5, 0, 4, 1f, 0f);
+        world.addShape(ground);
+        world.addShape(circle);
+
+        WorldTest.stepSeconds(world, properties, 2f);
+        Assert.assertFalse(circle.getBody().isAwake());
+        Assert.assertTrue(ground.getBody().isAwake());
+        Assert.assertEquals(new Vector2f(), circle.getBody().velocity);
+        // The sleeping shape doesn't collide with static shapes
+        Assert.assertTrue(world.getManifolds().isEmpty());
+
+        Vector2f position = new Vector2f(circle.getBody().position);
+        WorldTest.stepSeconds(world, properties, 1f);
+        Assert.assertFalse(circle.getBody().isAwake());
+        Assert.assertEquals(position, circle.getBody().position);
+    }
+
+    @Test
+    public void sleepingShapeGeometryIsUpToDateTest() {
+        WorldProperties properties = new WorldProperties().setSleepingEnabled(true);
+        World world = new World(properties);
+        Polygon box = Polygon.generateRectangle(0, 0, 10, 10, 1f, 0f);
+        world.addShape(Polygon.generateRectangle(0, 100, 400, 20, MathPie.STATIC_BODY_DENSITY, 0f));
+        world.addShape(box);
+        WorldTest.stepSeconds(world, properties, 3f);
+        Assert.assertFalse(box.getBody().isAwake());
+
+        // The broad phase doesn't update the sleeping shape, so its Aabb is computed when it falls asleep
+        Vector2f min = new Vector2f(box.getAabb().min);
+        Vector2f max = new Vector2f(box.getAabb().max);
+        box.computeAabb();
+        Assert.assertEquals(min, box.getAabb().min);
+        Assert.assertEquals(max, box.getAabb().max);
+    }
+
+    @Test
+    public void sleepingDisabledTest() {
+        WorldProperties properties = new WorldProperties();
+        World world = new World(properties);
+        IShape circle = new Circle(5, 0, 4, 1f, 0f);
+        world.addShape(new Circle(1000, 0, 1010, MathPie.STATIC_BODY_DENSITY, 0f));
+        world.addShape(circle);
+
+        WorldTest.stepSeconds(world, properties, 2f);
+        Assert.assertTrue(circle.getBody().isAwake());
+        Assert.assertEquals(1, world.getManifolds().size());
+    }
+
+    @Test
+    public void forceWakesUpSleepingShapeTest() {
+        WorldProperties properties = new WorldProperties().setSleepingEnabled(true);
+        World world = new World(properties);
+        IShape circle = new Circle(5, 0, 4, 1f, 0f);
+        world.addShape(new Circle(1000, 0, 1010, MathPie.STATIC_BODY_DENSITY, 0f));
+        world.addShape(circle);
+        WorldTest.stepSeconds(world, properties, 2f);
+        Assert.assertFalse(circle.getBody().isAwake());
+
+        circle.getBody().force.set(0f, -100000f);
+        WorldTest.stepSeconds(world, properties, properties.getFixedDeltaTime());
+        Assert.assertTrue(circle.getBody().isAwake());
+        Assert.assertTrue(circle.getBody().velocity.y < 0f);
+    }
+
+    @Test
+    public void positionChangeWakesUpSleepingShapeTest() {
+        WorldProperties properties = new WorldProperties().setSleepingEnabled(true);
+        World world = new World(properties);
+        IShape circle = new Circle(5, 0, 4, 1f, 0f);
+        world.addShape(new Circle(1000, 0, 1010, MathPie.STATIC_BODY_DENSITY, 0f));
+        world.addShape(circle);
+        WorldTest.stepSeconds(world, properties, 2f);
+        Assert.assertFalse(circle.getBody().isAwake());
+
+        circle.getBody().position.y = -100f;
+        WorldTest.stepSeconds(world, properties, properties.getFixedDeltaTime());
+        Assert.assertTrue(circle.getBody().isAwake());
+        Assert.assertTrue(circle.getBody().position.y > -100f);
+        Assert.assertEquals(-95f, circle.getAabb().max.y, 1f);
+    }
+
+    @Test
+    public void contactWithAwakeShapeWakesUpSleepingShapeTest() {
+        WorldProperties properties = new WorldProperties().setSleepingEnabled(true);
+        World world = new World(properties);
+        IShape sleeping = new Circle(5, 0, 4, 1f, 0f);
+        world.addShape(new Circle(1000, 0, 1010, MathPie.STATIC_BODY_DENSITY, 0f));
+        world.addShape(sleeping);
+        WorldTest.stepSeconds(world, properties, 2f);
+        Assert.assertFalse(sleeping.getBody().isAwake());
+
+        IShape falling = new Circle(5, 0, -20, 1f, 0f);
+        falling.getBody().velocity.set(0f, 200f);
+        world.addShape(falling);
+        WorldTest.stepSeconds(world, properties, 0.2f);
+        Assert.assertTrue(sleeping.getBody().isAwake());
+        Assert.assertTrue(falling.getBody().isAwake());
+
+        // The pile calms down and falls asleep all together
+        WorldTest.stepSeconds(world, properties, 5f);
+        Assert.assertFalse(sleeping.getBody().isAwake());
+        Assert.assertFalse(falling.getBody().isAwake());
+    }
+
+    @Test
+    public void contactWithAwakeShapeWakesUpWholeSleepingIslandTest() {
+        // The top shape of the stack keeps a greater part of the gravity velocity than the single resting shape
+        WorldProperties properties = new WorldProperties().setSleepingEnabled(true).setSleepLinearTolerance(5f);
+        World world = new World(properties);
+        IShape bottom = new Circle(5, 0, 4, 1f, 0f);
+        IShape top = new Circle(5, 0, -6, 1f, 0f);
+        world.addShape(new Circle(1000, 0, 1010, MathPie.STATIC_BODY_DENSITY, 0f));
+        world.addShape(bottom);
+        world.addShape(top);
+        WorldTest.stepSeconds(world, properties, 3f);
+        Assert.assertFalse(bottom.getBody().isAwake());
+        Assert.assertFalse(top.getBody().isAwake());
+
+        IShape falling = new Circle(5, 0, -30, 1f, 0f);
+        falling.getBody().velocity.set(0f, 200f);
+        world.addShape(falling);
+        while (!top.getBody().isAwake()) {
+            WorldTest.stepSeconds(world, properties, properties.getFixedDeltaTime());
+        }
+        // The bottom shape is touched only by the sleeping top one, but it is woken up on the same step and
+        // its contacts take part in the collision solving
+        Assert.assertTrue(bottom.getBody().isAwake());
+        Assert.assertEquals(3, world.getManifolds().size());
+    }
+
+    private static void stepSeconds(World world, WorldProperties properties, float seconds) {
+        for (int i = 0; i < Math.round(seconds / properties.getFixedDeltaTime()); i++) {
+            world.update(properties.getFixedDeltaTime() + MathPie.EPSILON);
+        }
+    }
 }
@@ -0,0 +1,158 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions;
+
+import com.github.introfog.pie.core.Context;
+import com.github.introfog.pie.core.WorldProperties;
+import com.github.introfog.pie.core.collisions.broadphase.PairBuffer;
+import com.github.introfog.pie.core.math.Vector2f;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class ContactCacheTest extends PieTest {
+    @Test
+    public void matchContactsByFeatureTest() {
+        Context context = new Context(new WorldProperties().setWarmStartingEnabled(true));
+        IShape first = new Circle(1, 0, 0, 1, 0);
+        IShape second = new Circle(1, 1, 0, 1, 0);
+        ContactCache cache = new ContactCache();
+        cache.add(first, second);
+        final int index = 0;
+
+        Manifold previous = ContactCacheTest.createManifold(first, second, context, 3, 5);
+        previous.normalImpulses[0] = 1f;
+        previous.tangentImpulses[0] = 2f;
+        previous.normalImpulses[1] = 3f;
+        previous.tangentImpulses[1] = 4f;
+        cache.update(index, previous);
+        Assert.assertSame(previous, cache.get(new ShapePair(second, first)));
+
+        Manifold current = ContactCacheTest.createManifold(first, second, context, 5, 7);
+        cache.update(index, current);
+        Assert.assertEquals(3f, current.normalImpulses[0], FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(4f, current.tangentImpulses[0], FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(0f, current.normalImpulses[1], FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(0f, current.tangentImpulses[1], FLOAT_EPSILON_COMPARISON);
+        Assert.assertSame(current, cache.getManifold(index));
+    }
+
+    @Test
+    public void swappedShapesAreNotMatchedTest() {
+        Context context = new Context(new WorldProperties().setWarmStartingEnabled(true));
+        IShape first = new Circle(1, 0, 0, 1, 0);
+        IShape second = new Circle(1, 1, 0, 1, 0);
+        ContactCache cache = new ContactCache();
+        cache.add(first, second);
+
+        Manifold previous = ContactCacheTest.createManifold(first, second, context, 0, 1);
+        previous.normalImpulses[0] = 1f;
+        cache.update(0, previous);
+
+        Manifold current = ContactCacheTest.createManifold(second, first, context, 0, 1);
+        cache.update(0, current);
+        Assert.assertEquals(0f, current.normalImpulses[0], FLOAT_EPSILON_COMPARISON);
+    }
+
+    @Test
+    public void separatedShapesAreNotMatchedTest() {
+        Context context = new Context(new WorldProperties().setWarmStartingEnabled(true));
+        IShape first = new Circle(1, 0, 0, 1, 0);
+        IShape second = new Circle(1, 1, 0, 1, 0);
+        ContactCache cache = new ContactCache();
+        cache.add(first, second);
+
+        Manifold previous = ContactCacheTest.createManifold(first, second, context, 0, 1);
+        previous.normalImpulses[0] = 1f;
+        cache.update(0, previous);
+        // The Aabbs still overlap, but the shapes don't collide on this step
+        cache.update(0, null);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertNull(cache.getManifold(0));
+
+        Manifold current = ContactCacheTest.createManifold(first, second, context, 0, 1);
+        cache.update(0, current);
+        Assert.assertEquals(0f, current.normalImpulses[0], FLOAT_EPSILON_COMPARISON);
+    }
+
+    @Test
+    public void contactsAreCreatedAndRemovedByPairsTest() {
+        Context context = new Context(new WorldProperties().setWarmStartingEnabled(true));
+        IShape first = new Circle(1, 0, 0, 1, 0);
+        IShape second = new Circle(1, 1, 0, 1, 0);
+        IShape third = new Circle(1, 2, 0, 1, 0);
+        ContactCache cache = new ContactCache();
+
+        PairBuffer began = new PairBuffer();
+        began.add(first, second);
+        began.add(second, third);
+        cache.addAll(began);
+        cache.addAll(began);
+        Assert.assertEquals(2, cache.size());
+        Manifold manifold = ContactCacheTest.createManifold(second, third, context, 0, 1);
+        cache.update(1, manifold);
+
+        PairBuffer ended = new PairBuffer();
+        ended.add(second, first);
+        cache.removeAll(ended);
+        // The last contact takes the index of the removed one together with its manifold
+        Assert.assertEquals(1, cache.size());
+        Assert.assertSame(manifold, cache.getManifold(0));
+        Assert.assertSame(manifold, cache.get(new ShapePair(third, second)));
+        Assert.assertNull(cache.get(new ShapePair(first, second)));
+
+        cache.clearManifolds();
+        Assert.assertEquals(1, cache.size());
+        Assert.assertNull(cache.getManifold(0));
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void accumulatedNormalImpulseIsNotNegativeTest() {
+        Context context = new Context(new WorldProperties().setWarmStartingEnabled(true));
+        IShape first = new Circle(1, 0, 0, 1, 0);
+        IShape second = new Circle(1, 1.5f, 0, 1, 0);
+        // The shapes are already moving apart
+        first.getBody().velocity.set(-1f, 0f);
+        second.getBody().velocity.set(1f, 0f);
+
+        Manifold manifold = ContactCacheTest.createManifold(first, second, context, 0, 1);
+        manifold.contactCount = 1;
+        manifold.normal.set(1f, 0f);
+        manifold.contacts[0].set(0.75f, 0f);
+        manifold.warmStart();
+        manifold.solve();
+
+        Assert.assertEquals(0f, manifold.normalImpulses[0], FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(new Vector2f(1f, 0f), second.getBody().velocity);
+    }
+
+    private static Manifold createManifold(IShape first, IShape second, Context context, int firstId, int secondId) {
+        Manifold manifold = new Manifold(first, second, context);
+        manifold.contactCount = 2;
+        manifold.contactIds[0] = firstId;
+        manifold.contactIds[1] = secondId;
+        return manifold;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions;
+
+import com.github.introfog.pie.core.Context;
+import com.github.introfog.pie.core.WorldProperties;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class ManifoldPoolTest extends PieTest {
+    @Test
+    public void obtainAndReleaseTest() {
+        Context context = new Context(new WorldProperties());
+        IShape first = new Circle(1, 0, 0, 1, 0);
+        IShape second = new Circle(1, 1, 0, 1, 0);
+        ManifoldPool pool = new ManifoldPool();
+
+        Manifold manifold = pool.obtain(first, second, context);
+        Assert.assertEquals(1, pool.getCreatedCount());
+        manifold.contactCount = 1;
+        pool.release(manifold);
+        Assert.assertEquals(1, pool.getFreeCount());
+
+        Manifold reused = pool.obtain(second, first, context);
+        Assert.assertSame(manifold, reused);
+        Assert.assertSame(second, reused.aShape);
+        Assert.assertEquals(0, reused.contactCount);
+        Assert.assertEquals(1, pool.getCreatedCount());
+        Assert.assertEquals(0, pool.getFreeCount());
+    }
+
+    @Test
+    public void releaseAllTest() {
+        Context context = new Context(new WorldProperties());
+        IShape first = new Circle(1, 0, 0, 1, 0);
+        IShape second = new Circle(1, 1, 0, 1, 0);
+        ManifoldPool pool = new ManifoldPool();
+
+        List<Manifold> manifolds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            manifolds.add(pool.obtain(first, second, context));
+        }
+        pool.releaseAll(manifolds);
+        Assert.assertTrue(manifolds.isEmpty());
+        Assert.assertEquals(3, pool.getFreeCount());
+
+        for (int i = 0; i < 3; i++) {
+            pool.obtain(first, second, context);
+        }
+        Assert.assertEquals(3, pool.getCreatedCount());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions;
+
+import com.github.introfog.pie.core.Context;
+import com.github.introfog.pie.core.WorldProperties;
+import com.github.introfog.pie.core.collisions.narrowphase.impl.PolygonPolygonCollisionHandler;
+import com.github.introfog.pie.core.math.MathPie;
+import com.github.introfog.pie.core.math.Vector2f;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.Polygon;
+import com.github.introfog.pie.core.shape.ShapeRegistry;
+import com.github.introfog.pie.core.util.ParallelExecutor;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class ManifoldTest extends PieTest {
+    @Test
+    public void solveAndCorrectPositionDoNotAllocateTest() {
+        for (boolean warmStarting : new boolean[] {false, true}) {
+            Context context = new Context(new WorldProperties().setWarmStartingEnabled(warmStarting));
+            IShape ground = Polygon.generateRectangle(0, 10, 100, 20, MathPie.STATIC_BODY_DENSITY, 0.2f);
+            IShape box = Polygon.generateRectangle(0, -9, 20, 20, 1f, 0.2f);
+            box.getBody().velocity.set(3f, 20f);
+            Manifold manifold = new Manifold(ground, box, context);
+            Assert.assertTrue(new PolygonPolygonCollisionHandler().handleCollision(ground, box, context, manifold));
+            Assert.assertEquals(2, manifold.contactCount);
+
+            long allocated = measureAllocatedBytes(() -> {
+                manifold.warmStart();
+                manifold.solve();
+                manifold.correctPosition();
+            }, 1000);
+            Assert.assertEquals(0, allocated);
+        }
+    }
+
+    @Test
+    public void solveWithBodyStorageTest() {
+        Context context = new Context(new WorldProperties().setBodyStorageEnabled(true));
+        IShape ground = Polygon.generateRectangle(0, 10, 100, 20, MathPie.STATIC_BODY_DENSITY, 0.2f);
+        IShape box = Polygon.generateRectangle(0, -9, 20, 20, 1f, 0.2f);
+        box.getBody().velocity.set(3f, 20f);
+        ShapeRegistry registry = new ShapeRegistry();
+        registry.add(ground);
+        registry.add(box);
+        context.getBodyStorage().load(registry.toArray(), registry.getSlotCapacity(), ParallelExecutor.sequential());
+        Manifold manifold = new Manifold(ground, box, context);
+        Assert.assertTrue(new PolygonPolygonCollisionHandler().handleCollision(ground, box, context, manifold));
+
+        Context plainContext = new Context(new WorldProperties());
+        IShape plainGround = Polygon.generateRectangle(0, 10, 100, 20, MathPie.STATIC_BODY_DENSITY, 0.2f);
+        IShape plainBox = Polygon.generateRectangle(0, -9, 20, 20, 1f, 0.2f);
+        plainBox.getBody().velocity.set(3f, 20f);
+        Manifold plainManifold = new Manifold(plainGround, plainBox, plainContext);
+        Assert.assertTrue(new PolygonPolygonCollisionHandler()
+                .handleCollision(plainGround, plainBox, plainContext, plainManifold));
+
+        manifold.solve();
+        plainManifold.solve();
+
+        // The velocities of the loaded bodies are changed only in the storage arrays
+        Assert.assertEquals(new Vector2f(3f, 20f), box.getBody().velocity);
+        final int index = context.getBodyStorage().getIndex(box);
+        Vector2f plainVelocity = plainBox.getBody().velocity;
+        Assert.assertNotEquals(20f, plainVelocity.y, FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(plainVelocity.x, context.getBodyStorage().getVelocityX(index), 0f);
+        Assert.assertEquals(plainVelocity.y, context.getBodyStorage().getVelocityY(index), 0f);
+        Assert.assertEquals(plainBox.getBody().angularVelocity,
+                context.getBodyStorage().getAngularVelocity(index), 0f);
+    }
+
+    @Test
+    public void resetTest() {
+        Context context = new Context(new WorldProperties());
+        IShape first = new Circle(1, 0, 0, 1, 0);
+        IShape second = new Circle(1, 1, 0, 1, 0);
+        Manifold manifold = new Manifold(first, second, context);
+        manifold.contactCount = 2;
+        manifold.penetration = 1f;
+        manifold.normal.set(1f, 0f);
+        manifold.contacts[1].set(2f, 3f);
+        manifold.normalImpulses[1] = 4f;
+
+        manifold.reset(second, first, context);
+        Assert.assertSame(second, manifold.aShape);
+        Assert.assertSame(first.getBody(), manifold.b);
+        Assert.assertEquals(0, manifold.contactCount);
+        Assert.assertEquals(0f, manifold.penetration, FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(new Vector2f(), manifold.normal);
+        Assert.assertEquals(new Vector2f(), manifold.contacts[1]);
+        Assert.assertEquals(0f, manifold.normalImpulses[1], FLOAT_EPSILON_COMPARISON);
+    }
+
+    @Test
+    public void setTest() {
+        Context context = new Context(new WorldProperties());
+        IShape first = new Circle(1, 0, 0, 1, 0);
+        IShape second = new Circle(1, 1, 0, 1, 0);
+        Manifold other = new Manifold(first, second, context);
+        other.contactCount = 1;
+        other.penetration = 1f;
+        other.normal.set(1f, 0f);
+        other.contacts[0].set(2f, 3f);
+        other.contactIds[0] = 5;
+
+        Manifold manifold = new Manifold(second, first, context);
+        manifold.set(other);
+        Assert.assertSame(first, manifold.aShape);
+        Assert.assertSame(second, manifold.bShape);
+        Assert.assertEquals(1, manifold.contactCount);
+        Assert.assertEquals(1f, manifold.penetration, FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(new Vector2f(1f, 0f), manifold.normal);
+        Assert.assertEquals(new Vector2f(2f, 3f), manifold.contacts[0]);
+        Assert.assertEquals(5, manifold.contactIds[0]);
+        Assert.assertNotSame(other.normal, manifold.normal);
+    }
+}
@@ -19,10 +19,20 @@ import com.github.introfog.pie.core.collisions.broadphase.aabbtree.AabbTreeNode;
 import com.github.introfog.pie.core.math.MathPie;
 import com.github.introfog.pie.core.math.Vector2f;
 import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.Polygon;
+import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.TestUtil;
 import com.github.introfog.pie.test.PieTest;
 import com.github.introfog.pie.test.annotations.UnitTest;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -69,4 +79,190 @@ public class AabbTreeMethodTest extends AbstractBroadPhaseTest {
         Assert.assertEquals(method.shapes, clone.shapes);
         Assert.assertEquals(method.getEnlargedAabbCoefficient(), clone.getEnlargedAabbCoefficient(), PieTest.FLOAT_EPSILON_COMPARISON);
     }
+
+    @Test
+    public void displacementPredictionTest() {
+        final float deltaTime = 1f / 60;
+        AabbTreeMethod method = new AabbTreeMethod();
+        Assert.assertEquals(0, method.getDisplacementPredictionTime(), FLOAT_EPSILON_COMPARISON);
+        // The bullet moves 10 units per iteration, which is much more than its enlarged Aabb
+        Assert.assertEquals(20, AabbTreeMethodTest.moveBulletAndCountReinsertedLeaves(method, deltaTime, 20));
+
+        method.setDisplacementPredictionTime(4 * deltaTime);
+        method.setDisplacementPredictionTime(-1);
+        Assert.assertEquals(4 * deltaTime, method.getDisplacementPredictionTime(), FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(4 * deltaTime, method.newInstance().getDisplacementPredictionTime(),
+                FLOAT_EPSILON_COMPARISON);
+        // The leaf is valid for 4 iterations, so the bullet is reinserted every 5th iteration
+        Assert.assertEquals(4, AabbTreeMethodTest.moveBulletAndCountReinsertedLeaves(method, deltaTime, 20));
+    }
+
+    @Test
+    public void displacementPredictionTimeSetAfterShapesTest() {
+        final float deltaTime = 1f / 60;
+        AabbTreeMethod method = new AabbTreeMethod();
+        IShape bullet = new Circle(1, 0, 0, 1, 0);
+        bullet.getBody().velocity.set(600, 0);
+        Set<IShape> shapes = new HashSet<>();
+        shapes.add(bullet);
+        shapes.add(new Circle(3, 0, 100, 1, 0));
+        method.setShapes(shapes);
+        method.setDisplacementPredictionTime(8 * deltaTime);
+
+        // The leaf created before the time was set is reinserted at the first step with the current time
+        int reinsertedLeafCount = 0;
+        for (int step = 0; step < 5; step++) {
+            bullet.getBody().position.add(bullet.getBody().velocity, deltaTime);
+            method.calculateAabbCollisions();
+            reinsertedLeafCount += method.getReinsertedLeafCount();
+        }
+        Assert.assertEquals(1, reinsertedLeafCount);
+
+        AabbTreeMethod clone = method.newInstance();
+        reinsertedLeafCount = 0;
+        for (int step = 0; step < 5; step++) {
+            bullet.getBody().position.add(bullet.getBody().velocity, deltaTime);
+            clone.calculateAabbCollisions();
+            reinsertedLeafCount += clone.getReinsertedLeafCount();
+        }
+        // The leaves of the clone are created with the copied time
+        Assert.assertEquals(0, reinsertedLeafCount);
+    }
+
+    @Test
+    public void parallelTraversalTest() {
+        Set<IShape> shapes = AbstractBroadPhaseTest.createRandomCircles(new Random(25), 5000);
+        AabbTreeMethod method = new AabbTreeMethod();
+        method.setShapes(shapes);
+        AbstractBroadPhaseTest.assertParallelCollisions(method, shapes);
+    }
+
+    @Test
+    public void staticTreeTest() {
+        Random random = new Random(23);
+        List<IShape> dynamicShapes = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            dynamicShapes.add(new Circle(2 + random.nextFloat() * 3, random.nextFloat() * 200, random.nextFloat() * 200,
+                    1, 0));
+        }
+        Set<IShape> shapes = new HashSet<>(dynamicShapes);
+        for (int i = 0; i < 40; i++) {
+            // The static tiles overlap each other, but their pairs are never reported
+            shapes.add(Polygon.generateRectangle(10 * (i % 20) + 5, 50 * (i / 20) + 50, 12, 12,
+                    MathPie.STATIC_BODY_DENSITY, 0));
+        }
+        AabbTreeMethod method = new AabbTreeMethod();
+        method.setShapes(shapes);
+        method.setStaticTreeEnabled(true);
+        Assert.assertTrue(method.isStaticTreeEnabled());
+        Assert.assertTrue(method.newInstance().isStaticTreeEnabled());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                AabbTreeMethodTest.calculateNotStaticAabbCollisions(shapes), method.calculateAabbCollisions()));
+
+        method.calculateAabbCollisionChanges();
+        for (int step = 0; step < 5; step++) {
+            List<IShape> movedShapes = dynamicShapes.subList(0, 100);
+            for (IShape shape : movedShapes) {
+                shape.getBody().position.set(shape.getBody().position.x + random.nextFloat() * 10 - 5,
+                        shape.getBody().position.y + random.nextFloat() * 10 - 5);
+            }
+            method.calculateAabbCollisionChanges(movedShapes);
+            Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                    AabbTreeMethodTest.calculateNotStaticAabbCollisions(shapes), method.getPairs().toShapePairs()));
+        }
+
+        IShape tile = Polygon.generateRectangle(100, 100, 300, 300, MathPie.STATIC_BODY_DENSITY, 0);
+        method.addShape(tile);
+        shapes.add(tile);
+        method.removeShapes(Collections.singletonList(dynamicShapes.get(0)));
+        shapes.remove(dynamicShapes.get(0));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                AabbTreeMethodTest.calculateNotStaticAabbCollisions(shapes), method.calculateAabbCollisions()));
+
+        method.setStaticTreeEnabled(false);
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapes), method.calculateAabbCollisions()));
+    }
+
+    @Test
+    public void staticShapeAddedAfterFirstStepTest() {
+        IShape dynamicShape = new Circle(5, 0, 0, 1, 0);
+        Set<IShape> shapes = new HashSet<>(Collections.singletonList(dynamicShape));
+        AabbTreeMethod method = new AabbTreeMethod();
+        method.setStaticTreeEnabled(true);
+        method.setShapes(shapes);
+        method.calculateAabbCollisionChanges();
+        Assert.assertEquals(0, method.getPairs().size());
+
+        IShape staticShape = new Circle(5, 3, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        method.addShape(staticShape);
+        shapes.add(staticShape);
+        method.calculateAabbCollisionChanges(Collections.singletonList(staticShape));
+        Assert.assertEquals(1, method.getPairs().size());
+        Assert.assertEquals(1, method.getBeganPairs().size());
+        Assert.assertTrue(method.getBeganPairs().contains(dynamicShape, staticShape));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                AabbTreeMethodTest.calculateNotStaticAabbCollisions(shapes), method.getPairs().toShapePairs()));
+    }
+
+    @Test
+    public void addAndRemoveStaticAndDynamicShapesTest() {
+        Random random = new Random(23);
+        Set<IShape> shapes = new HashSet<>();
+        List<IShape> shapeList = new ArrayList<>();
+        AabbTreeMethod method = new AabbTreeMethod();
+        method.setStaticTreeEnabled(true);
+        method.calculateAabbCollisionChanges();
+        for (int step = 0; step < 50; step++) {
+            List<IShape> movedShapes = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                float density = random.nextBoolean() ? MathPie.STATIC_BODY_DENSITY : 1;
+                IShape shape = new Circle(random.nextFloat() * 10 + 1, random.nextFloat() * 200,
+                        random.nextFloat() * 200, density, 0);
+                method.addShape(shape);
+                shapes.add(shape);
+                shapeList.add(shape);
+                movedShapes.add(shape);
+            }
+            for (int i = 0; i < 5; i++) {
+                IShape shape = shapeList.remove(random.nextInt(shapeList.size()));
+                method.remove(shape);
+                shapes.remove(shape);
+                movedShapes.remove(shape);
+            }
+            method.calculateAabbCollisionChanges(movedShapes);
+            Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                    AabbTreeMethodTest.calculateNotStaticAabbCollisions(shapes), method.getPairs().toShapePairs()));
+        }
+    }
+
+    private static Set<ShapePair> calculateNotStaticAabbCollisions(Set<IShape> shapes) {
+        shapes.forEach(IShape::computeAabb);
+        Set<ShapePair> pairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapes);
+        pairs.removeIf(pair -> pair.getFirst().getBody().invertedMass == 0
+                && pair.getSecond().getBody().invertedMass == 0);
+        return pairs;
+    }
+
+    private static int moveBulletAndCountReinsertedLeaves(AabbTreeMethod method, float deltaTime, int steps) {
+        IShape bullet = new Circle(1, 0, 0, 1, 0);
+        bullet.getBody().velocity.set(600, 0);
+        Set<IShape> shapes = new HashSet<>();
+        shapes.add(bullet);
+        for (int i = 0; i < 10; i++) {
+            shapes.add(new Circle(3, 25 * i, 3, 1, 0));
+        }
+        method.setShapes(shapes);
+        method.calculateAabbCollisions();
+
+        int reinsertedLeafCount = 0;
+        for (int step = 0; step < steps; step++) {
+            bullet.getBody().position.add(bullet.getBody().velocity, deltaTime);
+            Set<ShapePair> collisions = method.calculateAabbCollisions();
+            reinsertedLeafCount += method.getReinsertedLeafCount();
+            Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                    BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapes), collisions));
+        }
+        return reinsertedLeafCount;
+    }
 }
@@ -20,11 +20,18 @@ import com.github.introfog.pie.core.math.MathPie;
 import com.github.introfog.pie.core.shape.Circle;
 import com.github.introfog.pie.core.shape.IShape;
 import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.ParallelExecutor;
 import com.github.introfog.pie.test.PieTest;
 import com.github.introfog.pie.test.annotations.UnitTest;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -52,6 +59,161 @@ public abstract class AbstractBroadPhaseTest extends PieTest {
         TestUtil.assertEqualsShapePairsList(cmpShapePairs, broadPhaseMethod.calculateAabbCollisions());
     }
 
+    @Test
+    public void calculateAabbCollisionsOfMovedShapesTest() {
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        IShape c1 = new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0.2f);
+        IShape c2 = new Circle(10, 15, 0, MathPie.STATIC_BODY_DENSITY, 0.2f);
+        IShape c3 = new Circle(10, 100, 0, MathPie.STATIC_BODY_DENSITY, 0.2f);
+        broadPhaseMethod.addShape(c1);
+        broadPhaseMethod.addShape(c2);
+        broadPhaseMethod.addShape(c3);
+
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(c1, c2));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                broadPhaseMethod.calculateAabbCollisions()));
+
+        c3.getBody().position.set(0, 15);
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                broadPhaseMethod.calculateAabbCollisions(Collections.emptyList())));
+
+        cmpShapePairs.add(new ShapePair(c1, c3));
+        cmpShapePairs.add(new ShapePair(c2, c3));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                broadPhaseMethod.calculateAabbCollisions(Collections.singletonList(c3))));
+
+        c3.getBody().position.set(-100, 0);
+        cmpShapePairs.clear();
+        cmpShapePairs.add(new ShapePair(c1, c2));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                broadPhaseMethod.calculateAabbCollisions(Collections.singletonList(c3))));
+    }
+
+    @Test
+    public void calculateAabbCollisionChangesTest() {
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        IShape c1 = new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0.2f);
+        IShape c2 = new Circle(10, 15, 0, MathPie.STATIC_BODY_DENSITY, 0.2f);
+        IShape c3 = new Circle(10, 100, 0, MathPie.STATIC_BODY_DENSITY, 0.2f);
+        broadPhaseMethod.addShapes(Arrays.asList(c1, c2, c3));
+
+        broadPhaseMethod.calculateAabbCollisionChanges();
+        Set<ShapePair> c1c2 = Collections.singleton(new ShapePair(c1, c2));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(c1c2, broadPhaseMethod.getPairs().toShapePairs()));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(c1c2, broadPhaseMethod.getBeganPairs().toShapePairs()));
+        Assert.assertTrue(broadPhaseMethod.getEndedPairs().isEmpty());
+
+        broadPhaseMethod.calculateAabbCollisionChanges();
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(c1c2, broadPhaseMethod.getPairs().toShapePairs()));
+        Assert.assertTrue(broadPhaseMethod.getBeganPairs().isEmpty());
+        Assert.assertTrue(broadPhaseMethod.getEndedPairs().isEmpty());
+
+        c3.getBody().position.set(30, 0);
+        broadPhaseMethod.calculateAabbCollisionChanges();
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(Collections.singleton(new ShapePair(c2, c3)),
+                broadPhaseMethod.getBeganPairs().toShapePairs()));
+        Assert.assertTrue(broadPhaseMethod.getEndedPairs().isEmpty());
+
+        broadPhaseMethod.remove(c1);
+        broadPhaseMethod.calculateAabbCollisionChanges();
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(Collections.singleton(new ShapePair(c2, c3)),
+                broadPhaseMethod.getPairs().toShapePairs()));
+        Assert.assertTrue(broadPhaseMethod.getBeganPairs().isEmpty());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(c1c2, broadPhaseMethod.getEndedPairs().toShapePairs()));
+    }
+
+    @Test
+    public void calculateAabbCollisionChangesOfMovedShapesTest() {
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 100);
+        broadPhaseMethod.addShapes(shapes);
+        broadPhaseMethod.calculateAabbCollisionChanges(shapes);
+        Set<ShapePair> previousPairs = broadPhaseMethod.getPairs().toShapePairs();
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(new HashSet<>(shapes)), previousPairs));
+
+        Random random = new Random(7);
+        for (int step = 0; step < 20; step++) {
+            List<IShape> movedShapes = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                IShape shape = shapes.get(random.nextInt(shapes.size()));
+                shape.getBody().position.set(random.nextFloat() * 150, random.nextFloat() * 150);
+                movedShapes.add(shape);
+            }
+            IShape removedShape = shapes.remove(random.nextInt(shapes.size()));
+            broadPhaseMethod.remove(removedShape);
+            broadPhaseMethod.calculateAabbCollisionChanges(movedShapes);
+
+            Set<ShapePair> currentPairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(
+                    new HashSet<>(shapes));
+            Assert.assertNull(TestUtil.assertEqualsShapePairsList(currentPairs,
+                    broadPhaseMethod.getPairs().toShapePairs()));
+            for (ShapePair pair : broadPhaseMethod.getBeganPairs().toShapePairs()) {
+                Assert.assertTrue(currentPairs.contains(pair) && !previousPairs.contains(pair));
+            }
+            for (ShapePair pair : broadPhaseMethod.getEndedPairs().toShapePairs()) {
+                Assert.assertTrue(!currentPairs.contains(pair) && previousPairs.contains(pair));
+            }
+            Assert.assertEquals(currentPairs.size(), previousPairs.size()
+                    + broadPhaseMethod.getBeganPairs().size() - broadPhaseMethod.getEndedPairs().size());
+            previousPairs = currentPairs;
+        }
+    }
+
+    @Test
+    public void parallelAabbsOfChangedShapesTest() {
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        List<IShape> shapes = new ArrayList<>(AbstractBroadPhaseTest.createRandomCircles(new Random(1), 200));
+        broadPhaseMethod.setShapes(new HashSet<>(shapes));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            broadPhaseMethod.setParallelExecutor(new ParallelExecutor(pool, 8));
+            broadPhaseMethod.calculateAabbCollisions();
+
+            // The reused array of the shapes is longer than the remaining shapes
+            broadPhaseMethod.removeShapes(shapes.subList(100, 200));
+            shapes = new ArrayList<>(shapes.subList(0, 100));
+            for (IShape shape : shapes) {
+                shape.getBody().position.set(shape.getBody().position.x / 2, shape.getBody().position.y / 2);
+            }
+            Set<ShapePair> collisions = broadPhaseMethod.calculateAabbCollisions();
+            Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                    BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(new HashSet<>(shapes)), collisions));
+
+            List<IShape> movedShapes = shapes.subList(0, 50);
+            for (IShape shape : movedShapes) {
+                shape.getBody().position.set(shape.getBody().position.y, shape.getBody().position.x);
+            }
+            collisions = broadPhaseMethod.calculateAabbCollisions(movedShapes);
+            Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                    BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(new HashSet<>(shapes)), collisions));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void calculateAabbCollisionsToBufferTest() {
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 100);
+        broadPhaseMethod.addShapes(shapes);
+        Set<ShapePair> cmpShapePairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(
+                new HashSet<>(shapes));
+
+        PairBuffer collisions = new PairBuffer();
+        collisions.add(shapes.get(0), shapes.get(99));
+        broadPhaseMethod.calculateAabbCollisions(collisions);
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, collisions.toShapePairs()));
+        Assert.assertEquals(cmpShapePairs.size(), collisions.size());
+
+        shapes.get(0).getBody().position.set(1000, 1000);
+        broadPhaseMethod.calculateAabbCollisions(Collections.singletonList(shapes.get(0)), collisions);
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(new HashSet<>(shapes)),
+                collisions.toShapePairs()));
+    }
+
     @Test
     public void addEqualShapesTest() {
         AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
@@ -95,6 +257,20 @@ public abstract class AbstractBroadPhaseTest extends PieTest {
         TestUtil.assertEqualsShapePairsList(cmpShapePairs, broadPhaseMethod.calculateAabbCollisions());
     }
 
+    @Test
+    public void setOwnShapesTest() {
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        IShape c1 = new Circle(10, 0, 0, 1, 0.2f);
+        IShape c2 = new Circle(10, 15, 0, 1, 0.2f);
+        broadPhaseMethod.setShapes(new HashSet<>(Arrays.asList(c1, c2)));
+        broadPhaseMethod.setShapes(broadPhaseMethod.getUnmodifiableShapes());
+
+        Assert.assertEquals(2, broadPhaseMethod.getUnmodifiableShapes().size());
+        Set<ShapePair> cmpShapePairs = new HashSet<>(Collections.singletonList(new ShapePair(c1, c2)));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                broadPhaseMethod.calculateAabbCollisions()));
+    }
+
     @Test
     public void removeShapeMethodTest() {
         AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
@@ -139,6 +315,62 @@ public abstract class AbstractBroadPhaseTest extends PieTest {
         TestUtil.assertEqualsShapePairsList(new HashSet<>(), broadPhaseMethod.calculateAabbCollisions());
     }
 
+    @Test
+    public void addShapesMethodTest() {
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 100);
+        broadPhaseMethod.addShapes(shapes);
+
+        Assert.assertEquals(100, broadPhaseMethod.getUnmodifiableShapes().size());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(new HashSet<>(shapes)),
+                broadPhaseMethod.calculateAabbCollisions()));
+
+        // The small batch is added to the filled broad phase method
+        List<IShape> moreShapes = AbstractBroadPhaseTest.createShapesGrid(100, 5);
+        moreShapes.add(shapes.get(0));
+        broadPhaseMethod.addShapes(moreShapes);
+        shapes.addAll(moreShapes);
+
+        Assert.assertEquals(105, broadPhaseMethod.getUnmodifiableShapes().size());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(new HashSet<>(shapes)),
+                broadPhaseMethod.calculateAabbCollisions()));
+    }
+
+    @Test
+    public void removeShapesMethodTest() {
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 100);
+        broadPhaseMethod.addShapes(shapes);
+        broadPhaseMethod.calculateAabbCollisions();
+
+        // The small batch is removed from the filled broad phase method
+        List<IShape> removedShapes = new ArrayList<>(shapes.subList(0, 5));
+        removedShapes.add(new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0.2f));
+        Assert.assertTrue(broadPhaseMethod.removeShapes(removedShapes));
+        shapes.removeAll(removedShapes);
+        Assert.assertEquals(95, broadPhaseMethod.getUnmodifiableShapes().size());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(new HashSet<>(shapes)),
+                broadPhaseMethod.calculateAabbCollisions()));
+
+        // The large batch is removed
+        removedShapes = new ArrayList<>(shapes.subList(20, 80));
+        Assert.assertTrue(broadPhaseMethod.removeShapes(removedShapes));
+        shapes.removeAll(removedShapes);
+        Assert.assertEquals(35, broadPhaseMethod.getUnmodifiableShapes().size());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(new HashSet<>(shapes)),
+                broadPhaseMethod.calculateAabbCollisions()));
+
+        Assert.assertFalse(broadPhaseMethod.removeShapes(removedShapes));
+        Assert.assertTrue(broadPhaseMethod.removeShapes(shapes));
+        Assert.assertEquals(0, broadPhaseMethod.getUnmodifiableShapes().size());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(new HashSet<>(),
+                broadPhaseMethod.calculateAabbCollisions()));
+    }
+
     @Test
     public void clearMethodTest() {
         AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
@@ -182,4 +414,37 @@ public abstract class AbstractBroadPhaseTest extends PieTest {
     }
 
     protected abstract AbstractBroadPhase getBroadPhaseMethod();
+
+    static Set<IShape> createRandomCircles(Random random, int count) {
+        // The circles of different sizes are scattered over the square with the side of 1000
+        Set<IShape> shapes = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            shapes.add(new Circle(1 + random.nextFloat() * 4, random.nextFloat() * 1000, random.nextFloat() * 1000,
+                    1, 0));
+        }
+        shapes.forEach(IShape::computeAabb);
+        return shapes;
+    }
+
+    static void assertParallelCollisions(AbstractBroadPhase method, Set<IShape> shapes) {
+        Set<ShapePair> cmpShapePairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapes);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            method.setParallelExecutor(new ParallelExecutor(pool));
+            Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, method.calculateAabbCollisions()));
+            // The second iteration reuses the buffers of the parallel parts
+            Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, method.calculateAabbCollisions()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static List<IShape> createShapesGrid(int firstIndex, int count) {
+        // The circles in the neighbouring cells of the grid intersect, the circles in the diagonal cells don't
+        List<IShape> shapes = new ArrayList<>();
+        for (int i = firstIndex; i < firstIndex + count; i++) {
+            shapes.add(new Circle(10, 15 * (i % 10), 15 * (i / 10), MathPie.STATIC_BODY_DENSITY, 0.2f));
+        }
+        return shapes;
+    }
 }
@@ -0,0 +1,151 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.collisions.broadphase.aabbtree.AabbTreeNode;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.shape.ShapeRegistry;
+import com.github.introfog.pie.core.util.TestUtil;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class FlatAabbTreeMethodTest extends AbstractBroadPhaseTest {
+    @Override
+    protected AbstractBroadPhase getBroadPhaseMethod() {
+        return new FlatAabbTreeMethod();
+    }
+
+    @Test
+    public void setEnlargedAabbCoefficientTest() {
+        FlatAabbTreeMethod method = new FlatAabbTreeMethod();
+
+        Assert.assertEquals(AabbTreeNode.DEFAULT_ENLARGED_AABB_COEFFICIENT, method.getEnlargedAabbCoefficient(),
+                FLOAT_EPSILON_COMPARISON);
+
+        method.setEnlargedAabbCoefficient(0.37f);
+        Assert.assertEquals(0.37f, method.getEnlargedAabbCoefficient(), FLOAT_EPSILON_COMPARISON);
+
+        method.setEnlargedAabbCoefficient(-1);
+        Assert.assertEquals(0.37f, method.getEnlargedAabbCoefficient(), FLOAT_EPSILON_COMPARISON);
+    }
+
+    @Test
+    public void newInstanceTest() {
+        FlatAabbTreeMethod method = (FlatAabbTreeMethod) getBroadPhaseMethod();
+        method.setEnlargedAabbCoefficient(0.74f);
+        method.setDisplacementPredictionTime(0.1f);
+        method.addShape(new Circle(0, 0, 0, 0, 0));
+        FlatAabbTreeMethod clone = method.newInstance();
+        Assert.assertNotSame(method, clone);
+        Assert.assertNotSame(method.shapes, clone.shapes);
+        Assert.assertEquals(method.shapes, clone.shapes);
+        Assert.assertEquals(method.getEnlargedAabbCoefficient(), clone.getEnlargedAabbCoefficient(),
+                PieTest.FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(0.1f, clone.getDisplacementPredictionTime(), PieTest.FLOAT_EPSILON_COMPARISON);
+    }
+
+    @Test
+    public void displacementPredictionTest() {
+        FlatAabbTreeMethod method = new FlatAabbTreeMethod();
+        method.setDisplacementPredictionTime(0.5f);
+        method.setDisplacementPredictionTime(-1);
+        Assert.assertEquals(0.5f, method.getDisplacementPredictionTime(), FLOAT_EPSILON_COMPARISON);
+
+        IShape bullet = new Circle(1, 0, 0, 1, 0);
+        bullet.getBody().velocity.set(0, -10);
+        IShape wall = new Circle(10, 0, -30, 1, 0);
+        Set<IShape> shapes = new HashSet<>();
+        shapes.add(bullet);
+        shapes.add(wall);
+        method.setShapes(shapes);
+        Assert.assertTrue(method.calculateAabbCollisions().isEmpty());
+
+        // The leaf of the bullet is extended by 5 units down, so it is reinserted only at the third step
+        int[] reinsertedLeafCounts = new int[3];
+        for (int step = 0; step < reinsertedLeafCounts.length; step++) {
+            bullet.getBody().position.add(bullet.getBody().velocity, 0.25f);
+            method.calculateAabbCollisions();
+            reinsertedLeafCounts[step] = method.getReinsertedLeafCount();
+        }
+        Assert.assertArrayEquals(new int[] {0, 0, 1}, reinsertedLeafCounts);
+    }
+
+    @Test
+    public void addAndRemoveShapesOneByOneAndInBulkTest() {
+        FlatAabbTreeMethod method = new FlatAabbTreeMethod();
+        List<IShape> grid = AbstractBroadPhaseTest.createShapesGrid(0, 100);
+        grid.forEach(IShape::computeAabb);
+        method.addShapes(grid);
+        Assert.assertEquals(8, method.getTreeHeight());
+
+        // A few shapes are inserted one by one, many shapes cause the rebuild of the tree
+        List<IShape> fewShapes = AbstractBroadPhaseTest.createShapesGrid(100, 10);
+        fewShapes.forEach(IShape::computeAabb);
+        method.addShapes(fewShapes);
+        method.removeShapes(grid.subList(0, 5));
+        method.removeShapes(grid.subList(5, 60));
+
+        Set<ShapePair> cmpShapePairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(
+                method.getUnmodifiableShapes());
+        Assert.assertEquals(50, method.getUnmodifiableShapes().size());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, method.calculateAabbCollisions()));
+    }
+
+    @Test
+    public void shapesWithAndWithoutSlotsTest() {
+        FlatAabbTreeMethod method = new FlatAabbTreeMethod();
+        List<IShape> registered = AbstractBroadPhaseTest.createShapesGrid(0, 50);
+        List<IShape> unregistered = AbstractBroadPhaseTest.createShapesGrid(3, 50);
+        ShapeRegistry registry = new ShapeRegistry();
+        registered.forEach(registry::add);
+        registered.forEach(IShape::computeAabb);
+        unregistered.forEach(IShape::computeAabb);
+
+        // The leaves of the registered shapes are indexed by the slots, the other ones are kept in the map
+        registered.forEach(method::addShape);
+        unregistered.forEach(method::addShape);
+        method.calculateAabbCollisionChanges(registered.subList(0, 10));
+        method.removeShapes(registered.subList(0, 5));
+        method.removeShapes(unregistered.subList(0, 5));
+
+        Set<ShapePair> cmpShapePairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(
+                method.getUnmodifiableShapes());
+        Assert.assertEquals(90, method.getUnmodifiableShapes().size());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, method.calculateAabbCollisions()));
+        method.calculateAabbCollisionChanges();
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, method.getPairs().toShapePairs()));
+
+        // The moved shapes are found by both the slots and the map
+        List<IShape> movedShapes = new ArrayList<>(registered.subList(5, 15));
+        movedShapes.addAll(unregistered.subList(5, 15));
+        movedShapes.forEach(shape -> shape.getBody().position.x += 40);
+        method.calculateAabbCollisionChanges(movedShapes);
+        cmpShapePairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(method.getUnmodifiableShapes());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, method.getPairs().toShapePairs()));
+    }
+}
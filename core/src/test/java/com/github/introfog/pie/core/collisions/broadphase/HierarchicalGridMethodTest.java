@@ -0,0 +1,109 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.math.MathPie;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.Polygon;
+import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.TestUtil;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class HierarchicalGridMethodTest extends AbstractBroadPhaseTest {
+    @Override
+    protected AbstractBroadPhase getBroadPhaseMethod() {
+        return new HierarchicalGridMethod();
+    }
+
+    @Test
+    public void shapesWithDifferentSizesTest() {
+        Random random = new Random(13);
+        Set<IShape> shapes = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            shapes.add(new Circle(0.1f + random.nextFloat(), random.nextFloat() * 2000, random.nextFloat() * 500, 1,
+                    0));
+        }
+        for (int i = 0; i < 30; i++) {
+            shapes.add(new Circle(5 + random.nextFloat() * 20, random.nextFloat() * 2000, random.nextFloat() * 500,
+                    1, 0));
+        }
+        for (int i = 0; i < 5; i++) {
+            shapes.add(Polygon.generateRectangle(1000, 100 * i, 2000, 20, MathPie.STATIC_BODY_DENSITY, 0));
+        }
+        shapes.add(Polygon.generateRectangle(-50000, 250, 100010, 50, MathPie.STATIC_BODY_DENSITY, 0));
+        shapes.forEach(IShape::computeAabb);
+
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        broadPhaseMethod.setShapes(shapes);
+        Set<ShapePair> cmpShapePairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapes);
+        Assert.assertFalse(cmpShapePairs.isEmpty());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                broadPhaseMethod.calculateAabbCollisions()));
+    }
+
+    @Test
+    public void collisionShapesWithZeroSizeTest() {
+        IShape c1 = new Circle(0f, 10, 10, MathPie.STATIC_BODY_DENSITY, 0f);
+        IShape c2 = new Circle(0f, 11, 11, MathPie.STATIC_BODY_DENSITY, 0f);
+        IShape c3 = new Circle(0f, 10, 10, MathPie.STATIC_BODY_DENSITY, 0f);
+        IShape c4 = new Circle(5f, 10, 15, MathPie.STATIC_BODY_DENSITY, 0f);
+        Set<IShape> shapes = new HashSet<>();
+        shapes.add(c1);
+        shapes.add(c2);
+        shapes.add(c3);
+        shapes.add(c4);
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        broadPhaseMethod.setShapes(shapes);
+
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(c1, c3));
+        cmpShapePairs.add(new ShapePair(c1, c4));
+        cmpShapePairs.add(new ShapePair(c3, c4));
+        cmpShapePairs.add(new ShapePair(c2, c4));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                broadPhaseMethod.calculateAabbCollisions()));
+    }
+
+    @Test
+    public void setBaseCellSizeTest() {
+        HierarchicalGridMethod method = new HierarchicalGridMethod();
+        method.addShapes(AbstractBroadPhaseTest.createShapesGrid(0, 100));
+        method.addShape(new Circle(1, 0, 0, 1, 0));
+        Set<ShapePair> cmpShapePairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(
+                method.getUnmodifiableShapes());
+
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, method.calculateAabbCollisions()));
+        Assert.assertEquals(2, method.getBaseCellSize(), FLOAT_EPSILON_COMPARISON);
+
+        method.setBaseCellSize(0.3f);
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, method.calculateAabbCollisions()));
+        Assert.assertEquals(0.3f, method.getBaseCellSize(), FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(0.3f, method.newInstance().getBaseCellSize(), FLOAT_EPSILON_COMPARISON);
+
+        method.setBaseCellSize(500);
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, method.calculateAabbCollisions()));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.math.MathPie;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.TestUtil;
+import com.github.introfog.pie.test.annotations.AlgorithmicTest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(AlgorithmicTest.class)
+public class IncrementalSweepAndPruneMethodTest extends AbstractBroadPhaseTest {
+    @Override
+    protected AbstractBroadPhase getBroadPhaseMethod() {
+        return new IncrementalSweepAndPruneMethod();
+    }
+
+    @Test
+    public void touchingAabbsTest() {
+        IShape c1 = new Circle(2f, 0, 0, MathPie.STATIC_BODY_DENSITY, 0f);
+        IShape c2 = new Circle(2f, 4, 0, MathPie.STATIC_BODY_DENSITY, 0f);
+        IShape c3 = new Circle(2f, 4, -4, MathPie.STATIC_BODY_DENSITY, 0f);
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        broadPhaseMethod.addShape(c1);
+        broadPhaseMethod.addShape(c2);
+        broadPhaseMethod.addShape(c3);
+
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(c1, c2));
+        cmpShapePairs.add(new ShapePair(c1, c3));
+        cmpShapePairs.add(new ShapePair(c2, c3));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                broadPhaseMethod.calculateAabbCollisions()));
+
+        c3.getBody().position.set(4, -4.1f);
+        cmpShapePairs.remove(new ShapePair(c1, c3));
+        cmpShapePairs.remove(new ShapePair(c2, c3));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                broadPhaseMethod.calculateAabbCollisions()));
+    }
+
+    @Test
+    public void slowlyMovingShapesTest() {
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 300);
+        broadPhaseMethod.setShapes(new HashSet<>(shapes));
+        Set<ShapePair> previousPairs = new HashSet<>();
+
+        Random random = new Random(11);
+        for (int step = 0; step < 50; step++) {
+            for (IShape shape : shapes) {
+                shape.getBody().position.set(shape.getBody().position.x + random.nextFloat() * 2 - 1,
+                        shape.getBody().position.y + random.nextFloat() * 2 - 1);
+            }
+            if (step % 10 == 5) {
+                IShape addedShape = new Circle(10, random.nextFloat() * 150, random.nextFloat() * 450, 1, 0);
+                shapes.add(addedShape);
+                broadPhaseMethod.addShape(addedShape);
+                broadPhaseMethod.remove(shapes.remove(random.nextInt(shapes.size() - 1)));
+            }
+            broadPhaseMethod.calculateAabbCollisionChanges();
+
+            Set<ShapePair> currentPairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(
+                    new HashSet<>(shapes));
+            Assert.assertNull(TestUtil.assertEqualsShapePairsList(currentPairs,
+                    broadPhaseMethod.getPairs().toShapePairs()));
+            Assert.assertEquals(currentPairs.size(), previousPairs.size()
+                    + broadPhaseMethod.getBeganPairs().size() - broadPhaseMethod.getEndedPairs().size());
+            previousPairs = currentPairs;
+        }
+    }
+
+    @Test
+    public void calculateAabbCollisionChangesAfterLargeMovementTest() {
+        // Teleporting all shapes touches more pairs than the method tracks, so the pairs are compared in full
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 100);
+        broadPhaseMethod.addShapes(shapes);
+        broadPhaseMethod.calculateAabbCollisionChanges();
+        Set<ShapePair> previousPairs = broadPhaseMethod.getPairs().toShapePairs();
+
+        List<IShape> shuffledShapes = new ArrayList<>(shapes);
+        Collections.shuffle(shuffledShapes, new Random(3));
+        for (int i = 0; i < shuffledShapes.size(); i++) {
+            shuffledShapes.get(i).getBody().position.set(15 * (i % 10), 15 * (i / 10));
+        }
+        broadPhaseMethod.calculateAabbCollisions();
+        broadPhaseMethod.calculateAabbCollisionChanges(shapes);
+
+        Set<ShapePair> currentPairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(
+                new HashSet<>(shapes));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(currentPairs,
+                broadPhaseMethod.getPairs().toShapePairs()));
+        for (ShapePair pair : broadPhaseMethod.getBeganPairs().toShapePairs()) {
+            Assert.assertTrue(currentPairs.contains(pair) && !previousPairs.contains(pair));
+        }
+        for (ShapePair pair : broadPhaseMethod.getEndedPairs().toShapePairs()) {
+            Assert.assertTrue(!currentPairs.contains(pair) && previousPairs.contains(pair));
+        }
+    }
+
+    @Test
+    public void removeFewShapesInBulkTest() {
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 100);
+        // The big shapes contain the projections of the small ones, so their overlaps aren't found by
+        // the endpoints inside the projections of the small shapes
+        shapes.add(new Circle(60, 50, 50, 1, 0));
+        shapes.add(new Circle(40, 120, 100, 1, 0));
+        broadPhaseMethod.addShapes(shapes);
+        broadPhaseMethod.calculateAabbCollisionChanges();
+
+        Random random = new Random(5);
+        for (int i = 0; i < 4; i++) {
+            List<IShape> removedShapes = new ArrayList<>();
+            for (int j = 0; j < 5; j++) {
+                removedShapes.add(shapes.remove(random.nextInt(shapes.size() - 2)));
+            }
+            Assert.assertTrue(broadPhaseMethod.removeShapes(removedShapes));
+            broadPhaseMethod.calculateAabbCollisionChanges();
+
+            Set<ShapePair> currentPairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(
+                    new HashSet<>(shapes));
+            Assert.assertNull(TestUtil.assertEqualsShapePairsList(currentPairs,
+                    broadPhaseMethod.getPairs().toShapePairs()));
+            Assert.assertNull(TestUtil.assertEqualsShapePairsList(currentPairs,
+                    broadPhaseMethod.calculateAabbCollisions()));
+        }
+        Assert.assertTrue(broadPhaseMethod.removeShapes(shapes.subList(shapes.size() - 2, shapes.size())));
+        Assert.assertEquals(new HashSet<>(shapes.subList(0, shapes.size() - 2)),
+                broadPhaseMethod.getUnmodifiableShapes());
+        shapes.subList(shapes.size() - 2, shapes.size()).clear();
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(BruteForceMethod
+                .calculateAabbCollisionsWithoutAabbUpdating(new HashSet<>(shapes)),
+                broadPhaseMethod.calculateAabbCollisions()));
+    }
+}
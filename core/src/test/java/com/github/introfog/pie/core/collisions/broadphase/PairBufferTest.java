@@ -0,0 +1,180 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.PieExceptionMessage;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.TestUtil;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class PairBufferTest extends PieTest {
+    @Test
+    public void addAndContainsTest() {
+        IShape c1 = new Circle(10, 0, 0, 1, 0);
+        IShape c2 = new Circle(10, 5, 0, 1, 0);
+        IShape c3 = new Circle(10, 10, 0, 1, 0);
+        PairBuffer buffer = new PairBuffer();
+
+        Assert.assertTrue(buffer.isEmpty());
+        Assert.assertTrue(buffer.add(c1, c2));
+        Assert.assertFalse(buffer.add(c2, c1));
+        Assert.assertEquals(1, buffer.size());
+
+        Assert.assertTrue(buffer.contains(c1, c2));
+        Assert.assertTrue(buffer.contains(c2, c1));
+        Assert.assertFalse(buffer.contains(c1, c3));
+
+        ShapePair pair = new ShapePair(c2, c1);
+        Assert.assertSame(pair.getFirst(), buffer.getFirst(0));
+        Assert.assertSame(pair.getSecond(), buffer.getSecond(0));
+    }
+
+    @Test
+    public void addSameShapesTest() {
+        IShape c1 = new Circle(10, 0, 0, 1, 0);
+        PairBuffer buffer = new PairBuffer();
+        Assert.assertThrows(PieExceptionMessage.SAME_SHAPES_PASSED_TO_SHAPE_PAIR_CONSTRUCTOR,
+                IllegalArgumentException.class, () -> buffer.add(c1, c1));
+    }
+
+    @Test
+    public void growAndClearTest() {
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 50);
+        PairBuffer buffer = new PairBuffer();
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        for (int i = 0; i < shapes.size(); i++) {
+            for (int j = i + 1; j < shapes.size(); j++) {
+                buffer.add(shapes.get(i), shapes.get(j));
+                cmpShapePairs.add(new ShapePair(shapes.get(i), shapes.get(j)));
+            }
+        }
+        Assert.assertEquals(cmpShapePairs.size(), buffer.size());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, buffer.toShapePairs()));
+        for (ShapePair pair : cmpShapePairs) {
+            Assert.assertTrue(buffer.contains(pair.getSecond(), pair.getFirst()));
+        }
+
+        buffer.clear();
+        Assert.assertTrue(buffer.isEmpty());
+        Assert.assertFalse(buffer.contains(shapes.get(0), shapes.get(1)));
+        Assert.assertTrue(buffer.add(shapes.get(0), shapes.get(1)));
+        Assert.assertEquals(1, buffer.size());
+    }
+
+    @Test
+    public void clearOccupiedCellsTest() {
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 40);
+        PairBuffer buffer = new PairBuffer();
+        for (int i = 0; i < shapes.size(); i++) {
+            for (int j = i + 1; j < shapes.size(); j++) {
+                buffer.add(shapes.get(i), shapes.get(j));
+            }
+        }
+        for (int i = 0; i < shapes.size() - 1; i += 3) {
+            buffer.remove(shapes.get(i), shapes.get(i + 1));
+        }
+
+        // The large table is cleared by the pairs, so no cell of the removed or kept pairs stays occupied
+        for (int iteration = 0; iteration < 2; iteration++) {
+            buffer.clear();
+            for (int i = 0; i < shapes.size(); i++) {
+                for (int j = i + 1; j < shapes.size(); j++) {
+                    Assert.assertFalse(buffer.contains(shapes.get(i), shapes.get(j)));
+                }
+            }
+            for (int i = 0; i < 10; i++) {
+                Assert.assertTrue(buffer.add(shapes.get(i), shapes.get(i + 1)));
+            }
+            Assert.assertEquals(10, buffer.size());
+        }
+    }
+
+    @Test
+    public void removeTest() {
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 30);
+        PairBuffer buffer = new PairBuffer();
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        for (int i = 0; i < shapes.size(); i++) {
+            for (int j = i + 1; j < shapes.size(); j++) {
+                buffer.add(shapes.get(i), shapes.get(j));
+                cmpShapePairs.add(new ShapePair(shapes.get(i), shapes.get(j)));
+            }
+        }
+
+        for (int i = 0; i < shapes.size(); i += 2) {
+            for (int j = i + 1; j < shapes.size(); j++) {
+                Assert.assertTrue(buffer.remove(shapes.get(j), shapes.get(i)));
+                Assert.assertFalse(buffer.remove(shapes.get(i), shapes.get(j)));
+                cmpShapePairs.remove(new ShapePair(shapes.get(i), shapes.get(j)));
+            }
+        }
+        Assert.assertEquals(cmpShapePairs.size(), buffer.size());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, buffer.toShapePairs()));
+        for (ShapePair pair : cmpShapePairs) {
+            Assert.assertTrue(buffer.contains(pair.getFirst(), pair.getSecond()));
+            // The index of the pair is kept up to date when the last pair takes the place of the removed one
+            final int index = buffer.indexOf(pair.getSecond(), pair.getFirst());
+            Assert.assertSame(pair.getFirst(), buffer.getFirst(index));
+            Assert.assertSame(pair.getSecond(), buffer.getSecond(index));
+        }
+        Assert.assertFalse(buffer.remove(shapes.get(0), shapes.get(0)));
+        Assert.assertEquals(-1, buffer.indexOf(shapes.get(0), shapes.get(1)));
+        Assert.assertEquals(-1, buffer.indexOf(shapes.get(1), shapes.get(1)));
+    }
+
+    @Test
+    public void addAllTest() {
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 3);
+        PairBuffer first = new PairBuffer();
+        first.add(shapes.get(0), shapes.get(1));
+        PairBuffer second = new PairBuffer();
+        second.add(shapes.get(1), shapes.get(0));
+        second.add(shapes.get(1), shapes.get(2));
+
+        first.addAll(second);
+        Assert.assertEquals(2, first.size());
+        Assert.assertTrue(first.contains(shapes.get(2), shapes.get(1)));
+    }
+
+    @Test
+    public void refillingDoesNotAllocateTest() {
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 40);
+        PairBuffer buffer = new PairBuffer();
+
+        long allocated = measureAllocatedBytes(() -> {
+            buffer.clear();
+            for (int i = 0; i < shapes.size(); i++) {
+                for (int j = i + 1; j < shapes.size(); j++) {
+                    buffer.add(shapes.get(i), shapes.get(j));
+                }
+            }
+        }, 100);
+        Assert.assertEquals(0, allocated);
+        Assert.assertEquals(40 * 39 / 2, buffer.size());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.ParallelExecutor;
+import com.github.introfog.pie.core.util.TestUtil;
+import com.github.introfog.pie.test.annotations.AlgorithmicTest;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(AlgorithmicTest.class)
+public class ParallelSweepAndPruneMethodTest extends AbstractBroadPhaseTest {
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterClass
+    public static void shutdownPool() {
+        POOL.shutdown();
+    }
+
+    @Override
+    protected AbstractBroadPhase getBroadPhaseMethod() {
+        ParallelSweepAndPruneMethod method = new ParallelSweepAndPruneMethod();
+        method.setParallelExecutor(new ParallelExecutor(POOL));
+        return method;
+    }
+
+    @Test
+    public void manyShapesInSeveralChunksTest() {
+        Set<IShape> shapes = ParallelSweepAndPruneMethodTest.createRandomShapes(5000, 300, 600, 1);
+        AbstractBroadPhase parallelMethod = getBroadPhaseMethod();
+        parallelMethod.setShapes(shapes);
+        AbstractBroadPhase sequentialMethod = new ParallelSweepAndPruneMethod();
+        sequentialMethod.setShapes(shapes);
+
+        Set<ShapePair> cmpShapePairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapes);
+        Assert.assertFalse(cmpShapePairs.isEmpty());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, parallelMethod.calculateAabbCollisions()));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                sequentialMethod.calculateAabbCollisions()));
+        // The second calculation sweeps along the y-axis, because the shapes are more scattered along it
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, parallelMethod.calculateAabbCollisions()));
+    }
+
+    @Test
+    public void shapesWithNegativeCoordinatesTest() {
+        Set<IShape> shapes = ParallelSweepAndPruneMethodTest.createRandomShapes(3000, 400, 400, 2);
+        for (IShape shape : shapes) {
+            shape.getBody().position.set(shape.getBody().position.x - 200, shape.getBody().position.y - 200);
+            shape.computeAabb();
+        }
+        AbstractBroadPhase parallelMethod = getBroadPhaseMethod();
+        parallelMethod.setShapes(shapes);
+
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapes),
+                parallelMethod.calculateAabbCollisions()));
+    }
+
+    private static Set<IShape> createRandomShapes(int count, float width, float height, long seed) {
+        Random random = new Random(seed);
+        Set<IShape> shapes = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            IShape shape = new Circle(1 + random.nextFloat() * 3, random.nextFloat() * width,
+                    random.nextFloat() * height, 1, 0);
+            shape.computeAabb();
+            shapes.add(shape);
+        }
+        return shapes;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.math.MathPie;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.TestUtil;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class PersistentSpatialHashingMethodTest extends AbstractBroadPhaseTest {
+    @Override
+    protected AbstractBroadPhase getBroadPhaseMethod() {
+        return new PersistentSpatialHashingMethod();
+    }
+
+    @Test
+    public void calculateCellSizeTest() {
+        PersistentSpatialHashingMethod method = new PersistentSpatialHashingMethod();
+        Assert.assertEquals(0, method.getCellSize(), FLOAT_EPSILON_COMPARISON);
+
+        method.addShapes(AbstractBroadPhaseTest.createShapesGrid(0, 10));
+        Assert.assertEquals(40, method.getCellSize(), FLOAT_EPSILON_COMPARISON);
+
+        method.setCellSize(7);
+        Assert.assertEquals(7, method.getCellSize(), FLOAT_EPSILON_COMPARISON);
+        method.clear();
+        method.addShape(new Circle(1, 0, 0, 1, 0));
+        Assert.assertEquals(7, method.getCellSize(), FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(7, method.newInstance().getCellSize(), FLOAT_EPSILON_COMPARISON);
+
+        method.setCellSize(0);
+        Assert.assertEquals(4, method.getCellSize(), FLOAT_EPSILON_COMPARISON);
+    }
+
+    @Test
+    public void cellSizeFollowsShapesTest() {
+        PersistentSpatialHashingMethod method = new PersistentSpatialHashingMethod();
+        IShape circle = new Circle(1, 0, 0, 1, 0);
+        method.addShape(circle);
+        Assert.assertEquals(4, method.getCellSize(), FLOAT_EPSILON_COMPARISON);
+
+        // The first shape added alone doesn't define the size of the cells for the bigger shapes added later
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 100);
+        method.addShapes(shapes);
+        Assert.assertEquals(2 * (2 + 100 * 20) / 101f, method.getCellSize(), FLOAT_EPSILON_COMPARISON);
+        Set<IShape> allShapes = new HashSet<>(shapes);
+        allShapes.add(circle);
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(allShapes), method.calculateAabbCollisions()));
+
+        // The cells are rebuilt for the remaining small shape on the next calculation
+        shapes.forEach(method::remove);
+        Assert.assertTrue(method.calculateAabbCollisions().isEmpty());
+        Assert.assertEquals(4, method.getCellSize(), FLOAT_EPSILON_COMPARISON);
+    }
+
+    @Test
+    public void setCellSizeRedistributesShapesTest() {
+        PersistentSpatialHashingMethod method = new PersistentSpatialHashingMethod();
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 100);
+        method.addShapes(shapes);
+        Set<ShapePair> cmpShapePairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(
+                new HashSet<>(shapes));
+
+        for (float cellSize : new float[] {3, 16, 1000}) {
+            method.setCellSize(cellSize);
+            Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, method.calculateAabbCollisions()));
+        }
+    }
+
+    @Test
+    public void shapesFarFromOriginTest() {
+        IShape c1 = new Circle(2f, 1e6f, -1e6f, MathPie.STATIC_BODY_DENSITY, 0f);
+        IShape c2 = new Circle(2f, 1e6f + 3, -1e6f, MathPie.STATIC_BODY_DENSITY, 0f);
+        IShape c3 = new Circle(2f, -1e6f, 1e6f, MathPie.STATIC_BODY_DENSITY, 0f);
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        broadPhaseMethod.addShape(c1);
+        broadPhaseMethod.addShape(c2);
+        broadPhaseMethod.addShape(c3);
+
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(c1, c2));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                broadPhaseMethod.calculateAabbCollisions()));
+    }
+
+    @Test
+    public void slowlyMovingShapesTest() {
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        List<IShape> shapes = AbstractBroadPhaseTest.createShapesGrid(0, 300);
+        broadPhaseMethod.addShapes(shapes);
+        broadPhaseMethod.calculateAabbCollisionChanges(shapes);
+
+        Random random = new Random(5);
+        for (int step = 0; step < 50; step++) {
+            List<IShape> movedShapes = new ArrayList<>();
+            for (int i = 0; i < shapes.size(); i += 1 + random.nextInt(3)) {
+                IShape shape = shapes.get(i);
+                shape.getBody().position.set(shape.getBody().position.x + random.nextFloat() * 4 - 2,
+                        shape.getBody().position.y + random.nextFloat() * 4 - 2);
+                movedShapes.add(shape);
+            }
+            broadPhaseMethod.calculateAabbCollisionChanges(movedShapes);
+
+            Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                    BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(new HashSet<>(shapes)),
+                    broadPhaseMethod.getPairs().toShapePairs()));
+        }
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(broadPhaseMethod.getPairs().toShapePairs(),
+                broadPhaseMethod.calculateAabbCollisions()));
+    }
+}
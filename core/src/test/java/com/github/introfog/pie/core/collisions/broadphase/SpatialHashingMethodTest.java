@@ -24,6 +24,7 @@ import com.github.introfog.pie.core.shape.ShapePair;
 import com.github.introfog.pie.test.annotations.UnitTest;
 
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Assert;
@@ -87,5 +88,40 @@ public class SpatialHashingMethodTest extends AbstractBroadPhaseTest {
         Assert.assertNotSame(method, clone);
         Assert.assertNotSame(method.shapes, clone.shapes);
         Assert.assertEquals(method.shapes, clone.shapes);
+        Assert.assertFalse(clone.isCellOwnershipEnabled());
+
+        method.setCellOwnershipEnabled(true);
+        Assert.assertTrue(method.newInstance().isCellOwnershipEnabled());
+    }
+
+    @Test
+    public void cellOwnershipTest() {
+        Set<IShape> shapes = createShapesOfDifferentSizes();
+        SpatialHashingMethod method = new SpatialHashingMethod();
+        method.setCellOwnershipEnabled(true);
+        method.setShapes(shapes);
+        Set<ShapePair> cmpShapePairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapes);
+
+        Assert.assertFalse(cmpShapePairs.isEmpty());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, method.calculateAabbCollisions()));
+    }
+
+    @Test
+    public void parallelCellOwnershipTest() {
+        Set<IShape> shapes = createShapesOfDifferentSizes();
+        SpatialHashingMethod method = new SpatialHashingMethod();
+        method.setCellOwnershipEnabled(true);
+        method.setShapes(shapes);
+        AbstractBroadPhaseTest.assertParallelCollisions(method, shapes);
+    }
+
+    private static Set<IShape> createShapesOfDifferentSizes() {
+        Random random = new Random(21);
+        Set<IShape> shapes = AbstractBroadPhaseTest.createRandomCircles(random, 3000);
+        for (int i = 0; i < 10; i++) {
+            shapes.add(Polygon.generateRectangle(random.nextFloat() * 1000, random.nextFloat() * 1000, 200, 30,
+                    MathPie.STATIC_BODY_DENSITY, 0));
+        }
+        return shapes;
     }
 }
@@ -0,0 +1,110 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.math.MathPie;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.TestUtil;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class StaticShapeTreeTest extends PieTest {
+    @Test
+    public void calculateAabbCollisionsTest() {
+        StaticShapeTree tree = new StaticShapeTree();
+        IShape s1 = new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape s2 = new Circle(10, 15, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape s3 = new Circle(10, 100, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        tree.addShape(s1);
+        tree.addShape(s2);
+        tree.addShape(s3);
+        tree.addShape(s3);
+        Assert.assertEquals(3, tree.size());
+
+        IShape dynamic = new Circle(5, 30, 0, 1, 0);
+        PairBuffer collisions = new PairBuffer();
+        tree.calculateAabbCollisions(dynamic, collisions);
+
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(dynamic, s2));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, collisions.toShapePairs()));
+
+        dynamic.getBody().position.set(8, 0);
+        dynamic.computeAabb();
+        collisions.clear();
+        tree.calculateAabbCollisions(dynamic, collisions);
+        cmpShapePairs.add(new ShapePair(dynamic, s1));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, collisions.toShapePairs()));
+    }
+
+    @Test
+    public void addShapesTest() {
+        StaticShapeTree tree = new StaticShapeTree();
+        IShape s1 = new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape s2 = new Circle(10, 15, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape s3 = new Circle(10, 100, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        tree.addShape(s1);
+        tree.addShapes(Arrays.asList(s1, s2, s3));
+        Assert.assertEquals(3, tree.size());
+
+        IShape dynamic = new Circle(5, 8, 0, 1, 0);
+        PairBuffer collisions = new PairBuffer();
+        tree.calculateAabbCollisions(dynamic, collisions);
+
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(dynamic, s1));
+        cmpShapePairs.add(new ShapePair(dynamic, s2));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, collisions.toShapePairs()));
+    }
+
+    @Test
+    public void removeTest() {
+        StaticShapeTree tree = new StaticShapeTree();
+        IShape s1 = new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape s2 = new Circle(10, 15, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        tree.addShape(s1);
+        tree.addShape(s2);
+
+        Assert.assertTrue(tree.remove(s1));
+        Assert.assertFalse(tree.remove(s1));
+        Assert.assertFalse(tree.contains(s1));
+        Assert.assertTrue(tree.contains(s2));
+
+        IShape dynamic = new Circle(5, 8, 0, 1, 0);
+        PairBuffer collisions = new PairBuffer();
+        tree.calculateAabbCollisions(dynamic, collisions);
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(dynamic, s2));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, collisions.toShapePairs()));
+
+        tree.clear();
+        Assert.assertEquals(0, tree.size());
+        collisions.clear();
+        tree.calculateAabbCollisions(dynamic, collisions);
+        Assert.assertTrue(collisions.isEmpty());
+    }
+}
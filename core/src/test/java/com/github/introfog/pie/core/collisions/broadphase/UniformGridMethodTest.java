@@ -0,0 +1,121 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase;
+
+import com.github.introfog.pie.core.PieExceptionMessage;
+import com.github.introfog.pie.core.math.MathPie;
+import com.github.introfog.pie.core.shape.Aabb;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.Polygon;
+import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.TestUtil;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class UniformGridMethodTest extends AbstractBroadPhaseTest {
+    @Override
+    protected AbstractBroadPhase getBroadPhaseMethod() {
+        return new UniformGridMethod(UniformGridMethodTest.createBounds(-100, -100, 300, 300), 20);
+    }
+
+    @Test
+    public void shapesInSeveralCellsTest() {
+        Random random = new Random(7);
+        Set<IShape> shapes = new HashSet<>();
+        for (int i = 0; i < 500; i++) {
+            shapes.add(new Circle(1 + random.nextFloat() * 30, random.nextFloat() * 200 - 50,
+                    random.nextFloat() * 200 - 50, 1, 0));
+        }
+        shapes.add(Polygon.generateRectangle(100, 100, 400, 15, MathPie.STATIC_BODY_DENSITY, 0));
+        shapes.forEach(IShape::computeAabb);
+
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        broadPhaseMethod.setShapes(shapes);
+        Set<ShapePair> cmpShapePairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapes);
+        Assert.assertFalse(cmpShapePairs.isEmpty());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                broadPhaseMethod.calculateAabbCollisions()));
+    }
+
+    @Test
+    public void shapesOutsideOfBoundsTest() {
+        IShape c1 = new Circle(10, -1000, -1000, 1, 0);
+        IShape c2 = new Circle(10, -1005, -995, 1, 0);
+        IShape c3 = new Circle(10, -1000, 5000, 1, 0);
+        IShape c4 = new Circle(10, 100000, 100000, 1, 0);
+        IShape c5 = new Circle(10, 100010, 100010, 1, 0);
+        IShape c6 = new Circle(10, 100, -100000, 1, 0);
+        Set<IShape> shapes = new HashSet<>();
+        shapes.add(c1);
+        shapes.add(c2);
+        shapes.add(c3);
+        shapes.add(c4);
+        shapes.add(c5);
+        shapes.add(c6);
+        AbstractBroadPhase broadPhaseMethod = getBroadPhaseMethod();
+        broadPhaseMethod.setShapes(shapes);
+
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(c1, c2));
+        cmpShapePairs.add(new ShapePair(c4, c5));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                broadPhaseMethod.calculateAabbCollisions()));
+    }
+
+    @Test
+    public void getWorldBoundsAndCellSizeTest() {
+        UniformGridMethod method = new UniformGridMethod(UniformGridMethodTest.createBounds(-10, 5, 90, 55), 2.5f);
+        UniformGridMethod newInstance = method.newInstance();
+
+        Assert.assertEquals(2.5f, newInstance.getCellSize(), FLOAT_EPSILON_COMPARISON);
+        Aabb worldBounds = newInstance.getWorldBounds();
+        Assert.assertEquals(-10, worldBounds.min.x, FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(5, worldBounds.min.y, FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(90, worldBounds.max.x, FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(55, worldBounds.max.y, FLOAT_EPSILON_COMPARISON);
+    }
+
+    @Test
+    public void invalidArgumentsTest() {
+        Aabb bounds = UniformGridMethodTest.createBounds(0, 0, 100, 100);
+        Assert.assertThrows(PieExceptionMessage.GRID_CELL_SIZE_MUST_BE_POSITIVE, IllegalArgumentException.class,
+                () -> new UniformGridMethod(bounds, 0));
+        Assert.assertThrows(PieExceptionMessage.GRID_CELL_SIZE_MUST_BE_POSITIVE, IllegalArgumentException.class,
+                () -> new UniformGridMethod(bounds, Float.NaN));
+        Assert.assertThrows(PieExceptionMessage.GRID_BOUNDS_MUST_NOT_BE_EMPTY, IllegalArgumentException.class,
+                () -> new UniformGridMethod(UniformGridMethodTest.createBounds(0, 0, 100, 0), 1));
+        Assert.assertThrows(PieExceptionMessage.GRID_BOUNDS_MUST_NOT_BE_EMPTY, IllegalArgumentException.class,
+                () -> new UniformGridMethod(UniformGridMethodTest.createBounds(0, 0, Float.POSITIVE_INFINITY, 1), 1));
+        Assert.assertThrows(PieExceptionMessage.TOO_MANY_GRID_CELLS, IllegalArgumentException.class,
+                () -> new UniformGridMethod(bounds, 0.001f));
+    }
+
+    private static Aabb createBounds(float minX, float minY, float maxX, float maxY) {
+        Aabb bounds = new Aabb();
+        bounds.min.set(minX, minY);
+        bounds.max.set(maxX, maxY);
+        return bounds;
+    }
+}
@@ -15,19 +15,28 @@
  */
 package com.github.introfog.pie.core.collisions.broadphase.aabbtree;
 
+import com.github.introfog.pie.core.collisions.broadphase.BruteForceMethod;
+import com.github.introfog.pie.core.collisions.broadphase.PairBuffer;
 import com.github.introfog.pie.core.math.MathPie;
 import com.github.introfog.pie.core.math.Vector2f;
 import com.github.introfog.pie.core.shape.Aabb;
 import com.github.introfog.pie.core.shape.Circle;
 import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.TestUtil;
 import com.github.introfog.pie.test.PieTest;
 import com.github.introfog.pie.test.annotations.UnitTest;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -41,7 +50,6 @@ public class AabbTreeNodeTest extends PieTest {
         aabb.max.set(10, 20);
         AabbTreeNode node = new AabbTreeNode(aabb, 0.5f);
 
-        Assert.assertFalse(node.checked);
         Assert.assertEquals(0.5f, node.enlargedAabbCoefficient, PieTest.FLOAT_EPSILON_COMPARISON);
         Assert.assertSame(aabb, node.aabb);
         Assert.assertNull(node.parent);
@@ -54,7 +62,6 @@ public class AabbTreeNodeTest extends PieTest {
         IShape shape = new Circle(5, 0, 5, MathPie.STATIC_BODY_DENSITY, 0);
         AabbTreeNode node = new AabbTreeNode(shape, 0.3f);
 
-        Assert.assertFalse(node.checked);
         Assert.assertEquals(0.3f, node.enlargedAabbCoefficient, PieTest.FLOAT_EPSILON_COMPARISON);
         Assert.assertEquals(new Vector2f(-8, -3), node.aabb.min);
         Assert.assertEquals(new Vector2f(8, 13), node.aabb.max);
@@ -63,6 +70,26 @@ public class AabbTreeNodeTest extends PieTest {
         Assert.assertSame(shape, node.shape);
     }
 
+    @Test
+    public void displacementPredictionTimeTest() {
+        IShape shape = new Circle(5, 0, 5, 1, 0);
+        shape.getBody().velocity.set(-20, 40);
+        AabbTreeNode leaf = new AabbTreeNode(shape, 0.3f, 0.5f);
+
+        // The Aabb is extended only towards the predicted displacement (-10, 20)
+        Assert.assertEquals(new Vector2f(-18, -3), leaf.aabb.min);
+        Assert.assertEquals(new Vector2f(8, 33), leaf.aabb.max);
+
+        AabbTreeNode root = AabbTreeNode.insertLeaf(leaf, new Circle(5, 100, 100, 1, 0));
+        shape.getBody().position.set(50, 5);
+        shape.computeAabb();
+        // The reinserted leaf uses the passed time (the displacement is (-5, 10)) instead of the time of creation
+        root = AabbTreeNode.updateLeaf(root, leaf, 0.25f);
+        Assert.assertTrue(root.children[0] == leaf || root.children[1] == leaf);
+        Assert.assertEquals(new Vector2f(37, -3), leaf.aabb.min);
+        Assert.assertEquals(new Vector2f(58, 23), leaf.aabb.max);
+    }
+
     @Test
     public void isLeafTest() {
         IShape shape = new Circle(5, 0, 5, MathPie.STATIC_BODY_DENSITY, 0);
@@ -301,6 +328,155 @@ public class AabbTreeNodeTest extends PieTest {
         Assert.assertSame(node, AabbTreeNode.removeLeaf(node, null));
     }
 
+    @Test
+    public void insertAndRemoveNodeTest() {
+        IShape c1 = new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape c2 = new Circle(10, 30, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        AabbTreeNode root = new AabbTreeNode(c1, 0.1f);
+        AabbTreeNode leaf = new AabbTreeNode(c2, 0.1f);
+
+        root = AabbTreeNode.insertNode(root, leaf);
+        Assert.assertSame(root, leaf.parent);
+        Assert.assertEquals(new Vector2f(-12, -12), root.aabb.min);
+        Assert.assertEquals(new Vector2f(42, 12), root.aabb.max);
+
+        root = AabbTreeNode.removeNode(root, leaf);
+        Assert.assertNull(leaf.parent);
+        Assert.assertTrue(root.isLeaf());
+        Assert.assertSame(c1, root.shape);
+        Assert.assertSame(root, AabbTreeNode.removeNode(root, null));
+        Assert.assertNull(AabbTreeNode.removeNode(root, root));
+    }
+
+    @Test
+    public void updateLeafTest() {
+        IShape c1 = new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape c2 = new Circle(10, 10, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape c3 = new Circle(10, 20, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        AabbTreeNode root = new AabbTreeNode(c1, 0.1f);
+        AabbTreeNode leaf = new AabbTreeNode(c2, 0.1f);
+        root = AabbTreeNode.insertNode(root, leaf);
+        root = AabbTreeNode.insertLeaf(root, c3);
+
+        // Additional bBox size equal to 2, and if we move circle for 1.9, leaf shouldn't update
+        c2.getBody().position.add(new Vector2f(1.9f, 0));
+        c2.computeAabb();
+        Aabb leafAabb = leaf.aabb;
+        Assert.assertSame(root, AabbTreeNode.updateLeaf(root, leaf));
+        Assert.assertSame(leafAabb, leaf.aabb);
+
+        c2.getBody().position.set(40, 0);
+        c2.computeAabb();
+        root = AabbTreeNode.updateLeaf(root, leaf);
+        Assert.assertNotNull(leaf.parent);
+        Assert.assertEquals(new Vector2f(28, -12), leaf.aabb.min);
+        Assert.assertEquals(new Vector2f(52, 12), leaf.aabb.max);
+        Assert.assertTrue(Aabb.isContained(root.aabb, leaf.aabb));
+    }
+
+    @Test
+    public void calculateAabbCollisionsOfShapeTest() {
+        IShape c1 = new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape c2 = new Circle(10, 15, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape c3 = new Circle(10, 100, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        AabbTreeNode root = new AabbTreeNode(c1, 0.1f);
+        root = AabbTreeNode.insertLeaf(root, c2);
+        root = AabbTreeNode.insertLeaf(root, c3);
+
+        PairBuffer collisions = new PairBuffer();
+        AabbTreeNode.calculateAabbCollisions(root, c2, collisions);
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(c1, c2));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, collisions.toShapePairs()));
+
+        IShape query = new Circle(5, 110, 0, 1, 0);
+        AabbTreeNode.calculateAabbCollisions(root, query, collisions);
+        cmpShapePairs.add(new ShapePair(c3, query));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, collisions.toShapePairs()));
+    }
+
+    @Test
+    public void buildTreeTest() {
+        List<AabbTreeNode> leaves = new ArrayList<>();
+        Set<IShape> shapes = new HashSet<>();
+        for (int i = 0; i < 256; i++) {
+            IShape shape = new Circle(10, 15 * (i % 16), 15 * (i / 16), MathPie.STATIC_BODY_DENSITY, 0);
+            shapes.add(shape);
+            leaves.add(new AabbTreeNode(shape, 0.1f));
+        }
+        AabbTreeNode root = AabbTreeNode.buildTree(leaves);
+
+        Assert.assertNull(root.parent);
+        Assert.assertEquals(0.1f, root.enlargedAabbCoefficient, PieTest.FLOAT_EPSILON_COMPARISON);
+        // The grid of equal circles is split evenly, so the tree is balanced
+        Assert.assertEquals(9, AabbTreeNodeTest.calculateTreeHeight(root));
+        int leafCount = 0;
+        Deque<AabbTreeNode> nodes = new ArrayDeque<>();
+        nodes.push(root);
+        while (!nodes.isEmpty()) {
+            AabbTreeNode node = nodes.pop();
+            if (node.isLeaf()) {
+                leafCount++;
+                continue;
+            }
+            for (AabbTreeNode child : node.children) {
+                Assert.assertSame(node, child.parent);
+                Assert.assertTrue(Aabb.isContained(node.aabb, child.aabb));
+                nodes.push(child);
+            }
+        }
+        Assert.assertEquals(256, leafCount);
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapes),
+                AabbTreeNode.calculateAabbCollisions(root)));
+    }
+
+    @Test
+    public void calculateAabbCollisionsOfSubtreesTest() {
+        Set<IShape> shapes = new HashSet<>();
+        List<AabbTreeNode> leaves = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            IShape shape = new Circle(10, 15 * (i % 10), 15 * (i / 10), MathPie.STATIC_BODY_DENSITY, 0);
+            shapes.add(shape);
+            leaves.add(new AabbTreeNode(shape, 0.1f));
+        }
+        AabbTreeNode root = AabbTreeNode.buildTree(leaves);
+
+        PairBuffer rootCollisions = new PairBuffer();
+        AabbTreeNode.calculateAabbCollisions(root, root, rootCollisions);
+        // The pair of the root with itself is split into the independent pairs of the children
+        PairBuffer childrenCollisions = new PairBuffer();
+        AabbTreeNode.calculateAabbCollisions(root.children[0], root.children[0], childrenCollisions);
+        AabbTreeNode.calculateAabbCollisions(root.children[1], root.children[1], childrenCollisions);
+        AabbTreeNode.calculateAabbCollisions(root.children[0], root.children[1], childrenCollisions);
+
+        Set<ShapePair> cmpShapePairs = BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapes);
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, rootCollisions.toShapePairs()));
+        Assert.assertEquals(cmpShapePairs.size(), childrenCollisions.size());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, childrenCollisions.toShapePairs()));
+    }
+
+    @Test
+    public void buildTreeOfCoincidentLeavesTest() {
+        List<AabbTreeNode> leaves = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            leaves.add(new AabbTreeNode(new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0), 0f));
+        }
+        AabbTreeNode root = AabbTreeNode.buildTree(leaves);
+
+        Assert.assertEquals(7, AabbTreeNodeTest.calculateTreeHeight(root));
+        Assert.assertEquals(64 * 63 / 2, AabbTreeNode.calculateAabbCollisions(root).size());
+    }
+
+    @Test
+    public void buildTreeOfOneOrZeroLeavesTest() {
+        Assert.assertNull(AabbTreeNode.buildTree(Collections.emptyList()));
+
+        AabbTreeNode leaf = new AabbTreeNode(new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0), 0f);
+        Assert.assertSame(leaf, AabbTreeNode.buildTree(Collections.singletonList(leaf)));
+        Assert.assertNull(leaf.parent);
+    }
+
     private static int calculateTreeHeight(AabbTreeNode treeRoot) {
         Deque<AabbTreeNode> nodes = new ArrayDeque<>();
         nodes.push(treeRoot);
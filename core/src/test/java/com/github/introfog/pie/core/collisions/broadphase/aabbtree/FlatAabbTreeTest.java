@@ -0,0 +1,198 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.broadphase.aabbtree;
+
+import com.github.introfog.pie.core.collisions.broadphase.BruteForceMethod;
+import com.github.introfog.pie.core.collisions.broadphase.PairBuffer;
+import com.github.introfog.pie.core.math.MathPie;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.ShapePair;
+import com.github.introfog.pie.core.util.TestUtil;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class FlatAabbTreeTest extends PieTest {
+    @Test
+    public void insertAndRemoveLeafTest() {
+        IShape c1 = new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape c2 = new Circle(10, 15, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape c3 = new Circle(10, 30, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        FlatAabbTree tree = new FlatAabbTree(AabbTreeNode.DEFAULT_ENLARGED_AABB_COEFFICIENT);
+        int leaf1 = tree.insertLeaf(c1);
+        int leaf2 = tree.insertLeaf(c2);
+        int leaf3 = tree.insertLeaf(c3);
+        Assert.assertEquals(3, tree.getLeafCount());
+        Assert.assertSame(c2, tree.getShape(leaf2));
+
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(c1, c2));
+        cmpShapePairs.add(new ShapePair(c2, c3));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                FlatAabbTreeTest.calculateAabbCollisions(tree)));
+
+        tree.removeLeaf(leaf2);
+        Assert.assertEquals(2, tree.getLeafCount());
+        Assert.assertTrue(FlatAabbTreeTest.calculateAabbCollisions(tree).isEmpty());
+
+        // The indices of the removed leaf and its parent are reused
+        final int nodeCapacity = tree.getNodeCapacity();
+        leaf2 = tree.insertLeaf(c2);
+        Assert.assertEquals(nodeCapacity, tree.getNodeCapacity());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                FlatAabbTreeTest.calculateAabbCollisions(tree)));
+
+        tree.removeLeaf(leaf1);
+        tree.removeLeaf(leaf3);
+        tree.removeLeaf(leaf2);
+        Assert.assertEquals(0, tree.getLeafCount());
+        Assert.assertEquals(0, tree.getHeight());
+    }
+
+    @Test
+    public void moveLeafTest() {
+        IShape c1 = new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape c2 = new Circle(10, 100, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        FlatAabbTree tree = new FlatAabbTree(0.25f);
+        int leaf1 = tree.insertLeaf(c1);
+        tree.insertLeaf(c2);
+        Assert.assertTrue(FlatAabbTreeTest.calculateAabbCollisions(tree).isEmpty());
+
+        // The shape is still inside the enlarged Aabb of the leaf
+        c1.getBody().position.set(4, 4);
+        c1.computeAabb();
+        Assert.assertFalse(tree.moveLeaf(leaf1));
+
+        c1.getBody().position.set(85, 0);
+        c1.computeAabb();
+        Assert.assertTrue(tree.moveLeaf(leaf1));
+        Assert.assertSame(c1, tree.getShape(leaf1));
+
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(c1, c2));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs,
+                FlatAabbTreeTest.calculateAabbCollisions(tree)));
+    }
+
+    @Test
+    public void buildAndUpdateTreeTest() {
+        Random random = new Random(22);
+        IShape[] shapes = new IShape[2000];
+        Set<IShape> shapeSet = new HashSet<>();
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = new Circle(1 + random.nextFloat() * 5, random.nextFloat() * 1000, random.nextFloat() * 1000,
+                    1, 0);
+            shapes[i].computeAabb();
+            shapeSet.add(shapes[i]);
+        }
+        FlatAabbTree tree = new FlatAabbTree(AabbTreeNode.DEFAULT_ENLARGED_AABB_COEFFICIENT);
+        int[] leaves = new int[shapes.length];
+        tree.build(shapes, shapes.length, leaves);
+
+        Assert.assertEquals(shapes.length, tree.getLeafCount());
+        // The median split builds the balanced tree
+        Assert.assertEquals(12, tree.getHeight());
+        for (int i = 0; i < shapes.length; i++) {
+            Assert.assertSame(shapes[i], tree.getShape(leaves[i]));
+        }
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapeSet),
+                FlatAabbTreeTest.calculateAabbCollisions(tree)));
+
+        for (IShape shape : shapes) {
+            shape.getBody().position.set(shape.getBody().position.x + random.nextFloat() * 40 - 20,
+                    shape.getBody().position.y + random.nextFloat() * 40 - 20);
+            shape.computeAabb();
+        }
+        Assert.assertTrue(tree.updateTree() > 0);
+        Assert.assertEquals(0, tree.updateTree());
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(
+                BruteForceMethod.calculateAabbCollisionsWithoutAabbUpdating(shapeSet),
+                FlatAabbTreeTest.calculateAabbCollisions(tree)));
+    }
+
+    @Test
+    public void calculateAabbCollisionsOfShapeTest() {
+        IShape c1 = new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape c2 = new Circle(10, 15, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape c3 = new Circle(10, 100, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape outer = new Circle(10, 0, 15, MathPie.STATIC_BODY_DENSITY, 0);
+        FlatAabbTree tree = new FlatAabbTree(AabbTreeNode.DEFAULT_ENLARGED_AABB_COEFFICIENT);
+        tree.insertLeaf(c1);
+        tree.insertLeaf(c2);
+        tree.insertLeaf(c3);
+        outer.computeAabb();
+
+        PairBuffer collisions = new PairBuffer();
+        tree.calculateAabbCollisions(c1, collisions);
+        tree.calculateAabbCollisions(outer, collisions);
+
+        Set<ShapePair> cmpShapePairs = new HashSet<>();
+        cmpShapePairs.add(new ShapePair(c1, c2));
+        cmpShapePairs.add(new ShapePair(outer, c1));
+        cmpShapePairs.add(new ShapePair(outer, c2));
+        Assert.assertNull(TestUtil.assertEqualsShapePairsList(cmpShapePairs, collisions.toShapePairs()));
+    }
+
+    @Test
+    public void movingLeavesDoesNotAllocateTest() {
+        IShape[] shapes = new IShape[200];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = new Circle(5, 8 * (i % 20), 8 * (i / 20), 1, 0);
+            shapes[i].computeAabb();
+        }
+        FlatAabbTree tree = new FlatAabbTree(AabbTreeNode.DEFAULT_ENLARGED_AABB_COEFFICIENT);
+        int[] leaves = new int[shapes.length];
+        for (int i = 0; i < shapes.length; i++) {
+            leaves[i] = tree.insertLeaf(shapes[i]);
+        }
+        PairBuffer collisions = new PairBuffer();
+        int[] step = new int[1];
+
+        long allocated = measureAllocatedBytes(() -> {
+            // Each shape jumps out of its leaf bounds and back, so each leaf is reinserted every step
+            final float offset = step[0]++ % 2 == 0 ? 30 : -30;
+            for (IShape shape : shapes) {
+                shape.getBody().position.set(shape.getBody().position.x + offset, shape.getBody().position.y);
+                shape.computeAabb();
+            }
+            for (int i = 0; i < shapes.length; i += 2) {
+                tree.removeLeaf(leaves[i]);
+                leaves[i] = tree.insertLeaf(shapes[i]);
+            }
+            tree.updateTree();
+            collisions.clear();
+            tree.calculateAabbCollisions(collisions);
+        }, 100);
+        Assert.assertEquals(0, allocated);
+        Assert.assertFalse(collisions.isEmpty());
+    }
+
+    private static Set<ShapePair> calculateAabbCollisions(FlatAabbTree tree) {
+        PairBuffer collisions = new PairBuffer();
+        tree.calculateAabbCollisions(collisions);
+        return collisions.toShapePairs();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.island;
+
+import com.github.introfog.pie.core.Context;
+import com.github.introfog.pie.core.WorldProperties;
+import com.github.introfog.pie.core.collisions.Manifold;
+import com.github.introfog.pie.core.math.MathPie;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.ShapeRegistry;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class IslandBuilderTest extends PieTest {
+    @Test
+    public void staticShapeSeparatesIslandsTest() {
+        Context context = new Context(new WorldProperties());
+        IShape ground = new Circle(10, 0, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        IShape c1 = new Circle(1, 0, 0, 1, 0);
+        IShape c2 = new Circle(1, 0, 0, 1, 0);
+        IShape c3 = new Circle(1, 0, 0, 1, 0);
+        IShape c4 = new Circle(1, 0, 0, 1, 0);
+
+        IslandBuilder builder = new IslandBuilder();
+        builder.setSlotCapacity(IslandBuilderTest.registerShapes(ground, c1, c2, c3, c4));
+
+        List<Manifold> manifolds = new ArrayList<>();
+        manifolds.add(new Manifold(ground, c1, context));
+        manifolds.add(new Manifold(c1, c2, context));
+        manifolds.add(new Manifold(c3, ground, context));
+        manifolds.add(new Manifold(c4, c3, context));
+        List<Island> islands = builder.build(manifolds);
+
+        Assert.assertEquals(2, islands.size());
+        Assert.assertEquals(Arrays.asList(manifolds.get(0), manifolds.get(1)), islands.get(0).getManifolds());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(c1, c2)), new HashSet<>(islands.get(0).getShapes()));
+        Assert.assertEquals(Arrays.asList(manifolds.get(2), manifolds.get(3)), islands.get(1).getManifolds());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(c3, c4)), new HashSet<>(islands.get(1).getShapes()));
+    }
+
+    @Test
+    public void chainOfShapesIsOneIslandTest() {
+        Context context = new Context(new WorldProperties());
+        IShape c1 = new Circle(1, 0, 0, 1, 0);
+        IShape c2 = new Circle(1, 0, 0, 1, 0);
+        IShape c3 = new Circle(1, 0, 0, 1, 0);
+        IShape c4 = new Circle(1, 0, 0, 1, 0);
+
+        IslandBuilder builder = new IslandBuilder();
+        builder.setSlotCapacity(IslandBuilderTest.registerShapes(c1, c2, c3, c4));
+
+        List<Manifold> manifolds = new ArrayList<>();
+        manifolds.add(new Manifold(c1, c2, context));
+        manifolds.add(new Manifold(c3, c4, context));
+        manifolds.add(new Manifold(c2, c3, context));
+        List<Island> islands = builder.build(manifolds);
+
+        Assert.assertEquals(1, islands.size());
+        Assert.assertEquals(manifolds, islands.get(0).getManifolds());
+        Assert.assertEquals(4, islands.get(0).getShapes().size());
+    }
+
+    @Test
+    public void islandsAreRebuiltOnEachCallTest() {
+        Context context = new Context(new WorldProperties());
+        IShape c1 = new Circle(1, 0, 0, 1, 0);
+        IShape c2 = new Circle(1, 0, 0, 1, 0);
+        IShape c3 = new Circle(1, 0, 0, 1, 0);
+
+        IslandBuilder builder = new IslandBuilder();
+        builder.setSlotCapacity(IslandBuilderTest.registerShapes(c1, c2, c3));
+
+        List<Manifold> manifolds = new ArrayList<>();
+        manifolds.add(new Manifold(c1, c2, context));
+        manifolds.add(new Manifold(c2, c3, context));
+        Assert.assertEquals(1, builder.build(manifolds).size());
+
+        manifolds.remove(1);
+        List<Island> islands = builder.build(manifolds);
+        Assert.assertEquals(1, islands.size());
+        Assert.assertEquals(2, islands.get(0).getShapes().size());
+
+        Assert.assertTrue(builder.build(new ArrayList<>()).isEmpty());
+    }
+
+    private static int registerShapes(IShape... shapes) {
+        ShapeRegistry registry = new ShapeRegistry();
+        for (IShape shape : shapes) {
+            registry.add(shape);
+        }
+        return registry.getSlotCapacity();
+    }
+}
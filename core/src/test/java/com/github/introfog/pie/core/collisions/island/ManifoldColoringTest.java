@@ -0,0 +1,151 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.island;
+
+import com.github.introfog.pie.core.Context;
+import com.github.introfog.pie.core.WorldProperties;
+import com.github.introfog.pie.core.collisions.Manifold;
+import com.github.introfog.pie.core.math.MathPie;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.ShapeRegistry;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class ManifoldColoringTest extends PieTest {
+    @Test
+    public void chainIsColoredWithTwoColorsTest() {
+        Context context = new Context(new WorldProperties());
+        IShape[] shapes = new IShape[10];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = new Circle(1, i, 0, 1, 0);
+        }
+        List<Manifold> manifolds = new ArrayList<>();
+        for (int i = 0; i + 1 < shapes.length; i++) {
+            manifolds.add(new Manifold(shapes[i], shapes[i + 1], context));
+        }
+        Island island = ManifoldColoringTest.colorIsland(shapes, manifolds);
+        Assert.assertEquals(2, island.getBatches().size());
+        Assert.assertTrue(island.getUncoloredManifolds().isEmpty());
+        ManifoldColoringTest.assertBatchesAreIndependent(island, manifolds.size());
+    }
+
+    @Test
+    public void staticShapeDoesNotLimitColorsTest() {
+        Context context = new Context(new WorldProperties());
+        IShape[] shapes = new IShape[11];
+        shapes[0] = new Circle(100, 0, 0, MathPie.STATIC_BODY_DENSITY, 0);
+        List<Manifold> manifolds = new ArrayList<>();
+        for (int i = 1; i < shapes.length; i++) {
+            shapes[i] = new Circle(1, i, 0, 1, 0);
+            manifolds.add(new Manifold(shapes[0], shapes[i], context));
+        }
+        ManifoldColoring coloring = new ManifoldColoring();
+        coloring.setSlotCapacity(ManifoldColoringTest.registerShapes(shapes));
+        Island island = new Island();
+        island.getManifolds().addAll(manifolds);
+
+        coloring.color(island);
+        Assert.assertEquals(1, island.getBatches().size());
+        Assert.assertEquals(10, island.getBatches().get(0).size());
+    }
+
+    @Test
+    public void tooManyColorsTest() {
+        Context context = new Context(new WorldProperties());
+        IShape[] shapes = new IShape[ManifoldColoring.MAX_COLOR_COUNT + 3];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = new Circle(1, i, 0, 1, 0);
+        }
+        // All manifolds touch the first shape, so each of them needs its own color
+        List<Manifold> manifolds = new ArrayList<>();
+        for (int i = 1; i < shapes.length; i++) {
+            manifolds.add(new Manifold(shapes[0], shapes[i], context));
+        }
+        Island island = ManifoldColoringTest.colorIsland(shapes, manifolds);
+        Assert.assertEquals(ManifoldColoring.MAX_COLOR_COUNT, island.getBatches().size());
+        Assert.assertEquals(2, island.getUncoloredManifolds().size());
+        ManifoldColoringTest.assertBatchesAreIndependent(island, manifolds.size());
+    }
+
+    @Test
+    public void recoloringTest() {
+        Context context = new Context(new WorldProperties());
+        IShape[] shapes = new IShape[3];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = new Circle(1, i, 0, 1, 0);
+        }
+        List<Manifold> manifolds = new ArrayList<>();
+        manifolds.add(new Manifold(shapes[0], shapes[1], context));
+        manifolds.add(new Manifold(shapes[1], shapes[2], context));
+        ManifoldColoring coloring = new ManifoldColoring();
+        coloring.setSlotCapacity(ManifoldColoringTest.registerShapes(shapes));
+        Island island = new Island();
+        island.getManifolds().addAll(manifolds);
+
+        coloring.color(island);
+        Assert.assertEquals(2, island.getBatches().size());
+
+        island.getManifolds().remove(1);
+        coloring.color(island);
+        Assert.assertEquals(1, island.getBatches().size());
+        Assert.assertEquals(1, island.getBatches().get(0).size());
+    }
+
+    private static Island colorIsland(IShape[] shapes, List<Manifold> manifolds) {
+        int slotCapacity = ManifoldColoringTest.registerShapes(shapes);
+        IslandBuilder builder = new IslandBuilder();
+        builder.setSlotCapacity(slotCapacity);
+        List<Island> islands = builder.build(manifolds);
+        Assert.assertEquals(1, islands.size());
+
+        ManifoldColoring coloring = new ManifoldColoring();
+        coloring.setSlotCapacity(slotCapacity);
+        coloring.color(islands.get(0));
+        return islands.get(0);
+    }
+
+    private static void assertBatchesAreIndependent(Island island, int manifoldCount) {
+        int coloredCount = island.getUncoloredManifolds().size();
+        for (List<Manifold> batch : island.getBatches()) {
+            Set<IShape> touched = new HashSet<>();
+            for (Manifold manifold : batch) {
+                Assert.assertTrue(touched.add(manifold.aShape));
+                Assert.assertTrue(touched.add(manifold.bShape));
+            }
+            coloredCount += batch.size();
+        }
+        Assert.assertEquals(manifoldCount, coloredCount);
+    }
+
+    private static int registerShapes(IShape... shapes) {
+        ShapeRegistry registry = new ShapeRegistry();
+        for (IShape shape : shapes) {
+            registry.add(shape);
+        }
+        return registry.getSlotCapacity();
+    }
+}
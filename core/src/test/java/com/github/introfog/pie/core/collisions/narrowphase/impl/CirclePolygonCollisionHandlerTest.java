@@ -0,0 +1,82 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.collisions.narrowphase.impl;
+
+import com.github.introfog.pie.core.Context;
+import com.github.introfog.pie.core.WorldProperties;
+import com.github.introfog.pie.core.collisions.Manifold;
+import com.github.introfog.pie.core.math.MathPie;
+import com.github.introfog.pie.core.shape.Circle;
+import com.github.introfog.pie.core.shape.IShape;
+import com.github.introfog.pie.core.shape.Polygon;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class CirclePolygonCollisionHandlerTest extends PieTest {
+    @Test
+    public void inPlaceHandlingTest() {
+        Context context = new Context(new WorldProperties());
+        IShape aShape = Polygon.generateRectangle(0, 10, 100, 20, MathPie.STATIC_BODY_DENSITY, 0.2f);
+        IShape bShape = new Circle(10, 3, -9, 1f, 0.2f);
+        aShape.getRotateMatrix().setAngle(0.1f);
+        CirclePolygonCollisionHandler handler = new CirclePolygonCollisionHandler();
+
+        Manifold expected = handler.handleCollision(aShape, bShape, context);
+        Assert.assertNotNull(expected);
+        Assert.assertEquals(1, expected.contactCount);
+
+        Manifold manifold = new Manifold(bShape, aShape, context);
+        Assert.assertTrue(handler.handleCollision(aShape, bShape, context, manifold));
+        Assert.assertEquals(expected.contactCount, manifold.contactCount);
+        Assert.assertEquals(expected.penetration, manifold.penetration, FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(expected.normal, manifold.normal);
+        for (int i = 0; i < expected.contactCount; i++) {
+            Assert.assertEquals(expected.contacts[i], manifold.contacts[i]);
+            Assert.assertEquals(expected.contactIds[i], manifold.contactIds[i]);
+        }
+    }
+
+    @Test
+    public void noCollisionTest() {
+        Context context = new Context(new WorldProperties());
+        IShape aShape = Polygon.generateRectangle(0, 10, 100, 20, MathPie.STATIC_BODY_DENSITY, 0.2f);
+        IShape bShape = new Circle(10, 3, -9, 1f, 0.2f);
+        bShape.getBody().position.y = -100;
+        CirclePolygonCollisionHandler handler = new CirclePolygonCollisionHandler();
+
+        Assert.assertNull(handler.handleCollision(aShape, bShape, context));
+        Assert.assertFalse(handler.handleCollision(aShape, bShape, context, new Manifold(aShape, bShape, context)));
+    }
+
+    @Test
+    public void inPlaceHandlingDoesNotAllocateTest() {
+        Context context = new Context(new WorldProperties());
+        IShape aShape = Polygon.generateRectangle(0, 10, 100, 20, MathPie.STATIC_BODY_DENSITY, 0.2f);
+        IShape bShape = new Circle(10, 3, -9, 1f, 0.2f);
+        aShape.getRotateMatrix().setAngle(0.1f);
+        CirclePolygonCollisionHandler handler = new CirclePolygonCollisionHandler();
+        Manifold manifold = new Manifold(aShape, bShape, context);
+
+        long allocated = measureAllocatedBytes(() -> handler.handleCollision(aShape, bShape, context, manifold), 1000);
+        Assert.assertEquals(0, allocated);
+        Assert.assertEquals(1, manifold.contactCount);
+    }
+}
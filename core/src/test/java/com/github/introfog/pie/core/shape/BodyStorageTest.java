@@ -0,0 +1,121 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.shape;
+
+import com.github.introfog.pie.core.math.MathPie;
+import com.github.introfog.pie.core.math.Vector2f;
+import com.github.introfog.pie.core.util.ParallelExecutor;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class BodyStorageTest extends PieTest {
+    @Test
+    public void integrateTest() {
+        IShape dynamic = new Circle(1, 1, 2, 1, 0);
+        dynamic.getBody().velocity.set(3, 4);
+        dynamic.getBody().force.set(5, 6);
+        dynamic.getBody().angularVelocity = 0.5f;
+        IShape fixed = new Circle(1, 10, 20, MathPie.STATIC_BODY_DENSITY, 0);
+        fixed.getBody().force.set(5, 6);
+        BodyStorage storage = new BodyStorage();
+
+        storage.load(new IShape[] {dynamic, fixed}, 0, ParallelExecutor.sequential());
+        Assert.assertEquals(2, storage.size());
+        storage.integrateForces(0.5f, new Vector2f(0, 10), ParallelExecutor.sequential());
+        storage.integrateVelocities(2f, ParallelExecutor.sequential());
+        storage.storeAndClearForces(ParallelExecutor.sequential());
+
+        float invertedMass = dynamic.getBody().invertedMass;
+        Vector2f velocity = new Vector2f(3 + 5 * invertedMass * 0.5f, 4 + (6 * invertedMass + 10) * 0.5f);
+        Assert.assertEquals(velocity, dynamic.getBody().velocity);
+        Assert.assertEquals(new Vector2f(1 + velocity.x * 2, 2 + velocity.y * 2), dynamic.getBody().position);
+        Assert.assertEquals(1f, dynamic.getBody().orientation, FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(new Vector2f(), dynamic.getBody().force);
+
+        Assert.assertEquals(new Vector2f(), fixed.getBody().velocity);
+        Assert.assertEquals(new Vector2f(10, 20), fixed.getBody().position);
+        Assert.assertEquals(new Vector2f(), fixed.getBody().force);
+    }
+
+    @Test
+    public void sleepingBodyIsNotIntegratedTest() {
+        IShape shape = new Circle(1, 1, 2, 1, 0);
+        shape.getBody().sleep();
+        BodyStorage storage = new BodyStorage();
+
+        storage.load(new IShape[] {shape}, 0, ParallelExecutor.sequential());
+        storage.integrateForces(1f, new Vector2f(0, 10), ParallelExecutor.sequential());
+        Assert.assertEquals(0f, storage.getVelocityY(0), FLOAT_EPSILON_COMPARISON);
+
+        // The body is woken up after the loading, so it takes part in the further integration
+        shape.getBody().wakeUp();
+        storage.activate(0);
+        storage.setVelocity(0, 1, 0, 0);
+        storage.integrateVelocities(1f, ParallelExecutor.sequential());
+        storage.storeAndClearForces(ParallelExecutor.sequential());
+        Assert.assertEquals(new Vector2f(2, 2), shape.getBody().position);
+    }
+
+    @Test
+    public void reloadWithMoreShapesTest() {
+        BodyStorage storage = new BodyStorage();
+        storage.load(new IShape[] {new Circle(1, 0, 0, 1, 0)}, 0, ParallelExecutor.sequential());
+        Assert.assertEquals(1, storage.size());
+
+        IShape[] shapes = new IShape[5];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = new Circle(1, i, 0, 1, 0);
+            shapes[i].getBody().velocity.set(1, 1);
+        }
+        storage.load(shapes, 0, ParallelExecutor.sequential());
+        Assert.assertEquals(5, storage.size());
+        storage.integrateVelocities(1f, ParallelExecutor.sequential());
+        storage.storeAndClearForces(ParallelExecutor.sequential());
+        for (int i = 0; i < shapes.length; i++) {
+            Assert.assertEquals(new Vector2f(i + 1, 1), shapes[i].getBody().position);
+        }
+    }
+
+    @Test
+    public void getIndexTest() {
+        ShapeRegistry registry = new ShapeRegistry();
+        IShape first = new Circle(1, 0, 0, 1, 0);
+        IShape second = new Circle(1, 5, 0, 1, 0);
+        IShape removed = new Circle(1, 10, 0, 1, 0);
+        registry.add(first);
+        registry.add(removed);
+        registry.add(second);
+        registry.remove(removed);
+        BodyStorage storage = new BodyStorage();
+
+        IShape[] shapes = registry.toArray();
+        storage.load(shapes, registry.getSlotCapacity(), ParallelExecutor.sequential());
+        Assert.assertSame(first, shapes[storage.getIndex(first)]);
+        Assert.assertSame(second, shapes[storage.getIndex(second)]);
+        Assert.assertEquals(-1, storage.getIndex(removed));
+        Assert.assertEquals(-1, storage.getIndex(new Circle(1, 0, 0, 1, 0)));
+
+        // The slots of the shapes which aren't loaded anymore keep their old indices
+        storage.load(new IShape[] {second}, registry.getSlotCapacity(), ParallelExecutor.sequential());
+        Assert.assertEquals(0, storage.getIndex(second));
+        Assert.assertEquals(-1, storage.getIndex(first));
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.github.introfog.pie.core.shape;
 
+import com.github.introfog.pie.core.math.MathPie;
 import com.github.introfog.pie.core.math.RotationMatrix2x2;
 import com.github.introfog.pie.core.math.Vector2f;
 import com.github.introfog.pie.test.PieTest;
@@ -77,4 +78,41 @@ public class IShapeTest extends PieTest {
         Assert.assertEquals(new Vector2f(10, 10), shape.body.velocity);
         Assert.assertEquals(10, shape.body.angularVelocity, PieTest.FLOAT_EPSILON_COMPARISON);
     }
+
+    @Test
+    public void applyImpulseToStaticShapeTest() {
+        IShape shape = new Circle(1, 0,0, MathPie.STATIC_BODY_DENSITY, 0);
+        shape.applyImpulse(new Vector2f(10, 10), new Vector2f(1, 0));
+
+        Assert.assertEquals(new Vector2f(0, 0), shape.body.velocity);
+        Assert.assertEquals(0, shape.body.angularVelocity, PieTest.FLOAT_EPSILON_COMPARISON);
+    }
+
+    @Test
+    public void applyImpulseWakesUpShapeTest() {
+        IShape shape = new Circle(1, 0,0, 1, 0);
+        shape.body.sleep();
+        Assert.assertFalse(shape.body.isAwake());
+
+        shape.applyImpulse(new Vector2f(10, 10), new Vector2f(1, 0));
+        Assert.assertTrue(shape.body.isAwake());
+        Assert.assertNotEquals(0f, shape.body.velocity.x, PieTest.FLOAT_EPSILON_COMPARISON);
+    }
+
+    @Test
+    public void movedFlagTest() {
+        IShape shape = new Circle(1, 0, 0, 1, 0);
+        Assert.assertTrue(shape.isMoved());
+
+        shape.resetMoved();
+        Assert.assertFalse(shape.isMoved());
+        shape.getBody().position.set(1, 1);
+        Assert.assertFalse(shape.isMoved());
+        shape.markMoved();
+        Assert.assertTrue(shape.isMoved());
+
+        shape.resetMoved();
+        shape.setOrientation(1f);
+        Assert.assertTrue(shape.isMoved());
+    }
 }
@@ -182,6 +182,68 @@ public class PolygonTest extends PieTest {
         Assert.assertEquals(new Vector2f(5, -10), polygon.calculateSupportVertex(new Vector2f(100, -0.1f)));
     }
 
+    @Test
+    public void getSupportIndexTest() {
+        Polygon polygon = Polygon.generateRectangle(0, 0, 10, 20, 0, 0);
+
+        Assert.assertEquals(new Vector2f(5, 10), polygon.getVertex(polygon.calculateSupportVertexIndex(100, 0.1f)));
+        Assert.assertEquals(new Vector2f(5, -10), polygon.getVertex(polygon.calculateSupportVertexIndex(100, -0.1f)));
+    }
+
+    @Test
+    public void getVertexAndNormalTest() {
+        Polygon polygon = Polygon.generateRectangle(0, 0, 10, 20, 0, 0);
+
+        Vector2f[] vertices = polygon.getVertices();
+        Vector2f[] normals = polygon.getNormals();
+        for (int i = 0; i < polygon.getVertexCount(); i++) {
+            Assert.assertSame(vertices[i], polygon.getVertex(i));
+            Assert.assertSame(normals[i], polygon.getNormal(i));
+        }
+    }
+
+    @Test
+    public void getWorldVertexAndNormalTest() {
+        Polygon polygon = Polygon.generateRectangle(10, 20, 10, 20, 0, 0);
+        polygon.setOrientation((float) Math.PI / 2);
+
+        for (int i = 0; i < polygon.getVertexCount(); i++) {
+            Vector2f expectedVertex = new Vector2f();
+            polygon.getRotateMatrix().mul(polygon.getVertex(i), expectedVertex);
+            expectedVertex.add(polygon.getBody().position);
+            Vector2f expectedNormal = new Vector2f();
+            polygon.getRotateMatrix().mul(polygon.getNormal(i), expectedNormal);
+
+            Assert.assertEquals(expectedVertex, polygon.getWorldVertex(i));
+            Assert.assertEquals(expectedNormal, polygon.getWorldNormal(i));
+        }
+    }
+
+    @Test
+    public void worldGeometryIsUpdatedAfterMovementTest() {
+        Polygon polygon = Polygon.generateRectangle(0, 0, 10, 20, 0, 0);
+        Vector2f vertex = polygon.getWorldVertex(0);
+        Assert.assertEquals(new Vector2f(5, -10), vertex);
+
+        polygon.getBody().position.set(1, 2);
+        Assert.assertSame(vertex, polygon.getWorldVertex(0));
+        Assert.assertEquals(new Vector2f(6, -8), vertex);
+
+        polygon.setOrientation((float) Math.PI);
+        Assert.assertEquals(-4, polygon.getWorldVertex(0).x, PieTest.FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(12, polygon.getWorldVertex(0).y, PieTest.FLOAT_EPSILON_COMPARISON);
+        Assert.assertEquals(-1, polygon.getWorldNormal(0).x, PieTest.FLOAT_EPSILON_COMPARISON);
+    }
+
+    @Test
+    public void getWorldSupportIndexTest() {
+        Polygon polygon = Polygon.generateRectangle(0, 0, 10, 20, 0, 0);
+        polygon.setOrientation((float) Math.PI);
+
+        Assert.assertEquals(new Vector2f(5, -10),
+                polygon.getVertex(polygon.calculateWorldSupportVertexIndex(-100, 0.1f)));
+    }
+
     @Test
     public void toStringTest() {
         Polygon polygon = Polygon.generateRectangle(0.23412f, 1.3f, 2.5f, 6.3f, 2.3f, 0.2f);
@@ -0,0 +1,144 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.shape;
+
+import com.github.introfog.pie.core.PieExceptionMessage;
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class ShapeRegistryTest extends PieTest {
+    @Test
+    public void addTest() {
+        ShapeRegistry registry = new ShapeRegistry();
+        IShape c1 = new Circle(1, 0, 0, 1, 0);
+        IShape c2 = new Circle(1, 0, 0, 1, 0);
+        Assert.assertEquals(-1, c1.getSlot());
+
+        Assert.assertTrue(registry.add(c1));
+        Assert.assertTrue(registry.add(c2));
+        Assert.assertFalse(registry.add(c1));
+
+        Assert.assertEquals(2, registry.size());
+        Assert.assertEquals(2, registry.getSlotCapacity());
+        Assert.assertEquals(0, c1.getSlot());
+        Assert.assertEquals(1, c2.getSlot());
+        Assert.assertTrue(registry.contains(c1));
+        Assert.assertArrayEquals(new IShape[] {c1, c2}, registry.toArray());
+    }
+
+    @Test
+    public void removeSwapsLastShapeTest() {
+        ShapeRegistry registry = new ShapeRegistry();
+        IShape c1 = new Circle(1, 0, 0, 1, 0);
+        IShape c2 = new Circle(1, 0, 0, 1, 0);
+        IShape c3 = new Circle(1, 0, 0, 1, 0);
+        registry.add(c1);
+        registry.add(c2);
+        registry.add(c3);
+
+        Assert.assertTrue(registry.remove(c1));
+        Assert.assertFalse(registry.remove(c1));
+
+        Assert.assertEquals(-1, c1.getSlot());
+        Assert.assertFalse(registry.contains(c1));
+        Assert.assertArrayEquals(new IShape[] {c3, c2}, registry.toArray());
+        // The slots of the remaining shapes don't change
+        Assert.assertEquals(1, c2.getSlot());
+        Assert.assertEquals(2, c3.getSlot());
+    }
+
+    @Test
+    public void slotsAreRecycledTest() {
+        ShapeRegistry registry = new ShapeRegistry();
+        IShape[] shapes = new IShape[100];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = new Circle(1, 0, 0, 1, 0);
+            registry.add(shapes[i]);
+        }
+        for (int i = 0; i < shapes.length; i += 2) {
+            registry.remove(shapes[i]);
+        }
+        Set<Integer> slots = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            IShape shape = new Circle(1, 0, 0, 1, 0);
+            registry.add(shape);
+            slots.add(shape.getSlot());
+        }
+
+        Assert.assertEquals(100, registry.size());
+        Assert.assertEquals(100, registry.getSlotCapacity());
+        for (int i = 0; i < registry.size(); i++) {
+            slots.add(registry.get(i).getSlot());
+        }
+        Assert.assertEquals(100, slots.size());
+    }
+
+    @Test
+    public void clearTest() {
+        ShapeRegistry registry = new ShapeRegistry();
+        IShape c1 = new Circle(1, 0, 0, 1, 0);
+        registry.add(c1);
+
+        registry.clear();
+
+        Assert.assertEquals(0, registry.size());
+        Assert.assertEquals(0, registry.getSlotCapacity());
+        Assert.assertEquals(-1, c1.getSlot());
+        Assert.assertTrue(new ShapeRegistry().add(c1));
+    }
+
+    @Test
+    public void shapeOfAnotherRegistryTest() {
+        IShape c1 = new Circle(1, 0, 0, 1, 0);
+        new ShapeRegistry().add(c1);
+
+        Assert.assertThrows(PieExceptionMessage.SHAPE_ALREADY_BELONGS_TO_ANOTHER_WORLD,
+                IllegalArgumentException.class, () -> new ShapeRegistry().add(c1));
+    }
+
+    @Test
+    public void canAddTest() {
+        ShapeRegistry registry = new ShapeRegistry();
+        IShape c1 = new Circle(1, 0, 0, 1, 0);
+        Assert.assertTrue(registry.canAdd(c1));
+        registry.add(c1);
+        Assert.assertTrue(registry.canAdd(c1));
+        Assert.assertFalse(new ShapeRegistry().canAdd(c1));
+    }
+
+    @Test
+    public void unmodifiableSetTest() {
+        ShapeRegistry registry = new ShapeRegistry();
+        IShape c1 = new Circle(1, 0, 0, 1, 0);
+        IShape c2 = new Circle(1, 0, 0, 1, 0);
+        Set<IShape> set = registry.asUnmodifiableSet();
+        registry.add(c1);
+        registry.add(c2);
+
+        Assert.assertEquals(2, set.size());
+        Assert.assertTrue(set.contains(c2));
+        Assert.assertEquals(new HashSet<>(set), set);
+        Assert.assertThrows(UnsupportedOperationException.class, () -> set.remove(c1));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+    Copyright 2020 Dmitry Chubrick
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package com.github.introfog.pie.core.util;
+
+import com.github.introfog.pie.test.PieTest;
+import com.github.introfog.pie.test.annotations.UnitTest;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(UnitTest.class)
+public class ParallelExecutorTest extends PieTest {
+    @Test
+    public void sequentialExecutorTest() {
+        ParallelExecutor executor = ParallelExecutor.sequential();
+        Assert.assertFalse(executor.isParallel());
+        Assert.assertNull(executor.getPool());
+        Assert.assertEquals(1, executor.getParallelism());
+
+        int[] calls = new int[1];
+        executor.forEachChunk(3, 1000, (from, to) -> {
+            Assert.assertEquals(3, from);
+            Assert.assertEquals(1000, to);
+            calls[0]++;
+        });
+        Assert.assertEquals(1, calls[0]);
+    }
+
+    @Test
+    public void eachIndexIsProcessedOnceTest() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ParallelExecutor executor = new ParallelExecutor(pool, 5);
+        Assert.assertTrue(executor.isParallel());
+
+        AtomicIntegerArray counters = new AtomicIntegerArray(1000);
+        executor.forEachChunk(10, 990, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                counters.incrementAndGet(i);
+            }
+        });
+        for (int i = 0; i < counters.length(); i++) {
+            Assert.assertEquals(i >= 10 && i < 990 ? 1 : 0, counters.get(i));
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void forEachArrayTest() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        ParallelExecutor executor = new ParallelExecutor(pool, 1);
+
+        int[][] array = new int[100][1];
+        executor.forEach(array, 50, element -> element[0]++);
+        for (int i = 0; i < array.length; i++) {
+            Assert.assertEquals(i < 50 ? 1 : 0, array[i][0]);
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void exceptionIsRethrownTest() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        ParallelExecutor executor = new ParallelExecutor(pool, 1);
+
+        Assert.assertThrows(IllegalStateException.class, () -> executor.forEachChunk(0, 100, (from, to) -> {
+            if (from == 0) {
+                throw new IllegalStateException();
+            }
+        }));
+        pool.shutdown();
+    }
+}
@@ -16,6 +16,7 @@
 package com.github.introfog.pie.test;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
 
 import org.junit.Assert;
 
@@ -63,4 +64,30 @@ public abstract class PieTest {
             Assert.assertNotEquals(a.hashCode(), b.hashCode());
         }
     }
+
+    /**
+     * Measures the number of bytes allocated by the current thread while the action is executed.
+     * The action is warmed up before the measurement and then executed the passed number of times,
+     * the memory allocated by the measurement itself is subtracted.
+     *
+     * @param action the action to measure
+     * @param iterations the number of times the action is executed during the measurement
+     * @return the number of allocated bytes
+     */
+    public static long measureAllocatedBytes(Runnable action, int iterations) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < iterations; i++) {
+            action.run();
+        }
+        bean.getThreadAllocatedBytes(threadId);
+
+        long start = bean.getThreadAllocatedBytes(threadId);
+        long overhead = bean.getThreadAllocatedBytes(threadId) - start;
+        start = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            action.run();
+        }
+        return bean.getThreadAllocatedBytes(threadId) - start - overhead;
+    }
 }